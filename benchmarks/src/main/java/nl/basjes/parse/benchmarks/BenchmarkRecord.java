@@ -0,0 +1,61 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.benchmarks;
+
+/**
+ * Receives all values. Only retains a tiny summary so the JIT cannot eliminate the work.
+ */
+public class BenchmarkRecord {
+
+    private long received = 0;
+    private long hash = 0;
+
+    public void clear() {
+        received = 0;
+        hash = 0;
+    }
+
+    public void set(String name, String value) {
+        received++;
+        if (value != null) {
+            hash += value.length();
+        }
+    }
+
+    public void set(String name, Long value) {
+        received++;
+        if (value != null) {
+            hash += value;
+        }
+    }
+
+    public void set(String name, Double value) {
+        received++;
+        if (value != null) {
+            hash += value.longValue();
+        }
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.benchmarks;
+
+import nl.basjes.parse.core.Dissector;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.ApacheHttpdLogFormatDissector;
+import nl.basjes.parse.httpdlog.HttpdLogFormatDissector;
+import nl.basjes.parse.httpdlog.dissectors.HttpUriDissector;
+import nl.basjes.parse.httpdlog.dissectors.QueryStringFieldDissector;
+import nl.basjes.parse.httpdlog.dissectors.TimeStampDissector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hot dissectors, each in isolation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DissectorBenchmark {
+
+    private static final String LOGLINE =
+        "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif?foo=bar&s=1280x800 HTTP/1.0\" 200 2326" +
+        " \"http://www.example.com/start.html?ref=home\" \"Mozilla/5.0 (X11; Linux x86_64; rv:59.0) Gecko/20100101 Firefox/59.0\"";
+    private static final String URI         = "/some/path/index.html?foo=bar&s=1280x800&q=%20hello%20world#anchor";
+    private static final String TIMESTAMP   = "10/Oct/2000:13:55:36 -0700";
+    private static final String QUERYSTRING = "foo=bar&s=1280x800&q=%20hello%20world&x=1&y=2&z=3";
+
+    private final BenchmarkRecord   record = new BenchmarkRecord();
+
+    private Parser<BenchmarkRecord> tokenFormatParser;
+    private Parser<BenchmarkRecord> httpUriParser;
+    private Parser<BenchmarkRecord> timeStampParser;
+    private Parser<BenchmarkRecord> queryStringParser;
+
+    @Setup
+    public void setup() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, DissectionFailure {
+        tokenFormatParser = createParser(HttpdLogFormatDissector.INPUT_TYPE,
+            new ApacheHttpdLogFormatDissector("combined"),
+            "IP:connection.client.host",
+            "TIME.STAMP:request.receive.time",
+            "HTTP.FIRSTLINE:request.firstline",
+            "STRING:request.status.last",
+            "BYTESCLF:response.body.bytes",
+            "HTTP.URI:request.referer",
+            "HTTP.USERAGENT:request.user-agent");
+        check(tokenFormatParser, LOGLINE);
+
+        httpUriParser = createParser(new RootDissector("HTTP.URI", "uri"),
+            new HttpUriDissector(),
+            "HTTP.PATH:uri.path",
+            "HTTP.QUERYSTRING:uri.query",
+            "HTTP.REF:uri.ref");
+        check(httpUriParser, URI);
+
+        timeStampParser = createParser(new RootDissector("TIME.STAMP", "time"),
+            new TimeStampDissector(),
+            "TIME.EPOCH:time.epoch",
+            "TIME.DATE:time.date",
+            "TIME.HOUR:time.hour",
+            "TIME.ZONE:time.timezone");
+        check(timeStampParser, TIMESTAMP);
+
+        queryStringParser = createParser(new RootDissector("HTTP.QUERYSTRING", "query"),
+            new QueryStringFieldDissector(),
+            "STRING:query.foo",
+            "STRING:query.s",
+            "STRING:query.q");
+        check(queryStringParser, QUERYSTRING);
+    }
+
+    private static Parser<BenchmarkRecord> createParser(RootDissector root, Dissector dissector, String... fields)
+        throws NoSuchMethodException {
+        return createParser(RootDissector.INPUT_TYPE, dissector, fields).addDissector(root);
+    }
+
+    private static Parser<BenchmarkRecord> createParser(String rootType, Dissector dissector, String... fields)
+        throws NoSuchMethodException {
+        Parser<BenchmarkRecord> parser = new Parser<>(BenchmarkRecord.class)
+            .addDissector(dissector)
+            .setRootType(rootType);
+        parser.addParseTarget(BenchmarkRecord.class.getMethod("set", String.class, String.class), Arrays.asList(fields));
+        return parser;
+    }
+
+    // Fail early if the benchmark does not do what we think it does.
+    private void check(Parser<BenchmarkRecord> parser, String input)
+        throws MissingDissectorsException, InvalidDissectorException, DissectionFailure {
+        record.clear();
+        parser.parse(record, input);
+        if (record.getReceived() == 0) {
+            throw new IllegalStateException("No values were received for \"" + input + "\"");
+        }
+    }
+
+    @Benchmark
+    public BenchmarkRecord tokenFormatDissector() throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        record.clear();
+        return tokenFormatParser.parse(record, LOGLINE);
+    }
+
+    @Benchmark
+    public BenchmarkRecord httpUriDissector() throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        record.clear();
+        return httpUriParser.parse(record, URI);
+    }
+
+    @Benchmark
+    public BenchmarkRecord timeStampDissector() throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        record.clear();
+        return timeStampParser.parse(record, TIMESTAMP);
+    }
+
+    @Benchmark
+    public BenchmarkRecord queryStringFieldDissector() throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        record.clear();
+        return queryStringParser.parse(record, QUERYSTRING);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.benchmarks;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full parsing pipeline (HttpdLoglineParser) for several logformats and several sizes of the set of requested fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpdLoglineParserBenchmark {
+
+    private static final String COMMON_LINE =
+        "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif?foo=bar&s=1280x800 HTTP/1.0\" 200 2326";
+    private static final String COMBINED_LINE = COMMON_LINE +
+        " \"http://www.example.com/start.html?ref=home\" \"Mozilla/5.0 (X11; Linux x86_64; rv:59.0) Gecko/20100101 Firefox/59.0\"";
+    private static final String COMBINEDIO_LINE = COMBINED_LINE + " 512 2789";
+
+    private static final String NGINX_FORMAT =
+        "$remote_addr - $remote_user [$time_local] \"$request\" $status $body_bytes_sent \"$http_referer\" \"$http_user_agent\"";
+
+    private static final List<String> THREE_FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "HTTP.URI:request.firstline.uri");
+
+    @Param({"common", "combined", "combinedio", "nginx"})
+    private String logFormat;
+
+    /**
+     * The number of requested fields: "3", "20" (the first 20 possible paths) or "all" (all possible paths).
+     */
+    @Param({"3", "20", "all"})
+    private String fields;
+
+    private Parser<BenchmarkRecord> parser;
+    private final BenchmarkRecord   record = new BenchmarkRecord();
+    private String                  line;
+
+    @Setup
+    public void setup() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, DissectionFailure {
+        String format;
+        switch (logFormat) {
+            case "common":
+                format = "common";
+                line = COMMON_LINE;
+                break;
+            case "combined":
+                format = "combined";
+                line = COMBINED_LINE;
+                break;
+            case "combinedio":
+                format = "combinedio";
+                line = COMBINEDIO_LINE;
+                break;
+            case "nginx":
+                format = NGINX_FORMAT;
+                line = COMBINED_LINE;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown logformat: " + logFormat);
+        }
+
+        parser = createParser(format, selectFields(format, fields));
+
+        // Fail early if the benchmark does not do what we think it does.
+        parser.parse(record, line);
+        if (record.getReceived() == 0) {
+            throw new IllegalStateException("No values were received for " + logFormat + " with " + fields + " fields.");
+        }
+    }
+
+    static List<String> selectFields(String format, String fieldSelection) {
+        if ("3".equals(fieldSelection)) {
+            return THREE_FIELDS;
+        }
+
+        List<String> allFields = new ArrayList<>();
+        for (String path : new HttpdLoglineParser<>(BenchmarkRecord.class, format).getPossiblePaths()) {
+            if (!path.endsWith("*")) {
+                allFields.add(path);
+            }
+        }
+        if ("all".equals(fieldSelection)) {
+            return allFields;
+        }
+        return allFields.subList(0, Math.min(allFields.size(), Integer.parseInt(fieldSelection)));
+    }
+
+    static Parser<BenchmarkRecord> createParser(String format, List<String> fields) throws NoSuchMethodException {
+        Parser<BenchmarkRecord> parser = new HttpdLoglineParser<>(BenchmarkRecord.class, format);
+        parser.addParseTarget(BenchmarkRecord.class.getMethod("set", String.class, String.class), fields);
+        return parser;
+    }
+
+    @Benchmark
+    public BenchmarkRecord parse() throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        record.clear();
+        return parser.parse(record, line);
+    }
+
+}
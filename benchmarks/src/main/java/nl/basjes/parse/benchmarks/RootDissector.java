@@ -0,0 +1,76 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.benchmarks;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.Dissector;
+import nl.basjes.parse.core.Parsable;
+import nl.basjes.parse.core.ParsedField;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Passes the input unchanged as a single named field of the specified type.
+ * This makes it possible to benchmark a single dissector (that normally never is the root) in isolation.
+ */
+public class RootDissector extends Dissector {
+
+    public static final String INPUT_TYPE = "BENCHMARKROOT";
+
+    private String outputType;
+    private String fieldName;
+
+    public RootDissector() {
+    }
+
+    public RootDissector(String newOutputType, String newFieldName) {
+        outputType = newOutputType;
+        fieldName = newFieldName;
+    }
+
+    @Override
+    public void dissect(Parsable<?> parsable, String inputname) throws DissectionFailure {
+        final ParsedField field = parsable.getParsableField(INPUT_TYPE, inputname);
+        parsable.addDissection(inputname, outputType, fieldName, field.getValue());
+    }
+
+    @Override
+    public String getInputType() {
+        return INPUT_TYPE;
+    }
+
+    @Override
+    public List<String> getPossibleOutput() {
+        return Collections.singletonList(outputType + ":" + fieldName);
+    }
+
+    @Override
+    public EnumSet<Casts> prepareForDissect(String inputname, String outputname) {
+        return Casts.STRING_ONLY;
+    }
+
+    @Override
+    protected void initializeNewInstance(Dissector newInstance) {
+        RootDissector rootDissector = (RootDissector) newInstance;
+        rootDissector.outputType = outputType;
+        rootDissector.fieldName = fieldName;
+    }
+
+}
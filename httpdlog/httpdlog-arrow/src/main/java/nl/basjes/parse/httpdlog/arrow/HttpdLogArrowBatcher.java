@@ -0,0 +1,420 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.arrow;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses access log lines directly into Apache Arrow vectors, a batch of (at most) batchSize lines at a time.
+ * <ul>
+ * <li>There is one column per requested field. The type of the column is determined from the casts the parser
+ * can provide for the field: LONG becomes a BigInt, else DOUBLE becomes a Float8, else STRING becomes a VarChar.</li>
+ * <li>STRING columns can be dictionary encoded (i.e. the status, method or host have only a few distinct values).
+ * These columns contain the Int index into a VarChar dictionary that is available via the {@link #getDictionaryProvider()}.
+ * The dictionaries only grow so an index remains valid for all batches.</li>
+ * <li>The values are delivered by the parser through a {@link FieldVisitor}; no record instance is created per line.</li>
+ * <li>A line that cannot be parsed is skipped (and counted); it never leaves a partial row behind.</li>
+ * </ul>
+ * Usage:
+ * <pre>{@code
+ * try (HttpdLogArrowBatcher batcher = new HttpdLogArrowBatcher(allocator, logFormat, fields, dictionaryFields, 4096)) {
+ *     for (String line : lines) {
+ *         if (batcher.add(line) && batcher.isFull()) {
+ *             consume(batcher.finishBatch());
+ *         }
+ *     }
+ *     consume(batcher.finishBatch());
+ * }
+ * }</pre>
+ * The returned VectorSchemaRoot is reused for the next batch (as soon as the next line is added)
+ * so the consumer must be done with it (or have transferred the vectors) before that happens.
+ * An instance is NOT threadsafe.
+ */
+public class HttpdLogArrowBatcher implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final List<String>              fields;
+    private final Parser<Object>            parser;
+    private final Schema                    schema;
+    private final VectorSchemaRoot          root;
+    private final DictionaryProvider.MapDictionaryProvider dictionaryProvider = new DictionaryProvider.MapDictionaryProvider();
+    private final List<VarCharVector>       dictionaryVectors = new ArrayList<>();
+    private final int                       batchSize;
+
+    private final Column[]                  columns;
+    private final Map<String, Column>       fieldColumns = new HashMap<>();
+    private final FieldVisitor              visitor = new ColumnFieldVisitor();
+
+    private int     rowCount      = 0;
+    private boolean batchStarted  = false;
+
+    private long    goodLines     = 0;
+    private long    badLines      = 0;
+
+    /**
+     * @param allocator The allocator for all vectors (including the dictionaries).
+     * @param logFormat The Apache HTTPD or NGINX LogFormat.
+     * @param fields The fields (in the form "TYPE:name") that become the columns.
+     * @param dictionaryFields The STRING fields (a subset of fields) that must be dictionary encoded.
+     * @param batchSize The number of rows after which {@link #isFull()} is true.
+     */
+    public HttpdLogArrowBatcher(BufferAllocator allocator,
+                                String logFormat,
+                                List<String> fields,
+                                Collection<String> dictionaryFields,
+                                int batchSize)
+        throws MissingDissectorsException, InvalidDissectorException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+
+        List<String> cleanedFields = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            String cleanedField = Parser.cleanupFieldValue(field.trim());
+            if (cleanedField.endsWith("*")) {
+                throw new IllegalArgumentException("Wildcard fields cannot be a column: " + field);
+            }
+            if (cleanedFields.contains(cleanedField)) {
+                throw new IllegalArgumentException("Duplicate field: " + field);
+            }
+            cleanedFields.add(cleanedField);
+        }
+        this.fields = Collections.unmodifiableList(cleanedFields);
+
+        List<String> cleanedDictionaryFields = new ArrayList<>();
+        for (String field : dictionaryFields) {
+            String cleanedField = Parser.cleanupFieldValue(field.trim());
+            if (!cleanedFields.contains(cleanedField)) {
+                throw new IllegalArgumentException("A dictionary field must also be a field: " + field);
+            }
+            cleanedDictionaryFields.add(cleanedField);
+        }
+
+        parser = new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(cleanedFields);
+
+        List<Field> arrowFields = new ArrayList<>(cleanedFields.size());
+        List<DictionaryEncoding> encodings = new ArrayList<>(cleanedFields.size());
+        for (int i = 0; i < cleanedFields.size(); i++) {
+            String field = cleanedFields.get(i);
+            ArrowType type = getType(parser.getCasts(field)); // This assembles the parser
+            DictionaryEncoding encoding = null;
+            if (cleanedDictionaryFields.contains(field)) {
+                if (!(type instanceof ArrowType.Utf8)) {
+                    throw new IllegalArgumentException("Only STRING fields can be dictionary encoded: " + field);
+                }
+                encoding = new DictionaryEncoding(i, false, new ArrowType.Int(32, true));
+                type = encoding.getIndexType();
+            }
+            encodings.add(encoding);
+            arrowFields.add(new Field(columnName(field), new FieldType(true, type, encoding), Collections.<Field>emptyList()));
+        }
+        schema = new Schema(arrowFields);
+        root = VectorSchemaRoot.create(schema, allocator);
+
+        columns = new Column[cleanedFields.size()];
+        for (int i = 0; i < cleanedFields.size(); i++) {
+            FieldVector vector = root.getFieldVectors().get(i);
+            DictionaryEncoding encoding = encodings.get(i);
+            if (encoding != null) {
+                VarCharVector dictionaryVector = new VarCharVector(vector.getField().getName() + "_dictionary", allocator);
+                dictionaryVector.allocateNew();
+                dictionaryVectors.add(dictionaryVector);
+                dictionaryProvider.put(new Dictionary(dictionaryVector, encoding));
+                columns[i] = new DictionaryColumn((IntVector) vector, dictionaryVector);
+            } else if (vector instanceof BigIntVector) {
+                columns[i] = new LongColumn((BigIntVector) vector);
+            } else if (vector instanceof Float8Vector) {
+                columns[i] = new DoubleColumn((Float8Vector) vector);
+            } else {
+                columns[i] = new StringColumn((VarCharVector) vector);
+            }
+            fieldColumns.put(cleanedFields.get(i), columns[i]);
+        }
+    }
+
+    public HttpdLogArrowBatcher(BufferAllocator allocator, String logFormat, List<String> fields)
+        throws MissingDissectorsException, InvalidDissectorException {
+        this(allocator, logFormat, fields, Collections.<String>emptyList(), DEFAULT_BATCH_SIZE);
+    }
+
+    private static ArrowType getType(EnumSet<Casts> casts) {
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return new ArrowType.Int(64, true);
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            }
+        }
+        return new ArrowType.Utf8();
+    }
+
+    /**
+     * The name of the column for a field: "IP:connection.client.host" becomes "ip_connection_client_host".
+     */
+    public static String columnName(String field) {
+        return field.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9]", "_");
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public DictionaryProvider getDictionaryProvider() {
+        return dictionaryProvider;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Parse the line into the next row of the current batch.
+     * @return true if the line was added, false if it was a bad line (which is skipped).
+     */
+    public boolean add(String line) {
+        if (!batchStarted) {
+            startBatch();
+        }
+        for (Column column : columns) {
+            column.hasValue = false;
+        }
+
+        try {
+            parser.parse(line, visitor);
+        } catch (DissectionFailure | MissingDissectorsException | InvalidDissectorException e) {
+            badLines++;
+            return false;
+        }
+
+        // Only a line that was parsed completely is written to the vectors.
+        for (Column column : columns) {
+            if (column.hasValue) {
+                column.write(rowCount);
+            }
+        }
+        rowCount++;
+        goodLines++;
+        return true;
+    }
+
+    /**
+     * @return true if the current batch has (at least) batchSize rows.
+     */
+    public boolean isFull() {
+        return rowCount >= batchSize;
+    }
+
+    /**
+     * @return The number of rows in the current batch.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Completes the current batch. The next call to {@link #add(String)} starts a new batch in the same vectors.
+     * @return The vectors with all rows of this batch (possibly 0 rows).
+     */
+    public VectorSchemaRoot finishBatch() {
+        if (!batchStarted) {
+            startBatch();
+        }
+        for (Column column : columns) {
+            column.finish();
+        }
+        root.setRowCount(rowCount);
+        batchStarted = false;
+        return root;
+    }
+
+    private void startBatch() {
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.clear();
+            vector.setInitialCapacity(batchSize);
+            vector.allocateNew();
+        }
+        rowCount = 0;
+        batchStarted = true;
+    }
+
+    public long getGoodLines() {
+        return goodLines;
+    }
+
+    public long getBadLines() {
+        return badLines;
+    }
+
+    @Override
+    public void close() {
+        root.close();
+        for (VarCharVector dictionaryVector : dictionaryVectors) {
+            dictionaryVector.close();
+        }
+    }
+
+    // --------------------------------------------
+
+    private class ColumnFieldVisitor implements FieldVisitor {
+        @Override
+        public void visitString(String field, String value) {
+            Column column = fieldColumns.get(field);
+            if (column != null && value != null) {
+                column.stringValue = value;
+                column.hasValue = true;
+            }
+        }
+
+        @Override
+        public void visitLong(String field, long value) {
+            Column column = fieldColumns.get(field);
+            if (column != null) {
+                column.longValue = value;
+                column.hasValue = true;
+            }
+        }
+
+        @Override
+        public void visitDouble(String field, double value) {
+            Column column = fieldColumns.get(field);
+            if (column != null) {
+                column.doubleValue = value;
+                column.hasValue = true;
+            }
+        }
+    }
+
+    /**
+     * Holds the value of the line that is being parsed until the line is known to be good.
+     * Rows without a value remain null in the vector.
+     */
+    private abstract static class Column {
+        boolean hasValue;
+        long    longValue;
+        double  doubleValue;
+        String  stringValue;
+
+        abstract void write(int row);
+
+        void finish() {
+            // Nothing to do by default.
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private final BigIntVector vector;
+
+        LongColumn(BigIntVector vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        void write(int row) {
+            vector.setSafe(row, longValue);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private final Float8Vector vector;
+
+        DoubleColumn(Float8Vector vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        void write(int row) {
+            vector.setSafe(row, doubleValue);
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        private final VarCharVector vector;
+
+        StringColumn(VarCharVector vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        void write(int row) {
+            vector.setSafe(row, stringValue.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final class DictionaryColumn extends Column {
+        private final IntVector             vector;
+        private final VarCharVector         dictionary;
+        private final Map<String, Integer>  ids = new HashMap<>();
+
+        DictionaryColumn(IntVector vector, VarCharVector dictionary) {
+            this.vector = vector;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        void write(int row) {
+            Integer id = ids.get(stringValue);
+            if (id == null) {
+                id = ids.size();
+                dictionary.setSafe(id, stringValue.getBytes(StandardCharsets.UTF_8));
+                ids.put(stringValue, id);
+            }
+            vector.setSafe(row, id);
+        }
+
+        @Override
+        void finish() {
+            dictionary.setValueCount(ids.size());
+        }
+    }
+
+}
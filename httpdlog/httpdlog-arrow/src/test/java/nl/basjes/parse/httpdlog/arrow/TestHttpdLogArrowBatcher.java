@@ -0,0 +1,177 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestHttpdLogArrowBatcher {
+
+    private static final String LOG_FORMAT = "common";
+
+    private static final List<String> FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "STRING:request.status.last",
+        "BYTES:response.body.bytesclf",
+        "STRING:request.firstline.uri.query.line");
+
+    private BufferAllocator allocator;
+
+    @Before
+    public void createAllocator() {
+        allocator = new RootAllocator(Long.MAX_VALUE);
+    }
+
+    @After
+    public void closeAllocator() {
+        assertEquals("All memory must have been released", 0, allocator.getAllocatedMemory());
+        allocator.close();
+    }
+
+    private static String line(int i) {
+        return "192.168.1." + (i % 3) + " - - [01/Jan/2017:12:00:00 +0100] " +
+            "\"GET /index.html" + (i % 5 == 0 ? "" : "?line=" + i) + " HTTP/1.1\" " + (i % 2 == 0 ? "200" : "404") + " " + i;
+    }
+
+    private static String getString(VarCharVector vector, int index) {
+        return new String(vector.get(index), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSchema() throws Exception {
+        try (HttpdLogArrowBatcher batcher = new HttpdLogArrowBatcher(allocator, LOG_FORMAT, FIELDS)) {
+            List<Field> fields = batcher.getSchema().getFields();
+            assertEquals(4, fields.size());
+            assertEquals("ip_connection_client_host",                fields.get(0).getName());
+            assertEquals(new ArrowType.Utf8(),                       fields.get(0).getType());
+            assertEquals("bytes_response_body_bytesclf",             fields.get(2).getName());
+            assertEquals(new ArrowType.Int(64, true),                fields.get(2).getType());
+        }
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        try (HttpdLogArrowBatcher batcher =
+                 new HttpdLogArrowBatcher(allocator, LOG_FORMAT, FIELDS, Collections.<String>emptyList(), 10)) {
+            int batches = 0;
+            int rows = 0;
+            for (int i = 0; i < 25; i++) {
+                assertTrue(batcher.add(line(i)));
+                if (batcher.isFull()) {
+                    VectorSchemaRoot root = batcher.finishBatch();
+                    assertEquals(10, root.getRowCount());
+                    VarCharVector hosts = (VarCharVector) root.getVector("ip_connection_client_host");
+                    BigIntVector  bytes = (BigIntVector)  root.getVector("bytes_response_body_bytesclf");
+                    VarCharVector lines = (VarCharVector) root.getVector("string_request_firstline_uri_query_line");
+                    for (int row = 0; row < root.getRowCount(); row++) {
+                        int expected = rows + row;
+                        assertEquals("192.168.1." + (expected % 3), getString(hosts, row));
+                        assertEquals(expected, bytes.get(row));
+                        if (expected % 5 == 0) {
+                            assertTrue(lines.isNull(row));
+                        } else {
+                            assertEquals(Integer.toString(expected), getString(lines, row));
+                        }
+                    }
+                    rows += root.getRowCount();
+                    batches++;
+                }
+            }
+            VectorSchemaRoot root = batcher.finishBatch();
+            assertEquals(5, root.getRowCount());
+            assertEquals(20, ((BigIntVector) root.getVector("bytes_response_body_bytesclf")).get(0));
+            assertEquals(2, batches);
+            assertEquals(25, batcher.getGoodLines());
+        }
+    }
+
+    @Test
+    public void testBadLinesAreSkipped() throws Exception {
+        try (HttpdLogArrowBatcher batcher = new HttpdLogArrowBatcher(allocator, LOG_FORMAT, FIELDS)) {
+            assertTrue(batcher.add(line(1)));
+            assertFalse(batcher.add("This is not an access log line"));
+            assertTrue(batcher.add(line(2)));
+
+            VectorSchemaRoot root = batcher.finishBatch();
+            assertEquals(2, root.getRowCount());
+            BigIntVector bytes = (BigIntVector) root.getVector("bytes_response_body_bytesclf");
+            assertEquals(1, bytes.get(0));
+            assertEquals(2, bytes.get(1));
+            assertEquals(2, batcher.getGoodLines());
+            assertEquals(1, batcher.getBadLines());
+        }
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        try (HttpdLogArrowBatcher batcher = new HttpdLogArrowBatcher(allocator, LOG_FORMAT, FIELDS,
+            Arrays.asList("IP:connection.client.host", "STRING:request.status.last"), 4)) {
+
+            Field statusField = batcher.getSchema().getFields().get(1);
+            assertNotNull(statusField.getDictionary());
+            assertNull(batcher.getSchema().getFields().get(2).getDictionary());
+
+            for (int i = 0; i < 4; i++) {
+                batcher.add(line(i));
+            }
+            VectorSchemaRoot root = batcher.finishBatch();
+            assertEquals(4, root.getRowCount());
+
+            IntVector statusIds = (IntVector) root.getVector("string_request_status_last");
+            VarCharVector statusDictionary = (VarCharVector) batcher.getDictionaryProvider()
+                .lookup(statusField.getDictionary().getId()).getVector();
+            assertEquals(2, statusDictionary.getValueCount());
+            for (int row = 0; row < 4; row++) {
+                assertEquals(row % 2 == 0 ? "200" : "404", getString(statusDictionary, statusIds.get(row)));
+            }
+
+            // The dictionary is retained over the batches
+            batcher.add(line(5));
+            root = batcher.finishBatch();
+            assertEquals(1, root.getRowCount());
+            assertEquals(1, ((IntVector) root.getVector("string_request_status_last")).get(0));
+            assertEquals(2, statusDictionary.getValueCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDictionaryOnlyForStrings() throws Exception {
+        new HttpdLogArrowBatcher(allocator, LOG_FORMAT, FIELDS,
+            Collections.singletonList("BYTES:response.body.bytesclf"), 10).close();
+    }
+
+}
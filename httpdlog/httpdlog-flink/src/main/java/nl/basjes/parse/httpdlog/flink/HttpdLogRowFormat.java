@@ -0,0 +1,318 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.flink;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Consumer;
+
+/**
+ * Turns access log lines into Flink {@link Row}s with one typed column per requested field.
+ * The type of each column is determined from the casts the parser can provide for the field: LONG, else DOUBLE, else STRING.
+ * <p>The parser is assembled when this format is created (i.e. on the client) so configuration problems are reported
+ * before the job starts. The parser itself is not serialized with the format: all formats with the same LogFormat and
+ * fields in a JVM share a pool of assembled parsers. A parser is not threadsafe so each parallel task takes its own
+ * parser from the pool at the first line and gives it back in {@link #close()}. So a parser is only assembled if
+ * no idle one is available (i.e. at most once per concurrently running task in a JVM, and never again for restarted
+ * or rescheduled tasks). The expensive compiled parts (regexes, time formatters) are shared by all parsers.</p>
+ * <p>The deserialize, isEndOfStream and getProducedType methods have the signatures of the Flink
+ * DeserializationSchema. That interface is part of flink-streaming-java (which this module does not depend on) so
+ * a subclass that implements that interface can be used directly with the streaming connectors
+ * (close the format in the close of the operator to give the parser back):</p>
+ * <pre>{@code
+ * public class NginxRows extends HttpdLogRowFormat implements DeserializationSchema<Row> { ... }
+ * }</pre>
+ * <p>In a ProcessFunction the bad lines can be sent to a side output:</p>
+ * <pre>{@code
+ * format.parse(line, out, badLine -> ctx.output(HttpdLogRowFormat.BAD_LINES, badLine));
+ * }</pre>
+ */
+public class HttpdLogRowFormat implements ResultTypeQueryable<Row>, Serializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpdLogRowFormat.class);
+
+    private static final int MAX_ERROR_LINES_LOGGED = 10;
+
+    public static final OutputTag<String> BAD_LINES = new OutputTag<>("httpdlog-bad-lines", BasicTypeInfo.STRING_TYPE_INFO);
+
+    // The assembled parsers that are not in use. Key = the LogFormat followed by the fields.
+    private static final Map<List<String>, Deque<Parser<Object>>> IDLE_PARSERS = new ConcurrentHashMap<>();
+
+    private final String            logFormat;
+    private final List<String>      fields;
+    private final RowTypeInfo       rowTypeInfo;
+    private final List<String>      parserKey;
+
+    private transient Parser<Object> parser = null;
+
+    // Per field the position in the row
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+
+    private long goodLines = 0;
+    private long badLines  = 0;
+
+    private transient RowFieldVisitor visitor = null;
+
+    private class RowFieldVisitor implements FieldVisitor {
+        private Row row;
+
+        @Override
+        public void visitString(String field, String value) {
+            set(field, value);
+        }
+
+        @Override
+        public void visitLong(String field, long value) {
+            set(field, value);
+        }
+
+        @Override
+        public void visitDouble(String field, double value) {
+            set(field, value);
+        }
+
+        private void set(String field, Object value) {
+            Integer index = fieldIndex.get(field);
+            if (index != null) {
+                row.setField(index, value);
+            }
+        }
+    }
+
+    /**
+     * @param logFormat The Apache HTTPD or NGINX LogFormat.
+     * @param fields The fields (in the form "TYPE:name") that become the columns of the rows.
+     */
+    public HttpdLogRowFormat(String logFormat, List<String> fields)
+        throws MissingDissectorsException, InvalidDissectorException {
+        this.logFormat = logFormat;
+
+        List<String> cleanedFields = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            String cleanedField = Parser.cleanupFieldValue(field.trim());
+            if (cleanedField.endsWith("*")) {
+                throw new IllegalArgumentException("Wildcard fields cannot be a column: " + field);
+            }
+            if (fieldIndex.containsKey(cleanedField)) {
+                throw new IllegalArgumentException("Duplicate field: " + field);
+            }
+            fieldIndex.put(cleanedField, cleanedFields.size());
+            cleanedFields.add(cleanedField);
+        }
+        this.fields = cleanedFields;
+
+        parserKey = new ArrayList<>(cleanedFields.size() + 1);
+        parserKey.add(logFormat);
+        parserKey.addAll(cleanedFields);
+
+        parser = new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(cleanedFields);
+
+        TypeInformation<?>[] types = new TypeInformation<?>[cleanedFields.size()];
+        String[] names = new String[cleanedFields.size()];
+        for (int i = 0; i < cleanedFields.size(); i++) {
+            String field = cleanedFields.get(i);
+            types[i] = getType(parser.getCasts(field)); // This assembles the parser
+            names[i] = columnName(field);
+        }
+        rowTypeInfo = new RowTypeInfo(types, names);
+
+        // The assembled parser is available for the tasks that run in this JVM.
+        close();
+    }
+
+    public HttpdLogRowFormat(String logFormat, String... fields)
+        throws MissingDissectorsException, InvalidDissectorException {
+        this(logFormat, Arrays.asList(fields));
+    }
+
+    private static TypeInformation<?> getType(EnumSet<Casts> casts) {
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return BasicTypeInfo.LONG_TYPE_INFO;
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return BasicTypeInfo.DOUBLE_TYPE_INFO;
+            }
+        }
+        return BasicTypeInfo.STRING_TYPE_INFO;
+    }
+
+    /**
+     * The name of the column for a field: "IP:connection.client.host" becomes "ip_connection_client_host".
+     */
+    public static String columnName(String field) {
+        return field.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9]", "_");
+    }
+
+    /**
+     * Projection pushdown: a new format that only produces the specified columns.
+     * Only the dissectors needed for these columns are part of the new parser.
+     * @param columns The indexes of the columns (of this format) to retain, in the order they must appear.
+     */
+    public HttpdLogRowFormat projectFields(int[] columns)
+        throws MissingDissectorsException, InvalidDissectorException {
+        List<String> projectedFields = new ArrayList<>(columns.length);
+        for (int column : columns) {
+            projectedFields.add(fields.get(column));
+        }
+        return new HttpdLogRowFormat(logFormat, projectedFields);
+    }
+
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public TypeInformation<Row> getProducedType() {
+        return rowTypeInfo;
+    }
+
+    /**
+     * @return The parser of this instance: an idle one from the pool or (only if there is none) a new one.
+     */
+    Parser<Object> getParser() {
+        if (parser == null) {
+            Deque<Parser<Object>> idleParsers = IDLE_PARSERS.get(parserKey);
+            if (idleParsers != null) {
+                parser = idleParsers.pollFirst();
+            }
+            if (parser == null) {
+                LOG.info("Creating a new parser for {}", parserKey);
+                parser = new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(fields);
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Gives the parser back to the pool so it can be used (without assembling it again) by another instance of
+     * this format in this JVM. This instance can still be used after this (it will take a parser again).
+     */
+    public void close() {
+        if (parser != null) {
+            IDLE_PARSERS.computeIfAbsent(parserKey, key -> new ConcurrentLinkedDeque<>()).addFirst(parser);
+            parser = null;
+        }
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Parse a line into a new Row.
+     * @throws DissectionFailure if the line could not be parsed.
+     */
+    public Row parse(String line) throws DissectionFailure {
+        if (visitor == null) {
+            visitor = new RowFieldVisitor();
+        }
+        final Row row = new Row(fields.size());
+        visitor.row = row;
+
+        try {
+            getParser().parse(line, visitor);
+        } catch (MissingDissectorsException | InvalidDissectorException e) {
+            // Cannot happen: the same parser was assembled in the constructor.
+            throw new DissectionFailure("The parser is unusable: " + e.getMessage(), e);
+        }
+        return row;
+    }
+
+    /**
+     * Parse a line; the good lines go to the collector and the bad lines go to the badLines consumer.
+     * @return true if the line was good.
+     */
+    public boolean parse(String line, Collector<Row> out, Consumer<String> badLineConsumer) {
+        try {
+            out.collect(parse(line));
+            goodLines++;
+            return true;
+        } catch (DissectionFailure e) {
+            if (badLines < MAX_ERROR_LINES_LOGGED) {
+                LOG.error("Parse error >>>{}<<< in line: >>>{}<<<", e.getMessage(), line);
+            }
+            badLines++;
+            if (badLineConsumer != null) {
+                badLineConsumer.accept(line);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return The row or null for a bad line (a null is skipped by the Flink streaming connectors).
+     */
+    public Row deserialize(byte[] message) throws IOException {
+        final Row[] result = {null};
+        parse(new String(message, StandardCharsets.UTF_8), new Collector<Row>() {
+            @Override
+            public void collect(Row row) {
+                result[0] = row;
+            }
+
+            @Override
+            public void close() {
+                // Nothing to do
+            }
+        }, null);
+        return result[0];
+    }
+
+    public boolean isEndOfStream(Row nextElement) {
+        return false;
+    }
+
+    public long getGoodLines() {
+        return goodLines;
+    }
+
+    public long getBadLines() {
+        return badLines;
+    }
+
+}
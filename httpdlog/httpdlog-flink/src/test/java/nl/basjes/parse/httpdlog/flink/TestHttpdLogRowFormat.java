@@ -0,0 +1,135 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.flink;
+
+import nl.basjes.parse.core.Parser;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.InstantiationUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestHttpdLogRowFormat {
+
+    private static final String LOG_FORMAT = "combined";
+
+    private static final String LINE =
+        "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo?bar=1 HTTP/1.1\" 200 1213 " +
+        "\"http://localhost/index.php?mies=wim\" \"Mozilla/5.0\"";
+
+    private static final String BAD_LINE = "This is not an access log line";
+
+    private HttpdLogRowFormat createFormat() throws Exception {
+        return new HttpdLogRowFormat(LOG_FORMAT,
+            "IP:connection.client.host",
+            "BYTES:response.body.bytesclf",
+            "TIME.EPOCH:request.receive.time.epoch",
+            "HTTP.PATH:request.firstline.uri.path");
+    }
+
+    @Test
+    public void testTypes() throws Exception {
+        RowTypeInfo rowTypeInfo = (RowTypeInfo) createFormat().getProducedType();
+        assertArrayEquals(new String[]{
+            "ip_connection_client_host",
+            "bytes_response_body_bytesclf",
+            "time_epoch_request_receive_time_epoch",
+            "http_path_request_firstline_uri_path"},
+            rowTypeInfo.getFieldNames());
+        assertEquals(BasicTypeInfo.STRING_TYPE_INFO, rowTypeInfo.getTypeAt(0));
+        assertEquals(BasicTypeInfo.LONG_TYPE_INFO,   rowTypeInfo.getTypeAt(1));
+        assertEquals(BasicTypeInfo.LONG_TYPE_INFO,   rowTypeInfo.getTypeAt(2));
+        assertEquals(BasicTypeInfo.STRING_TYPE_INFO, rowTypeInfo.getTypeAt(3));
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        HttpdLogRowFormat format = createFormat();
+        Row row = format.parse(LINE);
+        assertEquals(Row.of("127.0.0.1", 1213L, 1356994181000L, "/foo"), row);
+    }
+
+    @Test
+    public void testDeserializeAndBadLines() throws Exception {
+        HttpdLogRowFormat format = createFormat();
+        assertEquals("127.0.0.1", format.deserialize(LINE.getBytes(StandardCharsets.UTF_8)).getField(0));
+        assertNull(format.deserialize(BAD_LINE.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(format.isEndOfStream(null));
+
+        List<Row> rows = new ArrayList<>();
+        List<String> badLines = new ArrayList<>();
+        assertTrue(format.parse(LINE, new ListCollector<>(rows), badLines::add));
+        assertFalse(format.parse(BAD_LINE, new ListCollector<>(rows), badLines::add));
+        assertEquals(1, rows.size());
+        assertEquals(Arrays.asList(BAD_LINE), badLines);
+
+        assertEquals(2, format.getGoodLines());
+        assertEquals(2, format.getBadLines());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        HttpdLogRowFormat format = InstantiationUtil.clone(createFormat());
+        assertEquals(Row.of("127.0.0.1", 1213L, 1356994181000L, "/foo"), format.parse(LINE));
+    }
+
+    @Test
+    public void testSharedParsers() throws Exception {
+        HttpdLogRowFormat template = createFormat();
+
+        HttpdLogRowFormat first = InstantiationUtil.clone(template);
+        Parser<Object> firstParser = first.getParser();
+        assertEquals(Row.of("127.0.0.1", 1213L, 1356994181000L, "/foo"), first.parse(LINE));
+
+        // A parser is never used by two running instances at the same time
+        HttpdLogRowFormat second = InstantiationUtil.clone(template);
+        assertNotSame(firstParser, second.getParser());
+        assertEquals(Row.of("127.0.0.1", 1213L, 1356994181000L, "/foo"), second.parse(LINE));
+
+        // After closing the parser is reused by the next instance
+        first.close();
+        HttpdLogRowFormat third = InstantiationUtil.clone(template);
+        assertSame(firstParser, third.getParser());
+        assertEquals(Row.of("127.0.0.1", 1213L, 1356994181000L, "/foo"), third.parse(LINE));
+
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        HttpdLogRowFormat format = createFormat().projectFields(new int[]{3, 0});
+        assertEquals(Arrays.asList("HTTP.PATH:request.firstline.uri.path", "IP:connection.client.host"), format.getFields());
+        assertEquals(Row.of("/foo", "127.0.0.1"), format.parse(LINE));
+        assertEquals(2, format.getProducedType().getArity());
+    }
+
+}
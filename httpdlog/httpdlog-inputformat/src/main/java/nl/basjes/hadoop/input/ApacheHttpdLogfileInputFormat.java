@@ -17,28 +17,87 @@
 package nl.basjes.hadoop.input;
 
 import nl.basjes.parse.core.Dissector;
+import nl.basjes.parse.core.Parser;
 import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 public class ApacheHttpdLogfileInputFormat extends
         FileInputFormat<LongWritable, ParsedRecord> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ApacheHttpdLogfileInputFormat.class);
+
+    /**
+     * If set to true gzip files are split at the boundaries of their gzip members.
+     * The offsets of these members are read from a side index file (see {@link GzipMemberIndex}).
+     * A gzip file without a (current) index is not split.
+     * Note that only gzip files that consist of multiple members can be split: a normal gzip file
+     * (as written by gzip or logrotate) is a single member and is always read by a single task.
+     */
+    public static final String GZIP_MEMBER_INDEX = "nl.basjes.parse.apachehttpdlogline.gzip.index";
+
+    /**
+     * If set to true (together with {@link #GZIP_MEMBER_INDEX}) a missing or outdated gzip member index is
+     * created while the splits are computed. This decompresses the entire file in the job client
+     * so it is better to create the index once (offline) with {@link GzipMemberIndex#loadOrBuild}.
+     */
+    public static final String GZIP_MEMBER_INDEX_BUILD = "nl.basjes.parse.apachehttpdlogline.gzip.index.build";
+
+    /**
+     * If set to true the splits of uncompressed files are reduced to the blocks that can contain lines
+     * that match the time range and the 'equals' filters of the RecordReader.
+     * The min/max time and the values of the fields of each block are stored in a side index file
+     * that is created on first use. Note that creating this index reads the entire file while the splits
+     * are computed (i.e. in the job client), so the index should be created once for files that are read often.
+     * The side index files themselves are never part of the input.
+     */
+    public static final String BLOCK_INDEX = "nl.basjes.parse.apachehttpdlogline.blockindex";
+
+    /**
+     * The (comma separated) fields for which the block index records the values (in bloom filters).
+     */
+    public static final String BLOCK_INDEX_FIELDS = "nl.basjes.parse.apachehttpdlogline.blockindex.fields";
+
+    /**
+     * The (approximate) number of bytes per block of the block index.
+     */
+    public static final String BLOCK_INDEX_BLOCKSIZE = "nl.basjes.parse.apachehttpdlogline.blockindex.blocksize";
+
+    private static final String[] DEFAULT_BLOCK_INDEX_FIELDS = {
+        "STRING:request.status.last",
+        "IP:connection.client.host",
+        "HTTP.METHOD:request.firstline.method",
+    };
+    private static final long DEFAULT_BLOCK_INDEX_BLOCKSIZE = 4 * 1024 * 1024;
+
     private String logFormat = null;
     private final Set<String> requestedFields = new HashSet<>();
     private Map<String, Set<String>> typeRemappings;
@@ -113,6 +172,8 @@ public class ApacheHttpdLogfileInputFormat extends
         return getRecordReader();
     }
 
+    // Uncompressed files and files with a splittable codec (like bzip2) are split by
+    // the LineRecordReader. Gzip files are only split if they have a member index.
     @Override
     protected boolean isSplitable(JobContext context, Path file) {
         final CompressionCodec codec =
@@ -120,6 +181,126 @@ public class ApacheHttpdLogfileInputFormat extends
         return (null == codec) || codec instanceof SplittableCompressionCodec;
     }
 
+    // The side index files are stored next to the log files so they must never be read as log files.
+    private static final PathFilter NO_INDEX_FILES = path ->
+        !path.getName().endsWith(GzipMemberIndex.INDEX_SUFFIX) &&
+        !path.getName().endsWith(BlockIndex.INDEX_SUFFIX);
+
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = new ArrayList<>();
+        for (FileStatus file : super.listStatus(job)) {
+            if (NO_INDEX_FILES.accept(file.getPath())) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        List<InputSplit> splits = super.getSplits(job);
+
+        final Configuration conf = job.getConfiguration();
+        if (conf.getBoolean(GZIP_MEMBER_INDEX, false)) {
+            splits = splitAtGzipMembers(job, splits);
+        }
+        if (conf.getBoolean(BLOCK_INDEX, false)) {
+            splits = skipBlocks(conf, splits);
+        }
+        return splits;
+    }
+
+    private List<InputSplit> splitAtGzipMembers(JobContext job, List<InputSplit> splits) throws IOException {
+        final Configuration conf = job.getConfiguration();
+        final CompressionCodecFactory codecFactory = new CompressionCodecFactory(conf);
+        final long minSize = Math.max(getFormatMinSplitSize(), getMinSplitSize(job));
+        final long maxSize = getMaxSplitSize(job);
+        final boolean buildIndex = conf.getBoolean(GZIP_MEMBER_INDEX_BUILD, false);
+
+        List<InputSplit> result = new ArrayList<>(splits.size());
+        for (InputSplit split : splits) {
+            if (split instanceof FileSplit) {
+                FileSplit fileSplit = (FileSplit) split;
+                Path path = fileSplit.getPath();
+                if (fileSplit.getStart() == 0 && codecFactory.getCodec(path) instanceof GzipCodec) {
+                    FileSystem fs = path.getFileSystem(conf);
+                    FileStatus status = fs.getFileStatus(path);
+                    if (fileSplit.getLength() == status.getLen()) {
+                        GzipMemberIndex index = buildIndex ?
+                            GzipMemberIndex.loadOrBuild(fs, status) :
+                            GzipMemberIndex.load(fs, status);
+                        if (index != null) {
+                            long splitSize = computeSplitSize(status.getBlockSize(), minSize, maxSize);
+                            result.addAll(index.createSplits(path, splitSize, fileSplit.getLocations()));
+                            continue;
+                        }
+                    }
+                }
+            }
+            result.add(split);
+        }
+        return result;
+    }
+
+    private List<InputSplit> skipBlocks(Configuration conf, List<InputSplit> splits) throws IOException {
+        final long from = conf.getLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_FROM, Long.MIN_VALUE);
+        final long to   = conf.getLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_TO,   Long.MAX_VALUE);
+        final String timeField = conf.get(ApacheHttpdLogfileRecordReader.TIME_RANGE_FIELD, TimeRangeSeeker.DEFAULT_TIME_FIELD);
+        final List<String> fields = Arrays.asList(conf.getTrimmedStrings(BLOCK_INDEX_FIELDS, DEFAULT_BLOCK_INDEX_FIELDS));
+        final long blockSize = conf.getLong(BLOCK_INDEX_BLOCKSIZE, DEFAULT_BLOCK_INDEX_BLOCKSIZE);
+
+        final String equalsPrefix = ApacheHttpdLogfileRecordReader.FILTER_EQUALS;
+        final Map<String, String> requiredValues = new TreeMap<>();
+        for (Map.Entry<String, String> filter : conf.getValByRegex('^' + Pattern.quote(equalsPrefix)).entrySet()) {
+            requiredValues.put(filter.getKey().substring(equalsPrefix.length()), filter.getValue());
+        }
+
+        final CompressionCodecFactory codecFactory = new CompressionCodecFactory(conf);
+        final Map<Path, BlockIndex> indexes = new HashMap<>();
+        Parser<ParsedRecord> indexParser = null;
+
+        List<InputSplit> result = new ArrayList<>(splits.size());
+        for (InputSplit split : splits) {
+            if (!(split instanceof FileSplit) ||
+                split instanceof GzipMemberSplit ||
+                codecFactory.getCodec(((FileSplit) split).getPath()) != null) {
+                result.add(split);
+                continue;
+            }
+            FileSplit fileSplit = (FileSplit) split;
+            Path path = fileSplit.getPath();
+            BlockIndex index = indexes.get(path);
+            if (index == null) {
+                if (indexParser == null) {
+                    indexParser = createIndexParser(conf, timeField, fields);
+                }
+                FileSystem fs = path.getFileSystem(conf);
+                index = BlockIndex.loadOrBuild(fs, fs.getFileStatus(path), indexParser, timeField, fields, blockSize);
+                indexes.put(path, index);
+            }
+            result.addAll(index.createSplits(fileSplit, from, to, requiredValues));
+        }
+        LOG.info("Using the block index reduced {} splits to {} splits", splits.size(), result.size());
+        return result;
+    }
+
+    private Parser<ParsedRecord> createIndexParser(Configuration conf, String timeField, List<String> fields) throws IOException {
+        String format = logFormat;
+        if (format == null) {
+            format = conf.get("nl.basjes.parse.apachehttpdlogline.format", "common");
+        }
+        try {
+            return new HttpdLoglineParser<>(ParsedRecord.class, format)
+                .setTypeRemappings(typeRemappings)
+                .addDissectors(additionalDissectors)
+                .addParseTarget(ParsedRecord.class.getMethod("set", String.class, Long.class), timeField)
+                .addParseTarget(ParsedRecord.class.getMethod("set", String.class, String.class), fields);
+        } catch (NoSuchMethodException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
     public void setTypeRemappings(Map<String, Set<String>> newTypeRemappings) {
         this.typeRemappings = newTypeRemappings;
     }
@@ -19,16 +19,21 @@ package nl.basjes.hadoop.input;
 import nl.basjes.parse.core.Casts;
 import nl.basjes.parse.core.Dissector;
 import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.ValueFilter;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
 import nl.basjes.parse.core.exceptions.InvalidDissectorException;
 import nl.basjes.parse.core.exceptions.MissingDissectorsException;
 import nl.basjes.parse.httpdlog.HttpdLoglineParser;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,12 +41,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 @SuppressWarnings({ "PMD.OnlyOneReturn", "PMD.BeanMembersShouldSerialize" })
 public class ApacheHttpdLogfileRecordReader extends
@@ -52,9 +61,65 @@ public class ApacheHttpdLogfileRecordReader extends
     private static final String HTTPD_LOGFILE_INPUT_FORMAT = "HTTPD Access Logfile InputFormat";
     public static final String FIELDS = "fields";
 
+    /**
+     * Only parse a random fraction (0 &lt; rate &lt;= 1) of the lines.
+     */
+    public static final String SAMPLE_RATE      = "nl.basjes.parse.apachehttpdlogline.sample.rate";
+
+    /**
+     * Only parse a uniform random sample of (at most) this many lines from each split.
+     * When set this takes precedence over the sample rate.
+     */
+    public static final String SAMPLE_RESERVOIR = "nl.basjes.parse.apachehttpdlogline.sample.reservoir";
+
+    /**
+     * The seed of the random generator used for sampling (to make a sample reproducible).
+     */
+    public static final String SAMPLE_SEED      = "nl.basjes.parse.apachehttpdlogline.sample.seed";
+
+    /**
+     * Comma separated list of strings that must ALL appear in the raw line.
+     * Lines that do not contain them are dropped before they are parsed.
+     */
+    public static final String FILTER_CONTAINS   = "nl.basjes.parse.apachehttpdlogline.filter.contains";
+
+    /**
+     * Prefix of the setting FILTER_EQUALS + "TYPE:foo.bar" = "value".
+     * Only the lines where the field has exactly this value are retained.
+     */
+    public static final String FILTER_EQUALS     = "nl.basjes.parse.apachehttpdlogline.filter.equals.";
+
+    /**
+     * Prefix of the setting FILTER_STARTSWITH + "TYPE:foo.bar" = "prefix".
+     * Only the lines where the field starts with this prefix are retained.
+     */
+    public static final String FILTER_STARTSWITH = "nl.basjes.parse.apachehttpdlogline.filter.startswith.";
+
+    /**
+     * Only retain the lines with a timestamp (epoch milliseconds) at or after this moment.
+     * For uncompressed files the part of each split before this moment is skipped without reading it.
+     */
+    public static final String TIME_RANGE_FROM   = "nl.basjes.parse.apachehttpdlogline.timerange.from";
+
+    /**
+     * Only retain the lines with a timestamp (epoch milliseconds) before this moment.
+     * For uncompressed files the part of each split after this moment is skipped without reading it.
+     */
+    public static final String TIME_RANGE_TO     = "nl.basjes.parse.apachehttpdlogline.timerange.to";
+
+    /**
+     * The number of milliseconds lines may be out of order in the file (default 60000).
+     */
+    public static final String TIME_RANGE_SLACK  = "nl.basjes.parse.apachehttpdlogline.timerange.slack";
+
+    /**
+     * The field that holds the timestamp of a line (default the epoch of %t and $time_local).
+     */
+    public static final String TIME_RANGE_FIELD  = "nl.basjes.parse.apachehttpdlogline.timerange.field";
+
     // --------------------------------------------
 
-    private final LineRecordReader                 lineReader      = new LineRecordReader();
+    private LineRecordReader                       lineReader      = new LineRecordReader();
     private Parser<ParsedRecord>                   parser;
     private List<String> fieldList = null;
 
@@ -108,17 +173,55 @@ public class ApacheHttpdLogfileRecordReader extends
     private Counter counterLinesRead;
     private Counter counterGoodLines;
     private Counter counterBadLines;
+    private Counter counterSampledLines;
+    private Counter counterSkippedLines;
+    private Counter counterFilteredLines;
+
+    // Filtering: Lines that are not wanted are dropped as early as possible.
+    private RawLineFilter                   rawLineFilter       = null;
+    private final Map<String, ValueFilter>  fieldFilters        = new TreeMap<>();
+    // The filters cannot be compared so the settings they were created from are retained.
+    private final List<String>              fieldFilterSettings = new ArrayList<>();
+    // The fieldFilterSettings of the filters in the current parser.
+    private List<String>                    parserFilterSettings = null;
+
+    // Sampling: When enabled lines are dropped before they are parsed.
+    private double                          sampleRate          = 1.0;
+    private int                             sampleReservoirSize = 0;
+    private Random                          sampleRandom        = null;
+    private List<SampledLine>               sampleReservoir     = null;
+    private int                             sampleReservoirPos  = 0;
+
+    // Time range: Only the part of the split with the wanted time range is read.
+    private long                            timeRangeFrom       = Long.MIN_VALUE;
+    private long                            timeRangeTo         = Long.MAX_VALUE;
+    private long                            timeRangeSlack;
+    private String                          timeRangeField;
+    private Counter                         counterSeekSkippedBytes;
+
+    // The line that is to be parsed
+    private LongWritable                    currentKey;
+    private Text                            currentLine;
 
     @Override
     public void initialize(final InputSplit split,
             final TaskAttemptContext context) throws IOException {
-        lineReader.initialize(split, context);
         final Configuration conf = context.getConfiguration();
 
         counterLinesRead = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "1:Lines read");
         counterGoodLines = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "2:Good lines");
         counterBadLines  = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "3:Bad lines");
 
+        // The same RecordReader can be initialized for many splits, the filters are rebuilt every time.
+        fieldFilters.clear();
+        fieldFilterSettings.clear();
+        setupSampling(conf, context);
+        setupFilters(conf, context);
+        setupTimeRange(conf, context);
+        if (parser != null && !fieldFilterSettings.equals(parserFilterSettings)) {
+            parser = null; // The filters are only installed in a new parser.
+        }
+
         if (logformat == null || requestedFields.isEmpty()) {
             if (logformat == null) {
                 logformat = conf.get("nl.basjes.parse.apachehttpdlogline.format", "common");
@@ -149,6 +252,14 @@ public class ApacheHttpdLogfileRecordReader extends
         } catch (NoSuchMethodException | MissingDissectorsException | InvalidDissectorException e) {
             throw new IOException("RecordReader initialization failed", e);
         }
+
+        if (split instanceof GzipMemberSplit) {
+            lineReader = new GzipMemberLineRecordReader();
+            lineReader.initialize(split, context);
+        } else {
+            lineReader = new LineRecordReader();
+            lineReader.initialize(seekTimeRange(split, conf), context);
+        }
     }
 
     protected Parser<ParsedRecord> instantiateParser(String logFormat)  {
@@ -216,6 +327,11 @@ public class ApacheHttpdLogfileRecordReader extends
                 }
             }
 
+            for (Map.Entry<String, ValueFilter> fieldFilter : fieldFilters.entrySet()) {
+                newParser.addFilter(fieldFilter.getKey(), fieldFilter.getValue());
+            }
+            parserFilterSettings = new ArrayList<>(fieldFilterSettings);
+
         } catch (NoSuchMethodException
                 |SecurityException e) {
             throw new IOException(e.toString());
@@ -245,16 +361,22 @@ public class ApacheHttpdLogfileRecordReader extends
         } else {
             boolean haveValue = false;
             while (!haveValue) {
-                if (!lineReader.nextKeyValue()) {
+                if (!nextLine()) {
                     return false;
                 }
 
-                counterLinesRead.increment(1L);
+                if (rawLineFilter != null && !rawLineFilter.accept(currentLine)) {
+                    counterFilteredLines.increment(1L);
+                    continue;
+                }
 
                 currentValue.clear();
-                String inputLine = lineReader.getCurrentValue().toString();
+                String inputLine = currentLine.toString();
                 try {
-                    getParser().parse(currentValue, lineReader.getCurrentValue().toString());
+                    if (getParser().parseFiltered(currentValue, inputLine) == null) {
+                        counterFilteredLines.increment(1L);
+                        continue;
+                    }
                     counterGoodLines.increment(1L);
                     haveValue = true;
                 } catch (DissectionFailure e) {
@@ -279,11 +401,195 @@ public class ApacheHttpdLogfileRecordReader extends
         return true;
     }
 
+    // --------------------------------------------
+
+    private void setupSampling(Configuration conf, TaskAttemptContext context) {
+        sampleReservoirSize = conf.getInt(SAMPLE_RESERVOIR, 0);
+        sampleRate = conf.getDouble(SAMPLE_RATE, 1.0);
+        if (sampleReservoirSize < 0 || sampleRate <= 0.0 || sampleRate > 1.0) {
+            throw new IllegalArgumentException("Invalid sampling settings: " +
+                SAMPLE_RESERVOIR + "=" + sampleReservoirSize + " " + SAMPLE_RATE + "=" + sampleRate);
+        }
+
+        sampleReservoir = null;
+        sampleReservoirPos = 0;
+        if (!isSampling()) {
+            sampleRandom = null;
+            return;
+        }
+
+        String seed = conf.get(SAMPLE_SEED);
+        sampleRandom = seed == null ? new Random() : new Random(Long.parseLong(seed.trim()));
+
+        counterSampledLines = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "4:Sampled lines");
+        counterSkippedLines = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "5:Lines skipped by sampling");
+
+        if (sampleReservoirSize > 0) {
+            LOG.info("Sampling at most {} lines per split", sampleReservoirSize);
+        } else {
+            LOG.info("Sampling {}% of the lines", sampleRate * 100);
+        }
+    }
+
+    private void setupFilters(Configuration conf, TaskAttemptContext context) {
+        String[] requiredSubstrings = conf.getTrimmedStrings(FILTER_CONTAINS);
+        rawLineFilter = null;
+        if (requiredSubstrings.length > 0) {
+            rawLineFilter = new RawLineFilter(Arrays.asList(requiredSubstrings));
+            LOG.info("Only parsing lines that contain all of {}", Arrays.toString(requiredSubstrings));
+        }
+
+        for (Map.Entry<String, String> filter : new TreeMap<>(conf.getValByRegex('^' + Pattern.quote(FILTER_EQUALS))).entrySet()) {
+            addFieldFilter(filter.getKey().substring(FILTER_EQUALS.length()), ValueFilter.isEqualTo(filter.getValue()),
+                filter.getKey() + '=' + filter.getValue());
+        }
+        for (Map.Entry<String, String> filter : new TreeMap<>(conf.getValByRegex('^' + Pattern.quote(FILTER_STARTSWITH))).entrySet()) {
+            addFieldFilter(filter.getKey().substring(FILTER_STARTSWITH.length()), ValueFilter.startsWith(filter.getValue()),
+                filter.getKey() + '=' + filter.getValue());
+        }
+
+        counterFilteredLines = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "6:Filtered lines");
+    }
+
+    private void addFieldFilter(String field, ValueFilter filter, String setting) {
+        LOG.info("Only retaining lines where the field {} is accepted by the filter", field);
+        fieldFilters.merge(field, filter, ValueFilter::and);
+        fieldFilterSettings.add(setting);
+    }
+
+    private void setupTimeRange(Configuration conf, TaskAttemptContext context) {
+        timeRangeFrom  = conf.getLong(TIME_RANGE_FROM, Long.MIN_VALUE);
+        timeRangeTo    = conf.getLong(TIME_RANGE_TO,   Long.MAX_VALUE);
+        timeRangeSlack = conf.getLong(TIME_RANGE_SLACK, 60000L);
+        timeRangeField = conf.get(TIME_RANGE_FIELD, TimeRangeSeeker.DEFAULT_TIME_FIELD);
+        if (timeRangeSlack < 0 || timeRangeFrom >= timeRangeTo) {
+            throw new IllegalArgumentException("Invalid time range settings: " +
+                TIME_RANGE_FROM + "=" + timeRangeFrom + " " + TIME_RANGE_TO + "=" + timeRangeTo + " " +
+                TIME_RANGE_SLACK + "=" + timeRangeSlack);
+        }
+        if (!isTimeRange()) {
+            return;
+        }
+        LOG.info("Only retaining lines where {} is in the range [{}, {})", timeRangeField, timeRangeFrom, timeRangeTo);
+        addFieldFilter(timeRangeField, ValueFilter.isInRange(timeRangeFrom, timeRangeTo),
+            TIME_RANGE_FIELD + '=' + timeRangeField + " [" + timeRangeFrom + ", " + timeRangeTo + ')');
+        counterSeekSkippedBytes = context.getCounter(HTTPD_LOGFILE_INPUT_FORMAT, "7:Bytes skipped by time range seek");
+    }
+
+    private boolean isTimeRange() {
+        return timeRangeFrom != Long.MIN_VALUE || timeRangeTo != Long.MAX_VALUE;
+    }
+
+    // Only the uncompressed files can be read from an arbitrary offset.
+    private InputSplit seekTimeRange(InputSplit split, Configuration conf) throws IOException {
+        if (!isTimeRange() || !(split instanceof FileSplit)) {
+            return split;
+        }
+        final FileSplit fileSplit = (FileSplit) split;
+        final Path path = fileSplit.getPath();
+        if (new CompressionCodecFactory(conf).getCodec(path) != null) {
+            return split;
+        }
+
+        Parser<ParsedRecord> probeParser;
+        try {
+            probeParser = instantiateParser(logformat)
+                .addParseTarget(ParsedRecord.class.getMethod("set", String.class, Long.class), timeRangeField);
+        } catch (NoSuchMethodException e) {
+            throw new IOException(e.toString());
+        }
+
+        TimeRangeSeeker seeker = new TimeRangeSeeker(probeParser, timeRangeField);
+        FileSplit narrowed = seeker.narrow(fileSplit, path.getFileSystem(conf), timeRangeFrom, timeRangeTo, timeRangeSlack);
+        counterSeekSkippedBytes.increment(fileSplit.getLength() - narrowed.getLength());
+        LOG.info("Time range seek in {} used {} probes to reduce the split from {}+{} to {}+{}", path, seeker.getProbes(),
+            fileSplit.getStart(), fileSplit.getLength(), narrowed.getStart(), narrowed.getLength());
+        return narrowed;
+    }
+
+    private boolean isSampling() {
+        return sampleReservoirSize > 0 || sampleRate < 1.0;
+    }
+
+    private static final class SampledLine {
+        private final LongWritable key;
+        private final Text         line;
+
+        SampledLine(LongWritable key, Text line) {
+            this.key = new LongWritable(key.get());
+            this.line = new Text(line);
+        }
+    }
+
+    /**
+     * Get the next line (that survives the sampling) from the input without parsing it.
+     * @return false if there are no more lines.
+     */
+    private boolean nextLine() throws IOException {
+        if (sampleReservoirSize > 0) {
+            return nextReservoirLine();
+        }
+
+        while (lineReader.nextKeyValue()) {
+            counterLinesRead.increment(1L);
+            if (sampleRandom != null) {
+                if (sampleRandom.nextDouble() >= sampleRate) {
+                    counterSkippedLines.increment(1L);
+                    continue;
+                }
+                counterSampledLines.increment(1L);
+            }
+            currentKey = lineReader.getCurrentKey();
+            currentLine = lineReader.getCurrentValue();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean nextReservoirLine() throws IOException {
+        if (sampleReservoir == null) {
+            fillSampleReservoir();
+        }
+        if (sampleReservoirPos >= sampleReservoir.size()) {
+            return false;
+        }
+        SampledLine sampledLine = sampleReservoir.get(sampleReservoirPos++);
+        currentKey = sampledLine.key;
+        currentLine = sampledLine.line;
+        return true;
+    }
+
+    // Reservoir sampling (Algorithm R) over all lines in this split.
+    private void fillSampleReservoir() throws IOException {
+        sampleReservoir = new ArrayList<>(sampleReservoirSize);
+        long linesSeen = 0;
+        while (lineReader.nextKeyValue()) {
+            counterLinesRead.increment(1L);
+            linesSeen++;
+            if (sampleReservoir.size() < sampleReservoirSize) {
+                sampleReservoir.add(new SampledLine(lineReader.getCurrentKey(), lineReader.getCurrentValue()));
+                continue;
+            }
+            long slot = (long) (sampleRandom.nextDouble() * linesSeen);
+            if (slot < sampleReservoirSize) {
+                sampleReservoir.set((int) slot, new SampledLine(lineReader.getCurrentKey(), lineReader.getCurrentValue()));
+            }
+        }
+
+        // Return the sampled lines in the order they appear in the file.
+        sampleReservoir.sort(Comparator.comparingLong(sampledLine -> sampledLine.key.get()));
+
+        counterSampledLines.increment(sampleReservoir.size());
+        counterSkippedLines.increment(linesSeen - sampleReservoir.size());
+    }
+
+    // --------------------------------------------
+
     @Override
     public LongWritable getCurrentKey() {
         // The key we return is the same byte offset as the TextInputFormat
         // would give.
-        return lineReader.getCurrentKey();
+        return currentKey;
     }
 
     @Override
@@ -0,0 +1,402 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An uncompressed log file is divided into blocks of (about) a fixed number of bytes that always start at the
+ * start of a line. For each block this index holds the min/max timestamp of the lines and for a set of
+ * fields a bloom filter of all values that occur in those lines.
+ * When a query only needs lines with a specific time range and/or specific values of these fields then
+ * all blocks that cannot contain such lines are skipped without reading them.
+ * The index is stored in a small side file next to the log file (see {@link #INDEX_SUFFIX}).
+ */
+public final class BlockIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockIndex.class);
+
+    public static final String INDEX_SUFFIX = ".blkidx";
+
+    private static final int  INDEX_MAGIC   = 0x424C4B58; // "BLKX"
+    private static final int  INDEX_VERSION = 1;
+
+    // Roughly 1% false positives
+    private static final int  BLOOM_BITS_PER_VALUE = 10;
+    private static final int  BLOOM_HASHES         = 7;
+    private static final int  BLOOM_MIN_BITS       = 64;
+
+    /**
+     * The index information of the lines that start in the range [start, end) of the file.
+     */
+    public static final class Block {
+        private final long          start;
+        private final long          end;
+        private final long          minTime;
+        private final long          maxTime;
+        private final BloomFilter[] blooms;
+
+        Block(long start, long end, long minTime, long maxTime, BloomFilter[] blooms) {
+            this.start = start;
+            this.end = end;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.blooms = blooms;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getMinTime() {
+            return minTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * @return false if none of the lines has a timestamp in the range from (inclusive) to (exclusive).
+         */
+        public boolean mayContainTime(long from, long to) {
+            return maxTime >= from && minTime < to;
+        }
+
+        /**
+         * @return false if none of the lines has the value for the field (false positives are possible).
+         */
+        boolean mayContainValue(int field, String value) {
+            return blooms[field].membershipTest(toKey(value));
+        }
+    }
+
+    private final long          fileLength;
+    private final String        timeField;
+    private final List<String>  fields;
+    private final List<Block>   blocks;
+
+    BlockIndex(long fileLength, String timeField, List<String> fields, List<Block> blocks) {
+        this.fileLength = fileLength;
+        this.timeField = timeField;
+        this.fields = fields;
+        this.blocks = blocks;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public String getTimeField() {
+        return timeField;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    // --------------------------------------------
+
+    public static Path getIndexPath(Path file) {
+        return file.suffix(INDEX_SUFFIX);
+    }
+
+    /**
+     * Retrieve the index of the specified log file.
+     * If there is no (valid) side index file with the requested fields yet the file is parsed completely
+     * to create it. The new index is then stored next to the file for the next time (if possible).
+     * @param parser A parser that produces the timeField (as a Long) and all fields (as a String).
+     */
+    public static BlockIndex loadOrBuild(FileSystem fs, FileStatus file,
+                                         Parser<ParsedRecord> parser, String timeField, List<String> fields,
+                                         long blockSize) throws IOException {
+        BlockIndex index = load(fs, file);
+        if (index != null && index.timeField.equals(timeField) && index.fields.equals(fields)) {
+            return index;
+        }
+
+        LOG.info("Building block index for {}", file.getPath());
+        index = build(fs, file.getPath(), parser, timeField, fields, blockSize);
+        try {
+            index.store(fs, file.getPath());
+        } catch (IOException e) {
+            LOG.warn("Unable to store the block index for {} : {}", file.getPath(), e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * @return The stored index of this file, or null if it does not exist or is outdated.
+     */
+    public static BlockIndex load(FileSystem fs, FileStatus file) throws IOException {
+        Path indexPath = getIndexPath(file.getPath());
+        if (!fs.exists(indexPath)) {
+            return null;
+        }
+
+        try (FSDataInputStream indexIn = fs.open(indexPath)) {
+            if (indexIn.readInt() != INDEX_MAGIC || indexIn.readInt() != INDEX_VERSION) {
+                LOG.warn("Ignoring invalid block index {}", indexPath);
+                return null;
+            }
+            long fileLength = indexIn.readLong();
+            if (fileLength != file.getLen()) {
+                LOG.info("Ignoring outdated block index {}", indexPath);
+                return null;
+            }
+            String timeField = indexIn.readUTF();
+            List<String> fields = new ArrayList<>();
+            int fieldCount = indexIn.readInt();
+            for (int field = 0; field < fieldCount; field++) {
+                fields.add(indexIn.readUTF());
+            }
+            List<Block> blocks = new ArrayList<>();
+            int blockCount = indexIn.readInt();
+            for (int block = 0; block < blockCount; block++) {
+                long start   = indexIn.readLong();
+                long end     = indexIn.readLong();
+                long minTime = indexIn.readLong();
+                long maxTime = indexIn.readLong();
+                BloomFilter[] blooms = new BloomFilter[fieldCount];
+                for (int field = 0; field < fieldCount; field++) {
+                    blooms[field] = new BloomFilter();
+                    blooms[field].readFields(indexIn);
+                }
+                blocks.add(new Block(start, end, minTime, maxTime, blooms));
+            }
+            return new BlockIndex(fileLength, timeField, fields, blocks);
+        }
+    }
+
+    /**
+     * Parse the entire file and record the time range and values of all blocks.
+     * Lines that cannot be parsed are ignored (the RecordReader would drop them anyway).
+     */
+    public static BlockIndex build(FileSystem fs, Path file,
+                                   Parser<ParsedRecord> parser, String timeField, List<String> fields,
+                                   long blockSize) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        ParsedRecord record = new ParsedRecord();
+        Text line = new Text();
+
+        long position = 0;
+        BlockBuilder block = new BlockBuilder(0, fields.size());
+        try (FSDataInputStream in = fs.open(file)) {
+            LineReader reader = new LineReader(in);
+            while (true) {
+                int read = reader.readLine(line);
+                if (read == 0) {
+                    break;
+                }
+                if (position - block.start >= blockSize) {
+                    blocks.add(block.build(position));
+                    block = new BlockBuilder(position, fields.size());
+                }
+                position += read;
+
+                record.clear();
+                try {
+                    if (parser.parseFiltered(record, line.toString()) == null) {
+                        continue;
+                    }
+                } catch (DissectionFailure e) {
+                    continue;
+                } catch (InvalidDissectorException | MissingDissectorsException e) {
+                    throw new IOException("Unable to build the block index of " + file, e);
+                }
+                block.add(record.getLong(timeField));
+                for (int field = 0; field < fields.size(); field++) {
+                    block.add(field, record.getString(fields.get(field)));
+                }
+            }
+        }
+        blocks.add(block.build(position));
+        return new BlockIndex(position, timeField, new ArrayList<>(fields), blocks);
+    }
+
+    public void store(FileSystem fs, Path file) throws IOException {
+        try (FSDataOutputStream indexOut = fs.create(getIndexPath(file), true)) {
+            indexOut.writeInt(INDEX_MAGIC);
+            indexOut.writeInt(INDEX_VERSION);
+            indexOut.writeLong(fileLength);
+            indexOut.writeUTF(timeField);
+            indexOut.writeInt(fields.size());
+            for (String field : fields) {
+                indexOut.writeUTF(field);
+            }
+            indexOut.writeInt(blocks.size());
+            for (Block block : blocks) {
+                indexOut.writeLong(block.start);
+                indexOut.writeLong(block.end);
+                indexOut.writeLong(block.minTime);
+                indexOut.writeLong(block.maxTime);
+                for (BloomFilter bloom : block.blooms) {
+                    bloom.write(indexOut);
+                }
+            }
+        }
+    }
+
+    // --------------------------------------------
+
+    private static final class BlockBuilder {
+        private final long          start;
+        private long                minTime = Long.MAX_VALUE;
+        private long                maxTime = Long.MIN_VALUE;
+        private final List<Set<String>> values;
+
+        BlockBuilder(long start, int fieldCount) {
+            this.start = start;
+            values = new ArrayList<>(fieldCount);
+            for (int field = 0; field < fieldCount; field++) {
+                values.add(new HashSet<>());
+            }
+        }
+
+        void add(Long time) {
+            if (time != null) {
+                minTime = Math.min(minTime, time);
+                maxTime = Math.max(maxTime, time);
+            }
+        }
+
+        void add(int field, String value) {
+            if (value != null) {
+                values.get(field).add(value);
+            }
+        }
+
+        // The bloom filters are sized for the actual number of different values in the block.
+        Block build(long end) {
+            BloomFilter[] blooms = new BloomFilter[values.size()];
+            for (int field = 0; field < blooms.length; field++) {
+                Set<String> fieldValues = values.get(field);
+                int bits = Math.max(BLOOM_MIN_BITS, fieldValues.size() * BLOOM_BITS_PER_VALUE);
+                blooms[field] = new BloomFilter(bits, BLOOM_HASHES, Hash.MURMUR_HASH);
+                for (String value : fieldValues) {
+                    blooms[field].add(toKey(value));
+                }
+            }
+            return new Block(start, end, minTime, maxTime, blooms);
+        }
+    }
+
+    private static Key toKey(String value) {
+        return new Key(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Split the part of the file that is read by the (line based) split into the runs of consecutive blocks
+     * that may contain lines that match the time range and have the required values.
+     * A block without any timestamp is only retained if there is no time range.
+     * @param split A split of this file that is read with the LineRecordReader.
+     * @param from The start of the time range (epoch milliseconds, inclusive).
+     * @param to The end of the time range (epoch milliseconds, exclusive).
+     * @param requiredValues The values that indexed fields must have (other fields are ignored).
+     * @return The splits that together read all lines of the original split that can match.
+     */
+    public List<InputSplit> createSplits(FileSplit split, long from, long to, Map<String, String> requiredValues)
+        throws IOException {
+        final boolean hasTimeRange = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+
+        // The LineRecordReader reads the lines that start in (start, end] (or [0, end] for the first split).
+        final long firstLine = split.getStart() == 0 ? 0 : split.getStart() + 1;
+        final long lastLine = split.getStart() + split.getLength();
+
+        List<InputSplit> splits = new ArrayList<>();
+        long runStart = -1;
+        long runEnd = -1;
+        for (Block block : blocks) {
+            // The lines of the block that belong to the split start in [low, high]
+            long low = Math.max(block.start, firstLine);
+            long high = Math.min(block.end - 1, lastLine);
+            if (low > high) {
+                continue;
+            }
+            if (!matches(block, hasTimeRange, from, to, requiredValues)) {
+                continue;
+            }
+            if (runStart != -1 && low != runEnd + 1) {
+                splits.add(createLineSplit(split, runStart, runEnd));
+                runStart = -1;
+            }
+            if (runStart == -1) {
+                runStart = low;
+            }
+            runEnd = high;
+        }
+        if (runStart != -1) {
+            splits.add(createLineSplit(split, runStart, runEnd));
+        }
+        return splits;
+    }
+
+    private boolean matches(Block block, boolean hasTimeRange, long from, long to, Map<String, String> requiredValues) {
+        if (hasTimeRange && !block.mayContainTime(from, to)) {
+            return false;
+        }
+        for (Map.Entry<String, String> requiredValue : requiredValues.entrySet()) {
+            int field = fields.indexOf(requiredValue.getKey());
+            if (field != -1 && !block.mayContainValue(field, requiredValue.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A split that makes the LineRecordReader read exactly the lines that start in [firstLine, lastLine]
+    private static FileSplit createLineSplit(FileSplit split, long firstLine, long lastLine) throws IOException {
+        long start = firstLine == 0 ? 0 : firstLine - 1;
+        return new FileSplit(split.getPath(), start, lastLine - start, split.getLocations());
+    }
+
+}
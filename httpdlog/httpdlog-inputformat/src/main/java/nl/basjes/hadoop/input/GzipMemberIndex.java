@@ -0,0 +1,198 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A gzip file can consist of many concatenated gzip members (this is what you get when
+ * appending gzipped data to an existing file or when using a block based gzip tool).
+ * Decompression can start at the beginning of any of these members.
+ * This index holds the offsets of all members of a single gzip file so the file can be split
+ * into multiple {@link GzipMemberSplit}s that are processed in parallel.
+ * The index is stored in a small side file next to the log file (see {@link #INDEX_SUFFIX}).
+ * <p>Note that a normal gzip file (as written by gzip or logrotate) has only a single member.
+ * Such a file has only one possible start and is still read by a single task, the index does not help there.</p>
+ * <p>Building the index decompresses the entire file so this should be done once (i.e. offline when the
+ * file is complete) using {@link #loadOrBuild(FileSystem, FileStatus)}.
+ * An index is only used if the length and the modification time of the file are still the same.</p>
+ */
+public final class GzipMemberIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GzipMemberIndex.class);
+
+    public static final String INDEX_SUFFIX = ".gzidx";
+
+    private static final int  INDEX_MAGIC   = 0x475A4958; // "GZIX"
+    private static final int  INDEX_VERSION = 2;
+
+    private final long   fileLength;
+    private final long   modificationTime;
+    private final long[] memberOffsets;
+
+    GzipMemberIndex(long fileLength, long modificationTime, long[] memberOffsets) {
+        this.fileLength = fileLength;
+        this.modificationTime = modificationTime;
+        this.memberOffsets = memberOffsets;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public long getModificationTime() {
+        return modificationTime;
+    }
+
+    public long[] getMemberOffsets() {
+        return memberOffsets;
+    }
+
+    // --------------------------------------------
+
+    public static Path getIndexPath(Path file) {
+        return file.suffix(INDEX_SUFFIX);
+    }
+
+    /**
+     * Retrieve the index of the specified gzip file.
+     * If there is no (valid) side index file yet the file is read completely to create it.
+     * The new index is then stored next to the file for the next time (if possible).
+     */
+    public static GzipMemberIndex loadOrBuild(FileSystem fs, FileStatus file) throws IOException {
+        GzipMemberIndex index = load(fs, file);
+        if (index != null) {
+            return index;
+        }
+
+        LOG.info("Building gzip member index for {}", file.getPath());
+        index = build(fs, file);
+        try {
+            index.store(fs, file.getPath());
+        } catch (IOException e) {
+            LOG.warn("Unable to store the gzip member index for {} : {}", file.getPath(), e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * @return The stored index of this file, or null if it does not exist or is outdated.
+     */
+    public static GzipMemberIndex load(FileSystem fs, FileStatus file) throws IOException {
+        Path indexPath = getIndexPath(file.getPath());
+        if (!fs.exists(indexPath)) {
+            return null;
+        }
+
+        try (FSDataInputStream indexIn = fs.open(indexPath)) {
+            if (indexIn.readInt() != INDEX_MAGIC || indexIn.readInt() != INDEX_VERSION) {
+                LOG.warn("Ignoring invalid gzip member index {}", indexPath);
+                return null;
+            }
+            long fileLength = indexIn.readLong();
+            long modificationTime = indexIn.readLong();
+            if (fileLength != file.getLen() || modificationTime != file.getModificationTime()) {
+                LOG.info("Ignoring outdated gzip member index {}", indexPath);
+                return null;
+            }
+            long[] memberOffsets = new long[indexIn.readInt()];
+            for (int member = 0; member < memberOffsets.length; member++) {
+                memberOffsets[member] = indexIn.readLong();
+            }
+            return new GzipMemberIndex(fileLength, modificationTime, memberOffsets);
+        }
+    }
+
+    /**
+     * Decompress the entire file and record the offsets of all members that produce data.
+     */
+    public static GzipMemberIndex build(FileSystem fs, Path file) throws IOException {
+        return build(fs, fs.getFileStatus(file));
+    }
+
+    /**
+     * Decompress the entire file and record the offsets of all members that produce data.
+     * The index belongs to the modification time of the provided status.
+     */
+    public static GzipMemberIndex build(FileSystem fs, FileStatus file) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        long fileLength;
+        try (GzipMemberInputStream in = new GzipMemberInputStream(fs.open(file.getPath()), 0)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer, 0, buffer.length) != -1) {
+                if (in.getLastReadMemberOffset() == 0) {
+                    offsets.add(in.getLastReadMemberStart());
+                }
+            }
+            fileLength = in.getPosition();
+        }
+
+        long[] memberOffsets = new long[offsets.size()];
+        for (int member = 0; member < memberOffsets.length; member++) {
+            memberOffsets[member] = offsets.get(member);
+        }
+        return new GzipMemberIndex(fileLength, file.getModificationTime(), memberOffsets);
+    }
+
+    public void store(FileSystem fs, Path file) throws IOException {
+        try (FSDataOutputStream indexOut = fs.create(getIndexPath(file), true)) {
+            indexOut.writeInt(INDEX_MAGIC);
+            indexOut.writeInt(INDEX_VERSION);
+            indexOut.writeLong(fileLength);
+            indexOut.writeLong(modificationTime);
+            indexOut.writeInt(memberOffsets.length);
+            for (long memberOffset : memberOffsets) {
+                indexOut.writeLong(memberOffset);
+            }
+        }
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Group the members into splits of (at least) the requested size.
+     * Each split starts exactly at the start of a member.
+     */
+    public List<InputSplit> createSplits(Path file, long splitSize, String[] hosts) {
+        List<InputSplit> splits = new ArrayList<>();
+        if (memberOffsets.length == 0) {
+            return splits;
+        }
+
+        long splitStart = memberOffsets[0];
+        for (long memberOffset : memberOffsets) {
+            if (memberOffset - splitStart >= splitSize) {
+                splits.add(new GzipMemberSplit(file, splitStart, memberOffset - splitStart, hosts));
+                splitStart = memberOffset;
+            }
+        }
+        splits.add(new GzipMemberSplit(file, splitStart, fileLength - splitStart, hosts));
+        return splits;
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file that consists of one or more concatenated gzip members.
+ * For every block of decompressed bytes this stream retains the offset (in the compressed file)
+ * of the member these bytes came from.
+ * At the start of each member the inflater is in a clean state so these offsets are the
+ * points where decompression of the file can be started.
+ */
+class GzipMemberInputStream extends InputStream {
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int DEFLATE      = 8;
+
+    private static final int FHCRC        = 2;
+    private static final int FEXTRA       = 4;
+    private static final int FNAME        = 8;
+    private static final int FCOMMENT     = 16;
+
+    private final InputStream in;
+    private final Inflater    inflater  = new Inflater(true);
+    private final CRC32       crc       = new CRC32();
+
+    private final byte[]      inBuffer  = new byte[64 * 1024];
+    private int               inPos     = 0;
+    private int               inLen     = 0;
+    // The offset in the compressed file of inBuffer[0]
+    private long              inBufferOffset;
+
+    private boolean           inMember  = false;
+    private boolean           eof       = false;
+    private long              memberStart;
+    private long              memberBytes;
+
+    private long              lastReadMemberStart  = -1;
+    private long              lastReadMemberOffset = -1;
+
+    /**
+     * @param in The compressed data, positioned at the start of a gzip member.
+     * @param startOffset The offset of this position within the compressed file.
+     */
+    GzipMemberInputStream(InputStream in, long startOffset) {
+        this.in = in;
+        this.inBufferOffset = startOffset;
+    }
+
+    /**
+     * @return The offset in the compressed file of the first byte that has not been consumed yet.
+     */
+    long getPosition() {
+        return inBufferOffset + inPos;
+    }
+
+    /**
+     * @return The offset in the compressed file of the member that produced the bytes of the last read.
+     */
+    long getLastReadMemberStart() {
+        return lastReadMemberStart;
+    }
+
+    /**
+     * @return The offset (within the decompressed member) of the first byte of the last read.
+     */
+    long getLastReadMemberOffset() {
+        return lastReadMemberOffset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int read = read(one, 0, 1);
+        return read == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!eof) {
+            if (!inMember && !startMember()) {
+                eof = true;
+                break;
+            }
+
+            if (inflater.needsInput()) {
+                if (!fillInBuffer()) {
+                    throw new EOFException("Unexpected end of gzip member that started at offset " + memberStart);
+                }
+                inflater.setInput(inBuffer, inPos, inLen - inPos);
+            }
+
+            int inflated;
+            try {
+                inflated = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt gzip member at offset " + memberStart + " : " + e.getMessage());
+            }
+            inPos = inLen - inflater.getRemaining();
+
+            if (inflated > 0) {
+                crc.update(b, off, inflated);
+                lastReadMemberStart  = memberStart;
+                lastReadMemberOffset = memberBytes;
+                memberBytes += inflated;
+            }
+
+            if (inflater.finished()) {
+                finishMember();
+            }
+
+            if (inflated > 0) {
+                return inflated;
+            }
+
+            if (inflater.needsDictionary()) {
+                throw new ZipException("Gzip member at offset " + memberStart + " needs a preset dictionary");
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    // --------------------------------------------
+
+    private boolean fillInBuffer() throws IOException {
+        if (inPos < inLen) {
+            return true;
+        }
+        inBufferOffset += inLen;
+        inPos = 0;
+        inLen = 0;
+        int read = in.read(inBuffer, 0, inBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        inLen = read;
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if (!fillInBuffer()) {
+            throw new EOFException("Unexpected end of gzip header/trailer of member that started at offset " + memberStart);
+        }
+        return inBuffer[inPos++] & 0xFF;
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte();
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        int value;
+        do {
+            value = readByte();
+        } while (value != 0);
+    }
+
+    private boolean startMember() throws IOException {
+        if (!fillInBuffer()) {
+            return false; // Clean end of the file.
+        }
+        memberStart = getPosition();
+
+        if (readByte() != GZIP_MAGIC_1 || readByte() != GZIP_MAGIC_2) {
+            throw new ZipException("Not in GZIP format at offset " + memberStart);
+        }
+        if (readByte() != DEFLATE) {
+            throw new ZipException("Unsupported compression method at offset " + memberStart);
+        }
+        int flags = readByte();
+        skipBytes(6); // MTIME, XFL and OS
+
+        if ((flags & FEXTRA) == FEXTRA) {
+            int extraLength = readByte() | (readByte() << 8);
+            skipBytes(extraLength);
+        }
+        if ((flags & FNAME) == FNAME) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(2);
+        }
+
+        inflater.reset();
+        crc.reset();
+        memberBytes = 0;
+        inMember = true;
+        if (inPos < inLen) {
+            inflater.setInput(inBuffer, inPos, inLen - inPos);
+        }
+        return true;
+    }
+
+    private void finishMember() throws IOException {
+        long expectedCrc  = readUnsignedInt();
+        long expectedSize = readUnsignedInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (memberBytes & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip trailer of member that started at offset " + memberStart);
+        }
+        inMember = false;
+    }
+
+    private long readUnsignedInt() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            value |= ((long) readByte()) << shift;
+        }
+        return value;
+    }
+
+}
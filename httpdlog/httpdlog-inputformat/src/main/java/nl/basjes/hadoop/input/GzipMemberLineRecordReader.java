@@ -0,0 +1,158 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.IOException;
+
+/**
+ * Reads the lines from a {@link GzipMemberSplit}.
+ * This follows the same rules as the Hadoop LineRecordReader but then with the member offsets as the positions:
+ * <ul>
+ * <li>A split that does not start at the beginning of the file skips its first line.</li>
+ * <li>A split reads all lines that start in one of its members and finally the first line of the next member
+ * (even if that continues into the members after it).</li>
+ * </ul>
+ * The key is the offset of the member in which the line starts.
+ * This is a drop-in replacement for the LineRecordReader (which is why it extends it).
+ */
+class GzipMemberLineRecordReader extends LineRecordReader {
+
+    private long                    start;
+    private long                    end;
+    private GzipMemberInputStream   in;
+
+    private final byte[]            buffer              = new byte[64 * 1024];
+    private int                     bufferPos           = 0;
+    private int                     bufferLen           = 0;
+    private long                    bufferMemberStart   = -1;
+    private long                    bufferMemberOffset  = -1;
+
+    private final LongWritable      key                 = new LongWritable();
+    private final Text              value               = new Text();
+    private boolean                 done                = false;
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        start = split.getStart();
+        end = start + split.getLength();
+
+        final Path file = split.getPath();
+        final FileSystem fs = file.getFileSystem(context.getConfiguration());
+        FSDataInputStream fileIn = fs.open(file);
+        fileIn.seek(start);
+        in = new GzipMemberInputStream(fileIn, start);
+
+        if (start != 0) {
+            // The first line was read by the reader of the previous split.
+            readLine(null);
+        }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        if (done || !fillBuffer()) {
+            done = true;
+            return false;
+        }
+
+        final long lineMemberStart = bufferMemberStart;
+        final boolean lineStartsMember = bufferMemberOffset + bufferPos == 0;
+        if (lineMemberStart > end || (lineMemberStart == end && !lineStartsMember)) {
+            done = true;
+            return false;
+        }
+
+        key.set(lineMemberStart);
+        value.clear();
+        readLine(value);
+        return true;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (bufferPos < bufferLen) {
+            return true;
+        }
+        int read = in.read(buffer, 0, buffer.length);
+        if (read == -1) {
+            return false;
+        }
+        bufferPos = 0;
+        bufferLen = read;
+        bufferMemberStart = in.getLastReadMemberStart();
+        bufferMemberOffset = in.getLastReadMemberOffset();
+        return true;
+    }
+
+    private void readLine(Text line) throws IOException {
+        while (fillBuffer()) {
+            int newline = bufferPos;
+            while (newline < bufferLen && buffer[newline] != '\n') {
+                newline++;
+            }
+            if (line != null) {
+                line.append(buffer, bufferPos, newline - bufferPos);
+            }
+            if (newline < bufferLen) {
+                bufferPos = newline + 1;
+                break;
+            }
+            bufferPos = bufferLen;
+        }
+
+        if (line != null && line.getLength() > 0 && line.getBytes()[line.getLength() - 1] == '\r') {
+            line.set(line.getBytes(), 0, line.getLength() - 1);
+        }
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+        return key;
+    }
+
+    @Override
+    public Text getCurrentValue() {
+        return value;
+    }
+
+    @Override
+    public float getProgress() {
+        if (done || start == end || in == null) {
+            return done ? 1.0f : 0.0f;
+        }
+        return Math.min(1.0f, (in.getPosition() - start) / (float) (end - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+}
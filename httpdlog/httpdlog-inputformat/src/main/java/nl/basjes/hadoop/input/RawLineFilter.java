@@ -0,0 +1,79 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.io.Text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * A cheap check on the raw bytes of a line that is done before the line is converted into a String and parsed.
+ * A line is only retained if it contains ALL of the configured substrings.
+ * This is only a valid prefilter for values that appear verbatim in the line (i.e. not url decoded, not converted).
+ */
+public final class RawLineFilter {
+
+    private final byte[][] requiredBytes;
+
+    public RawLineFilter(Collection<String> requiredSubstrings) {
+        requiredBytes = new byte[requiredSubstrings.size()][];
+        int i = 0;
+        for (String requiredSubstring : requiredSubstrings) {
+            requiredBytes[i++] = requiredSubstring.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public boolean isEmpty() {
+        return requiredBytes.length == 0;
+    }
+
+    public boolean accept(Text line) {
+        return accept(line.getBytes(), line.getLength());
+    }
+
+    public boolean accept(byte[] line, int length) {
+        for (byte[] required : requiredBytes) {
+            if (indexOf(line, length, required) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(byte[] line, int length, byte[] required) {
+        if (required.length == 0) {
+            return 0;
+        }
+        final byte first = required[0];
+        final int last = length - required.length;
+        for (int start = 0; start <= last; start++) {
+            if (line[start] != first) {
+                continue;
+            }
+            int matched = 1;
+            while (matched < required.length && line[start + matched] == required[matched]) {
+                matched++;
+            }
+            if (matched == required.length) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+}
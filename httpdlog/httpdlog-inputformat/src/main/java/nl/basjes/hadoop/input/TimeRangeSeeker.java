@@ -0,0 +1,167 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+import java.util.function.LongPredicate;
+
+/**
+ * Access logs are written in (roughly) increasing time order.
+ * This determines the part of an (uncompressed) split that contains the lines of a time range
+ * by doing a binary search over the byte offsets of the split.
+ * At each probe the first line after the offset is read and only the timestamp of that line is parsed.
+ * Lines that are out of order by at most the 'slack' are retained.
+ * The lines in the resulting split must still be filtered on the exact time range.
+ */
+class TimeRangeSeeker {
+
+    // The timestamp as it is produced from both %t and $time_local
+    static final String DEFAULT_TIME_FIELD = "TIME.EPOCH:request.receive.time.epoch";
+
+    // If this many lines after a probe offset do not have a timestamp we give up on that probe.
+    private static final int MAX_LINES_PER_PROBE = 100;
+    private static final int PROBE_BUFFER_SIZE   = 8192;
+
+    // The time of the line after the offset is unknown.
+    private static final long UNKNOWN      = Long.MIN_VALUE;
+    // There are no more lines in the split after the offset.
+    private static final long END_OF_SPLIT = Long.MAX_VALUE;
+
+    private final Parser<ParsedRecord>  probeParser;
+    private final String                timeField;
+    private final ParsedRecord          probeRecord = new ParsedRecord();
+    private final Text                  probeLine   = new Text();
+    private int                         probes      = 0;
+
+    /**
+     * @param probeParser A parser that only needs to produce the timeField (as a Long).
+     * @param timeField The field that contains the timestamp of a line (epoch milliseconds).
+     */
+    TimeRangeSeeker(Parser<ParsedRecord> probeParser, String timeField) {
+        this.probeParser = probeParser;
+        this.timeField = timeField;
+    }
+
+    /**
+     * @return The number of lines for which the timestamp was parsed.
+     */
+    int getProbes() {
+        return probes;
+    }
+
+    /**
+     * @param split The split (of an uncompressed file) that must be narrowed down.
+     * @param fs The filesystem of the file.
+     * @param from The start of the time range (epoch milliseconds, inclusive).
+     * @param to The end of the time range (epoch milliseconds, exclusive).
+     * @param slack The number of milliseconds a line may be out of order.
+     * @return A split that can be read with the LineRecordReader and that reads exactly the lines of the
+     * original split that are (assuming the allowed disorder) in the time range.
+     */
+    FileSplit narrow(FileSplit split, FileSystem fs, long from, long to, long slack) throws IOException {
+        final long start = split.getStart();
+        final long end = start + split.getLength();
+
+        // Avoid overflows when an open range is combined with the slack.
+        final long low  = from == Long.MIN_VALUE ? Long.MIN_VALUE : from - slack;
+        final long high = to   >= END_OF_SPLIT - slack ? END_OF_SPLIT : to + slack;
+
+        long newStart = start;
+        long newEnd = end;
+        try (FSDataInputStream in = fs.open(split.getPath())) {
+            if (low != Long.MIN_VALUE) {
+                // An unknown time yields an earlier start (so more is read).
+                newStart = search(in, start, end, end, time -> time >= low);
+            }
+            if (high != END_OF_SPLIT) {
+                // An unknown time yields a later end (so more is read).
+                newEnd = search(in, newStart, end, end, time -> time != UNKNOWN && time >= high);
+            }
+        }
+        return new FileSplit(split.getPath(), newStart, newEnd - newStart, split.getLocations());
+    }
+
+    // Find the lowest offset in [low, high] where the time of the line after it satisfies the condition.
+    // This is the same as the first position where the LineRecordReader would start reading that line.
+    private long search(FSDataInputStream in, long low, long high, long end, LongPredicate condition) throws IOException {
+        long lo = low;
+        long hi = high;
+        while (lo < hi) {
+            final long middle = lo + (hi - lo) / 2;
+            if (condition.test(timeOfLineAfter(in, middle, end))) {
+                hi = middle;
+            } else {
+                lo = middle + 1;
+            }
+        }
+        return lo;
+    }
+
+    // The time of the first line that the LineRecordReader would read if the split started at the offset.
+    private long timeOfLineAfter(FSDataInputStream in, long offset, long end) throws IOException {
+        in.seek(offset);
+        // NOTE: Closing this LineReader would close the underlying stream.
+        final LineReader reader = new LineReader(in, PROBE_BUFFER_SIZE);
+
+        long position = offset;
+        if (offset != 0) {
+            // Skip the (remainder of the) line that belongs to the previous split.
+            position += reader.readLine(probeLine);
+        }
+
+        for (int line = 0; line < MAX_LINES_PER_PROBE; line++) {
+            if (position > end) {
+                return END_OF_SPLIT;
+            }
+            final int read = reader.readLine(probeLine);
+            if (read == 0) {
+                return END_OF_SPLIT;
+            }
+            position += read;
+
+            final Long time = parseTime(probeLine.toString());
+            if (time != null) {
+                return time;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private Long parseTime(String line) throws IOException {
+        probes++;
+        probeRecord.clear();
+        try {
+            probeParser.parse(probeRecord, line);
+        } catch (DissectionFailure e) {
+            return null;
+        } catch (InvalidDissectorException | MissingDissectorsException e) {
+            throw new IOException("Unable to parse the " + timeField + " of the lines", e);
+        }
+        return probeRecord.getLong(timeField);
+    }
+
+}
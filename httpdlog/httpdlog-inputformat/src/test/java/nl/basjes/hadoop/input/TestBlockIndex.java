@@ -0,0 +1,185 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestBlockIndex {
+
+    private static final int    LINES = 10000;
+    private static final long   START = 1483272000000L; // 2017-01-01 12:00:00 UTC
+
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneOffset.ofHours(1));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File logFile;
+    // Use the directory of the log file as the input
+    private boolean readDirectory = false;
+
+    // One line per second, all errors are close together and one host only appears in the last lines.
+    private File createLogFile() throws IOException {
+        File file = temporaryFolder.newFile("access.log");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < LINES; i++) {
+                String host = i >= LINES - 50 ? "10.0.0.1" : "192.168.1." + (i % 200);
+                int status = i >= 5000 && i < 5020 ? 404 : 200;
+                writer.println(host + " - - [" + TIME_FORMAT.format(Instant.ofEpochMilli(START + i * 1000L)) + "] " +
+                    "\"GET /index.html?line=" + i + " HTTP/1.1\" " + status + " " + i);
+            }
+        }
+        return file;
+    }
+
+    private Configuration createConfiguration() {
+        Configuration conf = new Configuration(false);
+        conf.set("fs.default.name", "file:///");
+        conf.set("nl.basjes.parse.apachehttpdlogline.format", "common");
+        conf.set("nl.basjes.parse.apachehttpdlogline.fields", "BYTES:response.body.bytesclf");
+        conf.setBoolean(ApacheHttpdLogfileInputFormat.BLOCK_INDEX, true);
+        conf.setLong(ApacheHttpdLogfileInputFormat.BLOCK_INDEX_BLOCKSIZE, 10000);
+        return conf;
+    }
+
+    private List<InputSplit> getSplits(Configuration conf) throws IOException {
+        if (logFile == null) {
+            logFile = createLogFile();
+        }
+        Job job = Job.getInstance(conf);
+        File input = readDirectory ? logFile.getParentFile() : logFile;
+        FileInputFormat.setInputPaths(job, new Path(input.getAbsoluteFile().toURI()));
+        FileInputFormat.setMaxInputSplitSize(job, 100000);
+        return new ApacheHttpdLogfileInputFormat().getSplits(job);
+    }
+
+    private List<Long> readAllSplits(Configuration conf) throws IOException, InterruptedException {
+        List<Long> result = new ArrayList<>();
+        for (InputSplit split : getSplits(conf)) {
+            TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+            RecordReader<LongWritable, ParsedRecord> reader =
+                new ApacheHttpdLogfileInputFormat().createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                result.add(reader.getCurrentValue().getLong("BYTES:response.body.bytesclf"));
+            }
+            reader.close();
+        }
+        return result;
+    }
+
+    private List<Long> range(long from, long to) {
+        List<Long> result = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testNoPredicatesReadsEverything() throws IOException, InterruptedException {
+        assertEquals(range(0, LINES), readAllSplits(createConfiguration()));
+        assertTrue(new File(logFile.getAbsolutePath() + BlockIndex.INDEX_SUFFIX).exists());
+    }
+
+    @Test
+    public void testDirectoryWithIndex() throws IOException, InterruptedException {
+        readDirectory = true;
+        assertEquals(range(0, LINES), readAllSplits(createConfiguration()));
+        assertTrue(new File(logFile.getAbsolutePath() + BlockIndex.INDEX_SUFFIX).exists());
+
+        // The side index next to the log file must not be indexed or read as a log file.
+        assertEquals(range(0, LINES), readAllSplits(createConfiguration()));
+        assertTrue(!new File(logFile.getAbsolutePath() + BlockIndex.INDEX_SUFFIX + BlockIndex.INDEX_SUFFIX).exists());
+    }
+
+    @Test
+    public void testStatus() throws IOException, InterruptedException {
+        Configuration conf = createConfiguration();
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_EQUALS + "STRING:request.status.last", "404");
+
+        List<InputSplit> splits = getSplits(conf);
+        assertEquals(1, splits.size());
+        assertTrue(splits.get(0).getLength() < 3 * 10000);
+
+        assertEquals(range(5000, 5020), readAllSplits(conf));
+    }
+
+    @Test
+    public void testHostAndTime() throws IOException, InterruptedException {
+        Configuration conf = createConfiguration();
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_EQUALS + "IP:connection.client.host", "10.0.0.1");
+        assertEquals(range(LINES - 50, LINES), readAllSplits(conf));
+
+        conf = createConfiguration();
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_FROM, START + 1000 * 1000L);
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_TO,   START + 1100 * 1000L);
+        long totalLength = 0;
+        for (InputSplit split : getSplits(conf)) {
+            totalLength += split.getLength();
+        }
+        assertTrue(totalLength < 3 * 10000);
+        assertEquals(range(1000, 1100), readAllSplits(conf));
+    }
+
+    @Test
+    public void testStoredIndex() throws IOException, InterruptedException {
+        Configuration conf = createConfiguration();
+        getSplits(conf);
+
+        File indexFile = new File(logFile.getAbsolutePath() + BlockIndex.INDEX_SUFFIX);
+        long lastModified = indexFile.lastModified();
+        assertTrue(indexFile.setLastModified(lastModified - 10000));
+
+        // Same fields: the stored index is used.
+        getSplits(conf);
+        assertEquals(lastModified - 10000, indexFile.lastModified());
+
+        // Other fields: the index is rebuilt.
+        conf.set(ApacheHttpdLogfileInputFormat.BLOCK_INDEX_FIELDS, "STRING:request.status.last");
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_EQUALS + "STRING:request.status.last", "404");
+        assertEquals(range(5000, 5020), readAllSplits(conf));
+        assertTrue(indexFile.lastModified() != lastModified - 10000);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestFiltering {
+
+    private static final int LINES = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createLogFile() throws IOException {
+        File file = temporaryFolder.newFile("access.log");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < LINES; i++) {
+                writer.println("192.168.1.1 - - [01/Jan/2017:12:00:00 +0100] \"GET /index.html?line=" + i + " HTTP/1.1\" 200 " + i);
+            }
+        }
+        return file;
+    }
+
+    private final Counters counters = new Counters();
+
+    private final StatusReporter reporter = new StatusReporter() {
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+            // Nothing to do
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+            // Nothing to do
+        }
+    };
+
+    private long countRecords(Configuration conf) throws IOException, InterruptedException {
+        File testFile = createLogFile();
+        conf.set("fs.default.name", "file:///");
+        conf.set("nl.basjes.parse.apachehttpdlogline.format", "common");
+        conf.set("nl.basjes.parse.apachehttpdlogline.fields", "BYTES:response.body.bytesclf");
+
+        Path path = new Path(testFile.getAbsoluteFile().toURI());
+        FileSplit split = new FileSplit(path, 0, testFile.length(), null);
+
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID(), reporter);
+        RecordReader<LongWritable, ParsedRecord> reader =
+            new ApacheHttpdLogfileInputFormat().createRecordReader(split, context);
+        reader.initialize(split, context);
+
+        long records = 0;
+        long previousBytes = -1;
+        while (reader.nextKeyValue()) {
+            long bytes = reader.getCurrentValue().getLong("BYTES:response.body.bytesclf");
+            assertTrue("Records must be in the order of the file", bytes > previousBytes);
+            previousBytes = bytes;
+            records++;
+        }
+        reader.close();
+        return records;
+    }
+
+    private long getCounter(String name) {
+        return counters.findCounter("HTTPD Access Logfile InputFormat", name).getValue();
+    }
+
+    @Test
+    public void testRawLineFilter() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        // Matches line=1, line=10..19, line=100..199 and line=1000..1999
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_CONTAINS, "?line=1");
+
+        assertEquals(1111,          countRecords(conf));
+        assertEquals(LINES,         getCounter("1:Lines read"));
+        assertEquals(1111,          getCounter("2:Good lines"));
+        assertEquals(LINES - 1111,  getCounter("6:Filtered lines"));
+    }
+
+    @Test
+    public void testFieldFilters() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_STARTSWITH + "HTTP.URI:request.firstline.uri", "/index.html?line=2");
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_EQUALS + "STRING:request.firstline.uri.query.line", "2");
+
+        assertEquals(1,             countRecords(conf));
+        assertEquals(LINES,         getCounter("1:Lines read"));
+        assertEquals(1,             getCounter("2:Good lines"));
+        assertEquals(0,             getCounter("3:Bad lines"));
+        assertEquals(LINES - 1,     getCounter("6:Filtered lines"));
+    }
+
+    @Test
+    public void testCombinedFilters() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_CONTAINS, "line=5,HTTP/1.1");
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_EQUALS + "BYTESCLF:response.body.bytes", "5");
+
+        assertEquals(1,             countRecords(conf));
+        assertEquals(LINES - 1,     getCounter("6:Filtered lines"));
+    }
+
+    private long countRecords(RecordReader<LongWritable, ParsedRecord> reader, FileSplit split, Configuration conf)
+        throws IOException, InterruptedException {
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID(), reporter);
+        reader.initialize(split, context);
+        long records = 0;
+        while (reader.nextKeyValue()) {
+            records++;
+        }
+        reader.close();
+        return records;
+    }
+
+    @Test
+    public void testReusedRecordReader() throws IOException, InterruptedException {
+        File testFile = createLogFile();
+        Path path = new Path(testFile.getAbsoluteFile().toURI());
+        long half = testFile.length() / 2;
+        FileSplit first = new FileSplit(path, 0, half, null);
+        FileSplit second = new FileSplit(path, half, testFile.length() - half, null);
+
+        Configuration conf = new Configuration(false);
+        conf.set("fs.default.name", "file:///");
+        conf.set("nl.basjes.parse.apachehttpdlogline.format", "common");
+        conf.set("nl.basjes.parse.apachehttpdlogline.fields", "BYTES:response.body.bytesclf");
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_STARTSWITH + "HTTP.URI:request.firstline.uri", "/index.html?line=2");
+
+        // The InputFormat hands out the same RecordReader for all splits.
+        ApacheHttpdLogfileInputFormat inputFormat = new ApacheHttpdLogfileInputFormat();
+        ApacheHttpdLogfileRecordReader reader = inputFormat.getRecordReader();
+        assertSame(reader, inputFormat.createRecordReader(second, null));
+
+        long records = countRecords(reader, first, conf);
+        Object parser = reader.getParser();
+        records += countRecords(reader, second, conf);
+        assertEquals(1111, records);
+        // Same filters: the parser is reused as is.
+        assertSame(parser, reader.getParser());
+
+        // Other filters: a new parser with only the new filters.
+        conf = new Configuration(conf);
+        conf.set(ApacheHttpdLogfileRecordReader.FILTER_STARTSWITH + "HTTP.URI:request.firstline.uri", "/index.html?line=3");
+        records = countRecords(reader, first, conf) + countRecords(reader, second, conf);
+        assertEquals(1111, records);
+        assertNotSame(parser, reader.getParser());
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestGzipMemberSplits {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> createLines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add("192.168.1." + (i % 256) + " - - [01/Jan/2017:12:00:00 +0100] \"GET /index.html?line=" + i +
+                " HTTP/1.1\" 200 " + (1000 + i));
+        }
+        return lines;
+    }
+
+    // Writes all lines as a single stream of bytes that is cut into gzip members of (about) memberSize bytes.
+    // Note that these members are NOT aligned with the lines.
+    private File writeMultiMemberGzip(List<String> lines, int memberSize) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        File file = temporaryFolder.newFile("access.log.gz");
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int offset = 0; offset < data.length; offset += memberSize) {
+                GZIPOutputStream member = new GZIPOutputStream(out) {
+                    @Override
+                    public void close() throws IOException {
+                        finish(); // Do NOT close the underlying file
+                    }
+                };
+                member.write(data, offset, Math.min(memberSize, data.length - offset));
+                member.close();
+            }
+        }
+        return file;
+    }
+
+    // The input is either a single file or a directory.
+    private List<String> readAllSplits(File input, long maxSplitSize, boolean useIndex) throws IOException {
+        return readAllSplits(input, maxSplitSize, useIndex, useIndex);
+    }
+
+    private List<InputSplit> getSplits(File input, long maxSplitSize, boolean useIndex, boolean buildIndex) throws IOException {
+        return new ApacheHttpdLogfileInputFormat().getSplits(createJob(input, maxSplitSize, useIndex, buildIndex));
+    }
+
+    private Job createJob(File input, long maxSplitSize, boolean useIndex, boolean buildIndex) throws IOException {
+        Configuration conf = new Configuration(false);
+        conf.set("fs.default.name", "file:///");
+        conf.setBoolean(ApacheHttpdLogfileInputFormat.GZIP_MEMBER_INDEX, useIndex);
+        conf.setBoolean(ApacheHttpdLogfileInputFormat.GZIP_MEMBER_INDEX_BUILD, buildIndex);
+        conf.setLong(FileInputFormat.SPLIT_MAXSIZE, maxSplitSize);
+
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, new Path(input.getAbsoluteFile().toURI()));
+        return job;
+    }
+
+    private List<String> readAllSplits(File input, long maxSplitSize, boolean useIndex, boolean buildIndex) throws IOException {
+        Job job = createJob(input, maxSplitSize, useIndex, buildIndex);
+        List<InputSplit> splits = new ApacheHttpdLogfileInputFormat().getSplits(job);
+
+        List<String> result = new ArrayList<>();
+        for (InputSplit split : splits) {
+            LineRecordReader reader;
+            if (split instanceof GzipMemberSplit) {
+                reader = new GzipMemberLineRecordReader();
+            } else {
+                reader = new LineRecordReader();
+            }
+            TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                result.add(reader.getCurrentValue().toString());
+            }
+            reader.close();
+        }
+        return result;
+    }
+
+    @Test
+    public void testSplitAtGzipMembers() throws IOException {
+        List<String> lines = createLines(5000);
+        File file = writeMultiMemberGzip(lines, 10000);
+
+        List<String> readLines = readAllSplits(file, 2000, true);
+        assertEquals(lines, readLines);
+
+        File indexFile = new File(file.getAbsolutePath() + GzipMemberIndex.INDEX_SUFFIX);
+        assertTrue("The side index should have been created", indexFile.exists());
+
+        // Second time the stored index is used.
+        assertEquals(lines, readAllSplits(file, 5000, true));
+    }
+
+    @Test
+    public void testDirectoryWithIndex() throws IOException {
+        List<String> lines = createLines(2000);
+        File file = writeMultiMemberGzip(lines, 10000);
+        File directory = file.getParentFile();
+
+        assertEquals(lines, readAllSplits(directory, 2000, true));
+        assertTrue(new File(file.getAbsolutePath() + GzipMemberIndex.INDEX_SUFFIX).exists());
+
+        // The side index next to the log file must not be read as a log file.
+        assertEquals(lines, readAllSplits(directory, 2000, true));
+        assertEquals(lines, readAllSplits(directory, 2000, false));
+    }
+
+    @Test
+    public void testNumberOfSplits() throws IOException {
+        List<String> lines = createLines(5000);
+        File file = writeMultiMemberGzip(lines, 10000);
+
+        List<InputSplit> splits = getSplits(file, 1, true, true);
+        Path path = new Path(file.getAbsoluteFile().toURI());
+        GzipMemberIndex index = GzipMemberIndex.build(path.getFileSystem(new Configuration(false)), path);
+
+        // With a tiny split size we get exactly one split per member.
+        assertEquals(index.getMemberOffsets().length, splits.size());
+        assertTrue(splits.size() > 10);
+    }
+
+    @Test
+    public void testWithoutIndexTheFileIsNotSplit() throws IOException {
+        List<String> lines = createLines(1000);
+        File file = writeMultiMemberGzip(lines, 10000);
+
+        assertEquals(lines, readAllSplits(file, 2000, false));
+        assertTrue(!new File(file.getAbsolutePath() + GzipMemberIndex.INDEX_SUFFIX).exists());
+    }
+
+    @Test
+    public void testIndexIsOnlyBuiltWhenRequested() throws IOException {
+        List<String> lines = createLines(5000);
+        File file = writeMultiMemberGzip(lines, 10000);
+        File indexFile = new File(file.getAbsolutePath() + GzipMemberIndex.INDEX_SUFFIX);
+
+        // Without an index the file is a single split and no index is created in the job client.
+        assertEquals(1, getSplits(file, 2000, true, false).size());
+        assertEquals(lines, readAllSplits(file, 2000, true, false));
+        assertFalse(indexFile.exists());
+
+        // Build the index offline
+        Path path = new Path(file.getAbsoluteFile().toURI());
+        FileSystem fs = path.getFileSystem(new Configuration(false));
+        GzipMemberIndex.loadOrBuild(fs, fs.getFileStatus(path));
+        assertTrue(indexFile.exists());
+
+        // Now the existing index is used
+        assertTrue(getSplits(file, 2000, true, false).size() > 1);
+        assertEquals(lines, readAllSplits(file, 2000, true, false));
+    }
+
+    @Test
+    public void testOutdatedIndex() throws IOException {
+        List<String> lines = createLines(5000);
+        File file = writeMultiMemberGzip(lines, 10000);
+        Path path = new Path(file.getAbsoluteFile().toURI());
+        FileSystem fs = path.getFileSystem(new Configuration(false));
+
+        GzipMemberIndex.loadOrBuild(fs, fs.getFileStatus(path));
+        assertNotNull(GzipMemberIndex.load(fs, fs.getFileStatus(path)));
+
+        // Same length but a different modification time (i.e. the file was replaced)
+        assertTrue(file.setLastModified(file.lastModified() - 60000));
+        assertNull(GzipMemberIndex.load(fs, fs.getFileStatus(path)));
+        assertEquals(1, getSplits(file, 2000, true, false).size());
+
+        // An outdated index is replaced when building is enabled
+        assertTrue(getSplits(file, 2000, true, true).size() > 1);
+        assertNotNull(GzipMemberIndex.load(fs, fs.getFileStatus(path)));
+    }
+
+}
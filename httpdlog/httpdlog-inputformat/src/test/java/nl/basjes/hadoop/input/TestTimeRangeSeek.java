@@ -0,0 +1,198 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTimeRangeSeek {
+
+    private static final int    LINES = 3 * 3600;   // One line per second for three hours
+    private static final long   START = 1483272000000L; // 2017-01-01 12:00:00 UTC
+    private static final long   HOUR  = 3600 * 1000L;
+
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneOffset.ofHours(1));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // The epoch of each line in the file
+    private final List<Long> lineTimes = new ArrayList<>(LINES);
+
+    private File createLogFile() throws IOException {
+        File file = temporaryFolder.newFile("access.log");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < LINES; i++) {
+                // Every 10th line is written 5 seconds late (i.e. it is out of order).
+                long time = START + i * 1000L - (i % 10 == 0 ? 5000L : 0L);
+                lineTimes.add(time);
+                writer.println("192.168.1.1 - - [" + TIME_FORMAT.format(Instant.ofEpochMilli(time)) + "] " +
+                    "\"GET /index.html?line=" + i + " HTTP/1.1\" 200 " + i);
+            }
+            // Lines without a valid timestamp are not a problem.
+            writer.println("This is not a valid line");
+        }
+        return file;
+    }
+
+    private long expectedLines(long from, long to) {
+        return lineTimes.stream().filter(time -> time >= from && time < to).count();
+    }
+
+    private final Counters counters = new Counters();
+
+    private final StatusReporter reporter = new StatusReporter() {
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+            // Nothing to do
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+            // Nothing to do
+        }
+    };
+
+    private long readAllSplits(Configuration conf) throws IOException, InterruptedException {
+        File testFile = createLogFile();
+        conf.set("fs.default.name", "file:///");
+        conf.set("nl.basjes.parse.apachehttpdlogline.format", "common");
+        conf.set("nl.basjes.parse.apachehttpdlogline.fields", "BYTES:response.body.bytesclf");
+
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, new Path(testFile.getAbsoluteFile().toURI()));
+        FileInputFormat.setMaxInputSplitSize(job, 100000);
+
+        long records = 0;
+        long previousBytes = -1;
+        for (InputSplit split : new ApacheHttpdLogfileInputFormat().getSplits(job)) {
+            TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID(), reporter);
+            RecordReader<LongWritable, ParsedRecord> reader =
+                new ApacheHttpdLogfileInputFormat().createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                long bytes = reader.getCurrentValue().getLong("BYTES:response.body.bytesclf");
+                assertTrue("Records must be unique and in the order of the file", bytes > previousBytes);
+                previousBytes = bytes;
+                records++;
+            }
+            reader.close();
+        }
+        return records;
+    }
+
+    private long getCounter(String name) {
+        return counters.findCounter("HTTPD Access Logfile InputFormat", name).getValue();
+    }
+
+    @Test
+    public void testOneHour() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        // The line that is written at START + HOUR + 10 seconds is out of order.
+        long from = START + HOUR + 6000L;
+        long to = START + 2 * HOUR;
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_FROM, from);
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_TO, to);
+
+        long records = readAllSplits(conf);
+        assertEquals(expectedLines(from, to), records);
+
+        // Only (a bit more than) a third of the file was read.
+        long linesRead = getCounter("1:Lines read");
+        assertTrue("Read " + linesRead + " lines", linesRead < LINES / 2);
+        assertTrue(getCounter("7:Bytes skipped by time range seek") > 0);
+    }
+
+    @Test
+    public void testOpenEndedRange() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        long from = START + 150 * 60 * 1000L;
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_FROM, from);
+
+        long records = readAllSplits(conf);
+        assertEquals(expectedLines(from, Long.MAX_VALUE), records);
+        assertTrue(getCounter("1:Lines read") < LINES / 4);
+    }
+
+    @Test
+    public void testRangeOutsideFile() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_TO, START - HOUR);
+
+        assertEquals(0, readAllSplits(conf));
+        assertTrue(getCounter("1:Lines read") < 10);
+    }
+
+    @Test
+    public void testWithoutSlackOutOfOrderLinesCanBeLost() throws IOException, InterruptedException {
+        Configuration conf = new Configuration(false);
+        long from = START + HOUR + 6000L;
+        long to = START + 2 * HOUR;
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_FROM, from);
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_TO, to);
+        conf.setLong(ApacheHttpdLogfileRecordReader.TIME_RANGE_SLACK, 0);
+
+        // Only the lines right before an out of order line can be lost.
+        long records = readAllSplits(conf);
+        long expected = expectedLines(from, to);
+        assertTrue("Got " + records + " of " + expected, records <= expected && records >= expected - 10);
+    }
+
+}
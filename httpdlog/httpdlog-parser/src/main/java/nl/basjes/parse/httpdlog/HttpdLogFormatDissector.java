@@ -32,7 +32,9 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 public class HttpdLogFormatDissector extends Dissector {
 
@@ -44,6 +46,12 @@ public class HttpdLogFormatDissector extends Dissector {
     private List<String> registeredLogFormats;
     private List<TokenFormatDissector> dissectors;
     private TokenFormatDissector activeDissector;
+    private int activeIndex;
+
+    // Per LogFormat (same index as the dissectors) how often it did (not) match (only if the metrics are enabled).
+    private boolean countersEnabled = false;
+    private long[] formatMatches = null;
+    private long[] formatMisses = null;
 
     public HttpdLogFormatDissector() {
         registeredLogFormats = new ArrayList<>(16);
@@ -93,6 +101,16 @@ public class HttpdLogFormatDissector extends Dissector {
         return this;
     }
 
+    // Opt-in: With a single LogFormat the parts of the line that are not needed are not validated (where this
+    // cannot change the extracted values). With multiple LogFormats the full validation is needed to pick the
+    // right one so then this is ignored.
+    private boolean enableLaxLineValidation = false;
+
+    public HttpdLogFormatDissector enableLaxLineValidation() {
+        enableLaxLineValidation = true;
+        return this;
+    }
+
     public HttpdLogFormatDissector addMultipleLogFormats(final String multiLineLogFormat) {
         return addLogFormat(Arrays.asList(multiLineLogFormat.split("\\r?\\n")));
     }
@@ -113,6 +131,10 @@ public class HttpdLogFormatDissector extends Dissector {
             return enableJettyFix();
         }
 
+        if (logFormat.toUpperCase().trim().equals("ENABLE LAX LINE VALIDATION")) {
+            return enableLaxLineValidation();
+        }
+
         if (registeredLogFormats.contains(logFormat)) {
             LOG.info("Skipping duplicate LogFormat: >>{}<<", logFormat);
             return this; // We already have this one
@@ -121,6 +143,10 @@ public class HttpdLogFormatDissector extends Dissector {
         registeredLogFormats.add(logFormat);
 
         switch (determineMostLikelyLogFormat(logFormat)) {
+            case JSON:
+                LOG.info("Registering JSON LogFormat[{}]= >>{}<<", dissectors.size(), logFormat);
+                dissectors.add(new JsonLogFormatDissector(logFormat));
+                break;
             case APACHE:
                 LOG.info("Registering APACHE HTTPD LogFormat[{}]= >>{}<<", dissectors.size(), logFormat);
                 dissectors.add(new ApacheHttpdLogFormatDissector(logFormat));
@@ -137,12 +163,17 @@ public class HttpdLogFormatDissector extends Dissector {
     }
 
     private enum LogFormatType {
+        JSON,
         APACHE,
         NGINX,
         UNKNOWN
     }
 
     private LogFormatType determineMostLikelyLogFormat(final String logFormat) {
+        // A JSON object with only tokens and constants as values is scanned instead of matched with a regex.
+        if (JsonLogFormatDissector.looksLikeJsonFormat(logFormat)) {
+            return LogFormatType.JSON;
+        }
         if (ApacheHttpdLogFormatDissector.looksLikeApacheFormat(logFormat)) {
             return LogFormatType.APACHE;
         }
@@ -170,36 +201,109 @@ public class HttpdLogFormatDissector extends Dissector {
     @Override
     public void dissect(Parsable<?> parsable, String inputname) throws DissectionFailure {
         if (dissectors.isEmpty()) {
-            throw new DissectionFailure("We need one or more logformats before we can dissect.");
+            throw new DissectionFailure(TokenFormatDissector.DISSECTOR_UNUSABLE, -1, "We need one or more logformats before we can dissect.");
         }
 
         // Initial: We must determine the right dissector
         if (activeDissector == null) {
             activeDissector = dissectors.get(0);
+            activeIndex = 0;
             LOG.info("At start we use LogFormat[0]= >>{}<<", activeDissector.getLogFormat());
         }
 
+        DissectionFailure activeFailure = null;
         try {
-            activeDissector.dissect(parsable, inputname);
+            if (activeDissector.dissectIfMatches(parsable, inputname)) {
+                if (countersEnabled) {
+                    formatMatches[activeIndex]++;
+                }
+                return;
+            }
         } catch (DissectionFailure df) {
-            if (dissectors.size() > 1) {
-                int index = 0;
-                for (TokenFormatDissector dissector : dissectors) {
-                    try {
-                        dissector.dissect(parsable, inputname);
-                        LOG.info("Switched to LogFormat[{}]= >>{}<<", index, activeDissector.getLogFormat());
+            activeFailure = df;
+        }
+        if (countersEnabled) {
+            formatMisses[activeIndex]++;
+        }
+
+        if (dissectors.size() > 1) {
+            int index = 0;
+            for (TokenFormatDissector dissector : dissectors) {
+                if (index != activeIndex) {
+                    if (tryDissect(dissector, parsable, inputname)) {
+                        if (countersEnabled) {
+                            formatMatches[index]++;
+                        }
+                        LOG.info("Switched to LogFormat[{}]= >>{}<<", index, dissector.getLogFormat());
                         activeDissector = dissector;
+                        activeIndex = index;
                         return;
-                    } catch (DissectionFailure e) {
-                        index++;
-                        // We ignore the error and try the next one.
+                    }
+                    if (countersEnabled) {
+                        formatMisses[index]++;
                     }
                 }
+                index++;
             }
-            throw df;
+        }
+        if (activeFailure != null) {
+            throw activeFailure;
+        }
+        // Only now (once per bad line) the details of the mismatch are determined.
+        throw activeDissector.createMismatchFailure(parsable, inputname);
+    }
+
+    // Trying a LogFormat that does not match does not create a failure.
+    private boolean tryDissect(TokenFormatDissector dissector, Parsable<?> parsable, String inputname) {
+        try {
+            return dissector.dissectIfMatches(parsable, inputname);
+        } catch (DissectionFailure e) {
+            return false; // We ignore the error and try the next one.
         }
     }
 
+    @Override
+    public void setCountersEnabled(boolean enabled) {
+        countersEnabled = enabled;
+        if (enabled && (formatMatches == null || formatMatches.length != dissectors.size())) {
+            formatMatches = new long[dissectors.size()];
+            formatMisses = new long[dissectors.size()];
+        }
+    }
+
+    /**
+     * For each of the LogFormats how many lines it matched and how often it was tried but did not match.
+     * Lines only go to the next LogFormat if the currently active one misses.
+     * So a LogFormat that has many misses while no other format matches usually means a log source
+     * that needs a custom LogFormat.
+     * @return Counters named "LogFormat[n] matches" and "LogFormat[n] misses".
+     */
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (int index = 0; index < dissectors.size(); index++) {
+            counters.put("LogFormat[" + index + "] matches", getFormatMatches(index));
+            counters.put("LogFormat[" + index + "] misses",  getFormatMisses(index));
+        }
+        return counters;
+    }
+
+    /**
+     * @param index The index of the LogFormat (in the order they were added).
+     * @return The number of lines this LogFormat has successfully dissected.
+     */
+    public long getFormatMatches(int index) {
+        return formatMatches == null || index >= formatMatches.length ? 0 : formatMatches[index];
+    }
+
+    /**
+     * @param index The index of the LogFormat (in the order they were added).
+     * @return The number of lines this LogFormat has failed to dissect.
+     */
+    public long getFormatMisses(int index) {
+        return formatMisses == null || index >= formatMisses.length ? 0 : formatMisses[index];
+    }
+
     @Override
     public String getInputType() {
         return INPUT_TYPE;
@@ -238,11 +342,13 @@ public class HttpdLogFormatDissector extends Dissector {
             throw new InvalidDissectorException("Cannot run without logformats");
         }
 
-        for (Dissector dissector : dissectors) {
+        boolean strictLineValidation = !enableLaxLineValidation || dissectors.size() > 1;
+        for (TokenFormatDissector dissector : dissectors) {
             if (!INPUT_TYPE.equals(dissector.getInputType())) {
                 throw new InvalidDissectorException("All dissectors controlled by " + this.getClass().getCanonicalName()
                     + " MUST have \"" + INPUT_TYPE + "\" as their inputtype.");
             }
+            dissector.setStrictLineValidation(strictLineValidation);
             dissector.prepareForRun();
         }
     }
@@ -271,6 +377,10 @@ public class HttpdLogFormatDissector extends Dissector {
                 ((HttpdLogFormatDissector) newInstance).enableJettyFix();
             }
 
+            if (enableLaxLineValidation) {
+                ((HttpdLogFormatDissector) newInstance).enableLaxLineValidation();
+            }
+
         } else {
             LOG.error("============================== WTF == {}", newInstance.getClass().getCanonicalName());
         }
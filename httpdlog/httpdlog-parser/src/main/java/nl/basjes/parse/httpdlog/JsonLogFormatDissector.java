@@ -0,0 +1,716 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.Parsable;
+import nl.basjes.parse.core.ParsedField;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.Token;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenFormatDissector;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenOutputField;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenParser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dissects lines that are a JSON object (like the nginx log_format ... escape=json) without using a regex.
+ * The LogFormat is a JSON object in which every value is either a constant or exactly one Apache HTTPD or
+ * NGINX token (quoted or not). So the tokens produce the same output types as in the normal LogFormats.
+ * <p>
+ * The line is scanned in a single pass: only the values of the keys that produce a requested field are extracted
+ * (and unescaped), all other values are skipped without creating a String. The order of the keys in the line
+ * does not matter.
+ * <p>
+ * A line only matches if all keys that have a token in the LogFormat are present (so any other JSON object does
+ * not match). Only with lax line validation (and a single LogFormat) a key that is missing simply does not
+ * produce a value.
+ */
+@SuppressWarnings({
+    "PMD.LongVariable", // I like my variable names this way
+    "PMD.CyclomaticComplexity", "PMD.OnlyOneReturn",
+    "PMD.BeanMembersShouldSerialize", // No beans here
+    "PMD.DataflowAnomalyAnalysis" // Results in a lot of mostly useless messages.
+    })
+public class JsonLogFormatDissector extends TokenFormatDissector {
+
+    // A key of the LogFormat: either a nested object or a value that is a single token.
+    private static final class TemplateNode implements Serializable {
+        private final Map<String, TemplateNode> fields;
+        private final Token token;
+
+        TemplateNode(Map<String, TemplateNode> fields, Token token) {
+            this.fields = fields;
+            this.token = token;
+        }
+    }
+
+    // The part of the template that must be extracted from (or must be present in) the lines.
+    private static final class RequestedNode implements Serializable {
+        private final String[] keys;
+        private final RequestedNode[] children;
+        private final int leaf;
+        // The leaves below this node are leafFirst .. leafEnd-1
+        private final int leafFirst;
+        private final int leafEnd;
+
+        RequestedNode(String[] keys, RequestedNode[] children, int leaf, int leafFirst, int leafEnd) {
+            this.keys = keys;
+            this.children = children;
+            this.leaf = leaf;
+            this.leafFirst = leafFirst;
+            this.leafEnd = leafEnd;
+        }
+
+        RequestedNode find(String line, int start, int end) {
+            final int length = end - start;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].length() == length && line.regionMatches(start, keys[i], 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        RequestedNode find(String key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private TokenFormatDissector tokenDissector;
+    private TemplateNode         template;
+
+    private final Set<String>    requestedFields = new HashSet<>(16);
+    private RequestedNode        requested  = null;
+    private Token[]              leafTokens = null;
+    private boolean[]            leafExtract = null;
+    private boolean              requireAllKeys = false;
+    private String[]             leafValues = null;
+    private boolean[]            leafFound  = null;
+    private String               missingKey = null;
+
+    public JsonLogFormatDissector(final String logFormat) {
+        super();
+        setInputType(HttpdLogFormatDissector.INPUT_TYPE);
+        setLogFormat(logFormat);
+    }
+
+    public JsonLogFormatDissector() {
+        super();
+        setInputType(HttpdLogFormatDissector.INPUT_TYPE);
+    }
+
+    /**
+     * @return true if this LogFormat is a JSON object in which all values are a constant or a single token.
+     */
+    public static boolean looksLikeJsonFormat(String logFormat) {
+        if (logFormat == null) {
+            return false;
+        }
+        final String trimmed = logFormat.trim();
+        if (!trimmed.startsWith("{") || !trimmed.endsWith("}")) {
+            return false;
+        }
+        try {
+            TemplateParser parser = new TemplateParser(trimmed, createTokenDissector(trimmed));
+            parser.parse();
+            return parser.tokens > 0;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static TokenFormatDissector createTokenDissector(String logFormat) {
+        if (ApacheHttpdLogFormatDissector.looksLikeApacheFormat(logFormat)) {
+            return new ApacheHttpdLogFormatDissector();
+        }
+        return new NginxHttpdLogFormatDissector();
+    }
+
+    @Override
+    public void setLogFormat(final String logformat) {
+        tokenDissector = createTokenDissector(logformat);
+        // All tokens (needed for the possible outputs and the additional dissectors)
+        super.setLogFormat(logformat);
+        template = new TemplateParser(logformat.trim(), tokenDissector).parse();
+    }
+
+    @Override
+    protected List<TokenParser> createAllTokenParsers() {
+        if (tokenDissector instanceof ApacheHttpdLogFormatDissector) {
+            return ((ApacheHttpdLogFormatDissector) tokenDissector).createAllTokenParsers();
+        }
+        return ((NginxHttpdLogFormatDissector) tokenDissector).createAllTokenParsers();
+    }
+
+    @Override
+    protected String cleanupLogFormat(String tokenLogFormat) {
+        if (tokenDissector instanceof ApacheHttpdLogFormatDissector) {
+            return ((ApacheHttpdLogFormatDissector) tokenDissector).cleanupLogFormat(tokenLogFormat);
+        }
+        return tokenLogFormat;
+    }
+
+    @Override
+    public String decodeExtractedValue(String tokenName, String value) {
+        return tokenDissector.decodeExtractedValue(tokenName, value);
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Parses the LogFormat as a JSON object and determines for each value the (single) token it contains.
+     */
+    private static final class TemplateParser {
+        private final String               logFormat;
+        private final TokenFormatDissector tokenDissector;
+        private int                        pos = 0;
+        private int                        tokens = 0;
+
+        TemplateParser(String logFormat, TokenFormatDissector tokenDissector) {
+            this.logFormat = logFormat;
+            this.tokenDissector = tokenDissector;
+        }
+
+        TemplateNode parse() {
+            TemplateNode root = parseObject();
+            skipWhitespace();
+            if (pos != logFormat.length()) {
+                throw error("Unexpected text after the JSON object");
+            }
+            return root;
+        }
+
+        private TemplateNode parseObject() {
+            expect('{');
+            Map<String, TemplateNode> fields = new LinkedHashMap<>();
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return new TemplateNode(fields, null);
+            }
+            while (true) {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                TemplateNode value = parseValue();
+                if (value != null) {
+                    if (fields.containsKey(key)) {
+                        throw error("Duplicate key \"" + key + "\"");
+                    }
+                    fields.put(key, value);
+                }
+                skipWhitespace();
+                char separator = peek();
+                pos++;
+                if (separator == '}') {
+                    return new TemplateNode(fields, null);
+                }
+                if (separator != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        // Returns null for a constant value.
+        private TemplateNode parseValue() {
+            switch (peek()) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    int end = skipValue(logFormat, pos);
+                    if (end < 0) {
+                        throw error("Unterminated array");
+                    }
+                    if (containsToken(logFormat.substring(pos, end))) {
+                        throw error("Tokens inside an array are not supported");
+                    }
+                    pos = end;
+                    return null;
+                case '"':
+                    return createValue(parseString());
+                default:
+                    int start = pos;
+                    while (pos < logFormat.length() && !isEndOfLiteral(logFormat.charAt(pos))) {
+                        pos++;
+                    }
+                    if (start == pos) {
+                        throw error("Expected a value");
+                    }
+                    return createValue(logFormat.substring(start, pos));
+            }
+        }
+
+        private boolean containsToken(String value) {
+            return value.indexOf('%') != -1 || value.indexOf('$') != -1;
+        }
+
+        private TemplateNode createValue(String value) {
+            if (!containsToken(value)) {
+                return null; // A constant
+            }
+            TokenFormatDissector valueDissector = tokenDissector instanceof ApacheHttpdLogFormatDissector ?
+                new ApacheHttpdLogFormatDissector(value) :
+                new NginxHttpdLogFormatDissector(value);
+
+            Token valueToken = null;
+            for (Token token : valueDissector.getLogFormatTokens()) {
+                if (token instanceof FixedStringToken) {
+                    if (token.getRegex().isEmpty()) {
+                        continue;
+                    }
+                    throw error("The value \"" + value + "\" is not a single token");
+                }
+                if (valueToken != null) {
+                    throw error("The value \"" + value + "\" is not a single token");
+                }
+                valueToken = token;
+            }
+            if (valueToken == null) {
+                return null; // Only fixed text like %%
+            }
+            tokens++;
+            return new TemplateNode(null, valueToken);
+        }
+
+        private String parseString() {
+            expect('"');
+            int end = findEndOfString(logFormat, pos);
+            if (end < 0) {
+                throw error("Unterminated string");
+            }
+            String value = unescape(logFormat, pos, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private char peek() {
+            if (pos >= logFormat.length()) {
+                throw error("Unexpected end of the LogFormat");
+            }
+            return logFormat.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            pos = JsonLogFormatDissector.skipWhitespace(logFormat, pos);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " of the JSON LogFormat: " + logFormat);
+        }
+    }
+
+    // --------------------------------------------
+
+    @Override
+    public EnumSet<Casts> prepareForDissect(final String inputName, final String outputName) {
+        requestedFields.add(outputName);
+        return super.prepareForDissect(inputName, outputName);
+    }
+
+    @Override
+    public void prepareForRun() {
+        // Unless lax validation was requested all tokens must be present, the ones that are not needed are only skipped.
+        requireAllKeys = isStrictLineValidation();
+        List<Token> leaves = new ArrayList<>();
+        requested = createRequested(template, leaves);
+        if (requested == null) {
+            requested = new RequestedNode(new String[0], new RequestedNode[0], -1, 0, 0);
+        }
+        leafTokens = leaves.toArray(new Token[0]);
+        leafExtract = new boolean[leafTokens.length];
+        leafValues = new String[leafTokens.length];
+        leafFound  = new boolean[leafTokens.length];
+        for (int leaf = 0; leaf < leafTokens.length; leaf++) {
+            leafExtract[leaf] = leafTokens[leaf].canProduceADesiredFieldName(requestedFields);
+            leafTokens[leaf].tokenWasUsed();
+        }
+    }
+
+    // Only the parts of the template that lead to a requested field (or all tokens if all keys are required).
+    private RequestedNode createRequested(TemplateNode node, List<Token> leaves) {
+        final int leafFirst = leaves.size();
+        if (node.token != null) {
+            if (!requireAllKeys && !node.token.canProduceADesiredFieldName(requestedFields)) {
+                return null;
+            }
+            leaves.add(node.token);
+            return new RequestedNode(null, null, leafFirst, leafFirst, leafFirst + 1);
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<RequestedNode> children = new ArrayList<>();
+        for (Map.Entry<String, TemplateNode> entry : node.fields.entrySet()) {
+            RequestedNode child = createRequested(entry.getValue(), leaves);
+            if (child != null) {
+                keys.add(entry.getKey());
+                children.add(child);
+            }
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+        return new RequestedNode(keys.toArray(new String[0]), children.toArray(new RequestedNode[0]), -1,
+            leafFirst, leaves.size());
+    }
+
+    // --------------------------------------------
+
+    @Override
+    public boolean dissectIfMatches(final Parsable<?> parsable, final String inputname) throws DissectionFailure {
+        if (requested == null) {
+            throw new DissectionFailure(DISSECTOR_UNUSABLE, -1, "Dissector in unusable state");
+        }
+
+        final ParsedField field = parsable.getParsableField(HttpdLogFormatDissector.INPUT_TYPE, inputname);
+        final String line = field.getValue().getString();
+        if (line == null || scan(line) < 0) {
+            return false;
+        }
+
+        // Only a line that is valid JSON produces values.
+        for (int leaf = 0; leaf < leafTokens.length; leaf++) {
+            if (!leafFound[leaf] || !leafExtract[leaf]) {
+                continue;
+            }
+            for (TokenOutputField tokenOutputField : leafTokens[leaf].getOutputFields()) {
+                final String name = tokenOutputField.getName();
+                parsable.addDissection(inputname, tokenOutputField.getType(), name,
+                    decodeExtractedValue(name, leafValues[leaf]));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public DissectionFailure createMismatchFailure(final Parsable<?> parsable, final String inputname) {
+        final String line = parsable.getParsableField(HttpdLogFormatDissector.INPUT_TYPE, inputname).getValue().getString();
+        // The scan uses the state of this dissector so the position is determined now and only the message later.
+        final int result = line == null ? -1 : scan(line);
+        final int position = result < 0 ? -result - 1 : result;
+        final String missing = missingKey;
+        final String logFormat = getLogFormat();
+        if (missing != null) {
+            return DissectionFailure.stackless(LOGFORMAT_MISMATCH, () -> position, ignored ->
+                "The input line does not have the key \"" + missing + "\" (the object ends at position " + position + ").\n" +
+                "Line     : " + line + "\n" +
+                "LogFormat: " + logFormat);
+        }
+        return DissectionFailure.stackless(LOGFORMAT_MISMATCH, () -> position, ignored ->
+            "The input line is not a valid JSON object (at position " + position + ").\n" +
+            "Line     : " + line + "\n" +
+            "LogFormat: " + logFormat);
+    }
+
+    /**
+     * @return The length of the line if it is a valid JSON object (with all required keys),
+     * else -1 - (the position of the problem).
+     */
+    private int scan(String line) {
+        for (int leaf = 0; leaf < leafFound.length; leaf++) {
+            leafFound[leaf] = false;
+            leafValues[leaf] = null;
+        }
+        missingKey = null;
+        int pos = skipWhitespace(line, 0);
+        pos = scanObject(line, pos, requested);
+        if (pos < 0) {
+            return pos;
+        }
+        pos = skipWhitespace(line, pos);
+        if (pos != line.length()) {
+            return -pos - 1;
+        }
+        return pos;
+    }
+
+    // Returns the position after the object or -1 - (the position of the problem).
+    private int scanObject(String line, int start, RequestedNode node) {
+        int pos = start;
+        if (pos >= line.length() || line.charAt(pos) != '{') {
+            return -pos - 1;
+        }
+        pos = skipWhitespace(line, pos + 1);
+        if (pos < line.length() && line.charAt(pos) == '}') {
+            return endObject(pos, node);
+        }
+        while (true) {
+            if (pos >= line.length() || line.charAt(pos) != '"') {
+                return -pos - 1;
+            }
+            final int keyStart = pos + 1;
+            final int keyEnd = findEndOfString(line, keyStart);
+            if (keyEnd < 0) {
+                return -line.length() - 1;
+            }
+            final RequestedNode child;
+            if (containsBackslash(line, keyStart, keyEnd)) {
+                child = node.find(unescape(line, keyStart, keyEnd));
+            } else {
+                child = node.find(line, keyStart, keyEnd);
+            }
+
+            pos = skipWhitespace(line, keyEnd + 1);
+            if (pos >= line.length() || line.charAt(pos) != ':') {
+                return -pos - 1;
+            }
+            pos = skipWhitespace(line, pos + 1);
+
+            if (child == null) {
+                pos = skipValue(line, pos);
+            } else if (child.leaf >= 0) {
+                pos = readValue(line, pos, child.leaf);
+            } else if (pos < line.length() && line.charAt(pos) == '{') {
+                pos = scanObject(line, pos, child);
+            } else {
+                pos = skipValue(line, pos); // Not the expected object: there is nothing to extract.
+            }
+            if (pos < 0) {
+                return pos;
+            }
+
+            pos = skipWhitespace(line, pos);
+            if (pos >= line.length()) {
+                return -pos - 1;
+            }
+            final char separator = line.charAt(pos);
+            if (separator == '}') {
+                return endObject(pos, node);
+            }
+            if (separator != ',') {
+                return -pos - 1;
+            }
+            pos = skipWhitespace(line, pos + 1);
+        }
+    }
+
+    // Returns the position after the closing brace or (if a required key is missing) -1 - (the position of the brace).
+    private int endObject(int pos, RequestedNode node) {
+        if (requireAllKeys) {
+            for (int child = 0; child < node.keys.length; child++) {
+                for (int leaf = node.children[child].leafFirst; leaf < node.children[child].leafEnd; leaf++) {
+                    if (!leafFound[leaf]) {
+                        missingKey = node.keys[child];
+                        return -pos - 1;
+                    }
+                }
+            }
+        }
+        return pos + 1;
+    }
+
+    private int readValue(String line, int start, int leaf) {
+        if (start >= line.length()) {
+            return -start - 1;
+        }
+        final char first = line.charAt(start);
+        if (first == '{' || first == '[') {
+            return skipValue(line, start); // Not a value of a token
+        }
+
+        if (!leafExtract[leaf]) {
+            // Only the presence of this key matters.
+            final int end = skipValue(line, start);
+            leafFound[leaf] = end >= 0;
+            return end;
+        }
+
+        if (first == '"') {
+            final int end = findEndOfString(line, start + 1);
+            if (end < 0) {
+                return -line.length() - 1;
+            }
+            leafValues[leaf] = unescape(line, start + 1, end);
+            leafFound[leaf] = true;
+            return end + 1;
+        }
+
+        // A number, true, false or null
+        final int end = skipValue(line, start);
+        if (end < 0) {
+            return end;
+        }
+        final boolean isNull = end - start == 4 && line.startsWith("null", start);
+        leafValues[leaf] = isNull ? null : line.substring(start, end);
+        leafFound[leaf] = true;
+        return end;
+    }
+
+    // --------------------------------------------
+
+    private static int skipWhitespace(String value, int start) {
+        int pos = start;
+        while (pos < value.length()) {
+            final char c = value.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isEndOfLiteral(char c) {
+        return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * @return The position of the closing quote of the string that starts at start (just after the opening quote)
+     * or -1 if the string is not terminated.
+     */
+    private static int findEndOfString(String value, int start) {
+        int pos = start;
+        while (pos < value.length()) {
+            final char c = value.charAt(pos);
+            if (c == '"') {
+                return pos;
+            }
+            pos += c == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips a value without extracting anything.
+     * @return The position after the value or -1 - (the position of the problem).
+     */
+    private static int skipValue(String value, int start) {
+        if (start >= value.length()) {
+            return -start - 1;
+        }
+        final char first = value.charAt(start);
+        if (first == '"') {
+            final int end = findEndOfString(value, start + 1);
+            return end < 0 ? -value.length() - 1 : end + 1;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            int pos = start;
+            while (pos < value.length()) {
+                final char c = value.charAt(pos);
+                if (c == '"') {
+                    final int end = findEndOfString(value, pos + 1);
+                    if (end < 0) {
+                        return -value.length() - 1;
+                    }
+                    pos = end + 1;
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return pos + 1;
+                    }
+                }
+                pos++;
+            }
+            return -value.length() - 1;
+        }
+        int pos = start;
+        while (pos < value.length() && !isEndOfLiteral(value.charAt(pos))) {
+            pos++;
+        }
+        return pos == start ? -start - 1 : pos;
+    }
+
+    private static boolean containsBackslash(String value, int start, int end) {
+        for (int pos = start; pos < end; pos++) {
+            if (value.charAt(pos) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The content of a JSON string with all escapes (\" \\ \/ \b \f \n \r \t and \\uXXXX) replaced.
+     */
+    private static String unescape(String value, int start, int end) {
+        if (!containsBackslash(value, start, end)) {
+            return value.substring(start, end);
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        int pos = start;
+        while (pos < end) {
+            final char c = value.charAt(pos);
+            if (c != '\\' || pos + 1 >= end) {
+                sb.append(c);
+                pos++;
+                continue;
+            }
+            final char escaped = value.charAt(pos + 1);
+            pos += 2;
+            switch (escaped) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 <= end) {
+                        try {
+                            sb.append((char) Integer.parseInt(value.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        } catch (NumberFormatException e) {
+                            // Not a valid escape: retain it as it is.
+                        }
+                    }
+                    sb.append("\\u");
+                    break;
+                default: // " \ / and everything that is not a valid escape
+                    sb.append(escaped);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -54,10 +54,11 @@ public class HttpFirstLineDissector extends Dissector {
     public static final String FIRSTLINE_REGEX =
             ".*";
 
-    private final Pattern firstlineSplitter = Pattern
+    // Immutable so shared by all instances
+    private static final Pattern FIRSTLINE_SPLITTER = Pattern
             .compile("^([a-zA-Z-_]+) (.*) (HTTP/[0-9]+\\.[0-9]+)$");
 
-    private final Pattern tooLongFirstlineSplitter = Pattern
+    private static final Pattern TOO_LONG_FIRSTLINE_SPLITTER = Pattern
             .compile("^([a-zA-Z-_]+) (.*)$");
 
     // --------------------------------------------
@@ -91,7 +92,7 @@ public class HttpFirstLineDissector extends Dissector {
         }
 
         // Now we create a matcher for this line
-        Matcher matcher = firstlineSplitter.matcher(fieldValue);
+        Matcher matcher = FIRSTLINE_SPLITTER.matcher(fieldValue);
 
         // Is it all as expected?
         boolean matches = matcher.find();
@@ -107,7 +108,7 @@ public class HttpFirstLineDissector extends Dissector {
         // Apache HTTPD webserver. To still be able to parse these we try that pattern too
 
         // Now we create a matcher for this line
-        matcher = tooLongFirstlineSplitter.matcher(fieldValue);
+        matcher = TOO_LONG_FIRSTLINE_SPLITTER.matcher(fieldValue);
 
         // Is it all as expected?
         matches = matcher.find();
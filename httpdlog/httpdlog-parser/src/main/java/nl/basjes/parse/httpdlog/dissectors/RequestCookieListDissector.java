@@ -70,8 +70,8 @@ public class RequestCookieListDissector extends Dissector {
 
     // --------------------------------------------
 
-    // Cache the compiled pattern
-    private final Pattern fieldSeparatorPattern = Pattern.compile("; ");
+    // Cache the compiled pattern (immutable so shared by all instances)
+    private static final Pattern FIELD_SEPARATOR_PATTERN = Pattern.compile("; ");
 
     @Override
     public void dissect(final Parsable<?> parsable, final String inputname) throws DissectionFailure {
@@ -82,7 +82,7 @@ public class RequestCookieListDissector extends Dissector {
             return; // Nothing to do here
         }
 
-        String[] allValues = fieldSeparatorPattern.split(fieldValue);
+        String[] allValues = FIELD_SEPARATOR_PATTERN.split(fieldValue);
         for (String value : allValues) {
             int equalPos = value.indexOf('=');
             if (equalPos == -1) {
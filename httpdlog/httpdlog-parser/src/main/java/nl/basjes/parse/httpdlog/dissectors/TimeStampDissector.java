@@ -20,7 +20,9 @@ import nl.basjes.parse.core.Casts;
 import nl.basjes.parse.core.Dissector;
 import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.ParsedField;
+import nl.basjes.parse.core.SharedInstanceCache;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -93,13 +95,17 @@ public class TimeStampDissector extends Dissector {
         formatter = newFormatter;
     }
 
+    // The formatters are immutable so all dissectors with the same pattern and locale share a single instance.
+    private static final SharedInstanceCache<Pair<String, Locale>, DateTimeFormatter> FORMATTERS =
+        new SharedInstanceCache<>(1000, key -> new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern(key.getLeft())
+            .toFormatter()
+            .withLocale(key.getRight()));
+
     protected DateTimeFormatter getFormatter() {
         if (formatter == null) {
-            formatter = new DateTimeFormatterBuilder()
-                .parseCaseInsensitive()
-                .appendPattern(dateTimePattern)
-                .toFormatter()
-                .withLocale(locale);
+            formatter = FORMATTERS.get(Pair.of(dateTimePattern, locale));
         }
         return formatter;
     }
@@ -0,0 +1,111 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.dissectors.tokenformat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An Aho-Corasick automaton that determines in a single scan over a text which of a set of literals occur in it.
+ * This is used to quickly rule out all the TokenParsers that cannot match anything in a LogFormat.
+ */
+class MultiLiteralMatcher {
+
+    // Per state: the transitions to the next state
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    // Per state: the state to continue with if there is no transition
+    private final List<Integer> failures = new ArrayList<>();
+    // Per state: the literals that end in this state (including those via the failure links)
+    private final List<Set<String>> outputs = new ArrayList<>();
+
+    MultiLiteralMatcher(Collection<String> literals) {
+        addState(); // The root
+
+        for (String literal : literals) {
+            if (literal == null || literal.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (char c : literal.toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = addState();
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(literal);
+        }
+
+        // Breadth first to determine the failure links
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (Integer child : transitions.get(0).values()) {
+            failures.set(child, 0);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+                int child = transition.getValue();
+                int failure = failures.get(state);
+                while (failure != 0 && !transitions.get(failure).containsKey(transition.getKey())) {
+                    failure = failures.get(failure);
+                }
+                Integer failureTarget = transitions.get(failure).get(transition.getKey());
+                failure = failureTarget == null ? 0 : failureTarget;
+                failures.set(child, failure);
+                outputs.get(child).addAll(outputs.get(failure));
+                queue.add(child);
+            }
+        }
+    }
+
+    private int addState() {
+        transitions.add(new HashMap<>());
+        failures.add(0);
+        outputs.add(new HashSet<>());
+        return transitions.size() - 1;
+    }
+
+    /**
+     * @param text The text to scan.
+     * @return All literals that occur (at least once) in the text.
+     */
+    Set<String> findPresent(String text) {
+        Set<String> present = new HashSet<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != 0) {
+                state = failures.get(state);
+                next = transitions.get(state).get(c);
+            }
+            state = next == null ? 0 : next;
+            present.addAll(outputs.get(state));
+        }
+        return present;
+    }
+
+}
@@ -27,7 +27,8 @@ import java.util.regex.Pattern;
  */
 public class NamedTokenParser extends TokenParser {
 
-    private final Pattern pattern;
+    // Only compiled when this parser is actually used.
+    private Pattern pattern = null;
 
     // --------------------------------------------
 
@@ -48,17 +49,22 @@ public class NamedTokenParser extends TokenParser {
             final String nRegex,
             final int prio) {
         super(nLogFormatToken, nValueName, nValueType, nCasts, nRegex, prio);
-
-        // Compile the regular expression
-        pattern = Pattern.compile(getLogFormatToken());
     }
 
     // --------------------------------------------
 
+    @Override
+    public String getRequiredLiteral() {
+        return getLiteralPrefix(getLogFormatToken());
+    }
+
     @Override
     public Token getNextToken(final String logFormat, final int startOffset) {
-        final Matcher matcher = pattern.matcher(logFormat.substring(startOffset));
-        if (!matcher.find()) {
+        if (pattern == null) {
+            pattern = Pattern.compile(getLogFormatToken());
+        }
+        final Matcher matcher = pattern.matcher(logFormat);
+        if (!matcher.find(startOffset)) {
             return null;
         }
 
@@ -75,7 +81,7 @@ public class NamedTokenParser extends TokenParser {
 
         Token token = new Token(
                 getRegex(),
-                startOffset + start, end - start,
+                start, end - start,
                 getPrio());
 
         for (TokenOutputField tokenOutputField: getOutputFields()) {
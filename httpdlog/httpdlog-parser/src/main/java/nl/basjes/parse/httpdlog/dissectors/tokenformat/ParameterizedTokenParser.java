@@ -34,7 +34,8 @@ import java.util.regex.Pattern;
  */
 public class ParameterizedTokenParser extends TokenParser {
 
-    private final Pattern pattern;
+    // Only compiled when this parser is actually used.
+    private Pattern pattern = null;
 
     // --------------------------------------------
 
@@ -47,9 +48,6 @@ public class ParameterizedTokenParser extends TokenParser {
             final int prio,
             final Dissector customDissector) {
         super(nLogFormatToken, nValueName, nValueType, nCasts, nRegex, prio, customDissector);
-
-        // Compile the regular expression
-        pattern = Pattern.compile(getLogFormatToken());
     }
 
     @Override
@@ -70,10 +68,18 @@ public class ParameterizedTokenParser extends TokenParser {
 
     // --------------------------------------------
 
+    @Override
+    public String getRequiredLiteral() {
+        return getLiteralPrefix(getLogFormatToken());
+    }
+
     @Override
     public Token getNextToken(final String logFormat, final int startOffset) {
-        final Matcher matcher = pattern.matcher(logFormat.substring(startOffset));
-        if (!matcher.find()) {
+        if (pattern == null) {
+            pattern = Pattern.compile(getLogFormatToken());
+        }
+        final Matcher matcher = pattern.matcher(logFormat);
+        if (!matcher.find(startOffset)) {
             return null;
         }
 
@@ -91,7 +97,7 @@ public class ParameterizedTokenParser extends TokenParser {
 
         Token token = new Token(
             getRegex(),
-            startOffset + start, end - start,
+            start, end - start,
             getPrio());
 
         for (TokenOutputField tokenOutputField: getOutputFields()) {
@@ -0,0 +1,217 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.dissectors.tokenformat;
+
+/**
+ * A very limited (and conservative) analysis of the regular expressions used by the tokens.
+ * Everything that is not understood is assumed to be able to match any character.
+ */
+final class RegexCharacters {
+
+    private RegexCharacters() {
+    }
+
+    /**
+     * Determine if the provided regex can possibly match a string that contains the provided character.
+     * @param regex The regex to analyze
+     * @param c The character to look for
+     * @return false only if it is certain that the character can never be part of a match.
+     */
+    static boolean canMatch(String regex, char c) {
+        int i = 0;
+        while (i < regex.length()) {
+            char current = regex.charAt(i);
+            switch (current) {
+                case '\\':
+                    if (i + 1 == regex.length()) {
+                        return true;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        Boolean matches = matchesClassEscape(escaped, c);
+                        if (matches == null || matches) {
+                            return true;
+                        }
+                    } else if (escaped == c) {
+                        return true;
+                    }
+                    i += 2;
+                    break;
+
+                case '[':
+                    int end = findEndOfClass(regex, i);
+                    if (end == -1 || characterClassMatches(regex.substring(i + 1, end), c)) {
+                        return true;
+                    }
+                    i = end + 1;
+                    break;
+
+                case '(':
+                    if (regex.startsWith("(?:", i)) {
+                        i += 3;
+                    } else if (regex.startsWith("(?", i)) {
+                        return true; // Lookaround, flags, named groups, ... : Unsure
+                    } else {
+                        i++;
+                    }
+                    break;
+
+                case '{':
+                    int close = regex.indexOf('}', i);
+                    if (close == -1) {
+                        return true;
+                    }
+                    i = close + 1;
+                    break;
+
+                case ')':
+                case '|':
+                case '*':
+                case '+':
+                case '?':
+                case '^':
+                case '$':
+                    i++;
+                    break;
+
+                case '.':
+                    return true;
+
+                default:
+                    if (current == c) {
+                        return true;
+                    }
+                    i++;
+                    break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The character in a form that can safely be put inside a character class.
+     */
+    static String quoteInClass(char c) {
+        if (Character.isLetterOrDigit(c) || c == ' ') {
+            return String.valueOf(c);
+        }
+        return "\\" + c;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * @return true/false if the escaped letter is a known class of characters, null if unknown.
+     */
+    private static Boolean matchesClassEscape(char escaped, char c) {
+        switch (escaped) {
+            case 'd': return isDigit(c);
+            case 'D': return !isDigit(c);
+            case 'w': return isWord(c);
+            case 'W': return !isWord(c);
+            case 's': return isSpace(c);
+            case 'S': return !isSpace(c);
+            default:  return null;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWord(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isSpace(char c) {
+        return " \t\n\u000B\f\r".indexOf(c) != -1;
+    }
+
+    private static int findEndOfClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            return -1; // A literal ']' as the first character: Too complex
+        }
+        while (i < regex.length()) {
+            char current = regex.charAt(i);
+            if (current == '\\') {
+                i += 2;
+                continue;
+            }
+            if (current == '[') {
+                return -1; // Nested classes: Too complex
+            }
+            if (current == ']') {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean characterClassMatches(String content, char c) {
+        boolean negated = content.startsWith("^");
+        int i = negated ? 1 : 0;
+        if (content.contains("&&")) {
+            return true; // Intersections: Too complex
+        }
+
+        boolean matches = false;
+        while (i < content.length()) {
+            char first = content.charAt(i);
+            if (first == '\\') {
+                if (i + 1 == content.length()) {
+                    return true;
+                }
+                char escaped = content.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    Boolean classMatches = matchesClassEscape(escaped, c);
+                    if (classMatches == null) {
+                        return true;
+                    }
+                    matches |= classMatches;
+                    i += 2;
+                    continue;
+                }
+                first = escaped;
+                i++;
+            }
+            i++;
+
+            // Is this the start of a range?
+            if (i + 1 < content.length() && content.charAt(i) == '-') {
+                char last = content.charAt(i + 1);
+                if (last == '\\') {
+                    if (i + 2 == content.length() || Character.isLetterOrDigit(content.charAt(i + 2))) {
+                        return true;
+                    }
+                    last = content.charAt(i + 2);
+                    i++;
+                }
+                i += 2;
+                matches |= c >= first && c <= last;
+            } else {
+                matches |= c == first;
+            }
+        }
+        return negated != matches;
+    }
+
+}
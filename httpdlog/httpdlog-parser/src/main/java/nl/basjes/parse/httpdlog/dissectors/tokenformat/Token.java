@@ -86,6 +86,13 @@ public class Token implements Serializable {
         return regex;
     }
 
+    /**
+     * @return false only if the regex of this token can never match this character.
+     */
+    public boolean canContain(char c) {
+        return RegexCharacters.canMatch(regex, c);
+    }
+
     public int getStartPos() {
         return startPos;
     }
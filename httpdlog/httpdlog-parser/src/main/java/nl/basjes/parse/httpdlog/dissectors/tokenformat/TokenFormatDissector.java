@@ -21,11 +21,13 @@ import nl.basjes.parse.core.Dissector;
 import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.ParsedField;
 import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.SharedInstanceCache;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -44,14 +46,31 @@ public abstract class TokenFormatDissector extends Dissector {
 
     private static final Logger LOG = LoggerFactory.getLogger(TokenFormatDissector.class);
 
+    /** The error code of the failure if the line does not match the LogFormat. */
+    public static final String LOGFORMAT_MISMATCH = "LOGFORMAT_MISMATCH";
+    /** The error code of the failure if the dissector was not prepared. */
+    public static final String DISSECTOR_UNUSABLE = "DISSECTOR_UNUSABLE";
+
+    // The compiled regexes are immutable so all dissectors with the same regex share a single instance.
+    private static final SharedInstanceCache<String, Pattern> LOGFORMAT_PATTERNS =
+        new SharedInstanceCache<>(10000, Pattern::compile);
+
     private String       logFormat           = null;
     private List<Token>  logFormatUsedTokens = null;
     private String       logFormatRegEx      = null;
     private Pattern      logFormatPattern    = null;
     private boolean      isUsable            = false;
 
+    // The length of the regex up to and including each of the logFormatTokens.
+    private int[]        tokenRegexEnds      = null;
+    // Only created if the mismatch position of a bad line is determined.
+    private Pattern[]    tokenPrefixPatterns = null;
+
     private List<Token>  logFormatTokens;
 
+    // If false the tokens that are not needed are replaced by a cheaper pattern (less validation of the line).
+    private boolean      strictLineValidation = true;
+
     private List<String> outputTypes;
 
     // --------------------------------------------
@@ -117,6 +136,7 @@ public abstract class TokenFormatDissector extends Dissector {
     protected void initializeNewInstance(Dissector newInstance) {
         if (newInstance instanceof TokenFormatDissector) {
             ((TokenFormatDissector)newInstance).setLogFormat(logFormat);
+            ((TokenFormatDissector)newInstance).setStrictLineValidation(strictLineValidation);
         } else {
             LOG.error("============================== WTF == {}", newInstance.getClass().getCanonicalName());
         }
@@ -148,6 +168,32 @@ public abstract class TokenFormatDissector extends Dissector {
         return logFormat;
     }
 
+    /**
+     * @return All tokens of the LogFormat (including the fixed strings between them) in the order of the LogFormat.
+     */
+    public List<Token> getLogFormatTokens() {
+        if (logFormatTokens == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(logFormatTokens);
+    }
+
+    /**
+     * By default (strict line validation) all tokens are always fully validated.
+     * Without strict line validation the tokens that do not produce any of the requested fields are (only where this
+     * provably does not change how the line is split into the tokens) replaced by a simple 'skip until the next
+     * separator' pattern. As a consequence these parts of the line are no longer validated so lines that would
+     * be rejected with strict validation can be accepted.
+     */
+    public TokenFormatDissector setStrictLineValidation(boolean newStrictLineValidation) {
+        this.strictLineValidation = newStrictLineValidation;
+        return this;
+    }
+
+    public boolean isStrictLineValidation() {
+        return strictLineValidation;
+    }
+
     @SuppressWarnings("unused") // Useful for debugging purposes
     public String getLogFormatRegEx() {
         return logFormatRegEx;
@@ -183,35 +229,86 @@ public abstract class TokenFormatDissector extends Dissector {
         final StringBuilder regex = new StringBuilder(logFormatTokens.size() * 16);
 
         logFormatUsedTokens = new ArrayList<>();
+        tokenRegexEnds = new int[logFormatTokens.size()];
+        tokenPrefixPatterns = null;
+
+        // True as long as the start of the current token only depends on the line and not on the token regexes.
+        boolean fixedStart = true;
 
         regex.append('^'); // Link to start of the line
-        for (final Token token : logFormatTokens) {
+        for (int index = 0; index < logFormatTokens.size(); index++) {
+            final Token token = logFormatTokens.get(index);
             token.tokenWasUsed();
             if (token instanceof FixedStringToken) {
                 // Only insert the fixed part
                 regex.append(Pattern.quote(token.getRegex()));
-            } else if (token.canProduceADesiredFieldName(requestedFields)) {
+                tokenRegexEnds[index] = regex.length();
+                continue;
+            }
+
+            final Character separator = getEndingSeparator(index);
+            if (token.canProduceADesiredFieldName(requestedFields)) {
                 logFormatUsedTokens.add(token);
                 regex.append("(").append(token.getRegex()).append(")");
+            } else if (strictLineValidation || !fixedStart) {
+                regex.append("(?:").append(token.getRegex()).append(")");
+            } else if (index + 1 == logFormatTokens.size()) {
+                // The last token simply runs until the end of the line.
+                regex.append("(?:.*)");
+            } else if (separator != null) {
+                regex.append("(?:[^").append(RegexCharacters.quoteInClass(separator)).append("]*)");
             } else {
                 regex.append("(?:").append(token.getRegex()).append(")");
             }
+            tokenRegexEnds[index] = regex.length();
 
+            // If this token can contain its separator then where it ends (and where the next one starts)
+            // depends on what the following tokens accept. From here on everything must be validated.
+            fixedStart = fixedStart && separator != null;
         }
         regex.append('$'); // Link to end of the line
+        if (tokenRegexEnds.length > 0) {
+            // The last token is only matched if it runs until the end of the line.
+            tokenRegexEnds[tokenRegexEnds.length - 1] = regex.length();
+        }
 
         logFormatRegEx = regex.toString();
         LOG.debug("Source logformat : {}", logFormat);
         LOG.debug("Used regex       : {}", logFormatRegEx);
 
-        // Now we compile this expression ONLY ONCE!
-        logFormatPattern = Pattern.compile(logFormatRegEx);
+        // Now we compile this expression ONLY ONCE! (and share it with all identically configured dissectors)
+        logFormatPattern = LOGFORMAT_PATTERNS.get(logFormatRegEx);
 
         isUsable = true; // Ready!
     }
 
     // --------------------------------------------
 
+    /**
+     * A token that is not needed only has to be skipped.
+     * If the token can never contain the first character of the separator that follows it then it always ends right
+     * before the first occurrence of that character after the start of the token.
+     * So if the start of the token is fixed (i.e. all tokens before it also end this way) then skipping all other
+     * characters splits the line in exactly the same way as the full regex of the token.
+     * @return The first character of the separator after the token, or null if the token can contain it.
+     */
+    private Character getEndingSeparator(int index) {
+        if (index + 1 == logFormatTokens.size()) {
+            return null;
+        }
+        final Token token = logFormatTokens.get(index);
+        final Token nextToken = logFormatTokens.get(index + 1);
+        if (nextToken instanceof FixedStringToken && !nextToken.getRegex().isEmpty()) {
+            final char separator = nextToken.getRegex().charAt(0);
+            if (!RegexCharacters.canMatch(token.getRegex(), separator)) {
+                return separator;
+            }
+        }
+        return null;
+    }
+
+    // --------------------------------------------
+
     public void setInputType(String newInputType) {
         this.inputType = newInputType;
     }
@@ -238,8 +335,19 @@ public abstract class TokenFormatDissector extends Dissector {
 
     @Override
     public void dissect(final Parsable<?> parsable, final String inputname) throws DissectionFailure {
+        if (!dissectIfMatches(parsable, inputname)) {
+            throw createMismatchFailure(parsable, inputname);
+        }
+    }
+
+    /**
+     * Dissect the line only if it matches the LogFormat.
+     * This is the cheap way to try a LogFormat: a line that does not match does not create a failure.
+     * @return true if the line matched (and was dissected), false if nothing was done.
+     */
+    public boolean dissectIfMatches(final Parsable<?> parsable, final String inputname) throws DissectionFailure {
         if (!isUsable) {
-            throw new DissectionFailure("Dissector in unusable state");
+            throw new DissectionFailure(DISSECTOR_UNUSABLE, -1, "Dissector in unusable state");
         }
 
         final ParsedField line = parsable.getParsableField(inputType, inputname);
@@ -248,27 +356,89 @@ public abstract class TokenFormatDissector extends Dissector {
         final Matcher matcher = logFormatPattern.matcher(line.getValue().getString());
 
         // Is it all as expected?
-        final boolean matches = matcher.find();
-
-        if (matches) {
-            for (int i = 1; i <= matcher.groupCount(); i++) {
-                String matchedStr = matcher.group(i);
-                Token token = logFormatUsedTokens.get(i-1);
-                for (TokenOutputField tokenOutputField: token.getOutputFields()) {
-                    final String matchedName = tokenOutputField.getName();
-                    final String matchedType = tokenOutputField.getType();
-
-                    parsable.addDissection(inputname, matchedType, matchedName,
-                        decodeExtractedValue(matchedName, matchedStr));
-                }
+        if (!matcher.find()) {
+            return false;
+        }
+
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            String matchedStr = matcher.group(i);
+            Token token = logFormatUsedTokens.get(i-1);
+            for (TokenOutputField tokenOutputField: token.getOutputFields()) {
+                final String matchedName = tokenOutputField.getName();
+                final String matchedType = tokenOutputField.getType();
+
+                parsable.addDissection(inputname, matchedType, matchedName,
+                    decodeExtractedValue(matchedName, matchedStr));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the failure for a line that does not match the LogFormat.
+     * This failure has no stack trace and the position is the index of the first token of the LogFormat that
+     * could not be matched (the number of tokens if the line continues after the last token).
+     * The position and the message are only determined if they are retrieved from the failure.
+     */
+    public DissectionFailure createMismatchFailure(final Parsable<?> parsable, final String inputname) {
+        final String line = parsable.getParsableField(inputType, inputname).getValue().getString();
+        return DissectionFailure.stackless(LOGFORMAT_MISMATCH,
+            () -> findMismatchPosition(line),
+            position -> createMismatchMessage(line, position));
+    }
+
+    private String createMismatchMessage(final String line, final int position) {
+        final String where;
+        if (position < logFormatTokens.size()) {
+            final Token token = logFormatTokens.get(position);
+            if (token.getOutputFields().isEmpty()) {
+                where = "at token " + position + " (the fixed text \"" + token.getRegex() + "\")";
+            } else {
+                final TokenOutputField field = token.getOutputFields().get(0);
+                where = "at token " + position + " (" + field.getType() + ':' + field.getName() + ")";
             }
         } else {
-            throw new DissectionFailure("The input line does not match the specified log format." +
-                    "Line     : " + line.getValue() + "\n" +
-                    "LogFormat: " + logFormat       + "\n" +
-                    "RegEx    : " + logFormatRegEx);
+            where = "after the last token";
+        }
+        return "The input line does not match the specified log format " + where + ".\n" +
+            "Line     : " + line + "\n" +
+            "LogFormat: " + logFormat;
+    }
+
+    /**
+     * Determines how much of the line matches the LogFormat using a binary search over the regexes of
+     * increasingly longer parts of the LogFormat. This is only done for lines that do not match.
+     * @return The index of the first token that could not be matched or the number of tokens if all tokens
+     * matched but the line does not end there.
+     */
+    public int findMismatchPosition(final String line) {
+        if (!isUsable || line == null) {
+            return 0;
+        }
+        // A failure may determine its position in a different thread so only a local reference is used.
+        Pattern[] prefixPatterns = tokenPrefixPatterns;
+        if (prefixPatterns == null) {
+            prefixPatterns = new Pattern[logFormatTokens.size()];
+            tokenPrefixPatterns = prefixPatterns;
         }
 
+        // Find the number of tokens (from the start of the LogFormat) that can be matched.
+        int low = 0;
+        int high = logFormatTokens.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            Pattern prefixPattern = prefixPatterns[middle];
+            if (prefixPattern == null) {
+                prefixPattern = Pattern.compile(logFormatRegEx.substring(0, tokenRegexEnds[middle]));
+                prefixPatterns[middle] = prefixPattern;
+            }
+            if (prefixPattern.matcher(line).lookingAt()) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
     }
 
     // --------------------------------------------
@@ -298,8 +468,20 @@ public abstract class TokenFormatDissector extends Dissector {
         // because we must handle these as "case insensitive"
         String cleanedTokenLogFormat = cleanupLogFormat(tokenLogFormat);
 
+        // In a single scan we determine which of the required literals of the TokenParsers are present.
+        // Only the TokenParsers that can possibly match are asked to find their tokens.
+        final Set<String> requiredLiterals = new HashSet<>(tokenParsers.size() * 2);
+        for (TokenParser tokenParser : tokenParsers) {
+            requiredLiterals.add(tokenParser.getRequiredLiteral());
+        }
+        final Set<String> presentLiterals = new MultiLiteralMatcher(requiredLiterals).findPresent(cleanedTokenLogFormat);
+
         // Now we let all tokens figure out if they are present in here
         for (TokenParser tokenParser : tokenParsers) {
+            String requiredLiteral = tokenParser.getRequiredLiteral();
+            if (requiredLiteral != null && !requiredLiteral.isEmpty() && !presentLiterals.contains(requiredLiteral)) {
+                continue; // This one cannot match anything
+            }
             List<Token> newTokens = tokenParser.getTokens(cleanedTokenLogFormat);
             if (newTokens != null) {
                 tokens.addAll(newTokens);
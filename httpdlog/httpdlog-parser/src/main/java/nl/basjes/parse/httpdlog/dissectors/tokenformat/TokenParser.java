@@ -172,6 +172,46 @@ public class TokenParser implements Serializable {
         return customDissector;
     }
 
+    /**
+     * A literal that is always present in the LogFormat if this TokenParser can find a token.
+     * This is used to skip the TokenParsers that cannot produce any token without calling them.
+     * @return The literal, an empty String means the TokenParser must always be called.
+     */
+    public String getRequiredLiteral() {
+        return logFormatToken;
+    }
+
+    /**
+     * @param regex A regular expression.
+     * @return The literal text every match of the regex must start with (possibly empty).
+     */
+    static String getLiteralPrefix(final String regex) {
+        if (regex.indexOf('|') != -1) {
+            return ""; // With alternatives there is no guaranteed prefix
+        }
+        final StringBuilder prefix = new StringBuilder(regex.length());
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next = i + 1;
+            if (c == '\\') {
+                if (next >= regex.length() || Character.isLetterOrDigit(regex.charAt(next))) {
+                    break; // Something like \d or \Q
+                }
+                c = regex.charAt(next);
+                next++;
+            } else if (".[]{}()*+?^$".indexOf(c) != -1) {
+                break;
+            }
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) != -1) {
+                break; // This character is optional
+            }
+            prefix.append(c);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
     // --------------------------------------------
 
     public Token getNextToken(final String logFormat, final int startOffset) {
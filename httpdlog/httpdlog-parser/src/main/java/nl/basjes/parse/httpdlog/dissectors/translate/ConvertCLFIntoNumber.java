@@ -16,9 +16,7 @@
  */
 package nl.basjes.parse.httpdlog.dissectors.translate;
 
-import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.Value;
-import nl.basjes.parse.core.exceptions.DissectionFailure;
 
 public class ConvertCLFIntoNumber extends TypeConvertBaseDissector {
     public ConvertCLFIntoNumber() {
@@ -30,12 +28,11 @@ public class ConvertCLFIntoNumber extends TypeConvertBaseDissector {
     }
 
     @Override
-    public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+    public Value convert(Value value) {
         String stringValue = value.getString();
         if (stringValue == null || "-".equals(stringValue)) {
-            parsable.addDissection(inputname, outputType, "", 0);
-        } else {
-            parsable.addDissection(inputname, outputType, "", value);
+            return new Value(0L);
         }
+        return value;
     }
 }
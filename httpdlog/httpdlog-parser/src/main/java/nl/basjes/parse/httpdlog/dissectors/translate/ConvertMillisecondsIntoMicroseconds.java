@@ -16,9 +16,7 @@
  */
 package nl.basjes.parse.httpdlog.dissectors.translate;
 
-import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.Value;
-import nl.basjes.parse.core.exceptions.DissectionFailure;
 
 public class ConvertMillisecondsIntoMicroseconds extends TypeConvertBaseDissector {
     public ConvertMillisecondsIntoMicroseconds() {
@@ -30,7 +28,7 @@ public class ConvertMillisecondsIntoMicroseconds extends TypeConvertBaseDissecto
     }
 
     @Override
-    public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
-        parsable.addDissection(inputname, outputType, "", value.getLong() * 1000);
+    public Value convert(Value value) {
+        return new Value(value.getLong() * 1000);
     }
 }
@@ -16,9 +16,7 @@
  */
 package nl.basjes.parse.httpdlog.dissectors.translate;
 
-import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.Value;
-import nl.basjes.parse.core.exceptions.DissectionFailure;
 
 public class ConvertNumberIntoCLF extends TypeConvertBaseDissector {
     public ConvertNumberIntoCLF() {
@@ -30,11 +28,10 @@ public class ConvertNumberIntoCLF extends TypeConvertBaseDissector {
     }
 
     @Override
-    public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+    public Value convert(Value value) {
         if ("0".equals(value.getString())) {
-            parsable.addDissection(inputname, outputType, "", (String)null);
-        } else {
-            parsable.addDissection(inputname, outputType, "", value);
+            return new Value((String)null);
         }
+        return value;
     }
 }
@@ -16,9 +16,7 @@
  */
 package nl.basjes.parse.httpdlog.dissectors.translate;
 
-import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.Value;
-import nl.basjes.parse.core.exceptions.DissectionFailure;
 
 public class ConvertSecondsWithMillisStringDissector extends TypeConvertBaseDissector {
     public ConvertSecondsWithMillisStringDissector() {
@@ -30,13 +28,12 @@ public class ConvertSecondsWithMillisStringDissector extends TypeConvertBaseDiss
     }
 
     @Override
-    public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+    public Value convert(Value value) {
         String[] epochStrings = value.getString().split("\\.", 2);
         Long seconds =  Long.parseLong(epochStrings[0]);
         Long milliseconds =  Long.parseLong(epochStrings[1]);
         Long epoch = seconds * 1000 + milliseconds;
-
-        parsable.addDissection(inputname, outputType, "", epoch);
+        return new Value(epoch);
     }
 }
 
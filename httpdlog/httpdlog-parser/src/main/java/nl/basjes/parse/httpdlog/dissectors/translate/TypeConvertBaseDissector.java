@@ -18,13 +18,17 @@ package nl.basjes.parse.httpdlog.dissectors.translate;
 
 import nl.basjes.parse.core.Casts;
 import nl.basjes.parse.core.Dissector;
+import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.SimpleDissector;
+import nl.basjes.parse.core.Value;
+import nl.basjes.parse.core.ValueConverter;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
 import nl.basjes.parse.core.exceptions.InvalidDissectorException;
 
 import java.util.EnumSet;
 import java.util.HashMap;
 
-public abstract class TypeConvertBaseDissector extends SimpleDissector {
+public abstract class TypeConvertBaseDissector extends SimpleDissector implements ValueConverter {
     protected String inputType;
     protected String outputType;
     public TypeConvertBaseDissector() {
@@ -49,4 +53,12 @@ public abstract class TypeConvertBaseDissector extends SimpleDissector {
         ((TypeConvertBaseDissector)newInstance).inputType = inputType;
         ((TypeConvertBaseDissector)newInstance).outputType = outputType;
     }
+
+    @Override
+    public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+        Value converted = convert(value);
+        if (converted != null) {
+            parsable.addDissection(inputname, outputType, "", converted);
+        }
+    }
 }
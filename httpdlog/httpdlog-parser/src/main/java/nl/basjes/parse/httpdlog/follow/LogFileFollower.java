@@ -0,0 +1,350 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.follow;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Follows a live logfile (like 'tail -F') and parses only the lines that have been appended since the last poll.
+ * <ul>
+ * <li>The position in the file is tracked as a byte offset. Only complete lines are parsed, a line that is
+ * still being written is retained until its newline has arrived.</li>
+ * <li>A logrotate that renames the file (the file key (inode) of the path changes) is handled by first reading the
+ * remainder of the old file and then continuing at the start of the new file.</li>
+ * <li>A logrotate with copytruncate (the file becomes shorter than our offset) is handled by continuing at the
+ * start of the file.</li>
+ * <li>If a checkpoint file is set the file key and offset are stored there after every poll, so a restarted
+ * follower continues where the previous one stopped.</li>
+ * </ul>
+ * Waiting for new data is done with a {@link WatchService} on the directory of the file, with a poll interval
+ * as fallback for filesystems (and platforms) where the WatchService is slow or does not see the changes.
+ * @param <RECORD> The type of the records produced by the parser.
+ */
+public class LogFileFollower<RECORD> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogFileFollower.class);
+
+    private static final String CHECKPOINT_FILE_KEY = "fileKey";
+    private static final String CHECKPOINT_OFFSET   = "offset";
+
+    private final Parser<RECORD>    parser;
+    private final Path              file;
+    private Path                    checkpointFile  = null;
+    private boolean                 startAtEnd      = false;
+    private long                    pollInterval    = 1000;
+
+    private FileChannel             channel         = null;
+    private Object                  fileKey         = null;
+    // The offset of the first byte that has not been parsed yet (always the start of a line).
+    private long                    offset          = 0;
+
+    private final ByteBuffer        buffer          = ByteBuffer.allocate(64 * 1024);
+    // The bytes (after the offset) of the line that has not been completed yet.
+    private byte[]                  pending         = new byte[1024];
+    private int                     pendingLength   = 0;
+
+    private long                    goodLines       = 0;
+    private long                    badLines        = 0;
+    private long                    rotations       = 0;
+    private volatile boolean        running         = false;
+    private boolean                 closed          = false;
+
+    public LogFileFollower(Parser<RECORD> parser, Path file) {
+        this.parser = parser;
+        this.file = file.toAbsolutePath();
+    }
+
+    /**
+     * Store the position in this file after every poll and resume from there when starting.
+     */
+    public LogFileFollower<RECORD> setCheckpointFile(Path newCheckpointFile) {
+        this.checkpointFile = newCheckpointFile;
+        return this;
+    }
+
+    /**
+     * Without a (valid) checkpoint start at the end of the file instead of at the start.
+     */
+    public LogFileFollower<RECORD> startAtEnd() {
+        this.startAtEnd = true;
+        return this;
+    }
+
+    /**
+     * The maximum time (in milliseconds) {@link #follow(Consumer)} waits before checking the file again.
+     */
+    public LogFileFollower<RECORD> setPollInterval(long newPollInterval) {
+        this.pollInterval = newPollInterval;
+        return this;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getGoodLines() {
+        return goodLines;
+    }
+
+    public long getBadLines() {
+        return badLines;
+    }
+
+    public long getRotations() {
+        return rotations;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Parse all complete lines that have been appended since the previous poll.
+     * @param consumer Receives each of the parsed records (lines rejected by a filter are not passed on).
+     * @return The number of lines that were read.
+     */
+    public synchronized long poll(Consumer<RECORD> consumer) throws IOException, MissingDissectorsException, InvalidDissectorException {
+        if (closed) {
+            return 0;
+        }
+        if (channel == null && !open()) {
+            return 0; // The file does not exist (yet).
+        }
+
+        long lines = 0;
+        Object currentFileKey = getFileKey(file);
+
+        if (currentFileKey != null && !currentFileKey.equals(fileKey)) {
+            // The file was renamed (rotated) and a new one was created.
+            // The old file may have received some last lines.
+            lines += readAvailable(consumer);
+            if (pendingLength > 0) {
+                lines++;
+                emitLine(consumer); // The last line of the old file did not have a newline.
+            }
+            LOG.info("Logfile {} was rotated; continuing with the new file.", file);
+            channel.close();
+            channel = null;
+            rotations++;
+            offset = 0;
+            if (!open()) {
+                saveCheckpoint();
+                return lines;
+            }
+        } else if (channel.size() < offset + pendingLength) {
+            // The file was truncated (copytruncate).
+            LOG.info("Logfile {} was truncated; continuing at the start.", file);
+            rotations++;
+            offset = 0;
+            pendingLength = 0;
+        }
+
+        lines += readAvailable(consumer);
+        saveCheckpoint();
+        return lines;
+    }
+
+    /**
+     * Keep following the file until {@link #stop()} or {@link #close()} is called (or the thread is interrupted).
+     * @param consumer Receives each of the parsed records.
+     */
+    public void follow(Consumer<RECORD> consumer) throws IOException, MissingDissectorsException, InvalidDissectorException {
+        running = true;
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            while (running) {
+                poll(consumer);
+                WatchKey key = watcher.poll(pollInterval, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents(); // We only need to know something has changed.
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Make {@link #follow(Consumer)} return (after at most the poll interval).
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        stop();
+        closed = true;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // --------------------------------------------
+
+    private static Object getFileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        Object previousFileKey = fileKey;
+        fileKey = getFileKey(file);
+        pendingLength = 0;
+
+        if (previousFileKey == null) {
+            // First time: determine where to start
+            offset = startAtEnd ? channel.size() : 0;
+            Properties checkpoint = loadCheckpoint();
+            if (checkpoint != null) {
+                long checkpointOffset = Long.parseLong(checkpoint.getProperty(CHECKPOINT_OFFSET, "0"));
+                if (String.valueOf(fileKey).equals(checkpoint.getProperty(CHECKPOINT_FILE_KEY)) &&
+                    checkpointOffset <= channel.size()) {
+                    offset = checkpointOffset;
+                    LOG.info("Resuming {} at offset {}", file, offset);
+                } else {
+                    LOG.warn("The checkpoint does not match {} (rotated while not running?); ignoring it.", file);
+                }
+            }
+        }
+        return true;
+    }
+
+    private long readAvailable(Consumer<RECORD> consumer)
+        throws IOException, MissingDissectorsException, InvalidDissectorException {
+        long lines = 0;
+        int read;
+        while ((read = channel.read(buffer, offset + pendingLength)) > 0) {
+            byte[] data = buffer.array();
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (data[i] == '\n') {
+                    appendPending(data, start, i - start);
+                    lines++;
+                    emitLine(consumer);
+                    offset++; // The newline
+                    start = i + 1;
+                }
+            }
+            appendPending(data, start, read - start);
+            buffer.clear();
+        }
+        return lines;
+    }
+
+    private void appendPending(byte[] data, int start, int length) {
+        if (pendingLength + length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+        }
+        System.arraycopy(data, start, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private void emitLine(Consumer<RECORD> consumer) throws MissingDissectorsException, InvalidDissectorException {
+        int length = pendingLength;
+        if (length > 0 && pending[length - 1] == '\r') {
+            length--;
+        }
+        String line = new String(pending, 0, length, StandardCharsets.UTF_8);
+        offset += pendingLength;
+        pendingLength = 0;
+
+        try {
+            RECORD record = parser.parse(line);
+            goodLines++;
+            if (record != null) {
+                consumer.accept(record);
+            }
+        } catch (DissectionFailure e) {
+            badLines++;
+            LOG.debug("Unable to parse line at offset {} of {}: {}", offset, file, e.getMessage());
+        }
+    }
+
+    // --------------------------------------------
+
+    private Properties loadCheckpoint() throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        }
+        return checkpoint;
+    }
+
+    private void saveCheckpoint() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_FILE_KEY, String.valueOf(fileKey));
+        checkpoint.setProperty(CHECKPOINT_OFFSET, Long.toString(offset));
+
+        // Write and rename so a crash never leaves a half written checkpoint.
+        Path tmpFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpFile)) {
+            checkpoint.store(out, "Checkpoint of " + file);
+        }
+        try {
+            Files.move(tmpFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
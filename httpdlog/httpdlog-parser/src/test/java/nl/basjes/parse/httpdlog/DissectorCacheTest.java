@@ -0,0 +1,124 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.DissectorCache;
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.httpdlog.dissectors.HttpFirstLineDissector;
+import nl.basjes.parse.httpdlog.dissectors.HttpUriDissector;
+import nl.basjes.parse.httpdlog.dissectors.QueryStringFieldDissector;
+import nl.basjes.parse.httpdlog.dissectors.RequestCookieListDissector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DissectorCacheTest {
+
+    private static final String LOG_FORMAT = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{Cookie}i\"";
+
+    private static final String[] FIELDS = {
+        "HTTP.METHOD:request.firstline.method",
+        "HTTP.PATH:request.firstline.uri.path",
+        "STRING:request.firstline.uri.query.q",
+        "HTTP.HOST:request.referer.host",
+        "STRING:request.referer.query.*",
+        "HTTP.COOKIE:request.cookies.session",
+        "BYTES:response.body.bytes",
+    };
+
+    private List<String> createLines() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lines.add("10.0.0." + (i % 7) + " - - [31/Dec/2012:23:00:44 -0700] " +
+                "\"GET /search?q=" + (i % 3) + " HTTP/1.1\" 200 " + (i % 2 == 0 ? "-" : Integer.toString(i)) + " " +
+                "\"http://www.example.com/page" + (i % 4) + "?from=" + (i % 5) + "\" " +
+                "\"session=" + (i % 6) + "; other=x\"");
+        }
+        return lines;
+    }
+
+    private List<Map<String, String>> parseAll(Parser<Object> parser, List<String> lines) throws Exception {
+        List<Map<String, String>> results = new ArrayList<>();
+        for (String line : lines) {
+            final Map<String, String> result = new TreeMap<>();
+            parser.parse(line, new FieldVisitor() {
+                @Override
+                public void visitString(String field, String value) {
+                    result.put(field, value);
+                }
+
+                @Override
+                public void visitLong(String field, long value) {
+                    result.put(field, Long.toString(value));
+                }
+
+                @Override
+                public void visitDouble(String field, double value) {
+                    result.put(field, Double.toString(value));
+                }
+
+                @Override
+                public void visitNull(String field) {
+                    result.put(field, null);
+                }
+            });
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Test
+    public void testCachedSameAsUncached() throws Exception {
+        List<String> lines = createLines();
+
+        Parser<Object> uncached = new HttpdLoglineParser<>(Object.class, LOG_FORMAT)
+            .addVisitedFields(FIELDS);
+
+        Parser<Object> cached = new HttpdLoglineParser<>(Object.class, LOG_FORMAT)
+            .addVisitedFields(FIELDS)
+            .enableDissectorCache(HttpFirstLineDissector.class,      1000)
+            .enableDissectorCache(HttpUriDissector.class,            1000)
+            .enableDissectorCache(QueryStringFieldDissector.class,   1000)
+            .enableDissectorCache(RequestCookieListDissector.class,  1000);
+
+        assertEquals(parseAll(uncached, lines), parseAll(cached, lines));
+
+        Map<String, DissectorCache> caches = cached.getDissectorCaches();
+        assertTrue(caches.size() >= 4);
+
+        // 3 distinct first lines, 4 * 5 = 20 distinct referers and 6 distinct cookie headers
+        DissectorCache firstLine = caches.get("HTTP.FIRSTLINE:request.firstline --> " + HttpFirstLineDissector.class.getName());
+        assertEquals(3,  firstLine.getMisses());
+        assertEquals(97, firstLine.getHits());
+
+        DissectorCache referer = caches.get("HTTP.URI:request.referer --> " + HttpUriDissector.class.getName());
+        assertEquals(20, referer.getMisses());
+        assertEquals(80, referer.getHits());
+
+        DissectorCache cookies = caches.get("HTTP.COOKIES:request.cookies --> " + RequestCookieListDissector.class.getName());
+        assertEquals(6,  cookies.getMisses());
+        assertEquals(94, cookies.getHits());
+    }
+
+}
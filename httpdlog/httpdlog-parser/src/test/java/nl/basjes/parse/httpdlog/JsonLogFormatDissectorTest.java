@@ -0,0 +1,192 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.test.DissectorTester;
+import nl.basjes.parse.core.test.TestRecord;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenFormatDissector;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// CHECKSTYLE.OFF: LineLength
+public class JsonLogFormatDissectorTest {
+
+    // log_format json escape=json '...';
+    private static final String LOGFORMAT = "{" +
+        "\"time\":\"$time_iso8601\"," +
+        "\"remote_addr\":\"$remote_addr\"," +
+        "\"request\":{\"line\":\"$request\",\"length\":$request_length}," +
+        "\"status\":$status," +
+        "\"bytes\":$body_bytes_sent," +
+        "\"referer\":\"$http_referer\"," +
+        "\"agent\":\"$http_user_agent\"," +
+        "\"type\":\"access\"}";
+
+    @Test
+    public void testLooksLikeJson() {
+        assertTrue(JsonLogFormatDissector.looksLikeJsonFormat(LOGFORMAT));
+        assertTrue(JsonLogFormatDissector.looksLikeJsonFormat("{ \"host\" : \"%h\", \"bytes\" : %b }"));
+        // A value with more than a single token
+        assertFalse(JsonLogFormatDissector.looksLikeJsonFormat("{\"time\":\"[$time_local]\"}"));
+        // Not JSON
+        assertFalse(JsonLogFormatDissector.looksLikeJsonFormat("$remote_addr {$status}"));
+        assertFalse(JsonLogFormatDissector.looksLikeJsonFormat("{\"status\":$status"));
+        // No tokens at all
+        assertFalse(JsonLogFormatDissector.looksLikeJsonFormat("{\"status\":200}"));
+    }
+
+    @Test
+    public void testEscapedValues() {
+        String logLine = "{" +
+            "\"time\":\"2018-03-04T05:06:07+01:00\"," +
+            "\"remote_addr\":\"10.11.12.13\"," +
+            "\"request\":{\"line\":\"GET /foo?a=1\\u0026b=\\\"2\\\" HTTP/1.1\",\"length\":123}," +
+            "\"status\":404," +
+            "\"bytes\":1234," +
+            "\"referer\":\"\"," +
+            "\"agent\":\"Some \\\"quoted\\\" agent\\\\1.0\"," +
+            "\"type\":\"access\"}";
+
+        DissectorTester.create()
+            .withParser(new HttpdLoglineParser<>(TestRecord.class, LOGFORMAT))
+            .withInput(logLine)
+            .expect("IP:connection.client.host",              "10.11.12.13")
+            .expect("TIME.EPOCH:request.receive.time.epoch",  1520136367000L)
+            .expect("HTTP.FIRSTLINE:request.firstline",       "GET /foo?a=1&b=\"2\" HTTP/1.1")
+            .expect("HTTP.METHOD:request.firstline.method",   "GET")
+            .expect("HTTP.PATH:request.firstline.uri.path",   "/foo")
+            .expect("STRING:request.firstline.uri.query.a",   "1")
+            .expect("STRING:request.status.last",             "404")
+            .expect("BYTES:response.body.bytes",              1234L)
+            .expect("HTTP.USERAGENT:request.user-agent",      "Some \"quoted\" agent\\1.0")
+            .checkExpectations();
+    }
+
+    @Test
+    public void testKeyOrderAndUnknownKeys() {
+        // The "time", "bytes" and "referer" are missing which is only allowed with lax validation.
+        String logLine = "{ " +
+            "\"type\" : \"access\", " +
+            "\"extra\" : { \"list\" : [ 1, \"}\", { \"a\" : null } ], \"flag\" : true }, " +
+            "\"status\" : 200, " +
+            "\"remote_addr\" : \"10.0.0.1\", " +
+            "\"request\" : { \"length\" : 99, \"line\" : \"POST /bar HTTP/1.0\" }, " +
+            "\"agent\" : null " +
+            "}";
+
+        DissectorTester.create()
+            .withParser(new HttpdLoglineParser<>(TestRecord.class, "ENABLE LAX LINE VALIDATION\n" + LOGFORMAT))
+            .withInput(logLine)
+            .expect("IP:connection.client.host",              "10.0.0.1")
+            .expect("STRING:request.status.last",             "200")
+            .expect("HTTP.METHOD:request.firstline.method",   "POST")
+            .expect("HTTP.PATH:request.firstline.uri.path",   "/bar")
+            .expectNull("HTTP.USERAGENT:request.user-agent")
+            .expectAbsentString("HTTP.URI:request.referer")
+            .checkExpectations();
+    }
+
+    private static final String OTHER_LOGFORMAT =
+        "{\"client\":\"$remote_addr\",\"server\":\"$host\",\"method\":\"$request_method\",\"uri\":\"$request_uri\"}";
+
+    @Test
+    public void testTwoJsonFormats() throws Exception {
+        Parser<TestRecord> parser = new HttpdLoglineParser<>(TestRecord.class, LOGFORMAT + "\n" + OTHER_LOGFORMAT);
+
+        String accessLine = "{" +
+            "\"time\":\"2018-03-04T05:06:07+01:00\"," +
+            "\"remote_addr\":\"10.0.0.1\"," +
+            "\"request\":{\"line\":\"GET /foo HTTP/1.1\",\"length\":123}," +
+            "\"status\":200," +
+            "\"bytes\":1234," +
+            "\"referer\":\"-\"," +
+            "\"agent\":\"curl\"," +
+            "\"type\":\"access\"}";
+        String otherLine = "{\"uri\":\"/bar?x=1\",\"client\":\"10.0.0.2\",\"method\":\"PUT\",\"server\":\"example.com\"}";
+
+        // Both LogFormats are valid JSON so the keys decide which one matches.
+        for (int i = 0; i < 2; i++) {
+            DissectorTester.create()
+                .withParser(parser)
+                .withInput(accessLine)
+                .expect("IP:connection.client.host",              "10.0.0.1")
+                .expect("HTTP.METHOD:request.firstline.method",   "GET")
+                .expect("STRING:request.status.last",             "200")
+                .checkExpectations();
+
+            DissectorTester.create()
+                .withParser(parser)
+                .withInput(otherLine)
+                .expect("IP:connection.client.host",              "10.0.0.2")
+                .expect("HTTP.METHOD:request.firstline.method",   "PUT")
+                .expect("HTTP.URI:request.firstline.uri",         "/bar?x=1")
+                .expect("STRING:connection.server.name",          "example.com")
+                .checkExpectations();
+        }
+
+        // Valid JSON but not all keys of either LogFormat
+        for (String line : new String[]{"{}", "{\"client\":\"10.0.0.3\",\"method\":\"GET\",\"uri\":\"/\"}"}) {
+            try {
+                parser.parse(line);
+                fail("A line without all the keys of a LogFormat must fail: " + line);
+            } catch (DissectionFailure df) {
+                assertEquals(TokenFormatDissector.LOGFORMAT_MISMATCH, df.getErrorCode());
+            }
+        }
+    }
+
+    @Test
+    public void testStrictMissingKey() throws Exception {
+        Parser<TestRecord> parser = new HttpdLoglineParser<>(TestRecord.class, "ENABLE LAX LINE VALIDATION\n" + OTHER_LOGFORMAT)
+            .addParseTarget(TestRecord.class.getMethod("setStringValue", String.class, String.class), "IP:connection.client.host");
+
+        // Not strict: a missing key simply does not produce a value.
+        parser.parse("{\"client\":\"10.0.0.1\"}");
+
+        parser = new HttpdLoglineParser<>(TestRecord.class, OTHER_LOGFORMAT)
+            .addParseTarget(TestRecord.class.getMethod("setStringValue", String.class, String.class), "IP:connection.client.host");
+        try {
+            parser.parse("{\"client\":\"10.0.0.1\",\"method\":\"GET\",\"uri\":\"/\"}");
+            fail("With strict validation a missing key must fail");
+        } catch (DissectionFailure df) {
+            assertEquals(TokenFormatDissector.LOGFORMAT_MISMATCH, df.getErrorCode());
+            assertEquals(45, df.getPosition()); // The end of the object
+            assertTrue(df.getMessage(), df.getMessage().contains("\"server\""));
+        }
+    }
+
+    @Test
+    public void testBadLine() throws Exception {
+        Parser<TestRecord> parser = new HttpdLoglineParser<>(TestRecord.class, LOGFORMAT)
+            .addParseTarget(TestRecord.class.getMethod("setStringValue", String.class, String.class), "IP:connection.client.host");
+
+        try {
+            parser.parse("{\"remote_addr\":\"10.0.0.1\",\"status\":200 \"bytes\":1}");
+            fail("A line that is not a JSON object must fail");
+        } catch (DissectionFailure df) {
+            assertEquals(TokenFormatDissector.LOGFORMAT_MISMATCH, df.getErrorCode());
+            assertEquals(39, df.getPosition()); // The "bytes" key without a ',' before it
+        }
+    }
+
+}
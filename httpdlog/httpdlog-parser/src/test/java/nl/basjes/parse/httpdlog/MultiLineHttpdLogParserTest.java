@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.httpdlog;
 
+import nl.basjes.parse.core.DissectorMetrics;
 import nl.basjes.parse.core.Field;
 import nl.basjes.parse.core.Parser;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
@@ -84,6 +85,29 @@ public class MultiLineHttpdLogParserTest {
         validateLine2(parser);
     }
 
+    @Test
+    public void testLogFormatCounters() throws Exception {
+        Parser<TestRecord> parser = new HttpdLoglineParser<>(TestRecord.class, LOG_FORMAT_1 + '\n' + LOG_FORMAT_2)
+            .enableMetrics();
+
+        validateLine1(parser);
+        validateLine1(parser);
+        validateLine2(parser);
+        validateLine2(parser);
+        validateLine1(parser);
+
+        DissectorMetrics metrics = parser.getMetrics().getDissectors()
+            .get("HTTPLOGLINE: --> " + HttpdLogFormatDissector.class.getName());
+        assertEquals(5, metrics.getInvocations());
+        assertEquals(0, metrics.getFailures());
+
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(3L, (long) counters.get("LogFormat[0] matches"));
+        assertEquals(1L, (long) counters.get("LogFormat[0] misses"));
+        assertEquals(2L, (long) counters.get("LogFormat[1] matches"));
+        assertEquals(1L, (long) counters.get("LogFormat[1] misses"));
+    }
+
     private static final String LOG_FORMAT_1 = "%h %t \"%r\" %>s %b \"%{Referer}i\"";
     private static final String LINE_1 = "127.0.0.1 [31/Dec/2012:23:49:41 +0100] "
             + "\"GET /foo HTTP/1.1\" 200 "
@@ -0,0 +1,155 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.ParserRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParserRegistryTest {
+
+    private static Parser<Object> createParser(String logFormat, Set<String> fields) {
+        return new HttpdLoglineParser<>(Object.class, logFormat)
+            .addVisitedFields(new ArrayList<>(fields));
+    }
+
+    private static final List<String> FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "HTTP.PATH:request.firstline.uri.path");
+
+    private Map<String, String> parse(Parser<Object> parser, String line) throws Exception {
+        final Map<String, String> result = new TreeMap<>();
+        parser.parse(line, new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+                result.put(field, value);
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                result.put(field, Long.toString(value));
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+                result.put(field, Double.toString(value));
+            }
+        });
+        return result;
+    }
+
+    private static final String COMMON = "%h %l %u %t \"%r\" %>s %b";
+    private static final String COMBINED = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+
+    // Parse a line of this customer with a parser from the registry.
+    private void parseAndCheck(ParserRegistry<Object> registry, int customer, int request) throws Exception {
+        String line = "10.0.0." + customer + " - - [31/Dec/2012:23:00:44 -0700] " +
+            "\"GET /page" + customer + "/" + request + " HTTP/1.1\" 200 1234";
+        if (customer % 2 == 1) {
+            line += " \"-\" \"Mozilla\"";
+        }
+        Parser<Object> parser = registry.borrowParser(customer % 2 == 0 ? COMMON : COMBINED, FIELDS);
+        Map<String, String> result;
+        try {
+            result = parse(parser, line);
+        } finally {
+            registry.returnParser(parser);
+        }
+        assertEquals("10.0.0." + customer, result.get("IP:connection.client.host"));
+        assertEquals("1357020044000", result.get("TIME.EPOCH:request.receive.time.epoch"));
+        assertEquals("/page" + customer + "/" + request, result.get("HTTP.PATH:request.firstline.uri.path"));
+    }
+
+    @Test
+    public void testManyTenants() throws Exception {
+        ParserRegistry<Object> registry = new ParserRegistry<>(ParserRegistryTest::createParser, Long.MAX_VALUE);
+
+        // Many customers, only two different LogFormats.
+        for (int customer = 0; customer < 100; customer++) {
+            parseAndCheck(registry, customer, 0);
+        }
+
+        assertEquals(2, registry.getSize());
+        assertEquals(98, registry.getHits());
+        assertEquals(2, registry.getMisses());
+        for (ParserRegistry.Entry<Object> entry : registry.getEntries()) {
+            assertEquals(50, entry.getUses());
+            assertEquals(1, entry.getInstances());
+            assertTrue(entry.toString(), entry.getEstimatedMemory() > 1000);
+        }
+
+        Parser<Object> common = registry.borrowParser(COMMON, FIELDS);
+        assertNotSame(common, registry.borrowParser(COMMON, FIELDS));
+        assertNotSame(common, registry.borrowParser(COMBINED, FIELDS));
+        registry.returnParser(common);
+        assertSame(common, registry.borrowParser(COMMON, FIELDS));
+    }
+
+    @Test
+    public void testConcurrentTenants() throws Exception {
+        ParserRegistry<Object> registry = new ParserRegistry<>(ParserRegistryTest::createParser, Long.MAX_VALUE);
+
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                final int firstCustomer = thread;
+                Callable<Void> task = () -> {
+                    for (int request = 0; request < 500; request++) {
+                        parseAndCheck(registry, firstCustomer + request, request);
+                    }
+                    return null;
+                };
+                results.add(executor.submit(task));
+            }
+            for (Future<Void> result : results) {
+                result.get(); // Rethrows the assertion failures of the threads
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        assertEquals(2, registry.getSize());
+        assertEquals(threads * 500, registry.getHits() + registry.getMisses());
+        for (ParserRegistry.Entry<Object> entry : registry.getEntries()) {
+            // Never more parsers than threads that use them at the same time.
+            assertTrue(entry.toString(), entry.getInstances() <= threads);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// CHECKSTYLE.OFF: LineLength
+public class ParserSerializationTest {
+
+    private static final String COMBINED = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" \"%{Cookie}i\"";
+
+    private static final String COMBINED_LINE =
+        "127.0.0.1 - - [31/Dec/2012:23:49:40 +0100] \"GET /icons/powered_by_rh.png?foo=bar&aap=noot HTTP/1.1\" 200 1213 " +
+        "\"http://localhost/index.php?mies=wim\" \"Mozilla/5.0 (X11; Linux x86_64) Firefox/11.0\" \"jquery-ui-theme=Eggplant; Apache=127.0.0.1.1351111543699529\"";
+
+    private static final List<String> COMBINED_FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "TIME.HOUR:request.receive.time.hour",
+        "HTTP.METHOD:request.firstline.method",
+        "HTTP.PATH:request.firstline.uri.path",
+        "STRING:request.firstline.uri.query.*",
+        "STRING:request.status.last",
+        "BYTES:response.body.bytes",
+        "HTTP.HOST:request.referer.host",
+        "STRING:request.referer.query.mies",
+        "HTTP.USERAGENT:request.user-agent",
+        "HTTP.COOKIE:request.cookies.jquery-ui-theme");
+
+    private static final String JSON = "{\"time\":\"$time_iso8601\",\"remote_addr\":\"$remote_addr\",\"request\":\"$request\",\"status\":$status}";
+
+    private static final String JSON_LINE =
+        "{\"time\":\"2018-03-04T05:06:07+01:00\",\"remote_addr\":\"10.0.0.1\",\"request\":\"GET /foo?a=1 HTTP/1.1\",\"status\":404}";
+
+    private static final List<String> JSON_FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "HTTP.PATH:request.firstline.uri.path",
+        "STRING:request.firstline.uri.query.*",
+        "STRING:request.status.last");
+
+    private Map<String, String> parse(Parser<Object> parser, String line) throws Exception {
+        final Map<String, String> result = new TreeMap<>();
+        assertTrue(parser.parse(line, new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+                result.put(field, value);
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                result.put(field, Long.toString(value));
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+                result.put(field, Double.toString(value));
+            }
+        }));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Parser<Object> roundTrip(Parser<Object> parser) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(parser);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Parser<Object>) in.readObject();
+        }
+    }
+
+    // A parser that was serialized after it was used must produce exactly the same values.
+    private void verifyRoundTrip(String logFormat, List<String> fields, String... lines) throws Exception {
+        Parser<Object> parser = new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(fields);
+        for (String line : lines) {
+            Map<String, String> expected = parse(parser, line);
+            assertTrue(expected.toString(), expected.size() > 3);
+
+            Parser<Object> copy = roundTrip(parser);
+            for (String copyLine : lines) {
+                assertEquals(parse(parser, copyLine), parse(copy, copyLine));
+            }
+            // A copy of a copy
+            assertEquals(expected, parse(roundTrip(copy), line));
+        }
+    }
+
+    @Test
+    public void testApacheFormat() throws Exception {
+        verifyRoundTrip(COMBINED, COMBINED_FIELDS, COMBINED_LINE);
+    }
+
+    @Test
+    public void testJsonFormat() throws Exception {
+        verifyRoundTrip(JSON, JSON_FIELDS, JSON_LINE);
+    }
+
+    @Test
+    public void testMultipleFormats() throws Exception {
+        verifyRoundTrip(COMBINED + "\n" + JSON, JSON_FIELDS, JSON_LINE, COMBINED_LINE, JSON_LINE);
+    }
+
+}
@@ -27,9 +27,12 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.WeekFields;
+import java.util.Locale;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 // CHECKSTYLE.OFF: LineLength
@@ -609,4 +612,13 @@ public class TestTimeStampDissector {
             .checkExpectations();
     }
 
+    @Test
+    public void testFormattersAreShared() {
+        TimeStampDissector one = new TimeStampDissector("yyyy-MM-dd HH:mm:ss");
+        TimeStampDissector two = new TimeStampDissector("yyyy-MM-dd HH:mm:ss");
+        assertSame(one.getFormatter(), two.getFormatter());
+        assertNotSame(one.getFormatter(), new TimeStampDissector("yyyy-MM-dd HH:mm").getFormatter());
+        assertNotSame(one.getFormatter(), ((TimeStampDissector) two.getNewInstance()).setLocale(Locale.US).getFormatter());
+    }
+
 }
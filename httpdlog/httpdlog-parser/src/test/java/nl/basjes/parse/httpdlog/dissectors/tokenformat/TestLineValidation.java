@@ -0,0 +1,283 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.dissectors.tokenformat;
+
+import nl.basjes.parse.core.Field;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.httpdlog.ApacheHttpdLogFormatDissector;
+import nl.basjes.parse.httpdlog.HttpdLogFormatDissector;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestLineValidation {
+
+    private static final String LOG_FORMAT = "%h %l %u %t \"%r\" %>s %b";
+
+    public static class TestRecord {
+        private final Map<String, String> results = new HashMap<>(32);
+
+        @SuppressWarnings("UnusedDeclaration")
+        @Field({
+            "IP:connection.client.host",
+            "HTTP.URI:request.firstline.uri"})
+        public void setValue(final String name, final String value) {
+            results.put(name, value);
+        }
+
+        public Map<String, String> getResults() {
+            return results;
+        }
+    }
+
+    @Test
+    public void testCanMatch() {
+        assertFalse(RegexCharacters.canMatch(TokenParser.FORMAT_CLF_NUMBER, ' '));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_CLF_NUMBER, '-'));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_CLF_NUMBER, '7'));
+        assertFalse(RegexCharacters.canMatch(TokenParser.FORMAT_NO_SPACE_STRING, ' '));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_NO_SPACE_STRING, '"'));
+        assertFalse(RegexCharacters.canMatch(TokenParser.FORMAT_IPV4, ' '));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_IPV4, '.'));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_STRING, ' '));
+        assertFalse(RegexCharacters.canMatch(TokenParser.FORMAT_HEXNUMBER, 'g'));
+        assertTrue(RegexCharacters.canMatch(TokenParser.FORMAT_HEXNUMBER, 'F'));
+        assertFalse(RegexCharacters.canMatch("[^\"]*", '"'));
+        assertTrue(RegexCharacters.canMatch("[^\"]*", ' '));
+        assertFalse(RegexCharacters.canMatch("\\d+", 'x'));
+        assertTrue(RegexCharacters.canMatch("\\D+", 'x'));
+        assertTrue(RegexCharacters.canMatch("\\p{Alpha}", ' '));  // Unknown so true
+        assertTrue(RegexCharacters.canMatch("(?=a)", ' '));       // Unknown so true
+        assertTrue(RegexCharacters.canMatch("[a[b]]", ' '));      // Unknown so true
+        assertFalse(RegexCharacters.canMatch("[a-z\\]]", ' '));
+    }
+
+    private String getRegex(boolean strict) {
+        TokenFormatDissector dissector = new ApacheHttpdLogFormatDissector(LOG_FORMAT)
+            .setStrictLineValidation(strict);
+        dissector.prepareForDissect("", "connection.client.host");
+        dissector.prepareForRun();
+        return dissector.getLogFormatRegEx();
+    }
+
+    @Test
+    public void testSkipRegex() {
+        String lax = getRegex(false);
+        String strict = getRegex(true);
+
+        // %l and %u are only skipped up to the next space.
+        assertTrue(lax, lax.contains("\\Q \\E(?:[^ ]*)\\Q \\E(?:[^ ]*)\\Q [\\E"));
+        // The %r can contain the '"' so after it the tokens are fully validated again.
+        assertTrue(lax, lax.endsWith("\\Q \\E(?:" + TokenParser.FORMAT_CLF_NUMBER + ")$"));
+
+        assertFalse(strict, strict.contains("(?:[^ ]*)"));
+        assertFalse(strict, strict.contains("(?:.*)$"));
+    }
+
+    @Test
+    public void testStrictIsTheDefault() {
+        TokenFormatDissector dissector = new ApacheHttpdLogFormatDissector(LOG_FORMAT);
+        assertTrue(dissector.isStrictLineValidation());
+        dissector.prepareForDissect("", "connection.client.host");
+        dissector.prepareForRun();
+        assertEquals(getRegex(true), dissector.getLogFormatRegEx());
+    }
+
+    private static final String GOOD_LINE =
+        "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213";
+    // The status and the size are not valid
+    private static final String BAD_LINE =
+        "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" ok unknown";
+
+    private Map<String, String> parse(String logFormat, String line) throws Exception {
+        Parser<TestRecord> parser = new HttpdLoglineParser<>(TestRecord.class, logFormat);
+        return parser.parse(new TestRecord(), line).getResults();
+    }
+
+    @Test
+    public void testLaxAndStrictGiveTheSameResult() throws Exception {
+        Map<String, String> lax = parse("ENABLE LAX LINE VALIDATION\n" + LOG_FORMAT, GOOD_LINE);
+        Map<String, String> strict = parse(LOG_FORMAT, GOOD_LINE);
+        assertEquals(strict, lax);
+        assertEquals("127.0.0.1", lax.get("IP:connection.client.host"));
+        assertEquals("/foo", lax.get("HTTP.URI:request.firstline.uri"));
+    }
+
+    @Test
+    public void testOnlyStrictRejectsUnusedBadValues() throws Exception {
+        // None of the tokens before the %b and the %t can contain a space so these are only skipped.
+        String logFormat = "%h %l %u %b %>s %t";
+        String badLine = "127.0.0.1 - - unknown 200 [not a time]";
+        Map<String, String> lax = parseField("ENABLE LAX LINE VALIDATION\n" + logFormat, "IP:connection.client.host", badLine);
+        assertNotNull(lax);
+        assertEquals("127.0.0.1", lax.get("IP:connection.client.host"));
+        assertNull(parseField(logFormat, "IP:connection.client.host", badLine));
+
+        try {
+            parse(LOG_FORMAT, BAD_LINE);
+            fail("Strict line validation should reject this line");
+        } catch (DissectionFailure e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testLaxIsIgnoredWithMultipleLogFormats() throws Exception {
+        try {
+            parse("ENABLE LAX LINE VALIDATION\n" + LOG_FORMAT + "\n%h %l %u %t \"%r\" %>s %b %D", BAD_LINE);
+            fail("With multiple LogFormats the line must always be fully validated");
+        } catch (DissectionFailure e) {
+            // Expected
+        }
+    }
+
+    // --------------------------------------------
+
+    public static class ValueRecord {
+        private final Map<String, String> results = new HashMap<>(32);
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void setValue(final String name, final String value) {
+            results.put(name, value);
+        }
+
+        public Map<String, String> getResults() {
+            return results;
+        }
+    }
+
+    private static final String[][] FORMATS_AND_LINES = {
+        // Common
+        {"%h %l %u %t \"%r\" %>s %b",
+            "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213",
+            "2001:980:91c0:1:8d31:a232:25e5:85d - user [05/Sep/2010:11:27:50 +0200] \"GET /b/ss/x?a=b c HTTP/1.1\" 302 -",
+        },
+        // Combined
+        {"%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"",
+            "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213 \"-\" \"Mozilla/5.0 (X11; Linux x86_64)\"",
+            "10.0.0.1 - user [31/Dec/2012:23:49:41 +0100] \"POST /a?b=c%20d HTTP/1.0\" 404 - \"http://x/?q=\\\"a b\\\"\" \"A \\\"B\\\" C\"",
+        },
+        // Combined with the bytes in and out
+        {"%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" %I %O",
+            "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213 \"-\" \"Mozilla/5.0\" 321 1560",
+        },
+        // Virtual host combined
+        {"%v:%p %h %l %u %t \"%r\" %>s %O \"%{Referer}i\" \"%{User-Agent}i\"",
+            "www.example.com:80 127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213 \"-\" \"Mozilla/5.0\"",
+        },
+        // Tokens that can contain the separator before tokens that cannot
+        {"%{X-A}i %b %{X-B}i",
+            "a 5 b c d",
+            "a b 5 c",
+        },
+        {"%{X-A}i %D %{X-B}i \"%r\" %>s %T",
+            "some user 1234 x y \"GET / HTTP/1.1\" 200 1",
+        },
+        // Nginx combined
+        {"$remote_addr - $remote_user [$time_local] \"$request\" $status $body_bytes_sent \"$http_referer\" \"$http_user_agent\"",
+            "127.0.0.1 - - [31/Dec/2012:23:49:41 +0100] \"GET /foo HTTP/1.1\" 200 1213 \"-\" \"Mozilla/5.0 (X11; Linux x86_64)\"",
+        },
+    };
+
+    private Map<String, String> parseField(String logFormat, String field, String line) throws Exception {
+        Parser<ValueRecord> parser = new HttpdLoglineParser<>(ValueRecord.class, logFormat)
+            .addParseTarget(ValueRecord.class.getMethod("setValue", String.class, String.class), field);
+        try {
+            return parser.parse(new ValueRecord(), line).getResults();
+        } catch (DissectionFailure e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testLaxAndStrictGiveTheSameResults() throws Exception {
+        for (String[] formatAndLines : FORMATS_AND_LINES) {
+            String logFormat = formatAndLines[0];
+            List<String> fields = new HttpdLogFormatDissector(logFormat).getPossibleOutput();
+            assertFalse(logFormat, fields.isEmpty());
+            for (int i = 1; i < formatAndLines.length; i++) {
+                String line = formatAndLines[i];
+                // Requesting a single field gives the most skipped tokens.
+                for (String field : fields) {
+                    Map<String, String> strict = parseField(logFormat, field, line);
+                    Map<String, String> lax = parseField("ENABLE LAX LINE VALIDATION\n" + logFormat, field, line);
+                    assertNotNull("Strict rejected " + field + " in: " + line, strict);
+                    assertEquals(field + " in: " + line, strict, lax);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTokensThatContainTheSeparator() throws Exception {
+        String logFormat = "%{X-A}i %b %{X-B}i";
+        Map<String, String> expected = new HashMap<>();
+        expected.put("HTTP.HEADER:request.header.x-a", "a");
+        expected.put("HTTP.HEADER:request.header.x-b", "b c d");
+
+        for (String prefix : new String[]{"", "ENABLE LAX LINE VALIDATION\n"}) {
+            Parser<ValueRecord> parser = new HttpdLoglineParser<>(ValueRecord.class, prefix + logFormat)
+                .addParseTarget(ValueRecord.class.getMethod("setValue", String.class, String.class),
+                    Arrays.asList("HTTP.HEADER:request.header.x-a", "HTTP.HEADER:request.header.x-b"));
+            assertEquals(prefix, expected, parser.parse(new ValueRecord(), "a 5 b c d").getResults());
+        }
+    }
+
+    @Test
+    public void testMismatchFailureDetails() throws Exception {
+        try {
+            parse(LOG_FORMAT, BAD_LINE);
+            fail("Strict line validation should reject this line");
+        } catch (DissectionFailure e) {
+            assertEquals(TokenFormatDissector.LOGFORMAT_MISMATCH, e.getErrorCode());
+            // The %>s accepts the "ok" so the %b is the first token that does not match.
+            assertTrue(e.getMessage(), e.getMessage().contains("(BYTESCLF:response.body.bytes)"));
+            assertTrue(e.getPosition() > 0);
+            // A rejected line is expected to be a common case so this is cheap.
+            assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void testFindMismatchPosition() {
+        TokenFormatDissector dissector = new ApacheHttpdLogFormatDissector(LOG_FORMAT)
+            .setStrictLineValidation(true);
+        dissector.prepareForDissect("", "connection.client.host");
+        dissector.prepareForRun();
+
+        int badBytes = dissector.findMismatchPosition(BAD_LINE);
+        assertEquals(badBytes, dissector.findMismatchPosition(GOOD_LINE.replace(" 1213", " unknown")));
+
+        int badTime = dissector.findMismatchPosition(GOOD_LINE.replace("31/Dec", "99/Dec"));
+        assertTrue(badTime > 0);
+        assertTrue(badTime < badBytes);
+        assertTrue(dissector.findMismatchPosition("Something completely different") < badTime);
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.dissectors.tokenformat;
+
+import nl.basjes.parse.httpdlog.ApacheHttpdLogFormatDissector;
+import nl.basjes.parse.httpdlog.NginxHttpdLogFormatDissector;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTokenDiscovery {
+
+    private static final String APACHE_FORMAT =
+        "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" %{cookie}C %{%Y-%m-%d}t %{begin:%H}t " +
+        "%D %T %{ms}T %v %V %{c}a %a %A %p %{remote}p %P %{tid}P %q %f %k %L %m %H %I %O %S %X %R " +
+        "%{foo}e %{foo}n %{foo}o %{foo}^ti %{foo}^to %U %%";
+
+    private static final String NGINX_FORMAT =
+        "$remote_addr - $remote_user [$time_local] \"$request\" $status $body_bytes_sent \"$http_referer\" " +
+        "\"$http_user_agent\" $cookie_foo $arg_bar $sent_http_content_type $request_time $upstream_addr $msec $unknown_thing";
+
+    @Test
+    public void testMultiLiteralMatcher() {
+        MultiLiteralMatcher matcher = new MultiLiteralMatcher(Arrays.asList("he", "she", "his", "hers", "", null, "xyz"));
+        assertEquals(new HashSet<>(Arrays.asList("he", "she", "hers")), matcher.findPresent("ushers"));
+        assertEquals(new HashSet<>(Arrays.asList("his")), matcher.findPresent("this"));
+        assertTrue(matcher.findPresent("nothing").isEmpty());
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("%{",          TokenParser.getLiteralPrefix("\\%\\{([a-z0-9\\-_]*)\\}i"));
+        assertEquals("$sent_http_", TokenParser.getLiteralPrefix("\\$sent_http_([a-z0-9\\-\\_]*)"));
+        assertEquals("$",           TokenParser.getLiteralPrefix("\\$([a-z0-9\\-\\_]*)"));
+        assertEquals("a",           TokenParser.getLiteralPrefix("ab?c"));
+        assertEquals("",            TokenParser.getLiteralPrefix("a|b"));
+        assertEquals("",            TokenParser.getLiteralPrefix("\\d+"));
+    }
+
+    private void assertRequiredLiteralsAreRequired(List<TokenParser> tokenParsers, String logFormat) {
+        String cleaned = logFormat.toLowerCase();
+        for (TokenParser tokenParser : tokenParsers) {
+            for (String format : Arrays.asList(logFormat, cleaned)) {
+                List<Token> tokens = tokenParser.getTokens(format);
+                if (tokens != null && !tokens.isEmpty()) {
+                    assertTrue("The TokenParser for " + tokenParser.getLogFormatToken() + " found a token without \"" +
+                            tokenParser.getRequiredLiteral() + "\"",
+                        format.contains(tokenParser.getRequiredLiteral()));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TokenParser> getAllTokenParsers(TokenFormatDissector dissector) throws Exception {
+        Method method = TokenFormatDissector.class.getDeclaredMethod("createAllTokenParsers");
+        method.setAccessible(true);
+        return (List<TokenParser>) method.invoke(dissector);
+    }
+
+    @Test
+    public void testApacheRequiredLiterals() throws Exception {
+        assertRequiredLiteralsAreRequired(getAllTokenParsers(new ApacheHttpdLogFormatDissector()), APACHE_FORMAT);
+    }
+
+    @Test
+    public void testNginxRequiredLiterals() throws Exception {
+        assertRequiredLiteralsAreRequired(getAllTokenParsers(new NginxHttpdLogFormatDissector()), NGINX_FORMAT);
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.follow;
+
+import nl.basjes.parse.core.Field;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogFileFollowerTest {
+
+    public static class TestRecord {
+        private Long bytes;
+
+        @Field("BYTES:response.body.bytesclf")
+        public void setBytes(Long value) {
+            bytes = value;
+        }
+
+        public Long getBytes() {
+            return bytes;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<Long> received = new ArrayList<>();
+
+    private static String line(int bytes) {
+        return "192.168.1.1 - - [01/Jan/2017:12:00:00 +0100] \"GET /index.html HTTP/1.1\" 200 " + bytes + "\n";
+    }
+
+    private static void append(Path file, String data) throws IOException {
+        Files.write(file, data.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private LogFileFollower<TestRecord> createFollower(Path file) {
+        return new LogFileFollower<>(new HttpdLoglineParser<>(TestRecord.class, "common"), file);
+    }
+
+    private long poll(LogFileFollower<TestRecord> follower) throws Exception {
+        return follower.poll(record -> received.add(record.getBytes()));
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        try (LogFileFollower<TestRecord> follower = createFollower(file)) {
+            assertEquals(0, poll(follower)); // File does not exist yet
+
+            append(file, line(1) + line(2));
+            assertEquals(2, poll(follower));
+            assertEquals(0, poll(follower));
+
+            // A line that is still being written is not parsed yet.
+            String third = line(3);
+            append(file, third.substring(0, 20));
+            assertEquals(0, poll(follower));
+            append(file, third.substring(20) + "This is not a logline\n");
+            assertEquals(2, poll(follower));
+
+            assertEquals(3, follower.getGoodLines());
+            assertEquals(1, follower.getBadLines());
+            assertEquals(Files.size(file), follower.getOffset());
+        }
+        assertEquals("[1, 2, 3]", received.toString());
+    }
+
+    @Test
+    public void testRenameRotation() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        try (LogFileFollower<TestRecord> follower = createFollower(file)) {
+            append(file, line(1));
+            assertEquals(1, poll(follower));
+
+            // Last writes to the old file, then logrotate renames it and a new file is started.
+            append(file, line(2) + line(3).trim());
+            Files.move(file, file.resolveSibling("access.log.1"));
+            append(file, line(4));
+
+            assertEquals(3, poll(follower));
+            assertEquals(1, follower.getRotations());
+        }
+        assertEquals("[1, 2, 3, 4]", received.toString());
+    }
+
+    @Test
+    public void testCopyTruncate() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        try (LogFileFollower<TestRecord> follower = createFollower(file)) {
+            append(file, line(1) + line(2));
+            assertEquals(2, poll(follower));
+
+            Files.write(file, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+            append(file, line(3));
+            assertEquals(1, poll(follower));
+            assertEquals(1, follower.getRotations());
+        }
+        assertEquals("[1, 2, 3]", received.toString());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        Path checkpoint = temporaryFolder.getRoot().toPath().resolve("access.log.checkpoint");
+
+        append(file, line(1) + line(2));
+        try (LogFileFollower<TestRecord> follower = createFollower(file).setCheckpointFile(checkpoint)) {
+            assertEquals(2, poll(follower));
+        }
+
+        append(file, line(3));
+        try (LogFileFollower<TestRecord> follower = createFollower(file).setCheckpointFile(checkpoint)) {
+            assertEquals(1, poll(follower));
+        }
+        assertEquals("[1, 2, 3]", received.toString());
+    }
+
+    @Test
+    public void testStartAtEnd() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        append(file, line(1) + line(2));
+        try (LogFileFollower<TestRecord> follower = createFollower(file).startAtEnd()) {
+            assertEquals(0, poll(follower));
+            append(file, line(3));
+            assertEquals(1, poll(follower));
+        }
+        assertEquals("[3]", received.toString());
+    }
+
+    @Test(timeout = 10000)
+    public void testFollow() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("access.log");
+        append(file, line(1));
+
+        final LogFileFollower<TestRecord> follower = createFollower(file).setPollInterval(50);
+        final List<Long> followed = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            try {
+                follower.follow(record -> {
+                    synchronized (followed) {
+                        followed.add(record.getBytes());
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+
+        append(file, line(2));
+        while (true) {
+            synchronized (followed) {
+                if (followed.size() == 2) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        follower.close();
+        thread.join();
+        assertEquals("[1, 2]", followed.toString());
+    }
+
+}
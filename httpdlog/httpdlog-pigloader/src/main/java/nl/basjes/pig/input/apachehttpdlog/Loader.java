@@ -219,33 +219,32 @@ public class Loader
             ParsedRecord value = reader.getCurrentValue();
 
             if (value != null) {
-                List<Object> values = new ArrayList<>();
                 if (onlyWantListOfFields) {
-                    values.add(value.getString(ApacheHttpdLogfileRecordReader.FIELDS));
-                } else {
-                    for (String fieldName : requestedFields) {
-                        if (fieldName.endsWith(".*")) {
-                            values.add(value.getStringSet(fieldName));
-                            continue;
-                        } else {
-                            EnumSet<Casts> casts = reader.getParser().getCasts(fieldName);
-
-                            if (casts != null) {
-                                if (casts.contains(Casts.LONG)) {
-                                    values.add(value.getLong(fieldName));
-                                    continue;
-                                }
-
-                                if (casts.contains(Casts.DOUBLE)) {
-                                    values.add(value.getDouble(fieldName));
-                                    continue;
-                                }
-                            }
-                        }
-                        values.add(value.getString(fieldName));
+                    return tupleFactory.newTuple(value.getString(ApacheHttpdLogfileRecordReader.FIELDS));
+                }
+
+                if (columnTypes == null) {
+                    prepareColumnPlan();
+                }
+
+                tuple = tupleFactory.newTuple(columnTypes.length);
+                for (int column = 0; column < columnTypes.length; column++) {
+                    final String fieldName = columnNames[column];
+                    switch (columnTypes[column]) {
+                        case MAP:
+                            tuple.set(column, value.getStringSet(fieldName));
+                            break;
+                        case LONG:
+                            tuple.set(column, value.getLong(fieldName));
+                            break;
+                        case DOUBLE:
+                            tuple.set(column, value.getDouble(fieldName));
+                            break;
+                        default: // == case STRING:
+                            tuple.set(column, value.getString(fieldName));
+                            break;
                     }
                 }
-                tuple = tupleFactory.newTuple(values);
             }
         } catch (InvalidDissectorException | MissingDissectorsException e) {
             throw new IOException("Fatal error in the parser", e);
@@ -255,6 +254,53 @@ public class Loader
 
     // ------------------------------------------
 
+    private enum ColumnType {
+        STRING,
+        LONG,
+        DOUBLE,
+        MAP
+    }
+
+    // The names and types of the output columns in the order they appear in the tuple.
+    // These are determined only once so for each record we only have to copy the values.
+    private String[]                        columnNames             = null;
+    private ColumnType[]                    columnTypes             = null;
+
+    private void prepareColumnPlan() throws IOException, InvalidDissectorException, MissingDissectorsException {
+        final int columns = requestedFields.size();
+        String[]     newColumnNames = new String[columns];
+        ColumnType[] newColumnTypes = new ColumnType[columns];
+
+        int column = 0;
+        for (String fieldName : requestedFields) {
+            newColumnNames[column] = fieldName;
+            newColumnTypes[column] = determineColumnType(fieldName);
+            column++;
+        }
+        columnNames = newColumnNames;
+        columnTypes = newColumnTypes;
+    }
+
+    private ColumnType determineColumnType(String fieldName)
+            throws IOException, InvalidDissectorException, MissingDissectorsException {
+        if (fieldName.endsWith(".*")) {
+            return ColumnType.MAP;
+        }
+
+        EnumSet<Casts> casts = reader.getParser().getCasts(fieldName);
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return ColumnType.LONG;
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return ColumnType.DOUBLE;
+            }
+        }
+        return ColumnType.STRING;
+    }
+
+    // ------------------------------------------
+
     private static final String MULTI_COMMENT = "  -- If you only want a single field replace * with name and change type to chararray";
 
     private String createPigExample() throws IOException {
@@ -334,13 +380,26 @@ public class Loader
     // ------------------------------------------
 
     @Override
-    public void prepareToRead(@SuppressWarnings("rawtypes") RecordReader newReader, PigSplit pigSplit) {
+    public void prepareToRead(@SuppressWarnings("rawtypes") RecordReader newReader, PigSplit pigSplit)
+            throws IOException {
         // Note that for this Loader, we don't care about the PigSplit.
         if (newReader instanceof ApacheHttpdLogfileRecordReader) {
             this.reader = (ApacheHttpdLogfileRecordReader) newReader;
         } else {
             throw new IncorrectRecordReaderException();
         }
+
+        columnNames = null;
+        columnTypes = null;
+        if (onlyWantListOfFields || isBuildingExample) {
+            return; // These do not produce the requested fields.
+        }
+
+        try {
+            prepareColumnPlan();
+        } catch (InvalidDissectorException | MissingDissectorsException e) {
+            throw new IOException("Fatal error in the parser", e);
+        }
     }
 
     // ------------------------------------------
@@ -18,9 +18,11 @@
 package nl.basjes.parse.httpdlog;
 
 import nl.basjes.hadoop.input.ParsedRecord;
+import nl.basjes.hadoop.input.RawLineFilter;
 import nl.basjes.parse.core.Casts;
 import nl.basjes.parse.core.Dissector;
 import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.ValueFilter;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
 import nl.basjes.parse.core.exceptions.InvalidDissectorException;
 import nl.basjes.parse.core.exceptions.MissingDissectorsException;
@@ -90,6 +92,10 @@ import static org.apache.hadoop.hive.serde.serdeConstants.STRING_TYPE_NAME;
  *      ,"map:request.firstline.uri.query.s" = "SCREENRESOLUTION"
  *      ,"field:screenHeight" = "SCREENHEIGHT:request.firstline.uri.query.s.height"
  *      ,"field:screenWidth"  = "SCREENWIDTH:request.firstline.uri.query.s.width"
+ *
+ *      ,"filter.contains"    = " 500 "
+ *      ,"filter.equals:STRING:request.status.last" = "500"
+ *      ,"filter.startswith:HTTP.URI:request.firstline.uri" = "/api/"
  *      )
  * STORED AS TEXTFILE
  * LOCATION "/user/nbasjes/clicks";
@@ -110,11 +116,19 @@ public class ApacheHttpdlogDeserializer extends AbstractDeserializer {
     private static final String      LOAD_DISSECTOR = "load:";
     private static final int         LOAD_DISSECTOR_LENGTH = LOAD_DISSECTOR.length();
 
+    // Lines that do not contain all of these (comma separated) strings are dropped before parsing.
+    private static final String      FILTER_CONTAINS = "filter.contains";
+    private static final String      FILTER_EQUALS = "filter.equals:";
+    private static final int         FILTER_EQUALS_LENGTH = FILTER_EQUALS.length();
+    private static final String      FILTER_STARTSWITH = "filter.startswith:";
+    private static final int         FILTER_STARTSWITH_LENGTH = FILTER_STARTSWITH.length();
+
     private StructObjectInspector    rowOI;
     private ArrayList<Object>        row;
 
     private Parser<ParsedRecord>     parser;
     private ParsedRecord             currentValue;
+    private RawLineFilter            rawLineFilter;
 
 
     // We do not want the parsing to fail immediately when we hit a single 'bad' line.
@@ -145,6 +159,14 @@ public class ApacheHttpdlogDeserializer extends AbstractDeserializer {
 
         Map<String, Set<String>> typeRemappings = new HashMap<>();
         List<Dissector> additionalDissectors = new ArrayList<>();
+        Map<String, ValueFilter> filters = new HashMap<>();
+
+        rawLineFilter = null;
+        String filterContains = props.getProperty(FILTER_CONTAINS);
+        if (filterContains != null && !filterContains.isEmpty()) {
+            rawLineFilter = new RawLineFilter(Arrays.asList(filterContains.split(",")));
+            LOG.info("Only parsing lines that contain all of \"{}\"", filterContains);
+        }
 
         for (Map.Entry<Object, Object> property: props.entrySet()){
             String key = (String)property.getKey();
@@ -159,6 +181,20 @@ public class ApacheHttpdlogDeserializer extends AbstractDeserializer {
                 continue;
             }
 
+            if (key.startsWith(FILTER_EQUALS)) {
+                String filterField = key.substring(FILTER_EQUALS_LENGTH);
+                filters.merge(filterField, ValueFilter.isEqualTo((String)property.getValue()), ValueFilter::and);
+                LOG.info("Add filter: field \"{}\" must be \"{}\"", filterField, property.getValue());
+                continue;
+            }
+
+            if (key.startsWith(FILTER_STARTSWITH)) {
+                String filterField = key.substring(FILTER_STARTSWITH_LENGTH);
+                filters.merge(filterField, ValueFilter.startsWith((String)property.getValue()), ValueFilter::and);
+                LOG.info("Add filter: field \"{}\" must start with \"{}\"", filterField, property.getValue());
+                continue;
+            }
+
             if (key.startsWith(LOAD_DISSECTOR)) {
                 String dissectorClassName = key.substring(LOAD_DISSECTOR_LENGTH);
                 String dissectorParam = (String)property.getValue();
@@ -202,6 +238,9 @@ public class ApacheHttpdlogDeserializer extends AbstractDeserializer {
         parser = new HttpdLoglineParser<>(ParsedRecord.class, logformat);
         parser.setTypeRemappings(typeRemappings)
               .addDissectors(additionalDissectors);
+        for (Map.Entry<String, ValueFilter> filter : filters.entrySet()) {
+            parser.addFilter(filter.getKey(), filter.getValue());
+        }
 
         List<ObjectInspector> columnOIs = new ArrayList<>(columnNames.size());
 
@@ -278,9 +317,15 @@ public class ApacheHttpdlogDeserializer extends AbstractDeserializer {
 
         linesInput++;
 
+        if (rawLineFilter != null && !rawLineFilter.accept((Text) writable)) {
+            return null; // Filtered lines are not bad lines.
+        }
+
         try {
             currentValue.clear();
-            parser.parse(currentValue, writable.toString());
+            if (parser.parseFiltered(currentValue, writable.toString()) == null) {
+                return null; // Filtered lines are not bad lines.
+            }
         } catch (DissectionFailure dissectionFailure) {
             linesBad++;
             if (linesInput >= MINIMAL_FAIL_LINES) {
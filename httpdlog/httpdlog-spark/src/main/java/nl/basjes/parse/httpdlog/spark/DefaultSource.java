@@ -0,0 +1,82 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.spark;
+
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.sql.sources.BaseRelation;
+import org.apache.spark.sql.sources.DataSourceRegister;
+import org.apache.spark.sql.sources.RelationProvider;
+import scala.Option;
+import scala.collection.immutable.Map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes the access logs available as a Spark DataSource.
+ * <pre>
+ * spark.read()
+ *     .format("httpdlog")
+ *     .option("logformat", "combined")
+ *     .option("fields", "IP:connection.client.host,STRING:request.status.last")
+ *     .load("/logs/access*.log");
+ * </pre>
+ * The columns are named after the fields: "IP:connection.client.host" becomes "ip_connection_client_host".
+ */
+public class DefaultSource implements RelationProvider, DataSourceRegister {
+
+    public static final String SHORT_NAME       = "httpdlog";
+    public static final String OPTION_PATH      = "path";
+    public static final String OPTION_LOGFORMAT = "logformat";
+    public static final String OPTION_FIELDS    = "fields";
+
+    @Override
+    public String shortName() {
+        return SHORT_NAME;
+    }
+
+    @Override
+    public BaseRelation createRelation(SQLContext sqlContext, Map<String, String> parameters) {
+        String path      = getRequired(parameters, OPTION_PATH);
+        String logFormat = getRequired(parameters, OPTION_LOGFORMAT);
+        String fields    = getRequired(parameters, OPTION_FIELDS);
+
+        List<String> fieldList = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                fieldList.add(field.trim());
+            }
+        }
+
+        try {
+            return new HttpdLogRelation(sqlContext, path, logFormat, fieldList);
+        } catch (MissingDissectorsException | InvalidDissectorException e) {
+            throw new IllegalArgumentException("Unable to parse the requested fields: " + e.getMessage(), e);
+        }
+    }
+
+    private static String getRequired(Map<String, String> parameters, String name) {
+        Option<String> value = parameters.get(name);
+        if (value.isEmpty() || value.get().trim().isEmpty()) {
+            throw new IllegalArgumentException("The option \"" + name + "\" is required for the " + SHORT_NAME + " DataSource");
+        }
+        return value.get();
+    }
+
+}
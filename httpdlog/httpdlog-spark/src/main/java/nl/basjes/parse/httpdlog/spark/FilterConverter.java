@@ -0,0 +1,213 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.spark;
+
+import nl.basjes.parse.core.Value;
+import nl.basjes.parse.core.ValueFilter;
+import org.apache.spark.sql.sources.EqualTo;
+import org.apache.spark.sql.sources.Filter;
+import org.apache.spark.sql.sources.GreaterThan;
+import org.apache.spark.sql.sources.GreaterThanOrEqual;
+import org.apache.spark.sql.sources.In;
+import org.apache.spark.sql.sources.IsNotNull;
+import org.apache.spark.sql.sources.IsNull;
+import org.apache.spark.sql.sources.LessThan;
+import org.apache.spark.sql.sources.LessThanOrEqual;
+import org.apache.spark.sql.sources.StringContains;
+import org.apache.spark.sql.sources.StringEndsWith;
+import org.apache.spark.sql.sources.StringStartsWith;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+
+/**
+ * Converts the filters Spark pushes down into {@link ValueFilter}s for the parser.
+ * The parser evaluates such a filter as soon as the field has been dissected and stops
+ * the dissection of a record that is rejected.
+ * The conversion is conservative: a filter that cannot be converted exactly is not converted at all.
+ * Spark still evaluates all filters itself so the converted filters only need to never reject a row Spark would retain.
+ */
+final class FilterConverter {
+
+    private FilterConverter() {
+    }
+
+    private enum Comparison {
+        EQ, GT, GE, LT, LE;
+
+        boolean test(int compared) {
+            switch (this) {
+                case EQ: return compared == 0;
+                case GT: return compared >  0;
+                case GE: return compared >= 0;
+                case LT: return compared <  0;
+                case LE: return compared <= 0;
+                default: return true;
+            }
+        }
+    }
+
+    /**
+     * @return The name of the column the filter is about or null if this is not a single column filter.
+     */
+    static String getAttribute(Filter filter) {
+        if (filter instanceof EqualTo) {
+            return ((EqualTo) filter).attribute();
+        }
+        if (filter instanceof GreaterThan) {
+            return ((GreaterThan) filter).attribute();
+        }
+        if (filter instanceof GreaterThanOrEqual) {
+            return ((GreaterThanOrEqual) filter).attribute();
+        }
+        if (filter instanceof LessThan) {
+            return ((LessThan) filter).attribute();
+        }
+        if (filter instanceof LessThanOrEqual) {
+            return ((LessThanOrEqual) filter).attribute();
+        }
+        if (filter instanceof In) {
+            return ((In) filter).attribute();
+        }
+        if (filter instanceof IsNull) {
+            return ((IsNull) filter).attribute();
+        }
+        if (filter instanceof IsNotNull) {
+            return ((IsNotNull) filter).attribute();
+        }
+        if (filter instanceof StringStartsWith) {
+            return ((StringStartsWith) filter).attribute();
+        }
+        if (filter instanceof StringEndsWith) {
+            return ((StringEndsWith) filter).attribute();
+        }
+        if (filter instanceof StringContains) {
+            return ((StringContains) filter).attribute();
+        }
+        return null;
+    }
+
+    /**
+     * @param filter The filter from Spark
+     * @param type The type of the column the filter is about.
+     * @return The equivalent ValueFilter or null if the filter cannot be converted.
+     */
+    static ValueFilter convert(Filter filter, DataType type) {
+        if (filter instanceof EqualTo) {
+            return compare(type, ((EqualTo) filter).value(), Comparison.EQ);
+        }
+        if (filter instanceof GreaterThan) {
+            return compare(type, ((GreaterThan) filter).value(), Comparison.GT);
+        }
+        if (filter instanceof GreaterThanOrEqual) {
+            return compare(type, ((GreaterThanOrEqual) filter).value(), Comparison.GE);
+        }
+        if (filter instanceof LessThan) {
+            return compare(type, ((LessThan) filter).value(), Comparison.LT);
+        }
+        if (filter instanceof LessThanOrEqual) {
+            return compare(type, ((LessThanOrEqual) filter).value(), Comparison.LE);
+        }
+        if (filter instanceof In) {
+            ValueFilter result = null;
+            for (Object literal : ((In) filter).values()) {
+                ValueFilter equals = compare(type, literal, Comparison.EQ);
+                if (equals == null) {
+                    return null;
+                }
+                result = result == null ? equals : or(result, equals);
+            }
+            return result;
+        }
+        if (filter instanceof IsNull) {
+            return value -> getTyped(value, type) == null;
+        }
+        if (filter instanceof IsNotNull) {
+            return value -> getTyped(value, type) != null;
+        }
+        if (!DataTypes.StringType.equals(type)) {
+            return null;
+        }
+        if (filter instanceof StringStartsWith) {
+            final String prefix = ((StringStartsWith) filter).value();
+            return value -> value.getString() != null && value.getString().startsWith(prefix);
+        }
+        if (filter instanceof StringEndsWith) {
+            final String suffix = ((StringEndsWith) filter).value();
+            return value -> value.getString() != null && value.getString().endsWith(suffix);
+        }
+        if (filter instanceof StringContains) {
+            final String part = ((StringContains) filter).value();
+            return value -> value.getString() != null && value.getString().contains(part);
+        }
+        return null;
+    }
+
+    private static ValueFilter or(final ValueFilter first, final ValueFilter second) {
+        return value -> first.accept(value) || second.accept(value);
+    }
+
+    static Object getTyped(Value value, DataType type) {
+        if (DataTypes.LongType.equals(type)) {
+            return value.getLong();
+        }
+        if (DataTypes.DoubleType.equals(type)) {
+            return value.getDouble();
+        }
+        return value.getString();
+    }
+
+    private static boolean isIntegral(Object literal) {
+        return literal instanceof Long || literal instanceof Integer || literal instanceof Short || literal instanceof Byte;
+    }
+
+    private static ValueFilter compare(final DataType type, final Object literal, final Comparison comparison) {
+        if (DataTypes.LongType.equals(type) && isIntegral(literal)) {
+            final long expected = ((Number) literal).longValue();
+            return value -> {
+                Long actual = value.getLong();
+                return actual != null && comparison.test(Long.compare(actual, expected));
+            };
+        }
+        if (DataTypes.DoubleType.equals(type) && literal instanceof Number) {
+            final double expected = ((Number) literal).doubleValue();
+            return value -> {
+                Double actual = value.getDouble();
+                return actual != null && comparison.test(compareDoubles(actual, expected));
+            };
+        }
+        // Spark orders strings by their UTF-8 bytes which is not always the same as the Java order.
+        if (DataTypes.StringType.equals(type) && literal instanceof String && comparison == Comparison.EQ) {
+            final String expected = (String) literal;
+            return value -> expected.equals(value.getString());
+        }
+        return null;
+    }
+
+    /**
+     * Like Spark: NaN equals NaN and is larger than any other value, 0.0 equals -0.0.
+     */
+    private static int compareDoubles(double actual, double expected) {
+        if (Double.isNaN(actual) || Double.isNaN(expected)) {
+            return Double.compare(actual, expected);
+        }
+        if (actual == expected) {
+            return 0;
+        }
+        return actual < expected ? -1 : 1;
+    }
+
+}
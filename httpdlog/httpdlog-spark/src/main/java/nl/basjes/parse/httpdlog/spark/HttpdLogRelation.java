@@ -0,0 +1,283 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.spark;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.ValueFilter;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.sql.sources.BaseRelation;
+import org.apache.spark.sql.sources.Filter;
+import org.apache.spark.sql.sources.PrunedFilteredScan;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.util.LongAccumulator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The access log files as a Spark relation with one typed column per requested field.
+ * <ul>
+ * <li>The type of a column is determined from the casts the parser can provide for the field:
+ * LONG, else DOUBLE, else STRING.</li>
+ * <li>For every scan a parser is created that only produces the selected columns, so only the
+ * dissectors needed for these columns are run.</li>
+ * <li>The pushed down filters become filters of this parser. These are evaluated directly after the
+ * dissector that produces the field so rejected lines are not dissected any further.</li>
+ * <li>The files are read (and split over the executors) like any other text file in Spark.</li>
+ * </ul>
+ */
+public class HttpdLogRelation extends BaseRelation implements PrunedFilteredScan, Serializable {
+
+    private final transient SQLContext sqlContext;
+    private final String               path;
+    private final String               logFormat;
+
+    // Key = the column name, Value = the field ("TYPE:name")
+    private final Map<String, String>  columnFields = new LinkedHashMap<>();
+    private final Map<String, DataType> columnTypes = new HashMap<>();
+    private final StructType           schema;
+
+    public HttpdLogRelation(SQLContext sqlContext, String path, String logFormat, List<String> fields)
+        throws MissingDissectorsException, InvalidDissectorException {
+        this.sqlContext = sqlContext;
+        this.path = path;
+        this.logFormat = logFormat;
+
+        List<String> cleanedFields = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            String cleanedField = Parser.cleanupFieldValue(field.trim());
+            if (cleanedField.endsWith("*")) {
+                throw new IllegalArgumentException("Wildcard fields cannot be a column: " + field);
+            }
+            cleanedFields.add(cleanedField);
+        }
+        if (cleanedFields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is needed");
+        }
+
+        Parser<Object> parser = createParser(cleanedFields);
+        List<StructField> structFields = new ArrayList<>(cleanedFields.size());
+        for (String field : cleanedFields) {
+            String column = columnName(field);
+            if (columnFields.containsKey(column)) {
+                throw new IllegalArgumentException("Duplicate column: " + column);
+            }
+            DataType type = getType(parser.getCasts(field));
+            columnFields.put(column, field);
+            columnTypes.put(column, type);
+            structFields.add(DataTypes.createStructField(column, type, true));
+        }
+        schema = DataTypes.createStructType(structFields);
+    }
+
+    private Parser<Object> createParser(List<String> fields) {
+        return new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(fields);
+    }
+
+    private static DataType getType(EnumSet<Casts> casts) {
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return DataTypes.LongType;
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return DataTypes.DoubleType;
+            }
+        }
+        return DataTypes.StringType;
+    }
+
+    /**
+     * The name of the column for a field: "IP:connection.client.host" becomes "ip_connection_client_host".
+     */
+    public static String columnName(String field) {
+        return field.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9]", "_");
+    }
+
+    @Override
+    public SQLContext sqlContext() {
+        return sqlContext;
+    }
+
+    @Override
+    public StructType schema() {
+        return schema;
+    }
+
+    // --------------------------------------------
+
+    @Override
+    public RDD<Row> buildScan(String[] requiredColumns, Filter[] filters) {
+        // The fields that must be produced; a count(*) does not need any column but we still need to parse the lines.
+        List<String> fields = new ArrayList<>(requiredColumns.length);
+        for (String column : requiredColumns) {
+            String field = columnFields.get(column);
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+        if (fields.isEmpty()) {
+            fields.add(columnFields.values().iterator().next());
+        }
+
+        Parser<Object> parser = createParser(fields);
+        for (Filter filter : filters) {
+            String column = FilterConverter.getAttribute(filter);
+            if (column == null || !columnFields.containsKey(column)) {
+                continue;
+            }
+            ValueFilter valueFilter = FilterConverter.convert(filter, columnTypes.get(column));
+            if (valueFilter != null) {
+                // Multiple filters on the same field are combined by the parser.
+                parser.addFilter(columnFields.get(column), valueFilter);
+            }
+        }
+
+        // Assemble the parser here so a bad field or filter fails on the driver instead of in every task.
+        // Each task assembles its own deserialized copy again (the assembled state is not serialized).
+        try {
+            parser.getAllCasts();
+        } catch (MissingDissectorsException | InvalidDissectorException e) {
+            throw new IllegalStateException("Unable to create the parser: " + e.getMessage(), e);
+        }
+
+        int[] columnToField = new int[requiredColumns.length];
+        for (int i = 0; i < requiredColumns.length; i++) {
+            columnToField[i] = fields.indexOf(columnFields.get(requiredColumns[i]));
+        }
+
+        LongAccumulator badLines = sqlContext.sparkContext().longAccumulator("HttpdLog bad lines");
+
+        JavaRDD<String> lines = sqlContext.sparkContext()
+            .textFile(path, sqlContext.sparkContext().defaultMinPartitions())
+            .toJavaRDD();
+        return lines.mapPartitions(new ParsePartition(parser, fields, columnToField, badLines)).rdd();
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Parses all lines of a partition (one parser per task, deserialized in the task).
+     */
+    private static final class ParsePartition implements FlatMapFunction<Iterator<String>, Row> {
+        private final Parser<Object>   parser;
+        private final List<String>     fields;
+        private final int[]            columnToField;
+        private final LongAccumulator  badLines;
+
+        ParsePartition(Parser<Object> parser, List<String> fields, int[] columnToField, LongAccumulator badLines) {
+            this.parser = parser;
+            this.fields = fields;
+            this.columnToField = columnToField;
+            this.badLines = badLines;
+        }
+
+        @Override
+        public Iterator<Row> call(final Iterator<String> lines) {
+            final Map<String, Integer> fieldIndex = new HashMap<>(fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                fieldIndex.put(fields.get(i), i);
+            }
+            final Object[] values = new Object[fields.size()];
+            final FieldVisitor visitor = new FieldVisitor() {
+                @Override
+                public void visitString(String field, String value) {
+                    set(field, value);
+                }
+
+                @Override
+                public void visitLong(String field, long value) {
+                    set(field, value);
+                }
+
+                @Override
+                public void visitDouble(String field, double value) {
+                    set(field, value);
+                }
+
+                private void set(String field, Object value) {
+                    Integer index = fieldIndex.get(field);
+                    if (index != null) {
+                        values[index] = value;
+                    }
+                }
+            };
+
+            return new Iterator<Row>() {
+                private Row next = null;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && lines.hasNext()) {
+                        next = parseLine(lines.next());
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Row next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Row row = next;
+                    next = null;
+                    return row;
+                }
+
+                private Row parseLine(String line) {
+                    Arrays.fill(values, null);
+                    try {
+                        if (!parser.parse(line, visitor)) {
+                            return null; // Rejected by one of the pushed down filters
+                        }
+                    } catch (DissectionFailure | InvalidDissectorException | MissingDissectorsException e) {
+                        badLines.add(1);
+                        return null;
+                    }
+                    Object[] rowValues = new Object[columnToField.length];
+                    for (int i = 0; i < columnToField.length; i++) {
+                        rowValues[i] = values[columnToField[i]];
+                    }
+                    return RowFactory.create(rowValues);
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.spark;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestHttpdLogDataSource {
+
+    private static final int LINES = 1000;
+
+    @ClassRule
+    public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static SparkSession spark;
+    private static File         logFile;
+
+    @BeforeClass
+    public static void startSpark() throws IOException {
+        logFile = temporaryFolder.newFile("access.log");
+        try (PrintWriter writer = new PrintWriter(logFile, "UTF-8")) {
+            for (int i = 0; i < LINES; i++) {
+                writer.println("192.168.1." + (i % 10) + " - - [01/Jan/2017:12:00:00 +0100] " +
+                    "\"GET /index.html?line=" + i + " HTTP/1.1\" " + (i % 2 == 0 ? "200" : "404") + " " + i);
+            }
+            writer.println("This is not an access log line");
+        }
+
+        spark = SparkSession.builder()
+            .master("local[2]")
+            .appName("TestHttpdLogDataSource")
+            .config("spark.ui.enabled", "false")
+            .getOrCreate();
+    }
+
+    @AfterClass
+    public static void stopSpark() {
+        spark.stop();
+    }
+
+    private Dataset<Row> load() {
+        return spark.read()
+            .format("httpdlog")
+            .option("logformat", "common")
+            .option("fields",
+                "IP:connection.client.host," +
+                "STRING:request.status.last," +
+                "BYTES:response.body.bytesclf," +
+                "STRING:request.firstline.uri.query.line")
+            .load(logFile.getAbsolutePath());
+    }
+
+    @Test
+    public void testSchema() {
+        StructType schema = load().schema();
+        assertEquals(4, schema.fields().length);
+        assertEquals("ip_connection_client_host",               schema.fields()[0].name());
+        assertEquals(DataTypes.StringType,                      schema.fields()[0].dataType());
+        assertEquals("string_request_status_last",              schema.fields()[1].name());
+        assertEquals("bytes_response_body_bytesclf",            schema.fields()[2].name());
+        assertEquals(DataTypes.LongType,                        schema.fields()[2].dataType());
+        assertEquals("string_request_firstline_uri_query_line", schema.fields()[3].name());
+    }
+
+    @Test
+    public void testCountSkipsBadLines() {
+        assertEquals(LINES, load().count());
+    }
+
+    @Test
+    public void testPrunedAndFiltered() {
+        List<Row> rows = load()
+            .select("ip_connection_client_host", "bytes_response_body_bytesclf")
+            .where("string_request_status_last = '404' AND bytes_response_body_bytesclf >= 990")
+            .orderBy("bytes_response_body_bytesclf")
+            .collectAsList();
+
+        assertEquals(5, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            long bytes = 991 + 2 * i;
+            assertEquals(2, row.size());
+            assertEquals("192.168.1." + (bytes % 10), row.getString(0));
+            assertEquals(bytes, row.getLong(1));
+        }
+    }
+
+    @Test
+    public void testInFilter() {
+        assertEquals(200, load()
+            .where("ip_connection_client_host IN ('192.168.1.1', '192.168.1.2')")
+            .count());
+    }
+
+}
@@ -23,8 +23,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>A Dissector is a class capable of chopping a String into multiple values of specific types.</p>
@@ -173,6 +175,25 @@ public abstract class Dissector implements Serializable {
         // Default behaviour is do nothing.
     }
 
+    /**
+     * A dissector can expose its own (implementation specific) counters which are then
+     * reported as part of the {@link ParserMetrics} of the parser it is used in.
+     * @return The name and current value of each counter.
+     */
+    public Map<String, Long> getCounters() {
+        // Default behaviour is no counters.
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Called when the metrics of the parser this dissector is used in are enabled or disabled.
+     * A dissector only needs to maintain its counters (see {@link #getCounters()}) while they are enabled.
+     * @param enabled true if the counters are reported.
+     */
+    public void setCountersEnabled(boolean enabled) {
+        // Default behaviour is do nothing.
+    }
+
     public void setInputType(String s) throws InvalidDissectorException {
         // Usually only implemented in very dynamic dissectors (like custom timestamp format)
         throw new InvalidDissectorException("The InputType of " + this.getClass().getCanonicalName() + " cannot be changed");
@@ -0,0 +1,180 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded (least recently used) cache of the outputs of a single dissector phase in the parse tree.
+ * For each input value all values the dissector added are recorded and on a hit these are added again
+ * instead of calling the dissector. This only makes sense for expensive dissectors of which the input
+ * values repeat a lot (like the uri, the referer or the cookies) and it is only correct for dissectors
+ * of which the output only depends on the value of the input.
+ * The cache itself is not threadsafe (just like the Parser); all counters can safely be read while the parser
+ * is running in a different thread.
+ * @see Parser#enableDissectorCache(Class, int)
+ */
+public final class DissectorCache {
+
+    private final String    name;
+    private final int       maxSize;
+    private final LongAdder hits      = new LongAdder();
+    private final LongAdder misses    = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final Map<String, Recording> entries;
+
+    DissectorCache(String name, final int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<String, Recording>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Recording> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The values a dissector added while dissecting a single input value.
+     */
+    static final class Recording {
+        private final List<String> bases  = new ArrayList<>();
+        private final List<String> types  = new ArrayList<>();
+        private final List<String> names  = new ArrayList<>();
+        private final List<Value>  values = new ArrayList<>();
+
+        void add(final String base, final String type, final String name, final Value value) {
+            bases.add(base);
+            types.add(type);
+            names.add(name);
+            values.add(value);
+        }
+
+        void replay(final Parsable<?> parsable) throws DissectionFailure {
+            for (int i = 0; i < values.size(); i++) {
+                parsable.addDissection(bases.get(i), types.get(i), names.get(i), values.get(i));
+            }
+        }
+    }
+
+    void dissect(final Dissector dissector, final Parsable<?> parsable, final ParsedField input) throws DissectionFailure {
+        final Value inputValue = input.getValue();
+        if (inputValue == null) {
+            dissector.dissect(parsable, input.getName());
+            return;
+        }
+
+        final String key = inputValue.getString();
+        final Recording cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            cached.replay(parsable);
+            return;
+        }
+
+        misses.increment();
+        final Recording recording = new Recording();
+        parsable.setRecording(recording);
+        try {
+            dissector.dissect(parsable, input.getName());
+        } finally {
+            parsable.setRecording(null);
+        }
+        // Only reached if the dissection did not fail.
+        entries.put(key, recording);
+    }
+
+    /**
+     * Discards all cached values and resets the counters.
+     */
+    public void clear() {
+        entries.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * @return The name of this phase: "TYPE:input --> dissector class".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The maximum number of input values for which the outputs are retained.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of input values for which the outputs are currently retained.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return How often the outputs were taken from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return How often the dissector had to be called.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return How often an entry was removed to stay within the maximum size.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The fraction (0.0 - 1.0) of the lookups that was a hit.
+     */
+    public double getHitRate() {
+        final long lookups = getHits() + getMisses();
+        if (lookups == 0) {
+            return 0.0;
+        }
+        return (double) getHits() / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return name + " : size=" + getSize() + "/" + maxSize + " hits=" + getHits() + " misses=" + getMisses() +
+            " evictions=" + getEvictions() + " hitRate=" + getHitRate();
+    }
+}
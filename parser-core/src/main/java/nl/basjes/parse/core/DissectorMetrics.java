@@ -0,0 +1,114 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of a single dissector phase in the parse tree (i.e. a specific dissector that is
+ * started on a specific input field).
+ * All counters can safely be read while the parser is running in a different thread.
+ */
+public final class DissectorMetrics implements Serializable {
+
+    private final String    name;
+    private final LongAdder invocations   = new LongAdder();
+    private final LongAdder nanos         = new LongAdder();
+    private final LongAdder failures      = new LongAdder();
+    private final LongAdder emittedFields = new LongAdder();
+
+    // The instance that is currently in the parse tree (is replaced if the parser is assembled again).
+    private Dissector dissector;
+
+    DissectorMetrics(String name) {
+        this.name = name;
+    }
+
+    void setDissector(Dissector newDissector) {
+        dissector = newDissector;
+    }
+
+    void record(long durationNanos, long fields, boolean failed) {
+        invocations.increment();
+        nanos.add(durationNanos);
+        emittedFields.add(fields);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    void reset() {
+        invocations.reset();
+        nanos.reset();
+        failures.reset();
+        emittedFields.reset();
+    }
+
+    /**
+     * @return The name of this phase: "TYPE:input --> dissector class".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return How often the dissector was called.
+     */
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return The total time (in nanoseconds) spent in the dissector.
+     */
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * @return How often the dissector threw a DissectionFailure.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return The total number of values the dissector produced.
+     */
+    public long getEmittedFields() {
+        return emittedFields.sum();
+    }
+
+    /**
+     * @return The implementation specific counters of the dissector (see {@link Dissector#getCounters()}).
+     */
+    public Map<String, Long> getCounters() {
+        if (dissector == null) {
+            return new TreeMap<>();
+        }
+        return new TreeMap<>(dissector.getCounters());
+    }
+
+    @Override
+    public String toString() {
+        return name + " : invocations=" + getInvocations() + " nanos=" + getNanos() + " failures=" + getFailures() +
+            " emittedFields=" + getEmittedFields() + " counters=" + getCounters();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+/**
+ * A sink that receives the values of the requested fields directly while a line is being dissected.
+ * This is an alternative to a RECORD class with setters: no record instance is created and numerical
+ * values are delivered as primitives. This makes it possible to aggregate in place (i.e. count the
+ * bytes per host) without allocating an object per line.
+ * <p>Each field is delivered using the 'best' cast the parser can provide for it: LONG, else DOUBLE, else STRING.
+ * The field passed to the callbacks is the actual "TYPE:name" (so for wildcards it is the full name).</p>
+ * @see Parser#parse(String, FieldVisitor)
+ */
+public interface FieldVisitor {
+
+    void visitString(String field, String value);
+
+    void visitLong(String field, long value);
+
+    void visitDouble(String field, double value);
+
+    /**
+     * Called if the value of a field is null (or cannot be converted to the cast of the field).
+     */
+    default void visitNull(String field) {
+        // Default behaviour is do nothing.
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of {@link Parser#parseLazy(String)}.
+ * Initially only the root of the line has been dissected (i.e. the line has been tokenized).
+ * The first time a field is retrieved only the dissectors that are needed to produce that field are run.
+ * All values that are produced are retained so every dissector runs at most once per record.
+ * <p>If a RECORD was provided ({@link Parser#parseLazy(Object, String)}) then its setters are called for the
+ * values at the moment they are produced. Use {@link #getRecord(String...)} to obtain the record with
+ * the setters for (at least) the specified fields called.</p>
+ * <p>Note that the filters of the parser are only applied when {@link #isRejected()} is called.</p>
+ * <p>An instance of this class is intended for use by a single thread.</p>
+ */
+public final class LazyRecord<RECORD> {
+
+    private final Parser<RECORD>        parser;
+    private final Parsable<RECORD>      parsable;
+    private final RECORD                record;
+
+    // Key = "TYPE:foo.bar"
+    private final Map<String, Value>    values = new HashMap<>();
+
+    // The field names for which all needed dissectors have run.
+    private final Set<String>           resolvedNames = new HashSet<>();
+
+    private boolean                     filtersApplied = false;
+
+    LazyRecord(final Parser<RECORD> parser,
+               final RECORD record,
+               final String rootType,
+               final String value,
+               final Map<String, Set<String>> typeRemappings) throws DissectionFailure {
+        this.parser = parser;
+        this.record = record;
+        this.parsable = new Parsable<>(parser, record, typeRemappings);
+        parsable.collectValuesInto(values);
+        parsable.setRootDissection(rootType, value);
+        // Only tokenize the line (the root has an empty name).
+        parser.dissectSelected(parsable, String::isEmpty);
+    }
+
+    /**
+     * Retrieve the value of a field, running the dissectors that are needed for it if this has not been done yet.
+     * @param field The field in the form "TYPE:name" (for a wildcard field this is the actual full name).
+     * @return The value or null if the field was not requested from the parser or was not present in the line.
+     */
+    public Value getValue(final String field) throws DissectionFailure {
+        final String cleanedField = Parser.cleanupFieldValue(field);
+        resolve(cleanedField.substring(cleanedField.indexOf(':') + 1));
+        return values.get(cleanedField);
+    }
+
+    public String getString(final String field) throws DissectionFailure {
+        final Value value = getValue(field);
+        return value == null ? null : value.getString();
+    }
+
+    public Long getLong(final String field) throws DissectionFailure {
+        final Value value = getValue(field);
+        return value == null ? null : value.getLong();
+    }
+
+    public Double getDouble(final String field) throws DissectionFailure {
+        final Value value = getValue(field);
+        return value == null ? null : value.getDouble();
+    }
+
+    /**
+     * Runs the dissectors that are needed for the specified fields (if this has not been done yet) so the
+     * setters of the record have been called for these fields.
+     * The setters of the fields that were retrieved before have also been called.
+     * @param fields The fields in the form "TYPE:name" that must have been stored in the record.
+     * @return The record that was provided to {@link Parser#parseLazy(Object, String)} or null if there is none.
+     */
+    public RECORD getRecord(final String... fields) throws DissectionFailure {
+        for (String field : fields) {
+            final String cleanedField = Parser.cleanupFieldValue(field);
+            resolve(cleanedField.substring(cleanedField.indexOf(':') + 1));
+        }
+        return record;
+    }
+
+    /**
+     * Runs all the dissectors needed for the filters of the parser and then applies these filters.
+     * @return true if one of the filters of the parser rejected this record.
+     */
+    public boolean isRejected() throws DissectionFailure {
+        if (!filtersApplied) {
+            for (String filteredField : parser.getFilters().keySet()) {
+                resolve(filteredField.substring(filteredField.indexOf(':') + 1));
+            }
+            parsable.applyFiltersOnMissingFields();
+            filtersApplied = true;
+        }
+        return parsable.isRejected();
+    }
+
+    /**
+     * Runs all remaining dissectors.
+     * @return All values of the requested fields that were found. Key = "TYPE:name".
+     */
+    public Map<String, Value> getAllValues() throws DissectionFailure {
+        parser.dissectSelected(parsable, name -> true);
+        return values;
+    }
+
+    /**
+     * @return The number of fields that are still waiting to be dissected.
+     */
+    int getPendingCount() {
+        return parsable.getToBeParsed().size();
+    }
+
+    // --------------------------------------------
+
+    private void resolve(final String name) throws DissectionFailure {
+        if (resolvedNames.contains(name)) {
+            return;
+        }
+        parser.dissectSelected(parsable, pendingName -> isPartOf(name, pendingName));
+        resolvedNames.add(name);
+    }
+
+    /**
+     * @return true if dissecting the pending field can produce the named field.
+     */
+    private static boolean isPartOf(final String name, final String pendingName) {
+        return pendingName.isEmpty() ||
+               name.equals(pendingName) ||
+               (name.startsWith(pendingName) && name.charAt(pendingName.length()) == '.');
+    }
+
+}
@@ -20,7 +20,9 @@ import nl.basjes.parse.core.exceptions.DissectionFailure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -49,14 +51,72 @@ public final class Parsable<RECORD> {
 
     private final Map<String, Set<String>> typeRemappings;
 
+    // Key = "TYPE:foo.bar"
+    private final Map<String, ValueFilter> filters;
+
+    // Key = "TYPE:foo.bar", the conversions that are done directly when this field is added.
+    private final Map<String, Parser.FusedConversions> fusedConversions;
+
+    // The filters that have already accepted a value
+    private Set<String>                    acceptedFilters = null;
+
+    private boolean                        rejected = false;
+
+    // The number of values that have been added (only used for the metrics)
+    private long                           dissections = 0;
+
+    // If set the values go to this visitor instead of the record.
+    private final FieldVisitor             visitor;
+
+    // If there are filters the values for the visitor are held back until all filters have accepted the record.
+    private List<Visit>                    heldVisits = null;
+
+    private static final class Visit {
+        private final String key;
+        private final String name;
+        private final Value  value;
+
+        Visit(String key, String name, Value value) {
+            this.key = key;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    // If set the values go into this map (used by the LazyRecord).
+    private Map<String, Value>             values = null;
+
+    // If set the values added by the running dissector are also recorded here (used by the DissectorCache).
+    private DissectorCache.Recording       recording = null;
+
     // --------------------------------------------
 
     public Parsable(final Parser<RECORD> parser, final RECORD record, Map<String, Set<String>> typeRemappings) {
+        this(parser, record, null, typeRemappings);
+    }
+
+    Parsable(final Parser<RECORD> parser, final RECORD record, final FieldVisitor visitor, Map<String, Set<String>> typeRemappings) {
         this.parser = parser;
         this.record = record;
+        this.visitor = visitor;
         this.typeRemappings = typeRemappings;
         needed = parser.getNeeded();
         usefulIntermediates = parser.getUsefulIntermediateFields();
+        filters = parser.getFilters();
+        fusedConversions = parser.getFusedConversions();
+    }
+
+    /**
+     * Collect the values of all requested fields in this map.
+     * The key is the actual "TYPE:name" (so for wildcards it is the full name).
+     * If this Parsable has a record the values are also stored in the record (as soon as they are produced).
+     */
+    void collectValuesInto(final Map<String, Value> newValues) {
+        this.values = newValues;
+    }
+
+    void setRecording(final DissectorCache.Recording newRecording) {
+        this.recording = newRecording;
     }
 
     // --------------------------------------------
@@ -122,6 +182,10 @@ public final class Parsable<RECORD> {
             final Value value,
             final boolean recursion)
             throws DissectionFailure {
+        dissections++;
+        if (recording != null && !recursion) {
+            recording.add(base, type, name, value);
+        }
         String completeName;
         String neededWildCardName;
         if (base.isEmpty()) { // The root name is an empty string
@@ -151,23 +215,123 @@ public final class Parsable<RECORD> {
             }
         }
 
-        final ParsedField parsedfield = new ParsedField(type, completeName, value);
+        if (!filters.isEmpty()) {
+            applyFilter(neededName, value);
+        }
+
+        final Parser.FusedConversions conversions = fusedConversions.isEmpty() ? null : fusedConversions.get(neededName);
 
-        if (usefulIntermediates.contains(completeName)) {
+        // A field that is only needed as the input of fused conversions is not stored.
+        if (usefulIntermediates.contains(completeName) && (conversions == null || conversions.isInputFieldNeeded())) {
+            final ParsedField parsedfield = new ParsedField(type, completeName, value);
             cache.put(parsedfield.getId(), parsedfield);
             toBeParsed.add(parsedfield);
         }
 
-        if (needed.contains(neededName)) {
-            parser.store(record, neededName, neededName, value);
+        if (!rejected) {
+            if (needed.contains(neededName)) {
+                deliver(neededName, neededName, value);
+            }
+
+            if (needed.contains(neededWildCardName)) {
+                deliver(neededWildCardName, neededName, value);
+            }
         }
 
-        if (needed.contains(neededWildCardName)) {
-            parser.store(record, neededWildCardName, neededName, value);
+        if (conversions != null && value != null && !rejected) {
+            // The conversions are done again when a recorded value is replayed.
+            final DissectorCache.Recording activeRecording = recording;
+            recording = null;
+            try {
+                conversions.convert(this, completeName, value);
+            } finally {
+                recording = activeRecording;
+            }
         }
         return this;
     }
 
+    private void deliver(final String key, final String name, final Value value) {
+        if (values != null) {
+            values.put(name, value);
+            if (record != null) {
+                parser.store(record, key, name, value);
+            }
+        } else if (visitor == null) {
+            parser.store(record, key, name, value);
+        } else if (filters.isEmpty()) {
+            parser.visit(visitor, key, name, value);
+        } else {
+            if (heldVisits == null) {
+                heldVisits = new ArrayList<>();
+            }
+            heldVisits.add(new Visit(key, name, value));
+        }
+    }
+
+    /**
+     * Hand the values that were held back to the visitor (only if the record was not rejected by the filters).
+     */
+    void deliverHeldVisits() {
+        if (heldVisits == null) {
+            return;
+        }
+        if (!rejected) {
+            for (Visit visit : heldVisits) {
+                parser.visit(visitor, visit.key, visit.name, visit.value);
+            }
+        }
+        heldVisits = null;
+    }
+
+    // --------------------------------------------
+
+    private void applyFilter(final String neededName, final Value value) {
+        final ValueFilter filter = filters.get(neededName);
+        if (filter == null) {
+            return;
+        }
+        if (filter.accept(value)) {
+            if (acceptedFilters == null) {
+                acceptedFilters = new HashSet<>();
+            }
+            acceptedFilters.add(neededName);
+        } else {
+            LOG.debug("Record rejected by the filter on {}", neededName);
+            rejected = true;
+        }
+    }
+
+    /**
+     * The filters on fields that were never produced are given a null value.
+     */
+    void applyFiltersOnMissingFields() {
+        if (rejected || filters.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, ValueFilter> filter : filters.entrySet()) {
+            if (acceptedFilters != null && acceptedFilters.contains(filter.getKey())) {
+                continue;
+            }
+            if (!filter.getValue().accept(new Value((String) null))) {
+                LOG.debug("Record rejected by the filter on the missing {}", filter.getKey());
+                rejected = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if one of the filters of the parser rejected this record.
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    long getDissectionCount() {
+        return dissections;
+    }
+
     // --------------------------------------------
 
     public ParsedField getParsableField(final String type, final String name) {
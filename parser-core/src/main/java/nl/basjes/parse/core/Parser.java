@@ -34,12 +34,14 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Predicate;
 
 import static nl.basjes.parse.core.Parser.SetterPolicy.ALWAYS;
 import static nl.basjes.parse.core.Parser.SetterPolicy.NOT_EMPTY;
@@ -70,6 +72,54 @@ public class Parser<RECORD> implements Serializable {
         private final String   outputType;
         private final String   name;
         private final Dissector instance;
+        // Only set if the metrics have been enabled.
+        private DissectorMetrics metrics;
+        // Set if this conversion is done when the input is produced (instead of when the input is dissected).
+        private boolean fused;
+        // Only set if a cache has been enabled for this type of dissector.
+        private transient DissectorCache cache;
+    }
+
+    /**
+     * The conversions that are fused into the production of a single input field.
+     */
+    static final class FusedConversions {
+        private final List<DissectorPhase> phases = new ArrayList<>();
+        // True if there are also normal dissectors for this input.
+        private boolean inputFieldNeeded = false;
+
+        boolean isInputFieldNeeded() {
+            return inputFieldNeeded;
+        }
+
+        void convert(final Parsable<?> parsable, final String name, final Value value) throws DissectionFailure {
+            for (DissectorPhase phase : phases) {
+                if (phase.metrics == null) {
+                    convert(phase, parsable, name, value);
+                } else {
+                    final long fieldsBefore = parsable.getDissectionCount();
+                    final long start = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        convert(phase, parsable, name, value);
+                        failed = false;
+                    } finally {
+                        phase.metrics.record(System.nanoTime() - start, parsable.getDissectionCount() - fieldsBefore, failed);
+                    }
+                }
+                if (parsable.isRejected()) {
+                    return; // No need to do any of the remaining work
+                }
+            }
+        }
+
+        private static void convert(final DissectorPhase phase, final Parsable<?> parsable, final String name, final Value value)
+            throws DissectionFailure {
+            final Value converted = ((ValueConverter) phase.instance).convert(value);
+            if (converted != null) {
+                parsable.addDissection(name, phase.outputType, "", converted);
+            }
+        }
     }
 
     // --------------------------------------------
@@ -87,6 +137,9 @@ public class Parser<RECORD> implements Serializable {
     private Set<String> usefulIntermediateFields = null;
     private String rootType;
 
+    // Key = "TYPE:request.time.hour" (the input), derived from the compiledDissectors.
+    private transient Map<String, FusedConversions> fusedConversions = null;
+
     // NOTE: The Method is NOT serializable. So after deserialization the 'assembled' is false
     //       and we 're-find' all methods using their names and parameter lists.
 
@@ -98,6 +151,25 @@ public class Parser<RECORD> implements Serializable {
 
     private final Map<String, EnumSet<Casts>> castsOfTargets = new TreeMap<>();
 
+    // The cast used to deliver each target to a FieldVisitor (rebuilt when assembling).
+    private transient Map<String, Casts> bestCastOfTargets = null;
+
+    // Key = "TYPE:foo.bar", Value = the filter that must accept the value of this field.
+    private final Map<String, ValueFilter> filters = new TreeMap<>();
+
+    // Only non-null if a precompiled binder is used (a RecordBinder is Serializable).
+    private RecordBinder<RECORD> recordBinder = null;
+    // The targets that were only added because the current recordBinder needs them.
+    private final Set<String> recordBinderFields = new HashSet<>();
+
+    // Only non-null if the metrics have been enabled.
+    private ParserMetrics metrics = null;
+
+    // The maximum cache size for each type of dissector that must be cached.
+    private final Map<Class<? extends Dissector>, Integer> dissectorCacheSizes = new LinkedHashMap<>();
+
+    // Key = "TYPE:input --> dissector class", rebuilt when the parser is assembled.
+    private transient Map<String, DissectorCache> dissectorCaches = null;
 
     // --------------------------------------------
 
@@ -138,6 +210,38 @@ public class Parser<RECORD> implements Serializable {
         return usefulIntermediateFields;
     }
 
+    Map<String, ValueFilter> getFilters() {
+        return filters;
+    }
+
+    Map<String, FusedConversions> getFusedConversions() {
+        if (fusedConversions == null) {
+            return Collections.emptyMap();
+        }
+        return fusedConversions;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Only retain the records where the value of the specified field is accepted by the filter.
+     * The filter is evaluated directly after the field has been produced, so for rejected records
+     * all remaining dissectors are skipped. Use the parseFiltered methods to find out if a record was rejected
+     * (the parse methods always return the record).
+     * The field does not need to be a parse target.
+     * Adding multiple filters for the same field means all of them must accept the value.
+     * @param fieldValue The field (i.e. "TYPE:foo.bar") that is to be checked.
+     * @param filter The filter that determines if the record is to be retained.
+     */
+    public Parser<RECORD> addFilter(final String fieldValue, final ValueFilter filter) {
+        assembled = false;
+        if (fieldValue == null || filter == null) {
+            return this; // Nothing to do here
+        }
+        filters.merge(cleanupFieldValue(fieldValue), filter, ValueFilter::and);
+        return this;
+    }
+
     // --------------------------------------------
 
     public final Parser<RECORD> addDissectors(final List<Dissector> dissectors) {
@@ -240,39 +344,7 @@ public class Parser<RECORD> implements Serializable {
 
         if (targets == null) {
             // This happens only AFTER deserialization.
-            targets = new HashMap<>(targetsMethodNames.size());
-
-            for (Entry<String, Set<Pair<List<String>, SetterPolicy>>> entry:targetsMethodNames.entrySet()) {
-
-                String fieldName = entry.getKey();
-                Set<Pair<List<String>, SetterPolicy>> methodSet = entry.getValue();
-
-                Set<Pair<Method, SetterPolicy>> fieldTargets = targets.computeIfAbsent(fieldName, k -> new HashSet<>());
-
-                for(Pair<List<String>, SetterPolicy> methodStringPair: methodSet) {
-                    List<String> methodString = methodStringPair.getLeft();
-                    SetterPolicy setterPolicy = methodStringPair.getRight();
-                    Method method;
-                    String methodName = methodString.get(0);
-                    int numberOfParameters = methodString.size()-1;
-                    Class<?>[] parameters = new Class[numberOfParameters];
-                    try {
-                        parameters[0] = Class.forName(methodString.get(1));
-                        if (numberOfParameters == 2) {
-                            parameters[1] = Class.forName(methodString.get(2));
-                        }
-                    } catch (ClassNotFoundException e) {
-                        throw new InvalidDissectorException("Unable to locate class", e);
-                    }
-                    try {
-                        method = recordClass.getMethod(methodName, parameters);
-                        fieldTargets.add(Pair.of(method, setterPolicy));
-                    } catch (NoSuchMethodException e) {
-                        throw new InvalidDissectorException("Unable to locate method " + methodName, e);
-                    }
-                }
-                targets.put(fieldName, fieldTargets);
-            }
+            restoreTargets();
         }
 
         // In some cases a dissector may need to create a special 'extra' dissector.
@@ -302,6 +374,7 @@ public class Parser<RECORD> implements Serializable {
         // We first build a set of all possible subtargets that may be useful
         // this way we can skip anything we know not to be useful
         Set<String> needed = new HashSet<>(getNeeded());
+        needed.addAll(filters.keySet());
         needed.add(rootType + ':'); // The root name is an empty string
         LOG.debug("Root: >>>{}:<<<", rootType);
 
@@ -330,11 +403,7 @@ public class Parser<RECORD> implements Serializable {
         findUsefulDissectorsFromField(allPossibleSubtargets, locatedTargets, rootType, "", true); // The root name is an empty string
 
         // Step 3: Inform all dissectors to prepare for the run
-        for (Set<DissectorPhase> dissectorPhases : compiledDissectors.values()) {
-            for (DissectorPhase dissectorPhase : dissectorPhases) {
-                dissectorPhase.instance.prepareForRun();
-            }
-        }
+        prepareCompiledDissectorsForRun();
 
         if (compiledDissectors == null || compiledDissectors.isEmpty()) {
             throw new MissingDissectorsException("There are no dissectors at all which makes this a completely useless parser.");
@@ -351,9 +420,99 @@ public class Parser<RECORD> implements Serializable {
                 throw new MissingDissectorsException(allMissing.toString());
             }
         }
+        determineBestCastOfTargets();
+        fuseConversions();
+
+        attachMetrics();
+        attachDissectorCaches();
         assembled = true;
     }
 
+    /**
+     * Find all the target methods again using their names and parameter lists.
+     */
+    private void restoreTargets() throws InvalidDissectorException {
+        targets = new HashMap<>(targetsMethodNames.size());
+
+        for (Entry<String, Set<Pair<List<String>, SetterPolicy>>> entry:targetsMethodNames.entrySet()) {
+
+            String fieldName = entry.getKey();
+            Set<Pair<List<String>, SetterPolicy>> methodSet = entry.getValue();
+
+            Set<Pair<Method, SetterPolicy>> fieldTargets = targets.computeIfAbsent(fieldName, k -> new HashSet<>());
+
+            for(Pair<List<String>, SetterPolicy> methodStringPair: methodSet) {
+                List<String> methodString = methodStringPair.getLeft();
+                SetterPolicy setterPolicy = methodStringPair.getRight();
+                Method method;
+                String methodName = methodString.get(0);
+                int numberOfParameters = methodString.size()-1;
+                Class<?>[] parameters = new Class[numberOfParameters];
+                try {
+                    parameters[0] = Class.forName(methodString.get(1));
+                    if (numberOfParameters == 2) {
+                        parameters[1] = Class.forName(methodString.get(2));
+                    }
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidDissectorException("Unable to locate class", e);
+                }
+                try {
+                    method = recordClass.getMethod(methodName, parameters);
+                    fieldTargets.add(Pair.of(method, setterPolicy));
+                } catch (NoSuchMethodException e) {
+                    throw new InvalidDissectorException("Unable to locate method " + methodName, e);
+                }
+            }
+            targets.put(fieldName, fieldTargets);
+        }
+    }
+
+    private void prepareCompiledDissectorsForRun() throws InvalidDissectorException {
+        for (Set<DissectorPhase> dissectorPhases : compiledDissectors.values()) {
+            for (DissectorPhase dissectorPhase : dissectorPhases) {
+                dissectorPhase.instance.prepareForRun();
+            }
+        }
+    }
+
+    /**
+     * Dissector fusion: a conversion (a {@link ValueConverter} that produces the same name) is done directly
+     * when its input is produced. So no intermediate field is stored and dissected for such a conversion.
+     * A chain of conversions is fused completely because each converted value is produced in the same way.
+     * The root is always dissected normally because it is not produced by a dissector.
+     */
+    private void fuseConversions() {
+        fusedConversions = new HashMap<>();
+        for (Entry<String, Set<DissectorPhase>> phases : compiledDissectors.entrySet()) {
+            final String inputId = phases.getKey();
+            final String inputName = inputId.substring(inputId.indexOf(':') + 1);
+            final boolean isRoot = inputId.equals(rootType + ':');
+
+            FusedConversions conversions = new FusedConversions();
+            for (DissectorPhase phase : phases.getValue()) {
+                phase.fused = !isRoot && phase.instance instanceof ValueConverter && phase.name.equals(inputName);
+                if (phase.fused) {
+                    conversions.phases.add(phase);
+                } else {
+                    conversions.inputFieldNeeded = true;
+                }
+            }
+            if (!conversions.phases.isEmpty()) {
+                fusedConversions.put(inputId, conversions);
+            }
+        }
+    }
+
+    private void determineBestCastOfTargets() {
+        bestCastOfTargets = new HashMap<>(targets.size());
+        for (String target : targets.keySet()) {
+            EnumSet<Casts> casts = castsOfTargets.get(target);
+            if (casts != null) {
+                bestCastOfTargets.put(target, getBestCast(casts));
+            }
+        }
+    }
+
     // --------------------------------------------
 
     private void findUsefulDissectorsFromField(
@@ -470,6 +629,11 @@ public class Parser<RECORD> implements Serializable {
 
     private Set<String> getTheMissingFields(Set<String> locatedTargets) {
         Set<String> missing = new HashSet<>();
+        for (String filtered : filters.keySet()) {
+            if (!locatedTargets.contains(filtered)) {
+                missing.add(filtered);
+            }
+        }
         for (String target : getNeeded()) {
             if (!locatedTargets.contains(target)) {
                 // Handle wildcard targets differently
@@ -635,6 +799,74 @@ public class Parser<RECORD> implements Serializable {
 
     // --------------------------------------------
 
+    /**
+     * Request fields that are only needed by a {@link FieldVisitor} (so there is no setter for them).
+     * @param fieldValues The fields ("TYPE:name") that must be delivered to the visitor.
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> addVisitedFields(final List<String> fieldValues) {
+        assembled = false;
+        for (String fieldValue : fieldValues) {
+            addTargetWithoutSetter(fieldValue);
+            recordBinderFields.remove(cleanupFieldValue(fieldValue)); // Now also explicitly requested
+        }
+        return this;
+    }
+
+    public Parser<RECORD> addVisitedFields(final String... fieldValues) {
+        return addVisitedFields(Arrays.asList(fieldValues));
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Use a precompiled binder to store the values of its fields in the record instead of reflection.
+     * The fields of the binder are added to the fields that must be parsed.
+     * The fields that were only needed by the previous binder are no longer parsed.
+     * @param binder The binder to use (null to stop using the current binder).
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> setRecordBinder(final RecordBinder<RECORD> binder) {
+        assembled = false;
+        for (String fieldValue : recordBinderFields) {
+            Set<Pair<List<String>, SetterPolicy>> methods = targetsMethodNames.get(fieldValue);
+            if (methods != null && methods.isEmpty()) {
+                targetsMethodNames.remove(fieldValue);
+                if (targets != null) {
+                    targets.remove(fieldValue);
+                }
+            }
+        }
+        recordBinderFields.clear();
+
+        recordBinder = binder;
+        if (binder == null) {
+            return this;
+        }
+        for (String fieldValue : binder.getFields()) {
+            String cleanedFieldValue = cleanupFieldValue(fieldValue);
+            if (!targetsMethodNames.containsKey(cleanedFieldValue)) {
+                recordBinderFields.add(cleanedFieldValue);
+            }
+            addTargetWithoutSetter(fieldValue);
+        }
+        return this;
+    }
+
+    // A target without any methods: the value only goes to a RecordBinder or a FieldVisitor.
+    private void addTargetWithoutSetter(final String fieldValue) {
+        String cleanedFieldValue = cleanupFieldValue(fieldValue);
+        if (!fieldValue.equals(cleanedFieldValue)) {
+            LOG.warn("The requested \"{}\" was converted into \"{}\"", fieldValue, cleanedFieldValue);
+        }
+        if (targets != null) { // After deserialization these are restored from the targetsMethodNames.
+            targets.computeIfAbsent(cleanedFieldValue, k -> new HashSet<>());
+        }
+        targetsMethodNames.computeIfAbsent(cleanedFieldValue, k -> new HashSet<>());
+    }
+
+    // --------------------------------------------
+
     private Map<String, Set<String>> typeRemappings = new HashMap<>(16);
 
     public Parser<RECORD> setTypeRemappings(Map<String, Set<String>> pTypeRemappings) {
@@ -695,8 +927,26 @@ public class Parser<RECORD> implements Serializable {
     /**
      * Parse the value and return a new instance of RECORD.
      * For this method to work the RECORD class may NOT be an inner class.
+     * If filters have been added the record is also returned if the line was rejected
+     * (use {@link #parseFiltered(String)} to find out).
      */
     public RECORD parse(final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        final Parsable<RECORD> parsable = parseNewRecord(value);
+        return parsable == null ? null : parsable.getRecord();
+    }
+
+    /**
+     * Parse the value and return a new instance of RECORD only if all filters accepted the line.
+     * For this method to work the RECORD class may NOT be an inner class.
+     * @return The new record or null if the record was rejected by one of the filters.
+     */
+    public RECORD parseFiltered(final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        return getRetainedRecord(parseNewRecord(value));
+    }
+
+    private Parsable<RECORD> parseNewRecord(final String value)
         throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
         assembleDissectors();
         final Parsable<RECORD> parsable = createParsable();
@@ -704,20 +954,104 @@ public class Parser<RECORD> implements Serializable {
             return null;
         }
         parsable.setRootDissection(rootType, value);
-        return parse(parsable).getRecord();
+        return parse(parsable);
     }
 
     // --------------------------------------------
 
     /**
      * Parse the value and call all configured setters in the provided instance of RECORD.
+     * If filters have been added the record is also returned if the line was rejected
+     * (use {@link #parseFiltered(Object, String)} to find out).
      */
     public RECORD parse(final RECORD record, final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        parseIntoRecord(record, value);
+        return record;
+    }
+
+    /**
+     * Parse the value and call all configured setters in the provided instance of RECORD.
+     * @return The provided record or null if the record was rejected by one of the filters
+     * (the setters for the fields that were parsed before the rejection have been called).
+     */
+    public RECORD parseFiltered(final RECORD record, final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        return getRetainedRecord(parseIntoRecord(record, value));
+    }
+
+    private Parsable<RECORD> parseIntoRecord(final RECORD record, final String value)
         throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
         assembleDissectors();
         final Parsable<RECORD> parsable = createParsable(record);
         parsable.setRootDissection(rootType, value);
-        return parse(parsable).getRecord();
+        return parse(parsable);
+    }
+
+    /**
+     * Parse the value and hand the values of all requested fields directly to the visitor.
+     * No instance of RECORD is created and none of the setters are called.
+     * If filters have been added the values are only handed to the visitor after all filters have accepted
+     * the line, so the visitor never sees any value of a rejected line.
+     * @return false if the line was rejected by one of the filters.
+     */
+    public boolean parse(final String value, final FieldVisitor visitor)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        assembleDissectors();
+        final Parsable<RECORD> parsable = new Parsable<>(this, null, visitor, typeRemappings);
+        parsable.setRootDissection(rootType, value);
+        final Parsable<RECORD> result = parse(parsable);
+        if (result == null) {
+            return false;
+        }
+        result.deliverHeldVisits();
+        return !result.isRejected();
+    }
+
+    /**
+     * Parse the value but only run the dissectors of the root (i.e. only tokenize the line).
+     * All other dissectors only run when a field that depends on them is retrieved from the returned record.
+     * This is useful when many of the records are discarded after looking at only a few of the fields.
+     * Only the fields that have been requested from this parser (via setters or addVisitedFields) can be retrieved.
+     * @return The lazy record (without a RECORD) or null if the parser could not be assembled.
+     */
+    public LazyRecord<RECORD> parseLazy(final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        return parseLazy(null, value);
+    }
+
+    /**
+     * Parse the value but only run the dissectors of the root (i.e. only tokenize the line).
+     * The setters of the provided record are called when the dissectors that produce their fields run,
+     * which is when a field that depends on them is retrieved from the returned LazyRecord
+     * (see {@link LazyRecord#getRecord(String...)}).
+     * @return The lazy record or null if the parser could not be assembled.
+     */
+    public LazyRecord<RECORD> parseLazy(final RECORD record, final String value)
+        throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {
+        assembleDissectors();
+        if (!assembled) {
+            return null;
+        }
+
+        final ParserMetrics lineMetrics = metrics;
+        boolean failed = true;
+        try {
+            final LazyRecord<RECORD> lazyRecord = new LazyRecord<>(this, record, rootType, value, typeRemappings);
+            failed = false;
+            return lazyRecord;
+        } finally {
+            if (lineMetrics != null) {
+                lineMetrics.recordLine(failed);
+            }
+        }
+    }
+
+    private RECORD getRetainedRecord(Parsable<RECORD> parsable) {
+        if (parsable == null || parsable.isRejected()) {
+            return null;
+        }
+        return parsable.getRecord();
     }
 
     // --------------------------------------------
@@ -730,30 +1064,271 @@ public class Parser<RECORD> implements Serializable {
             return null;
         }
 
+        final ParserMetrics lineMetrics = metrics;
+        if (lineMetrics == null) {
+            return dissectAll(parsable);
+        }
+
+        boolean failed = true;
+        try {
+            Parsable<RECORD> result = dissectAll(parsable);
+            failed = false;
+            return result;
+        } catch (DissectionFailure df) {
+            lineMetrics.recordFailureReason(df.getErrorCode());
+            throw df;
+        } finally {
+            lineMetrics.recordLine(failed);
+        }
+    }
+
+    private Parsable<RECORD> dissectAll(final Parsable<RECORD> parsable) throws DissectionFailure {
         // Values look like "TYPE:foo.bar"
         Set<ParsedField> toBeParsed = new HashSet<>(parsable.getToBeParsed());
 
         while (toBeParsed.size() > 0) {
             for (ParsedField fieldThatNeedsToBeParsed : toBeParsed) {
-                parsable.setAsParsed(fieldThatNeedsToBeParsed);
-                Set<DissectorPhase> dissectorSet = compiledDissectors.get(fieldThatNeedsToBeParsed.getId());
-                if (dissectorSet != null) {
-                    for (DissectorPhase dissector : dissectorSet) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Dissect {} with {}", fieldThatNeedsToBeParsed, dissector.instance.getClass().getName());
-                        }
-                        dissector.instance.dissect(parsable, fieldThatNeedsToBeParsed.getName());
-                    }
-                } else {
-                    LOG.trace("NO DISSECTORS FOR \"{}\"", fieldThatNeedsToBeParsed);
+                dissectField(parsable, fieldThatNeedsToBeParsed);
+                if (parsable.isRejected()) {
+                    return parsable; // No need to do any of the remaining work
                 }
             }
             toBeParsed.clear();
             toBeParsed.addAll(parsable.getToBeParsed());
         }
+        parsable.applyFiltersOnMissingFields();
         return parsable;
     }
 
+    /**
+     * Only dissect the fields (and the fields produced by them) for which the name is selected.
+     * This is used by the {@link LazyRecord} to do only the work needed for the fields that are retrieved.
+     */
+    void dissectSelected(final Parsable<RECORD> parsable, final Predicate<String> selectName) throws DissectionFailure {
+        boolean dissectedSomething = true;
+        while (dissectedSomething) {
+            dissectedSomething = false;
+            for (ParsedField fieldThatNeedsToBeParsed : new ArrayList<>(parsable.getToBeParsed())) {
+                if (!selectName.test(fieldThatNeedsToBeParsed.getName())) {
+                    continue;
+                }
+                dissectField(parsable, fieldThatNeedsToBeParsed);
+                if (parsable.isRejected()) {
+                    return; // No need to do any of the remaining work
+                }
+                dissectedSomething = true;
+            }
+        }
+    }
+
+    private void dissectField(final Parsable<RECORD> parsable, final ParsedField fieldThatNeedsToBeParsed) throws DissectionFailure {
+        parsable.setAsParsed(fieldThatNeedsToBeParsed);
+        Set<DissectorPhase> dissectorSet = compiledDissectors.get(fieldThatNeedsToBeParsed.getId());
+        if (dissectorSet == null) {
+            LOG.trace("NO DISSECTORS FOR \"{}\"", fieldThatNeedsToBeParsed);
+            return;
+        }
+        for (DissectorPhase dissector : dissectorSet) {
+            if (dissector.fused) {
+                continue; // Already done when this field was produced.
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dissect {} with {}", fieldThatNeedsToBeParsed, dissector.instance.getClass().getName());
+            }
+            if (dissector.metrics == null) {
+                runDissector(dissector, parsable, fieldThatNeedsToBeParsed);
+            } else {
+                dissectWithMetrics(dissector, parsable, fieldThatNeedsToBeParsed);
+            }
+            if (parsable.isRejected()) {
+                return; // No need to do any of the remaining work
+            }
+        }
+    }
+
+    private void runDissector(final DissectorPhase dissector, final Parsable<RECORD> parsable, final ParsedField input)
+        throws DissectionFailure {
+        if (dissector.cache == null) {
+            dissector.instance.dissect(parsable, input.getName());
+        } else {
+            dissector.cache.dissect(dissector.instance, parsable, input);
+        }
+    }
+
+    private void dissectWithMetrics(final DissectorPhase dissector, final Parsable<RECORD> parsable, final ParsedField input)
+        throws DissectionFailure {
+        final long fieldsBefore = parsable.getDissectionCount();
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            runDissector(dissector, parsable, input);
+            failed = false;
+        } finally {
+            dissector.metrics.record(System.nanoTime() - start, parsable.getDissectionCount() - fieldsBefore, failed);
+        }
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Start recording the per dissector timing and counters of this parser.
+     * When not enabled the overhead is a single check per dissector call.
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> enableMetrics() {
+        if (metrics == null) {
+            metrics = new ParserMetrics();
+            attachMetrics();
+        }
+        return this;
+    }
+
+    /**
+     * Stop recording the metrics and discard everything that was recorded.
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> disableMetrics() {
+        metrics = null;
+        attachMetrics();
+        return this;
+    }
+
+    /**
+     * @return The metrics of this parser or null if they have not been enabled.
+     */
+    public ParserMetrics getMetrics() {
+        return metrics;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Cache the outputs of all dissectors of the specified type (i.e. the HttpUriDissector): for the most recently
+     * seen input values the produced values are recorded and on a repeated input value these are used instead of
+     * calling the dissector again. Only use this for dissectors of which the output only depends on the input value.
+     * @param dissectorClass The type of the dissectors to cache (subclasses are included).
+     * @param maxSize The maximum number of input values for which the outputs are retained (per dissector phase).
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> enableDissectorCache(final Class<? extends Dissector> dissectorClass, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maxSize of a dissector cache must be positive");
+        }
+        dissectorCacheSizes.put(dissectorClass, maxSize);
+        attachDissectorCaches();
+        return this;
+    }
+
+    /**
+     * Stop caching the outputs of the dissectors of the specified type.
+     * @return This parser (so calls can be chained).
+     */
+    public Parser<RECORD> disableDissectorCache(final Class<? extends Dissector> dissectorClass) {
+        dissectorCacheSizes.remove(dissectorClass);
+        attachDissectorCaches();
+        return this;
+    }
+
+    /**
+     * @return The caches of all dissector phases (key = "TYPE:input --> dissector class"),
+     * empty if no caches have been enabled or the parser has not been assembled yet.
+     */
+    public Map<String, DissectorCache> getDissectorCaches() {
+        if (dissectorCaches == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(dissectorCaches);
+    }
+
+    private void attachDissectorCaches() {
+        if (compiledDissectors == null) {
+            return; // Will be done when the parser is assembled.
+        }
+        dissectorCaches = new TreeMap<>();
+        for (Entry<String, Set<DissectorPhase>> phases : compiledDissectors.entrySet()) {
+            for (DissectorPhase phase : phases.getValue()) {
+                phase.cache = null;
+                if (phase.fused) {
+                    continue; // A fused conversion is never cached.
+                }
+                for (Entry<Class<? extends Dissector>, Integer> cacheSize : dissectorCacheSizes.entrySet()) {
+                    if (cacheSize.getKey().isInstance(phase.instance)) {
+                        String name = phases.getKey() + " --> " + phase.instance.getClass().getName();
+                        phase.cache = new DissectorCache(name, cacheSize.getValue());
+                        dissectorCaches.put(name, phase.cache);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // --------------------------------------------
+
+    private void attachMetrics() {
+        if (compiledDissectors == null) {
+            return; // Will be done when the parser is assembled.
+        }
+        for (Entry<String, Set<DissectorPhase>> phases : compiledDissectors.entrySet()) {
+            for (DissectorPhase phase : phases.getValue()) {
+                phase.instance.setCountersEnabled(metrics != null);
+                if (metrics == null) {
+                    phase.metrics = null;
+                } else {
+                    phase.metrics = metrics.getDissectorMetrics(
+                        phases.getKey() + " --> " + phase.instance.getClass().getName(), phase.instance);
+                }
+            }
+        }
+    }
+
+    // --------------------------------------------
+
+    void visit(final FieldVisitor visitor, final String key, final String name, final Value value) {
+        Casts cast = bestCastOfTargets.get(key);
+        if (cast == null) {
+            cast = getBestCast(castsOfTargets.get(name));
+        }
+        switch (cast) {
+            case LONG:
+                final Long longValue = value.getLong();
+                if (longValue == null) {
+                    visitor.visitNull(name);
+                } else {
+                    visitor.visitLong(name, longValue);
+                }
+                break;
+            case DOUBLE:
+                final Double doubleValue = value.getDouble();
+                if (doubleValue == null) {
+                    visitor.visitNull(name);
+                } else {
+                    visitor.visitDouble(name, doubleValue);
+                }
+                break;
+            default:
+                final String stringValue = value.getString();
+                if (stringValue == null) {
+                    visitor.visitNull(name);
+                } else {
+                    visitor.visitString(name, stringValue);
+                }
+                break;
+        }
+    }
+
+    private static Casts getBestCast(final EnumSet<Casts> casts) {
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return Casts.LONG;
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return Casts.DOUBLE;
+            }
+        }
+        return Casts.STRING;
+    }
+
     // --------------------------------------------
 
     void store(final RECORD record, final String key, final String name, final Value value) {
@@ -764,6 +1339,10 @@ public class Parser<RECORD> implements Serializable {
             return; // Nothing to do
         }
 
+        if (recordBinder != null && recordBinder.store(record, key, name, value)) {
+            calledASetter = true;
+        }
+
         final Set<Pair<Method, SetterPolicy>> methodPairs = targets.get(key);
         if (methodPairs == null) {
             LOG.error("NO methods for key={}  name={}.", key, name);
@@ -0,0 +1,137 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The timing and counters of a {@link Parser} for which metrics have been enabled using
+ * {@link Parser#enableMetrics()}.
+ * For each dissector phase in the parse tree this records the number of invocations, the time spent,
+ * the number of failures and the number of emitted fields.
+ * These can be retrieved via this class or via JMX after calling {@link #registerMBean(String)}.
+ */
+public final class ParserMetrics implements ParserMetricsMXBean, Serializable {
+
+    public static final String JMX_DOMAIN = "nl.basjes.parse";
+
+    private final Map<String, DissectorMetrics> dissectors = new ConcurrentHashMap<>();
+    private final LongAdder lines       = new LongAdder();
+    private final LongAdder failedLines = new LongAdder();
+    // Key = the error code of the DissectionFailure
+    private final Map<String, LongAdder> failureReasons = new ConcurrentHashMap<>();
+
+    DissectorMetrics getDissectorMetrics(String name, Dissector dissector) {
+        DissectorMetrics metrics = dissectors.computeIfAbsent(name, DissectorMetrics::new);
+        metrics.setDissector(dissector);
+        return metrics;
+    }
+
+    void recordLine(boolean failed) {
+        lines.increment();
+        if (failed) {
+            failedLines.increment();
+        }
+    }
+
+    void recordFailureReason(String errorCode) {
+        failureReasons.computeIfAbsent(errorCode, code -> new LongAdder()).increment();
+    }
+
+    @Override
+    public Map<String, DissectorMetrics> getDissectors() {
+        return new TreeMap<>(dissectors);
+    }
+
+    @Override
+    public long getLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getFailedLines() {
+        return failedLines.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFailureReasons() {
+        Map<String, Long> result = new TreeMap<>();
+        failureReasons.forEach((code, count) -> result.put(code, count.sum()));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        lines.reset();
+        failedLines.reset();
+        failureReasons.clear();
+        dissectors.values().forEach(DissectorMetrics::reset);
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Make these metrics available via JMX in the platform MBeanServer.
+     * @param name The name of this parser (usually something that identifies the source of the logs).
+     * @return The name under which the metrics have been registered.
+     * @throws JMException If the registration failed (i.e. something with this name already exists).
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = getObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Remove these metrics from the platform MBeanServer.
+     * @param name The same name as used in {@link #registerMBean(String)}.
+     * @throws JMException If the unregistration failed.
+     */
+    public void unregisterMBean(String name) throws JMException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = getObjectName(name);
+        if (mBeanServer.isRegistered(objectName)) {
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+
+    public static ObjectName getObjectName(String name) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Parser,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Lines=").append(getLines()).append(" FailedLines=").append(getFailedLines());
+        if (!failureReasons.isEmpty()) {
+            sb.append(" FailureReasons=").append(getFailureReasons());
+        }
+        for (DissectorMetrics dissector : getDissectors().values()) {
+            sb.append('\n').append(dissector);
+        }
+        return sb.toString();
+    }
+}
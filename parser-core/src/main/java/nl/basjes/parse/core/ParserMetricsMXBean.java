@@ -0,0 +1,50 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import java.util.Map;
+
+/**
+ * The JMX view on the {@link ParserMetrics} of a single {@link Parser}.
+ */
+public interface ParserMetricsMXBean {
+
+    /**
+     * @return The metrics of all dissector phases, the key is the name of the phase.
+     */
+    Map<String, DissectorMetrics> getDissectors();
+
+    /**
+     * @return The total number of lines that were given to the parser.
+     */
+    long getLines();
+
+    /**
+     * @return The total number of lines that failed to parse.
+     */
+    long getFailedLines();
+
+    /**
+     * @return The number of failed lines per error code of the failure (see DissectionFailure#getErrorCode()).
+     */
+    Map<String, Long> getFailureReasons();
+
+    /**
+     * Set all counters back to 0.
+     */
+    void reset();
+}
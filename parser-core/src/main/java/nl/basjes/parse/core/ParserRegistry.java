@@ -0,0 +1,383 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the parsers for many different formats (i.e. one per customer or per type of logfile) and field sets.
+ * <ul>
+ * <li>A parser is borrowed for a format and set of fields and must be returned after use.
+ * A returned (assembled) parser is handed out again to the next request for the same format and fields.</li>
+ * <li>A parser is never handed out to two callers at the same time (parsers are not threadsafe),
+ * so concurrent requests for the same format and fields each get their own parser.</li>
+ * <li>The immutable compiled state of the dissectors (regexes, formatters) is shared between all parsers
+ * (see {@link SharedInstanceCache}).</li>
+ * <li>The memory used by each parser is estimated (the size of the serialized assembled parser) and
+ * the least recently used formats are evicted when the total exceeds the memory budget.</li>
+ * </ul>
+ * <pre>
+ * Parser&lt;MyRecord&gt; parser = registry.borrowParser(logFormat, fields);
+ * try {
+ *     parser.parse(line);
+ * } finally {
+ *     registry.returnParser(parser);
+ * }
+ * </pre>
+ * The registry itself is threadsafe.
+ * @param <RECORD> The type of the records that are produced by the parsers.
+ */
+public final class ParserRegistry<RECORD> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParserRegistry.class);
+
+    // Used if the parser cannot be serialized
+    static final long DEFAULT_MEMORY_ESTIMATE = 64 * 1024;
+
+    /**
+     * Creates a new parser for the format that produces the specified fields.
+     * @param <RECORD> The type of the records that are produced by the parser.
+     */
+    @FunctionalInterface
+    public interface ParserFactory<RECORD> {
+        Parser<RECORD> createParser(String format, Set<String> fields) throws NoSuchMethodException;
+    }
+
+    /**
+     * The statistics of the parsers for a single format and set of fields in the registry.
+     */
+    public static final class Entry<RECORD> {
+        private final String         format;
+        private final Set<String>    fields;
+        private final long           estimatedMemory;
+        private final long           created;
+        private volatile long        lastUsed;
+        private final LongAdder      uses = new LongAdder();
+
+        // Guarded by the registry
+        private final Deque<Parser<RECORD>> idle = new ArrayDeque<>();
+        private int                  instances = 0;
+        private boolean              evicted = false;
+
+        Entry(String format, Set<String> fields, long estimatedMemory, long now) {
+            this.format = format;
+            this.fields = fields;
+            this.estimatedMemory = estimatedMemory;
+            this.created = now;
+            this.lastUsed = now;
+        }
+
+        void used(long now) {
+            lastUsed = now;
+            uses.increment();
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public Set<String> getFields() {
+            return fields;
+        }
+
+        /**
+         * @return The (estimated) number of bytes retained by a single parser.
+         */
+        public long getEstimatedMemory() {
+            return estimatedMemory;
+        }
+
+        /**
+         * @return The number of parsers (both borrowed and idle).
+         */
+        public int getInstances() {
+            return instances;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        public long getUses() {
+            return uses.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "{ format=" + format + " fields=" + fields + " memory=" + estimatedMemory +
+                " instances=" + instances + " uses=" + getUses() + " }";
+        }
+    }
+
+    private static final class Key {
+        private final String      format;
+        private final Set<String> fields;
+
+        Key(String format, Set<String> fields) {
+            this.format = format;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return format.equals(key.format) && fields.equals(key.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(format, fields);
+        }
+    }
+
+    private final ParserFactory<RECORD>         factory;
+    private final long                          memoryBudget;
+    // In access order so the first entry is the least recently used one.
+    private final Map<Key, Entry<RECORD>>       entries     = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Parser<RECORD>, Entry<RECORD>> borrowed = new IdentityHashMap<>();
+    private long                                totalMemory = 0;
+
+    private final LongAdder                     hits        = new LongAdder();
+    private final LongAdder                     misses      = new LongAdder();
+    private final LongAdder                     evictions   = new LongAdder();
+
+    /**
+     * @param factory Creates the parser for a format and a set of fields.
+     * @param memoryBudget The maximum (estimated) number of bytes of all parsers together.
+     */
+    public ParserRegistry(ParserFactory<RECORD> factory, long memoryBudget) {
+        this.factory = factory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Borrow a parser, it must be given back with {@link #returnParser(Parser)} after use.
+     * @param format The format (i.e. the LogFormat) of the lines.
+     * @param fields The fields that must be produced.
+     * @return An (assembled) parser that is not in use by anyone else,
+     * a new one is only created if all parsers for this format and fields are currently borrowed.
+     */
+    public Parser<RECORD> borrowParser(String format, Collection<String> fields)
+        throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+        Set<String> fieldSet = new TreeSet<>();
+        for (String field : fields) {
+            fieldSet.add(Parser.cleanupFieldValue(field));
+        }
+        final Key key = new Key(format, Collections.unmodifiableSet(fieldSet));
+        final long now = System.currentTimeMillis();
+
+        Entry<RECORD> existing;
+        synchronized (this) {
+            existing = entries.get(key);
+            if (existing != null) {
+                existing.used(now);
+                Parser<RECORD> parser = existing.idle.pollFirst();
+                if (parser != null) {
+                    hits.increment();
+                    borrowed.put(parser, existing);
+                    return parser;
+                }
+            }
+        }
+
+        // Creating and assembling a parser is expensive so this is done outside of the lock.
+        misses.increment();
+        Parser<RECORD> parser = factory.createParser(format, key.fields);
+        parser.getAllCasts(); // Forces the assembly
+        long memory = existing == null ? estimateMemory(parser) : existing.estimatedMemory;
+
+        synchronized (this) {
+            Entry<RECORD> entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>(format, key.fields, memory, now);
+                entry.used(now);
+                entries.put(key, entry);
+            }
+            entry.instances++;
+            totalMemory += entry.estimatedMemory;
+            borrowed.put(parser, entry);
+            evictOverBudget(entry);
+        }
+        return parser;
+    }
+
+    /**
+     * Give a borrowed parser back so it can be reused.
+     * @param parser The parser that was obtained from {@link #borrowParser(String, Collection)}.
+     */
+    public synchronized void returnParser(Parser<RECORD> parser) {
+        Entry<RECORD> entry = borrowed.remove(parser);
+        if (entry == null) {
+            throw new IllegalArgumentException("This parser is not borrowed from this registry.");
+        }
+        if (!entry.evicted) {
+            entry.idle.addFirst(parser);
+        }
+    }
+
+    // Evict the least recently used parsers (never the one that was just used).
+    private void evictOverBudget(Entry<RECORD> keep) {
+        Iterator<Entry<RECORD>> iterator = entries.values().iterator();
+        while (totalMemory > memoryBudget && iterator.hasNext()) {
+            Entry<RECORD> entry = iterator.next();
+            if (entry == keep) {
+                continue;
+            }
+            iterator.remove();
+            evict(entry);
+            LOG.debug("Evicted parser {}", entry);
+        }
+    }
+
+    // The borrowed parsers of an evicted entry are dropped when they are returned.
+    private void evict(Entry<RECORD> entry) {
+        entry.evicted = true;
+        entry.idle.clear();
+        totalMemory -= entry.estimatedMemory * entry.instances;
+        evictions.increment();
+    }
+
+    /**
+     * Evict all parsers that have not been used for the specified time.
+     * @return The number of evicted parsers.
+     */
+    public synchronized int evictIdle(long maxIdleMillis) {
+        final long oldest = System.currentTimeMillis() - maxIdleMillis;
+        int evicted = 0;
+        Iterator<Entry<RECORD>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<RECORD> entry = iterator.next();
+            if (entry.lastUsed < oldest) {
+                iterator.remove();
+                evict(entry);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public synchronized void clear() {
+        for (Entry<RECORD> entry : entries.values()) {
+            entry.evicted = true;
+            entry.idle.clear();
+        }
+        entries.clear();
+        totalMemory = 0;
+    }
+
+    // --------------------------------------------
+
+    /**
+     * @return The statistics of all parsers (the least recently used first).
+     */
+    public synchronized List<Entry<RECORD>> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return The (estimated) number of bytes of all parsers (borrowed and idle) together.
+     */
+    public synchronized long getTotalMemory() {
+        return totalMemory;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ParserRegistry{ parsers=" + entries.size() + " memory=" + totalMemory + "/" + memoryBudget +
+            " hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions() + " }";
+    }
+
+    // --------------------------------------------
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    // The size of the serialized form is a (rough) estimate of the retained memory of the parser.
+    static long estimateMemory(Parser<?> parser) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(parser);
+        } catch (IOException e) {
+            LOG.debug("Unable to estimate the memory of the parser: {}", e.getMessage());
+            return DEFAULT_MEMORY_ESTIMATE;
+        }
+        return counter.count;
+    }
+
+}
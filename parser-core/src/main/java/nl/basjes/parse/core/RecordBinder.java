@@ -0,0 +1,46 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A precompiled way of putting the values into the record.
+ * Instead of locating the setter methods of the record using reflection (and calling them via
+ * {@link java.lang.reflect.Method#invoke(Object, Object...)}) the {@link Parser} hands each value
+ * of the fields of the binder directly to {@link #store(Object, String, String, Value)}.
+ * The PojoGenerator utility can generate a record class together with the matching binder.
+ * @param <RECORD> The type of the record.
+ */
+public interface RecordBinder<RECORD> extends Serializable {
+
+    /**
+     * @return The fields ("TYPE:name") this binder wants to receive.
+     */
+    List<String> getFields();
+
+    /**
+     * Put the value into the record.
+     * @param record The record that receives the value.
+     * @param field  The field as it was requested (one of {@link #getFields()} after {@link Parser#cleanupFieldValue(String)}).
+     * @param name   The actual name of the field (differs from the field for wildcards).
+     * @param value  The value that was dissected.
+     * @return true if this binder has stored the value, false if it does not know this field.
+     */
+    boolean store(RECORD record, String field, String name, Value value);
+}
@@ -0,0 +1,62 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A bounded pool of immutable (and thus threadsafe) objects that are expensive to create, like compiled
+ * regular expressions and date time formatters.
+ * Dissectors that are configured identically (also in different parsers) get the same instance instead
+ * of each creating (and retaining) their own copy.
+ * When the pool is full new objects are still created, they are simply not shared anymore.
+ * @param <K> The configuration from which the object is created (must have a proper equals and hashCode).
+ * @param <V> The immutable object.
+ */
+public final class SharedInstanceCache<K, V> {
+
+    private final int               maxSize;
+    private final Function<K, V>    creator;
+    private final Map<K, V>         instances = new ConcurrentHashMap<>();
+
+    public SharedInstanceCache(final int maxSize, final Function<K, V> creator) {
+        this.maxSize = maxSize;
+        this.creator = creator;
+    }
+
+    public V get(final K key) {
+        V instance = instances.get(key);
+        if (instance != null) {
+            return instance;
+        }
+        if (instances.size() >= maxSize) {
+            return creator.apply(key);
+        }
+        return instances.computeIfAbsent(key, creator);
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public void clear() {
+        instances.clear();
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+
+/**
+ * A {@link Dissector} that does nothing more than convert the value of its input into the value of
+ * a single output with the same name (i.e. BYTESCLF:response.body.bytesclf into BYTES:response.body.bytesclf)
+ * should implement this.
+ * The parser then fuses such a conversion into the production of its input: the conversion is done directly
+ * when the input value is added instead of storing the input as an intermediate field that is dissected later on.
+ * The regular dissect method must produce exactly the same output as this conversion because it is still used
+ * when the input is the root of the parser.
+ */
+public interface ValueConverter {
+
+    /**
+     * @param value The value of the input (never null, it may contain a null value).
+     * @return The value of the output or null if no output must be produced.
+     */
+    Value convert(Value value) throws DissectionFailure;
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import java.io.Serializable;
+
+/**
+ * A predicate on the value of a single field.
+ * A filter is evaluated as soon as the dissector that produces the field has emitted its value.
+ * If the filter rejects the value the parsing of the record is stopped immediately.
+ * If the field was never emitted for a record the filter is called with a null value.
+ * Because the Parser is Serializable so must be all filters.
+ */
+@FunctionalInterface
+public interface ValueFilter extends Serializable {
+
+    /**
+     * @param value The value of the field (never null, the content of the value may be null)
+     * @return true if the record is to be retained.
+     */
+    boolean accept(Value value);
+
+    // --------------------------------------------
+
+    /**
+     * @return A filter that only accepts the value if it is exactly the provided string.
+     */
+    static ValueFilter isEqualTo(final String expected) {
+        return value -> expected.equals(value.getString());
+    }
+
+    /**
+     * @return A filter that only accepts the value if it is exactly the provided number.
+     */
+    static ValueFilter isEqualTo(final long expected) {
+        return value -> {
+            Long longValue = value.getLong();
+            return longValue != null && longValue == expected;
+        };
+    }
+
+    /**
+     * @return A filter that only accepts the value if it is a number in the range from (inclusive) to (exclusive).
+     */
+    static ValueFilter isInRange(final long from, final long to) {
+        return value -> {
+            Long longValue = value.getLong();
+            return longValue != null && longValue >= from && longValue < to;
+        };
+    }
+
+    /**
+     * @return A filter that only accepts the value if it starts with the provided string.
+     */
+    static ValueFilter startsWith(final String prefix) {
+        return value -> {
+            String stringValue = value.getString();
+            return stringValue != null && stringValue.startsWith(prefix);
+        };
+    }
+
+    /**
+     * @return A filter that only accepts the value if it is not null.
+     */
+    static ValueFilter isNotNull() {
+        return value -> value.getString() != null;
+    }
+
+    /**
+     * @return A filter that only accepts the value if both filters accept it.
+     */
+    default ValueFilter and(final ValueFilter other) {
+        return value -> accept(value) && other.accept(value);
+    }
+
+}
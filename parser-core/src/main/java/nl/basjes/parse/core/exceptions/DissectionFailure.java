@@ -16,13 +16,113 @@
  */
 package nl.basjes.parse.core.exceptions;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+
+/**
+ * The value could not be dissected.
+ * Besides the message each failure has an error code (i.e. "LOGFORMAT_MISMATCH") that can be used to aggregate
+ * the failures and a position in the input (the meaning is specific for the dissector).
+ * For the very common expected failures (i.e. a bad line in a logfile) a dissector should create the failure
+ * using {@link #stackless(String, int, String)}: filling the stack trace is the most expensive part of an exception.
+ * If determining the position or the message is expensive use {@link #stackless(String, IntSupplier, IntFunction)} so
+ * this is only done if they are actually retrieved.
+ */
 public class DissectionFailure extends Exception {
     private static final long serialVersionUID = 1L;
 
+    /** The error code of all failures that were created without a specific error code. */
+    public static final String UNSPECIFIED = "UNSPECIFIED";
+
+    private final String errorCode;
+    private int          position;
+    private String       lazyMessage = null;
+
+    // Only present until the position/message have been determined.
+    private transient IntSupplier      positionSupplier = null;
+    private transient IntFunction<String> messageSupplier = null;
+
     public DissectionFailure(String message) {
         super(message);
+        errorCode = UNSPECIFIED;
+        position = -1;
     }
     public DissectionFailure(String message, Throwable cause) {
         super(message, cause);
+        errorCode = UNSPECIFIED;
+        position = -1;
+    }
+
+    public DissectionFailure(String errorCode, int position, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.position = position;
+    }
+
+    protected DissectionFailure(String errorCode, int position, String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        this.errorCode = errorCode;
+        this.position = position;
+    }
+
+    /**
+     * Create a failure without a stack trace (which is what makes creating an exception expensive).
+     * @param errorCode The code that identifies the reason of this failure.
+     * @param position The position in the input where the problem was found (-1 if unknown).
+     * @param message The human readable description.
+     */
+    public static DissectionFailure stackless(String errorCode, int position, String message) {
+        return new DissectionFailure(errorCode, position, message, false);
+    }
+
+    /**
+     * Create a failure without a stack trace of which the position and message are only determined
+     * (once) when they are retrieved. So a failure that is only counted or dropped costs almost nothing.
+     * The suppliers are called in the thread that retrieves the position or message.
+     * @param errorCode The code that identifies the reason of this failure.
+     * @param position Determines the position in the input where the problem was found (-1 if unknown).
+     * @param message Determines the human readable description (gets the position).
+     */
+    public static DissectionFailure stackless(String errorCode, IntSupplier position, IntFunction<String> message) {
+        DissectionFailure failure = new DissectionFailure(errorCode, -1, null, false);
+        failure.positionSupplier = position;
+        failure.messageSupplier  = message;
+        return failure;
+    }
+
+    /**
+     * @return The code that identifies the reason of this failure ({@link #UNSPECIFIED} if not provided).
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return The position in the input where the problem was found (-1 if unknown).
+     */
+    public int getPosition() {
+        if (positionSupplier != null) {
+            position = positionSupplier.getAsInt();
+            positionSupplier = null;
+        }
+        return position;
+    }
+
+    @Override
+    public String getMessage() {
+        if (messageSupplier != null) {
+            lazyMessage = messageSupplier.apply(getPosition());
+            messageSupplier = null;
+        }
+        return lazyMessage == null ? super.getMessage() : lazyMessage;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The suppliers are not serializable so the values are determined now.
+        getPosition();
+        getMessage();
+        out.defaultWriteObject();
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParserDissectorCacheTest {
+
+    private static final String PHASE = "INPUT: --> " + SplitDissector.class.getName();
+
+    // Splits "a-b" into "PART:first" and "PART:second" and counts how often it was called.
+    public static class SplitDissector extends SimpleDissector {
+        private static final Map<String, EnumSet<Casts>> OUTPUTS = new HashMap<>();
+        static {
+            OUTPUTS.put("PART:first",  Casts.STRING_ONLY);
+            OUTPUTS.put("PART:second", Casts.STRING_ONLY);
+        }
+
+        private static int calls = 0;
+
+        public SplitDissector() {
+            super("INPUT", OUTPUTS);
+        }
+
+        @Override
+        public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+            calls++;
+            String[] parts = value.getString().split("-");
+            if (parts.length != 2) {
+                throw new DissectionFailure("Bad input: " + value.getString());
+            }
+            parsable.addDissection(inputname, "PART", "first",  parts[0]);
+            parsable.addDissection(inputname, "PART", "second", parts[1]);
+        }
+    }
+
+    private Parser<TestRecord> createParser() {
+        SplitDissector.calls = 0;
+        return new Parser<>(TestRecord.class)
+            .setRootType("INPUT")
+            .addDissector(new SplitDissector())
+            .addVisitedFields("PART:first", "PART:second");
+    }
+
+    private Map<String, String> parse(Parser<TestRecord> parser, String line) throws Exception {
+        final Map<String, String> result = new HashMap<>();
+        parser.parse(line, new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+                result.put(field, value);
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                result.put(field, Long.toString(value));
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+                result.put(field, Double.toString(value));
+            }
+        });
+        return result;
+    }
+
+    private Map<String, String> expected(String first, String second) {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("PART:first",  first);
+        expected.put("PART:second", second);
+        return expected;
+    }
+
+    @Test
+    public void testHitsReplayTheOutputs() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .enableDissectorCache(SplitDissector.class, 10);
+
+        assertEquals(expected("a", "b"), parse(parser, "a-b"));
+        assertEquals(expected("a", "b"), parse(parser, "a-b"));
+        assertEquals(expected("c", "d"), parse(parser, "c-d"));
+        assertEquals(expected("a", "b"), parse(parser, "a-b"));
+        assertEquals(2, SplitDissector.calls);
+
+        DissectorCache cache = parser.getDissectorCaches().get(PHASE);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getSize());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .enableDissectorCache(SplitDissector.class, 2);
+
+        parse(parser, "a-b");
+        parse(parser, "c-d");
+        parse(parser, "a-b"); // a-b is now the most recently used
+        parse(parser, "e-f"); // evicts c-d
+        assertEquals(3, SplitDissector.calls);
+
+        parse(parser, "a-b");
+        assertEquals(3, SplitDissector.calls);
+        parse(parser, "c-d");
+        assertEquals(4, SplitDissector.calls);
+
+        DissectorCache cache = parser.getDissectorCaches().get(PHASE);
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .enableDissectorCache(SplitDissector.class, 10);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                parse(parser, "bad");
+                fail("Expected a DissectionFailure");
+            } catch (DissectionFailure e) {
+                // Expected
+            }
+        }
+        assertEquals(2, SplitDissector.calls);
+        assertEquals(0, parser.getDissectorCaches().get(PHASE).getSize());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .enableDissectorCache(SplitDissector.class, 10)
+            .disableDissectorCache(SplitDissector.class);
+
+        parse(parser, "a-b");
+        parse(parser, "a-b");
+        assertEquals(2, SplitDissector.calls);
+        assertTrue(parser.getDissectorCaches().isEmpty());
+    }
+
+}
@@ -22,10 +22,15 @@ import nl.basjes.parse.core.exceptions.InvalidFieldMethodSignature;
 import nl.basjes.parse.core.exceptions.MissingDissectorsException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -333,4 +338,47 @@ public class ParserExceptionsTest {
         parser.dropDissector(TestDissectorOne.class);
     }
 
+    @Test
+    public void testLazyFailure() throws Exception {
+        AtomicInteger positionCalls = new AtomicInteger();
+        AtomicInteger messageCalls = new AtomicInteger();
+        DissectionFailure failure = DissectionFailure.stackless("SOME_CODE",
+            () -> {
+                positionCalls.incrementAndGet();
+                return 42;
+            },
+            position -> {
+                messageCalls.incrementAndGet();
+                return "Problem at " + position;
+            });
+
+        // Nothing is determined until it is retrieved.
+        assertEquals("SOME_CODE", failure.getErrorCode());
+        assertEquals(0, positionCalls.get());
+        assertEquals(0, messageCalls.get());
+        assertEquals(0, failure.getStackTrace().length);
+
+        assertEquals("Problem at 42", failure.getMessage());
+        assertEquals("Problem at 42", failure.getMessage());
+        assertEquals(42, failure.getPosition());
+        assertEquals(1, positionCalls.get());
+        assertEquals(1, messageCalls.get());
+    }
+
+    @Test
+    public void testLazyFailureSerialization() throws Exception {
+        DissectionFailure failure = DissectionFailure.stackless("SOME_CODE", () -> 42, position -> "Problem at " + position);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(failure);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            DissectionFailure copy = (DissectionFailure) in.readObject();
+            assertEquals("SOME_CODE", copy.getErrorCode());
+            assertEquals(42, copy.getPosition());
+            assertEquals("Problem at 42", copy.getMessage());
+        }
+    }
+
 }
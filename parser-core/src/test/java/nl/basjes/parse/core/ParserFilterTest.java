@@ -0,0 +1,119 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import static nl.basjes.parse.core.ValueFilter.isEqualTo;
+import static nl.basjes.parse.core.ValueFilter.isInRange;
+import static nl.basjes.parse.core.ValueFilter.isNotNull;
+import static nl.basjes.parse.core.ValueFilter.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ParserFilterTest {
+
+    private Parser<TestRecord> createParser() throws NoSuchMethodException {
+        return new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType())
+            .addParseTarget("setStringValue", "ANY:fooany")
+            .addParseTarget("setStringValue", "STRING:foostring.barstring");
+    }
+
+    @Test
+    public void testNoFilter() throws Exception {
+        TestRecord record = createParser().parse("Something");
+        assertNotNull(record);
+        record.expectString("ANY:fooany", "42");
+        record.expectString("STRING:foostring.barstring", "42");
+    }
+
+    @Test
+    public void testAccepted() throws Exception {
+        TestRecord record = createParser()
+            .addFilter("INT:fooint", isEqualTo(42))
+            .addFilter("STRING:foostring.barstring", startsWith("4"))
+            .parseFiltered("Something");
+        assertNotNull(record);
+        record.expectString("ANY:fooany", "42");
+        record.expectString("STRING:foostring.barstring", "42");
+    }
+
+    @Test
+    public void testRejectedBeforeFurtherDissection() throws Exception {
+        TestRecord record = new TestRecord();
+        assertNull(createParser()
+            .addFilter("STRING:foostring", isEqualTo("43"))
+            .parseFiltered(record, "Something"));
+
+        // The Bar dissector was never called.
+        assertFalse(record.hasStringValue("STRING:foostring.barstring"));
+    }
+
+    @Test
+    public void testCombinedFilters() throws Exception {
+        assertNull(createParser()
+            .addFilter("LONG:foolong", isEqualTo(42))
+            .addFilter("LONG:foolong", isEqualTo(43))
+            .parseFiltered("Something"));
+    }
+
+    @Test
+    public void testInRange() throws Exception {
+        assertNotNull(createParser().addFilter("INT:fooint", isInRange(42, 43)).parseFiltered("Something"));
+        assertNull(createParser().addFilter("INT:fooint", isInRange(40, 42)).parseFiltered("Something"));
+        assertNull(createParser().addFilter("INT:fooint", isInRange(43, 50)).parseFiltered("Something"));
+    }
+
+    @Test
+    public void testRejectNull() throws Exception {
+        assertNull(createParser()
+            .addFilter("ANY:foostring.barany", value -> value.getString() == null)
+            .parseFiltered("Something"));
+    }
+
+    @Test
+    public void testParseAlwaysReturnsTheRecord() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addFilter("STRING:foostring", isEqualTo("43"));
+
+        TestRecord record = new TestRecord();
+        assertSame(record, parser.parse(record, "Something"));
+        assertFalse(record.hasStringValue("STRING:foostring.barstring"));
+        assertNotNull(parser.parse("Something"));
+
+        assertNull(parser.parseFiltered(new TestRecord(), "Something"));
+        assertNull(parser.parseFiltered("Something"));
+    }
+
+    @Test(expected = MissingDissectorsException.class)
+    public void testFilterOnNonExistentField() throws Exception {
+        createParser()
+            .addFilter("ANY:doesnotexist", isNotNull())
+            .parse("Something");
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static nl.basjes.parse.core.ValueFilter.isEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParserFusionTest {
+
+    public static class InputDissector extends SimpleDissector {
+        public InputDissector() {
+            super("INPUT", Collections.singletonMap("SECONDS:value", Casts.STRING_OR_LONG));
+        }
+
+        @Override
+        public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+            parsable.addDissection(inputname, "SECONDS", "value", Long.parseLong(value.getString()));
+        }
+    }
+
+    public static class Multiply extends SimpleDissector implements ValueConverter {
+        private final String outputType;
+        private final long factor;
+
+        public Multiply(String inputType, String outputType, long factor) {
+            super(inputType, Collections.singletonMap(outputType + ":", Casts.STRING_OR_LONG));
+            this.outputType = outputType;
+            this.factor = factor;
+        }
+
+        @Override
+        public Dissector getNewInstance() {
+            return new Multiply(getInputType(), outputType, factor);
+        }
+
+        @Override
+        public Value convert(Value value) {
+            return new Value(value.getLong() * factor);
+        }
+
+        @Override
+        public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+            parsable.addDissection(inputname, outputType, "", convert(value));
+        }
+    }
+
+    // Not a ValueConverter so this is a normal dissector for the same input.
+    public static class Nanoseconds extends SimpleDissector {
+        public Nanoseconds() {
+            super("MILLISECONDS", Collections.singletonMap("NANOSECONDS:", Casts.STRING_OR_LONG));
+        }
+
+        @Override
+        public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+            parsable.addDissection(inputname, "NANOSECONDS", "", value.getLong() * 1000000);
+        }
+    }
+
+    private Parser<TestRecord> createParser() {
+        return new Parser<>(TestRecord.class)
+            .setRootType("INPUT")
+            .addDissector(new InputDissector())
+            .addDissector(new Multiply("SECONDS", "MILLISECONDS", 1000))
+            .addDissector(new Multiply("MILLISECONDS", "MICROSECONDS", 1000))
+            .addVisitedFields("MICROSECONDS:value");
+    }
+
+    private FieldVisitor collectInto(final Map<String, Long> result) {
+        return new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+                result.put(field, Long.valueOf(value));
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                result.put(field, value);
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+                result.put(field, (long) value);
+            }
+        };
+    }
+
+    private Map<String, Long> parse(Parser<TestRecord> parser, String line) throws Exception {
+        final Map<String, Long> result = new HashMap<>();
+        parser.parse(line, collectInto(result));
+        return result;
+    }
+
+    private Parsable<TestRecord> parseIntoParsable(Parser<TestRecord> parser, String line) throws Exception {
+        parser.getAllCasts(); // Assemble the parser
+        Parsable<TestRecord> parsable =
+            new Parsable<>(parser, null, collectInto(new HashMap<>()), Collections.<String, Set<String>>emptyMap());
+        parsable.setRootDissection("INPUT", line);
+        return parser.parse(parsable);
+    }
+
+    @Test
+    public void testChainIsFused() throws Exception {
+        Parser<TestRecord> parser = createParser().enableMetrics();
+        assertEquals(EnumSet.of(Casts.STRING, Casts.LONG), parser.getCasts("MICROSECONDS:value"));
+        assertEquals(Collections.singletonMap("MICROSECONDS:value", 42000000L), parse(parser, "42"));
+
+        Parsable<TestRecord> parsable = parseIntoParsable(parser, "42");
+        // The intermediate fields are never stored
+        assertNull(parsable.getParsableField("SECONDS",      "value"));
+        assertNull(parsable.getParsableField("MILLISECONDS", "value"));
+        assertTrue(parsable.getToBeParsed().isEmpty());
+
+        // The fused conversions are still visible in the metrics.
+        DissectorMetrics metrics = parser.getMetrics().getDissectors()
+            .get("MILLISECONDS:value --> " + Multiply.class.getName());
+        assertNotNull(metrics);
+        assertEquals(2, metrics.getInvocations());
+    }
+
+    @Test
+    public void testInputAlsoNeededByNormalDissector() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addDissector(new Nanoseconds())
+            .addVisitedFields("NANOSECONDS:value", "MILLISECONDS:value");
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("MILLISECONDS:value", 42000L);
+        expected.put("MICROSECONDS:value", 42000000L);
+        expected.put("NANOSECONDS:value",  42000000000L);
+        assertEquals(expected, parse(parser, "42"));
+
+        Parsable<TestRecord> parsable = parseIntoParsable(parser, "42");
+        assertNull(parsable.getParsableField("SECONDS", "value"));
+        assertNotNull(parsable.getParsableField("MILLISECONDS", "value"));
+    }
+
+    @Test
+    public void testFilterOnFusedField() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addFilter("MILLISECONDS:value", isEqualTo("42000"));
+        assertEquals(Collections.singletonMap("MICROSECONDS:value", 42000000L), parse(parser, "42"));
+        assertTrue(parse(parser, "43").isEmpty());
+    }
+
+}
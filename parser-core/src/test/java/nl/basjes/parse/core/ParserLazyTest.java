@@ -0,0 +1,130 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static nl.basjes.parse.core.ValueFilter.isEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParserLazyTest {
+
+    private static final String BAR_PHASE = "BARINPUT:foostring --> " + BarDissector.class.getName();
+
+    private Parser<TestRecord> createParser() {
+        return new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType())
+            .addVisitedFields("LONG:foolong", "STRING:foostring.barstring")
+            .enableMetrics();
+    }
+
+    private long getBarInvocations(Parser<TestRecord> parser) {
+        return parser.getMetrics().getDissectors().get(BAR_PHASE).getInvocations();
+    }
+
+    @Test
+    public void testOnlyTokenizeUntilNeeded() throws Exception {
+        Parser<TestRecord> parser = createParser();
+
+        LazyRecord<TestRecord> record = parser.parseLazy("Something");
+        assertEquals(1, parser.getMetrics().getLines());
+        assertEquals(2, record.getPendingCount()); // foostring (also remapped to BARINPUT)
+        assertEquals(0, getBarInvocations(parser));
+
+        // Produced by the root dissector: no additional work.
+        assertEquals(42L, (long) record.getLong("LONG:foolong"));
+        assertEquals(0, getBarInvocations(parser));
+
+        assertEquals("42", record.getString("STRING:foostring.barstring"));
+        assertEquals(1, getBarInvocations(parser));
+        assertEquals(0, record.getPendingCount());
+
+        // Memoized
+        assertEquals("42", record.getString("STRING:FooString.BarString"));
+        assertEquals(1, getBarInvocations(parser));
+    }
+
+    @Test
+    public void testUnrequestedField() throws Exception {
+        Parser<TestRecord> parser = createParser();
+        LazyRecord<TestRecord> record = parser.parseLazy("Something");
+        assertNull(record.getValue("STRING:foostring.barstring.nothing"));
+        assertNull(record.getValue("DOUBLE:foodouble"));
+    }
+
+    @Test
+    public void testAllValues() throws Exception {
+        Parser<TestRecord> parser = createParser();
+        Map<String, Value> values = parser.parseLazy("Something").getAllValues();
+        assertEquals(2, values.size());
+        assertEquals("42", values.get("STRING:foostring.barstring").getString());
+        assertEquals(1, getBarInvocations(parser));
+    }
+
+    @Test
+    public void testLazyTypedRecord() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addParseTarget("setStringValue", "STRING:foostring.barstring")
+            .addParseTarget("setLongValue", "LONG:foolong");
+
+        TestRecord record = new TestRecord();
+        LazyRecord<TestRecord> lazyRecord = parser.parseLazy(record, "Something");
+
+        // Produced by the root dissector so the setter has already been called.
+        assertTrue(record.hasLongValue("LONG:foolong"));
+        assertFalse(record.hasStringValue("STRING:foostring.barstring"));
+        assertEquals(0, getBarInvocations(parser));
+
+        assertSame(record, lazyRecord.getRecord("STRING:foostring.barstring"));
+        record.expectString("STRING:foostring.barstring", "42");
+        record.expectLong("LONG:foolong", 42L);
+        assertEquals(1, getBarInvocations(parser));
+
+        // Memoized: the dissector does not run again.
+        assertSame(record, lazyRecord.getRecord("STRING:foostring.barstring"));
+        assertEquals(1, getBarInvocations(parser));
+    }
+
+    @Test
+    public void testNoTypedRecord() throws Exception {
+        assertNull(createParser().parseLazy("Something").getRecord("STRING:foostring.barstring"));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addFilter("STRING:foostring.barstring", isEqualTo("43"));
+        assertTrue(parser.parseLazy("Something").isRejected());
+
+        parser = createParser()
+            .addFilter("STRING:foostring.barstring", isEqualTo("42"));
+        assertFalse(parser.parseLazy("Something").isRejected());
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParserMetricsTest {
+
+    private static final String FOO_PHASE = "FOOINPUT: --> " + FooDissector.class.getName();
+    private static final String BAR_PHASE = "BARINPUT:foostring --> " + BarDissector.class.getName();
+
+    private Parser<TestRecord> createParser() throws NoSuchMethodException {
+        return new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType())
+            .addParseTarget("setStringValue", "ANY:fooany")
+            .addParseTarget("setStringValue", "STRING:foostring.barstring");
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        Parser<TestRecord> parser = createParser();
+        parser.parse("Something");
+        assertNull(parser.getMetrics());
+    }
+
+    @Test
+    public void testPerDissectorMetrics() throws Exception {
+        Parser<TestRecord> parser = createParser().enableMetrics();
+        for (int i = 0; i < 10; i++) {
+            parser.parse("Something");
+        }
+
+        ParserMetrics metrics = parser.getMetrics();
+        assertNotNull(metrics);
+        assertEquals(10, metrics.getLines());
+        assertEquals(0, metrics.getFailedLines());
+
+        Map<String, DissectorMetrics> dissectors = metrics.getDissectors();
+        assertEquals(dissectors.keySet().toString(), 2, dissectors.size());
+
+        DissectorMetrics foo = dissectors.get(FOO_PHASE);
+        assertEquals(10, foo.getInvocations());
+        assertEquals(0, foo.getFailures());
+        // 6 values + the remapping of foostring
+        assertEquals(70, foo.getEmittedFields());
+        assertTrue(foo.getNanos() > 0);
+
+        DissectorMetrics bar = dissectors.get(BAR_PHASE);
+        assertEquals(10, bar.getInvocations());
+        assertEquals(60, bar.getEmittedFields());
+
+        metrics.reset();
+        assertEquals(0, metrics.getLines());
+        assertEquals(0, foo.getInvocations());
+    }
+
+    @Test
+    public void testEnableAfterAssembly() throws Exception {
+        Parser<TestRecord> parser = createParser();
+        parser.parse("Something");
+        parser.enableMetrics();
+        parser.parse("Something");
+        assertEquals(1, parser.getMetrics().getDissectors().get(FOO_PHASE).getInvocations());
+
+        parser.disableMetrics();
+        parser.parse("Something");
+        assertNull(parser.getMetrics());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        Parser<TestRecord> parser = createParser().enableMetrics();
+        parser.parse("Something");
+
+        ObjectName name = parser.getMetrics().registerMBean("ParserMetricsTest");
+        try {
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Lines"));
+            assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Dissectors"));
+        } finally {
+            parser.getMetrics().unregisterMBean("ParserMetricsTest");
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    public static class RejectingFooDissector extends FooDissector {
+        @Override
+        public void dissect(Parsable<?> parsable, String inputname, Value value) throws DissectionFailure {
+            String line = value.getString();
+            if (line.startsWith("Bad")) {
+                throw DissectionFailure.stackless("BAD_START", 0, "Lines must not start with Bad");
+            }
+            if (line.startsWith("Old")) {
+                throw new DissectionFailure("Lines must not start with Old");
+            }
+            super.dissect(parsable, inputname, value);
+        }
+    }
+
+    @Test
+    public void testFailureReasons() throws Exception {
+        Parser<TestRecord> parser = new Parser<>(TestRecord.class)
+            .addDissector(new RejectingFooDissector())
+            .setRootType(new FooDissector().getInputType())
+            .addParseTarget("setStringValue", "ANY:fooany")
+            .enableMetrics();
+
+        String[] lines = {"Good", "Bad", "Bad again", "Old", "Good"};
+        for (String line : lines) {
+            try {
+                parser.parse(line);
+            } catch (DissectionFailure df) {
+                // Expected for some of the lines
+            }
+        }
+
+        ParserMetrics metrics = parser.getMetrics();
+        assertEquals(5, metrics.getLines());
+        assertEquals(3, metrics.getFailedLines());
+        Map<String, Long> reasons = metrics.getFailureReasons();
+        assertEquals(2, reasons.size());
+        assertEquals(2L, reasons.get("BAD_START").longValue());
+        assertEquals(1L, reasons.get(DissectionFailure.UNSPECIFIED).longValue());
+
+        metrics.reset();
+        assertTrue(metrics.getFailureReasons().isEmpty());
+    }
+
+}
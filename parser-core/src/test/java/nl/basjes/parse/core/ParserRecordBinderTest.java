@@ -0,0 +1,149 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParserRecordBinderTest {
+
+    public static class TestRecordBinder implements RecordBinder<TestRecord> {
+        private final List<String> fields;
+
+        TestRecordBinder(String... fields) {
+            this.fields = Arrays.asList(fields);
+        }
+
+        @Override
+        public List<String> getFields() {
+            return fields;
+        }
+
+        @Override
+        public boolean store(TestRecord record, String field, String name, Value value) {
+            switch (field) {
+                case "ANY:fooany":
+                case "STRING:foostring.barstring":
+                    record.setStringValue(name, value.getString());
+                    return true;
+                case "LONG:foolong":
+                    record.setLongValue(name, value.getLong());
+                    return true;
+                case "DOUBLE:foostring.bardouble":
+                    record.setDoubleValue(name, value.getDouble());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private Parser<TestRecord> createParser() {
+        return new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType());
+    }
+
+    @Test
+    public void testBinderOnly() throws Exception {
+        TestRecord record = createParser()
+            .setRecordBinder(new TestRecordBinder("ANY:fooany", "LONG:foolong", "STRING:foostring.barstring", "DOUBLE:foostring.bardouble"))
+            .parse("Something");
+        assertNotNull(record);
+        record.expectString("ANY:fooany", "42");
+        record.expectString("STRING:foostring.barstring", "42");
+        record.expectLong("LONG:foolong", 42L);
+        record.expectDouble("DOUBLE:foostring.bardouble", 42D);
+    }
+
+    @Test
+    public void testBinderAndReflection() throws Exception {
+        TestRecord record = createParser()
+            .setRecordBinder(new TestRecordBinder("LONG:foolong"))
+            .addParseTarget("setStringValue", "ANY:fooany")
+            .parse("Something");
+        record.expectLong("LONG:foolong", 42L);
+        record.expectString("ANY:fooany", "42");
+        assertFalse(record.hasStringValue("STRING:foostring.barstring"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .setRecordBinder(new TestRecordBinder("LONG:foolong", "STRING:foostring.barstring"));
+        parser = SerializationUtils.clone(parser);
+        TestRecord record = parser.parse("Something");
+        record.expectLong("LONG:foolong", 42L);
+        record.expectString("STRING:foostring.barstring", "42");
+    }
+
+    @Test
+    public void testSerializationAfterParsing() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .setRecordBinder(new TestRecordBinder("LONG:foolong", "DOUBLE:foostring.bardouble"));
+        parser.parse("Something");
+
+        Parser<TestRecord> copy = SerializationUtils.clone(parser);
+        TestRecord record = copy.parse("Something");
+        record.expectLong("LONG:foolong", 42L);
+        record.expectDouble("DOUBLE:foostring.bardouble", 42D);
+    }
+
+    @Test
+    public void testReplaceBinder() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addVisitedFields("ANY:fooany")
+            .addParseTarget("setStringValue", "STRING:foostring.barstring")
+            .setRecordBinder(new TestRecordBinder("ANY:fooany", "LONG:foolong", "STRING:foostring.barstring"));
+        assertTrue(parser.getNeeded().contains("LONG:foolong"));
+
+        parser.setRecordBinder(new TestRecordBinder("DOUBLE:foostring.bardouble"));
+        // Only the field that was needed by the old binder alone is gone.
+        assertEquals(new HashSet<>(Arrays.asList("ANY:fooany", "STRING:foostring.barstring", "DOUBLE:foostring.bardouble")),
+            parser.getNeeded());
+
+        TestRecord record = parser.parse("Something");
+        record.expectDouble("DOUBLE:foostring.bardouble", 42D);
+        assertFalse(record.hasLongValue("LONG:foolong"));
+
+        parser.setRecordBinder(null);
+        assertEquals(new HashSet<>(Arrays.asList("ANY:fooany", "STRING:foostring.barstring")), parser.getNeeded());
+    }
+
+    @Test(expected = MissingDissectorsException.class)
+    public void testNonExistentField() throws Exception {
+        createParser()
+            .setRecordBinder(new TestRecordBinder("LONG:doesnotexist"))
+            .parse("Something");
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParserRegistryTest {
+
+    private static Parser<TestRecord> createParser(String format, Set<String> fields) throws NoSuchMethodException {
+        Parser<TestRecord> parser = new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType());
+        for (String field : fields) {
+            parser.addParseTarget("setStringValue", field);
+        }
+        return parser;
+    }
+
+    private static final List<String> FIELDS = Arrays.asList("ANY:fooany", "STRING:foostring.barstring");
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        ParserRegistry<TestRecord> registry = new ParserRegistry<>(ParserRegistryTest::createParser, Long.MAX_VALUE);
+
+        Parser<TestRecord> parser = registry.borrowParser("one", FIELDS);
+        // Still borrowed so the same format and fields get a different parser.
+        Parser<TestRecord> other = registry.borrowParser("one", Arrays.asList("STRING:foostring.barstring", "ANY:fooany"));
+        assertNotSame(parser, other);
+        registry.returnParser(parser);
+        assertSame(parser, registry.borrowParser("one", FIELDS));
+        registry.returnParser(other);
+
+        Parser<TestRecord> two = registry.borrowParser("two", FIELDS);
+        assertNotSame(parser, two);
+        assertNotSame(parser, registry.borrowParser("one", Collections.singletonList("ANY:fooany")));
+
+        parser.parse("Something").expectString("STRING:foostring.barstring", "42");
+
+        assertEquals(3, registry.getSize());
+        assertEquals(1, registry.getHits());
+        assertEquals(4, registry.getMisses());
+        assertEquals(0, registry.getEvictions());
+
+        long total = 0;
+        for (ParserRegistry.Entry<TestRecord> entry : registry.getEntries()) {
+            assertTrue(entry.getEstimatedMemory() > 0);
+            assertTrue(entry.getEstimatedMemory() != ParserRegistry.DEFAULT_MEMORY_ESTIMATE);
+            total += entry.getEstimatedMemory() * entry.getInstances();
+        }
+        assertEquals(total, registry.getTotalMemory());
+        // The least recently used first
+        assertEquals(3, registry.getEntries().get(0).getUses());
+        assertEquals(2, registry.getEntries().get(0).getInstances());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReturnTwice() throws Exception {
+        ParserRegistry<TestRecord> registry = new ParserRegistry<>(ParserRegistryTest::createParser, Long.MAX_VALUE);
+        Parser<TestRecord> parser = registry.borrowParser("one", FIELDS);
+        registry.returnParser(parser);
+        registry.returnParser(parser);
+    }
+
+    private void use(ParserRegistry<TestRecord> registry, String format) throws Exception {
+        registry.returnParser(registry.borrowParser(format, FIELDS));
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        Parser<TestRecord> assembled = createParser("", new TreeSet<>(FIELDS));
+        assembled.getAllCasts();
+        long memory = ParserRegistry.estimateMemory(assembled);
+        ParserRegistry<TestRecord> registry = new ParserRegistry<>(ParserRegistryTest::createParser, 3 * memory);
+
+        Parser<TestRecord> one = registry.borrowParser("one", FIELDS);
+        registry.returnParser(one);
+        use(registry, "two");
+        use(registry, "three");
+        use(registry, "one"); // Now "two" is the least recently used one.
+        use(registry, "four");
+
+        assertEquals(3, registry.getSize());
+        assertEquals(1, registry.getEvictions());
+        assertTrue(registry.getTotalMemory() <= 3 * memory);
+        Parser<TestRecord> again = registry.borrowParser("one", FIELDS);
+        assertSame(one, again);
+        registry.returnParser(again);
+
+        Parser<TestRecord> two = registry.borrowParser("two", FIELDS);
+        registry.returnParser(two);
+        assertSame(two, registry.borrowParser("two", FIELDS));
+        assertEquals(2, registry.getEvictions());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        ParserRegistry<TestRecord> registry = new ParserRegistry<>(ParserRegistryTest::createParser, Long.MAX_VALUE);
+        use(registry, "one");
+        Parser<TestRecord> two = registry.borrowParser("two", FIELDS);
+
+        assertEquals(0, registry.evictIdle(60000));
+        assertEquals(2, registry.getSize());
+        Thread.sleep(5);
+        assertEquals(2, registry.evictIdle(0));
+        assertEquals(0, registry.getSize());
+        assertEquals(0, registry.getTotalMemory());
+
+        // A parser that is returned after its entry was evicted is dropped.
+        registry.returnParser(two);
+        assertNotSame(two, registry.borrowParser("two", FIELDS));
+    }
+
+}
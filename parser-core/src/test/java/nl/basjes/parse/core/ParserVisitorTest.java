@@ -0,0 +1,167 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.core;
+
+import nl.basjes.parse.core.reference.BarDissector;
+import nl.basjes.parse.core.reference.FooDissector;
+import nl.basjes.parse.core.test.TestRecord;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static nl.basjes.parse.core.ValueFilter.isEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParserVisitorTest {
+
+    private static class CollectingVisitor implements FieldVisitor {
+        private final Map<String, Object> values = new TreeMap<>();
+
+        @Override
+        public void visitString(String field, String value) {
+            values.put(field, value);
+        }
+
+        @Override
+        public void visitLong(String field, long value) {
+            values.put(field, value);
+        }
+
+        @Override
+        public void visitDouble(String field, double value) {
+            values.put(field, value);
+        }
+    }
+
+    private Parser<TestRecord> createParser() {
+        return new Parser<>(TestRecord.class)
+            .addDissector(new FooDissector())
+            .addDissector(new BarDissector())
+            .addTypeRemapping("foostring", "BARINPUT")
+            .setRootType(new FooDissector().getInputType());
+    }
+
+    @Test
+    public void testVisitor() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addVisitedFields("ANY:fooany", "LONG:foolong", "DOUBLE:foodouble", "STRING:foostring.barstring");
+
+        CollectingVisitor visitor = new CollectingVisitor();
+        assertTrue(parser.parse("Something", visitor));
+
+        assertEquals(4, visitor.values.size());
+        assertEquals(42L, visitor.values.get("ANY:fooany"));
+        assertEquals(42L, visitor.values.get("LONG:foolong"));
+        assertEquals(42D, visitor.values.get("DOUBLE:foodouble"));
+        assertEquals("42", visitor.values.get("STRING:foostring.barstring"));
+    }
+
+    @Test
+    public void testVisitorSkipsSetters() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addParseTarget("setStringValue", "STRING:foostring.barstring");
+
+        CollectingVisitor visitor = new CollectingVisitor();
+        assertTrue(parser.parse("Something", visitor));
+        // The field of the setter is delivered to the visitor (there is no record).
+        assertEquals("42", visitor.values.get("STRING:foostring.barstring"));
+
+        // The normal parse still uses the setters.
+        parser.parse("Something").expectString("STRING:foostring.barstring", "42");
+    }
+
+    @Test
+    public void testAggregateWithoutRecords() throws Exception {
+        Parser<TestRecord> parser = createParser().addVisitedFields("LONG:foolong");
+
+        final long[] sum = {0};
+        FieldVisitor summer = new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                sum[0] += value;
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            parser.parse("Something", summer);
+        }
+        assertEquals(420L, sum[0]);
+    }
+
+    @Test
+    public void testSerializeAssembledParser() throws Exception {
+        Parser<TestRecord> parser = createParser().addVisitedFields("LONG:foolong");
+        assertTrue(parser.parse("Something", new CollectingVisitor()));
+
+        // A deserialized copy is assembled again when it is first used.
+        Parser<TestRecord> copy = SerializationUtils.clone(parser);
+        CollectingVisitor visitor = new CollectingVisitor();
+        assertTrue(copy.parse("Something", visitor));
+        assertEquals(42L, visitor.values.get("LONG:foolong"));
+
+        // Changing the copy still results in a complete assembly.
+        copy.addVisitedFields("STRING:foostring.barstring");
+        visitor = new CollectingVisitor();
+        assertTrue(copy.parse("Something", visitor));
+        assertEquals(2, visitor.values.size());
+        assertEquals("42", visitor.values.get("STRING:foostring.barstring"));
+
+        // Changing a copy before it is used also results in a complete assembly.
+        copy = SerializationUtils.clone(parser);
+        copy.addVisitedFields("STRING:foostring.barstring");
+        visitor = new CollectingVisitor();
+        assertTrue(copy.parse("Something", visitor));
+        assertEquals("42", visitor.values.get("STRING:foostring.barstring"));
+
+        // The original is not affected by having been serialized.
+        parser.addVisitedFields("DOUBLE:foodouble");
+        visitor = new CollectingVisitor();
+        assertTrue(parser.parse("Something", visitor));
+        assertEquals(2, visitor.values.size());
+        assertEquals(42D, visitor.values.get("DOUBLE:foodouble"));
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        Parser<TestRecord> parser = createParser()
+            .addVisitedFields("LONG:foolong")
+            .addFilter("STRING:foostring", isEqualTo("43"));
+        CollectingVisitor visitor = new CollectingVisitor();
+        assertFalse(parser.parse("Something", visitor));
+        // Not even the values produced before the filter rejected the line are delivered.
+        assertTrue(visitor.values.toString(), visitor.values.isEmpty());
+
+        parser = createParser()
+            .addVisitedFields("LONG:foolong")
+            .addFilter("STRING:foostring", isEqualTo("42"));
+        assertTrue(parser.parse("Something", visitor));
+        assertEquals(42L, visitor.values.get("LONG:foolong"));
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A part of an input file that can be processed independently of the other parts.
+ * Just like with the Hadoop splits a line belongs to the chunk in which its first byte is located.
+ * Compressed files cannot be split so they always form a single chunk.
+ */
+public final class FileChunk {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File    file;
+    private final long    start;
+    private final long    end;
+    private final boolean compressed;
+
+    FileChunk(File file, long start, long end, boolean compressed) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.compressed = compressed;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Cut all files into chunks of (at most) chunkSize bytes.
+     */
+    public static List<FileChunk> split(List<File> files, long chunkSize) {
+        List<FileChunk> chunks = new ArrayList<>();
+        for (File file : files) {
+            long length = file.length();
+            if (file.getName().endsWith(".gz")) {
+                chunks.add(new FileChunk(file, 0, length, true));
+                continue;
+            }
+            if (length == 0) {
+                continue;
+            }
+            for (long chunkStart = 0; chunkStart < length; chunkStart += chunkSize) {
+                chunks.add(new FileChunk(file, chunkStart, Math.min(length, chunkStart + chunkSize), false));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * A reader that returns exactly the lines that belong to this chunk.
+     */
+    public interface LineReader extends AutoCloseable {
+        /**
+         * @return The next line (without the line terminator) or null at the end of the chunk.
+         */
+        String readLine() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    public LineReader open() throws IOException {
+        if (compressed) {
+            InputStream in = new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+            return new LineReader() {
+                @Override
+                public String readLine() throws IOException {
+                    return reader.readLine();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    reader.close();
+                }
+            };
+        }
+        return new ChunkLineReader(this);
+    }
+
+    @Override
+    public String toString() {
+        return file + "[" + start + "-" + end + ")";
+    }
+
+    /**
+     * Reads the bytes of a file directly to be able to track the exact position of every line.
+     */
+    private static final class ChunkLineReader implements LineReader {
+        private final InputStream in;
+        private final long        end;
+        private long              position;
+
+        private final byte[]      buffer    = new byte[BUFFER_SIZE];
+        private int               bufferPos = 0;
+        private int               bufferLen = 0;
+
+        private byte[]            line      = new byte[1024];
+
+        ChunkLineReader(FileChunk chunk) throws IOException {
+            this.end = chunk.end;
+            this.in = new FileInputStream(chunk.file);
+            if (chunk.start == 0) {
+                position = 0;
+                return;
+            }
+            // The line that contains the byte before the start belongs to the previous chunk.
+            position = chunk.start - 1;
+            skipFully(position);
+            int value;
+            do {
+                value = read();
+            } while (value != -1 && value != '\n');
+        }
+
+        private void skipFully(long bytes) throws IOException {
+            long remaining = bytes;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    throw new IOException("Unable to skip to the start of the chunk");
+                }
+                remaining -= skipped;
+            }
+        }
+
+        private int read() throws IOException {
+            if (bufferPos == bufferLen) {
+                bufferLen = in.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    return -1;
+                }
+            }
+            position++;
+            return buffer[bufferPos++] & 0xFF;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            if (position >= end) {
+                return null;
+            }
+            int length = 0;
+            int value = read();
+            while (value != -1 && value != '\n') {
+                if (length == line.length) {
+                    byte[] bigger = new byte[line.length * 2];
+                    System.arraycopy(line, 0, bigger, 0, length);
+                    line = bigger;
+                }
+                line[length++] = (byte) value;
+                value = read();
+            }
+            if (value == -1 && length == 0) {
+                return null;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
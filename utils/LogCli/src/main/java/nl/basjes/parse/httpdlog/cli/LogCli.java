@@ -0,0 +1,162 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.cli;
+
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line tool to extract fields from a set of access logfiles.
+ * <pre>
+ * java -jar LogCli.jar -logformat combined -fields IP:connection.client.host,STRING:request.status.last \
+ *      -outputformat CSV 'logs/**.gz' access.log
+ * </pre>
+ * The throughput statistics are printed to stderr at the end.
+ */
+public class LogCli {
+
+    @Option(name = "-logformat", usage = "<Apache HTTPD or NGINX Logformat>", required = true)
+    private String logFormat = "common";
+
+    @Option(name = "-fields", usage = "Comma separated list of fields", required = true)
+    private String fields = null;
+
+    @Option(name = "-outputformat", usage = "The output format: CSV, TSV or JSON (JSON lines)")
+    private OutputFormat outputFormat = OutputFormat.CSV;
+
+    @Option(name = "-output", usage = "The output file (default: stdout)")
+    private File outputFile = null;
+
+    @Option(name = "-threads", usage = "The number of worker threads")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-chunksize", usage = "The maximum number of bytes of an uncompressed file that is handled as a single unit of work")
+    private long chunkSize = 64L * 1024 * 1024;
+
+    @Option(name = "-queuesize", usage = "The maximum number of batches of output lines waiting to be written")
+    private int queueSize = 64;
+
+    @Argument(usage = "The input files or glob patterns (plain text or .gz)", metaVar = "inputfiles", required = true)
+    private List<String> inputs = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        LogCli cli = new LogCli();
+        CmdLineParser cmdLineParser = new CmdLineParser(cli);
+        try {
+            cmdLineParser.parseArgument(args);
+        } catch (CmdLineException e) {
+            // handling of wrong arguments
+            System.err.println(e.getMessage());
+            cmdLineParser.printUsage(System.err);
+            return;
+        }
+        cli.run();
+    }
+
+    public void run() throws IOException, MissingDissectorsException, InvalidDissectorException {
+        ParallelLogProcessor processor =
+            new ParallelLogProcessor(logFormat, Arrays.asList(fields.split(",")), outputFormat)
+                .setThreads(threads)
+                .setChunkSize(chunkSize)
+                .setQueueSize(queueSize);
+
+        List<File> files = expandGlobs(inputs);
+        if (files.isEmpty()) {
+            System.err.println("No input files found.");
+            return;
+        }
+
+        ParallelLogProcessor.Statistics statistics;
+        OutputStream out = outputFile == null ? System.out : new FileOutputStream(outputFile);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1024 * 1024)) {
+            statistics = processor.process(files, writer);
+        }
+        System.err.println(statistics);
+    }
+
+    // --------------------------------------------
+
+    private static boolean isGlob(String part) {
+        return part.indexOf('*') != -1 ||
+               part.indexOf('?') != -1 ||
+               part.indexOf('[') != -1 ||
+               part.indexOf('{') != -1;
+    }
+
+    /**
+     * Replace all glob patterns with the matching files.
+     * An argument without glob characters is used as is.
+     * @return The files in the order of the arguments (the files matching a single pattern are sorted).
+     */
+    public static List<File> expandGlobs(List<String> arguments) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String argument : arguments) {
+            if (!isGlob(argument)) {
+                files.add(new File(argument));
+                continue;
+            }
+
+            // The base directory is the part of the path before the first part with glob characters.
+            Path pattern = Paths.get(argument);
+            Path base = pattern.isAbsolute() ? pattern.getRoot() : Paths.get("");
+            for (Path part : pattern) {
+                if (isGlob(part.toString())) {
+                    break;
+                }
+                base = base.resolve(part);
+            }
+            if (!Files.isDirectory(base)) {
+                continue;
+            }
+
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + argument);
+            try (Stream<Path> paths = Files.walk(base)) {
+                files.addAll(paths
+                    .filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList()));
+            }
+        }
+        return files;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.cli;
+
+import java.util.List;
+
+/**
+ * The supported output formats. Each record is written as a single line.
+ */
+public enum OutputFormat {
+    CSV {
+        @Override
+        public String header(List<String> fields) {
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendCsv(sb, fields.get(i));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String format(List<String> fields, Object[] values) {
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (values[i] != null) {
+                    appendCsv(sb, values[i].toString());
+                }
+            }
+            return sb.toString();
+        }
+    },
+
+    TSV {
+        @Override
+        public String header(List<String> fields) {
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    sb.append('\t');
+                }
+                appendTsv(sb, fields.get(i));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String format(List<String> fields, Object[] values) {
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append('\t');
+                }
+                if (values[i] != null) {
+                    appendTsv(sb, values[i].toString());
+                }
+            }
+            return sb.toString();
+        }
+    },
+
+    JSON {
+        @Override
+        public String header(List<String> fields) {
+            return null; // Every line is self describing
+        }
+
+        @Override
+        public String format(List<String> fields, Object[] values) {
+            StringBuilder sb = new StringBuilder(512);
+            sb.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendJsonString(sb, fields.get(i));
+                sb.append(':');
+                Object value = values[i];
+                if (value == null) {
+                    sb.append("null");
+                } else if (value instanceof String) {
+                    appendJsonString(sb, (String) value);
+                } else if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+                    appendJsonString(sb, value.toString());
+                } else {
+                    sb.append(value);
+                }
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+    };
+
+    /**
+     * @return The line to write before all records (or null if none).
+     */
+    public abstract String header(List<String> fields);
+
+    /**
+     * @param fields The names of the fields.
+     * @param values The values (String, Long, Double or null) in the same order as the fields.
+     * @return The formatted line (without line terminator).
+     */
+    public abstract String format(List<String> fields, Object[] values);
+
+    // --------------------------------------------
+
+    static void appendCsv(StringBuilder sb, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    static void appendTsv(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t': sb.append("\\t");  break;
+                case '\n': sb.append("\\n");  break;
+                case '\r': sb.append("\\r");  break;
+                case '\\': sb.append("\\\\"); break;
+                default:   sb.append(c);      break;
+            }
+        }
+    }
+
+    static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n");  break;
+                case '\r': sb.append("\\r");  break;
+                case '\t': sb.append("\\t");  break;
+                case '\b': sb.append("\\b");  break;
+                case '\f': sb.append("\\f");  break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.cli;
+
+import nl.basjes.parse.core.FieldVisitor;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses a set of files in parallel and writes the requested fields of all good lines to a single output.
+ * <ul>
+ * <li>All files are cut into chunks (compressed files are a single chunk) which are processed by a work stealing pool.
+ * Every worker thread has its own parser.</li>
+ * <li>The formatted lines are handed to the writer in batches via a bounded queue. When the output cannot keep up
+ * the workers wait, so the memory usage is bounded regardless of the size of the input.</li>
+ * </ul>
+ * Note that the order of the output lines is NOT the same as the order of the input lines.
+ */
+public final class ParallelLogProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelLogProcessor.class);
+
+    private static final int MAX_ERROR_LINES_LOGGED = 10;
+
+    private final String        logFormat;
+    private final List<String>  fields;
+    private final OutputFormat  outputFormat;
+
+    // Per field the position in the output
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+
+    private int                 threads    = Runtime.getRuntime().availableProcessors();
+    private long                chunkSize  = 64L * 1024 * 1024;
+    private int                 queueSize  = 64;
+    private int                 batchSize  = 1000;
+
+    public ParallelLogProcessor(String logFormat, List<String> fields, OutputFormat outputFormat)
+        throws MissingDissectorsException, InvalidDissectorException {
+        this.logFormat = logFormat;
+        this.outputFormat = outputFormat;
+
+        List<String> cleanedFields = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            String cleanedField = Parser.cleanupFieldValue(field.trim());
+            if (cleanedField.endsWith("*")) {
+                throw new IllegalArgumentException("Wildcard fields are not supported: " + field);
+            }
+            if (fieldIndex.containsKey(cleanedField)) {
+                continue;
+            }
+            fieldIndex.put(cleanedField, cleanedFields.size());
+            cleanedFields.add(cleanedField);
+        }
+        if (cleanedFields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is needed");
+        }
+        this.fields = Collections.unmodifiableList(cleanedFields);
+
+        // Fail fast if the requested fields cannot be produced.
+        createParser().getAllCasts();
+    }
+
+    public ParallelLogProcessor setThreads(int newThreads) {
+        this.threads = Math.max(1, newThreads);
+        return this;
+    }
+
+    public ParallelLogProcessor setChunkSize(long newChunkSize) {
+        this.chunkSize = Math.max(1, newChunkSize);
+        return this;
+    }
+
+    public ParallelLogProcessor setQueueSize(int newQueueSize) {
+        this.queueSize = Math.max(1, newQueueSize);
+        return this;
+    }
+
+    public ParallelLogProcessor setBatchSize(int newBatchSize) {
+        this.batchSize = Math.max(1, newBatchSize);
+        return this;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    private Parser<Object> createParser() {
+        return new HttpdLoglineParser<>(Object.class, logFormat).addVisitedFields(fields);
+    }
+
+    // --------------------------------------------
+
+    /**
+     * The counters of a single run.
+     */
+    public static final class Statistics {
+        private final LongAdder files      = new LongAdder();
+        private final LongAdder chunks     = new LongAdder();
+        private final LongAdder bytes      = new LongAdder();
+        private final LongAdder goodLines  = new LongAdder();
+        private final LongAdder badLines   = new LongAdder();
+        private long            nanos      = 0;
+
+        public long getFiles() {
+            return files.sum();
+        }
+
+        public long getChunks() {
+            return chunks.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getGoodLines() {
+            return goodLines.sum();
+        }
+
+        public long getBadLines() {
+            return badLines.sum();
+        }
+
+        public long getLines() {
+            return getGoodLines() + getBadLines();
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(nanos, 1) / 1_000_000_000.0;
+            return String.format(Locale.ENGLISH,
+                "%d files (%d chunks, %.1f MiB), %d lines (%d good, %d bad) in %.3f seconds: %.0f lines/sec, %.1f MiB/sec",
+                getFiles(), getChunks(), getBytes() / (1024.0 * 1024.0),
+                getLines(), getGoodLines(), getBadLines(), seconds,
+                getLines() / seconds, getBytes() / (1024.0 * 1024.0) / seconds);
+        }
+    }
+
+    // --------------------------------------------
+
+    /**
+     * Process all the input files and write the result to the output.
+     * The output is NOT closed.
+     */
+    public Statistics process(List<File> inputs, Writer output) throws IOException {
+        final long start = System.nanoTime();
+        final Statistics statistics = new Statistics();
+        statistics.files.add(inputs.size());
+
+        final List<FileChunk> chunks = FileChunk.split(inputs, chunkSize);
+        statistics.chunks.add(chunks.size());
+
+        final String header = outputFormat.header(fields);
+        if (header != null) {
+            output.write(header);
+            output.write('\n');
+        }
+
+        final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(queueSize);
+        final AtomicInteger running = new AtomicInteger(chunks.size());
+        final ThreadLocal<Parser<Object>> parsers = ThreadLocal.withInitial(this::createParser);
+
+        final ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(chunks.size());
+            for (FileChunk chunk : chunks) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        processChunk(chunk, parsers.get(), queue, statistics);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            // This thread is the only writer.
+            while (running.get() > 0 || !queue.isEmpty()) {
+                List<String> batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                for (String line : batch) {
+                    output.write(line);
+                    output.write('\n');
+                }
+            }
+            output.flush();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Processing failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        statistics.nanos = System.nanoTime() - start;
+        return statistics;
+    }
+
+    private void processChunk(FileChunk chunk, Parser<Object> parser, BlockingQueue<List<String>> queue, Statistics statistics)
+        throws IOException, InterruptedException, InvalidDissectorException, MissingDissectorsException {
+        final Object[] values = new Object[fields.size()];
+        final FieldVisitor visitor = new FieldVisitor() {
+            @Override
+            public void visitString(String field, String value) {
+                set(field, value);
+            }
+
+            @Override
+            public void visitLong(String field, long value) {
+                set(field, value);
+            }
+
+            @Override
+            public void visitDouble(String field, double value) {
+                set(field, value);
+            }
+
+            private void set(String field, Object value) {
+                Integer index = fieldIndex.get(field);
+                if (index != null) {
+                    values[index] = value;
+                }
+            }
+        };
+
+        List<String> batch = new ArrayList<>(batchSize);
+        try (FileChunk.LineReader reader = chunk.open()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Arrays.fill(values, null);
+                try {
+                    parser.parse(line, visitor);
+                } catch (DissectionFailure e) {
+                    if (statistics.badLines.sum() < MAX_ERROR_LINES_LOGGED) {
+                        LOG.error("Parse error >>>{}<<< in line: >>>{}<<<", e.getMessage(), line);
+                    }
+                    statistics.badLines.increment();
+                    continue;
+                }
+                statistics.goodLines.increment();
+                batch.add(outputFormat.format(fields, values));
+                if (batch.size() == batchSize) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+        }
+        statistics.bytes.add(chunk.getEnd() - chunk.getStart());
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestParallelLogProcessor {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final List<String> FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "HTTP.URI:request.firstline.uri",
+        "BYTES:response.body.bytesclf");
+
+    private static String line(int i) {
+        return "10.0.0." + (i % 256) + " - - [01/Jan/2017:12:00:00 +0100] \"GET /index.html?line=" + i +
+            " HTTP/1.1\" 200 " + i;
+    }
+
+    private File writeFile(String name, int from, int to, boolean gzip) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            for (int i = from; i < to; i++) {
+                writer.write(line(i));
+                writer.write(i % 3 == 0 ? "\r\n" : "\n");
+            }
+            writer.write("This is a bad line\n");
+        }
+        return file;
+    }
+
+    @Test
+    public void testChunksContainEveryLineOnce() throws IOException {
+        File file = writeFile("access.log", 0, 1000, false);
+        for (long chunkSize : Arrays.asList(1L, 7L, 100L, 99L, 1000000L)) {
+            List<String> lines = new ArrayList<>();
+            for (FileChunk chunk : FileChunk.split(Collections.singletonList(file), chunkSize)) {
+                try (FileChunk.LineReader reader = chunk.open()) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                }
+            }
+            assertEquals("Chunk size " + chunkSize, 1001, lines.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(line(i), lines.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testProcessInParallel() throws Exception {
+        List<File> files = Arrays.asList(
+            writeFile("one.log",     0,    2000, false),
+            writeFile("two.log.gz",  2000, 3000, true),
+            writeFile("three.log",   3000, 5000, false));
+
+        ParallelLogProcessor processor = new ParallelLogProcessor("common", FIELDS, OutputFormat.TSV)
+            .setThreads(4)
+            .setChunkSize(10000)
+            .setQueueSize(2)
+            .setBatchSize(10);
+
+        StringWriter output = new StringWriter();
+        ParallelLogProcessor.Statistics statistics = processor.process(files, output);
+
+        assertEquals(3,    statistics.getFiles());
+        assertEquals(5000, statistics.getGoodLines());
+        assertEquals(3,    statistics.getBadLines());
+
+        List<String> lines = new ArrayList<>(Arrays.asList(output.toString().split("\n")));
+        assertEquals("IP:connection.client.host\tHTTP.URI:request.firstline.uri\tBYTES:response.body.bytesclf", lines.remove(0));
+        assertEquals(5000, lines.size());
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            expected.add("10.0.0." + (i % 256) + "\t/index.html?line=" + i + "\t" + i);
+        }
+        Collections.sort(expected);
+        Collections.sort(lines);
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void testOutputFormats() {
+        List<String> fields = Arrays.asList("STRING:a", "LONG:b", "DOUBLE:c");
+        Object[] values = {"x,\"y\"\tz", 42L, null};
+        assertEquals("\"x,\"\"y\"\"\tz\",42,",                      OutputFormat.CSV.format(fields, values));
+        assertEquals("x,\"y\"\\tz\t42\t",                           OutputFormat.TSV.format(fields, values));
+        assertEquals("{\"STRING:a\":\"x,\\\"y\\\"\\tz\",\"LONG:b\":42,\"DOUBLE:c\":null}",
+            OutputFormat.JSON.format(fields, values));
+    }
+
+    @Test
+    public void testExpandGlobs() throws IOException {
+        File dir = temporaryFolder.newFolder("logs");
+        writeFile("logs/b.log", 0, 1, false);
+        writeFile("logs/a.log", 0, 1, false);
+        writeFile("logs/c.txt", 0, 1, false);
+
+        List<File> files = LogCli.expandGlobs(Arrays.asList(dir.getAbsolutePath() + "/*.log", "other.log"));
+        assertEquals(Arrays.asList(new File(dir, "a.log"), new File(dir, "b.log"), new File("other.log")), files);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the converted records into a single columnar file.
+ */
+public interface ColumnarWriter extends Closeable {
+
+    void write(ConvertedRecord record) throws IOException;
+
+    enum Format {
+        PARQUET(".parquet"),
+        ORC(".orc");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public ColumnarWriter createWriter(LogSchema schema, Path output, Configuration conf) throws IOException {
+            switch (this) {
+                case ORC:
+                    return new OrcColumnarWriter(schema, output, conf);
+                default:
+                    return new ParquetColumnarWriter(schema, output, conf);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+import nl.basjes.parse.httpdlog.converter.LogSchema.Column;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of a single line; one value for each column of the schema.
+ * A single instance is reused for all lines of a file.
+ */
+public class ConvertedRecord {
+
+    private final Object[]             values;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+
+    public ConvertedRecord(LogSchema schema) {
+        List<Column> columns = schema.getColumns();
+        values = new Object[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndex.put(columns.get(i).getField(), i);
+        }
+    }
+
+    /**
+     * @return A new parser that sends the value of every column of the schema to the appropriate setter.
+     */
+    public static Parser<ConvertedRecord> createParser(LogSchema schema) throws NoSuchMethodException {
+        Parser<ConvertedRecord> parser = new HttpdLoglineParser<>(ConvertedRecord.class, schema.getLogFormat());
+        for (Column column : schema.getColumns()) {
+            switch (column.getType()) {
+                case LONG:
+                    parser.addParseTarget(ConvertedRecord.class.getMethod("set", String.class, Long.class), column.getField());
+                    break;
+                case DOUBLE:
+                    parser.addParseTarget(ConvertedRecord.class.getMethod("set", String.class, Double.class), column.getField());
+                    break;
+                default:
+                    parser.addParseTarget(ConvertedRecord.class.getMethod("set", String.class, String.class), column.getField());
+                    break;
+            }
+        }
+        return parser;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+    }
+
+    private void store(String name, Object value) {
+        Integer index = columnIndex.get(name);
+        if (index != null) {
+            values[index] = value;
+        }
+    }
+
+    public void set(String name, String value) {
+        store(name, value);
+    }
+
+    public void set(String name, Long value) {
+        store(name, value);
+    }
+
+    public void set(String name, Double value) {
+        store(name, value);
+    }
+
+    /**
+     * @return The value of the column (String, Long, Double or null).
+     */
+    public Object get(int column) {
+        return values[column];
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.converter.ColumnarWriter.Format;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parses access logfiles once and writes the result as typed Parquet or ORC files.
+ * Downstream jobs can then read these columnar files instead of parsing the logs again.
+ * Each input file results in one output file; the input files are converted in parallel.
+ */
+public class LogConverter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogConverter.class);
+
+    @Option(name = "-logformat", usage = "<Apache HTTPD Logformat>", required = true)
+    private String logFormat = "common";
+
+    @Option(name = "-fields", usage = "Comma separated list of fields (default: all possible fields)")
+    private String fields = null;
+
+    @Option(name = "-format", usage = "The output format: PARQUET or ORC")
+    private Format format = Format.PARQUET;
+
+    @Option(name = "-output", usage = "The directory where the output files are written", required = true)
+    private File outputDirectory;
+
+    @Option(name = "-threads", usage = "The number of files that are converted in parallel")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Argument(usage = "The input files (plain text or .gz)", metaVar = "inputfiles", required = true)
+    private List<File> inputFiles = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        LogConverter converter = new LogConverter();
+        CmdLineParser cmdLineParser = new CmdLineParser(converter);
+        try {
+            cmdLineParser.parseArgument(args);
+        } catch (CmdLineException e) {
+            // handling of wrong arguments
+            System.err.println(e.getMessage());
+            cmdLineParser.printUsage(System.err);
+            return;
+        }
+        converter.run();
+    }
+
+    public void run() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, IOException {
+        List<String> fieldList = fields == null ? null : Arrays.asList(fields.split(","));
+        LogSchema schema = LogSchema.create(logFormat, fieldList);
+        for (LogSchema.Column column : schema.getColumns()) {
+            LOG.info("Column: {}", column);
+        }
+
+        for (FileResult result : convert(schema, format, inputFiles, outputDirectory, threads)) {
+            LOG.info("{}", result);
+        }
+    }
+
+    // --------------------------------------------
+
+    public static final class FileResult {
+        private final File input;
+        private final File output;
+        private long       goodLines = 0;
+        private long       badLines  = 0;
+
+        FileResult(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public File getInput() {
+            return input;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+
+        public long getGoodLines() {
+            return goodLines;
+        }
+
+        public long getBadLines() {
+            return badLines;
+        }
+
+        @Override
+        public String toString() {
+            return input + " --> " + output + " : " + goodLines + " good lines, " + badLines + " bad lines.";
+        }
+    }
+
+    /**
+     * Convert all input files (in parallel) into the output directory.
+     * @return The results in the same order as the input files.
+     */
+    public static List<FileResult> convert(LogSchema schema, Format format, List<File> inputs, File outputDirectory, int threads)
+        throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Unable to create the output directory " + outputDirectory);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>(inputs.size());
+            for (File input : inputs) {
+                File output = new File(outputDirectory, outputFileName(input, format));
+                futures.add(executor.submit(() -> convertFile(schema, format, input, output)));
+            }
+
+            List<FileResult> results = new ArrayList<>(inputs.size());
+            for (Future<FileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while converting", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Conversion failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static String outputFileName(File input, Format format) {
+        String name = input.getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name + format.getExtension();
+    }
+
+    private static final int MAX_ERROR_LINES_LOGGED = 10;
+
+    /**
+     * Convert a single file. This creates its own parser so it can run in parallel with other conversions.
+     */
+    public static FileResult convertFile(LogSchema schema, Format format, File input, File output)
+        throws IOException, NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+        FileResult result = new FileResult(input, output);
+
+        Parser<ConvertedRecord> parser = ConvertedRecord.createParser(schema);
+        ConvertedRecord record = new ConvertedRecord(schema);
+
+        Configuration conf = new Configuration();
+        Path outputPath = new Path(output.getAbsoluteFile().toURI());
+
+        try (BufferedReader reader = openInput(input);
+             ColumnarWriter writer = format.createWriter(schema, outputPath, conf)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                record.clear();
+                try {
+                    parser.parse(record, line);
+                } catch (DissectionFailure e) {
+                    if (result.badLines < MAX_ERROR_LINES_LOGGED) {
+                        LOG.error("Parse error >>>{}<<< in line: >>>{}<<<", e.getMessage(), line);
+                    }
+                    result.badLines++;
+                    continue;
+                }
+                writer.write(record);
+                result.goodLines++;
+            }
+        }
+        return result;
+    }
+
+    private static BufferedReader openInput(File input) throws IOException {
+        InputStream in = new FileInputStream(input);
+        if (input.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.HttpdLoglineParser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The typed columnar schema that is derived from a logformat and the requested fields.
+ * The type of each column is the 'best' cast the parser can provide for that field: LONG, else DOUBLE, else STRING.
+ */
+public final class LogSchema implements Serializable {
+
+    public enum ColumnType {
+        STRING,
+        LONG,
+        DOUBLE
+    }
+
+    public static final class Column implements Serializable {
+        private final String     field;
+        private final String     name;
+        private final ColumnType type;
+
+        Column(String field, String name, ColumnType type) {
+            this.field = field;
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * @return The field as requested from the parser (i.e. "TYPE:foo.bar")
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * @return The name of the column in the output file.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + type + " (" + field + ")";
+        }
+    }
+
+    private final String       logFormat;
+    private final List<Column> columns;
+
+    private LogSchema(String logFormat, List<Column> columns) {
+        this.logFormat = logFormat;
+        this.columns = Collections.unmodifiableList(columns);
+    }
+
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    // --------------------------------------------
+
+    // Only used to be able to ask the parser for the casts of all fields.
+    public static class DummyRecord {
+        public void set(String name, String value) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Derive the schema.
+     * @param logFormat The logformat of the input files.
+     * @param fields The requested fields. If null or empty all possible fields (except the wildcards) are used.
+     */
+    public static LogSchema create(String logFormat, List<String> fields)
+        throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+        Parser<DummyRecord> parser = new HttpdLoglineParser<>(DummyRecord.class, logFormat);
+
+        List<String> wantedFields = new ArrayList<>();
+        if (fields == null || fields.isEmpty()) {
+            for (String path : parser.getPossiblePaths()) {
+                if (!path.endsWith("*")) {
+                    wantedFields.add(path);
+                }
+            }
+        } else {
+            for (String field : fields) {
+                wantedFields.add(Parser.cleanupFieldValue(field.trim()));
+            }
+        }
+
+        parser.addParseTarget(DummyRecord.class.getMethod("set", String.class, String.class), wantedFields);
+
+        List<Column> columns = new ArrayList<>(wantedFields.size());
+        Set<String> usedNames = new HashSet<>();
+        for (String field : wantedFields) {
+            EnumSet<Casts> casts = parser.getCasts(field);
+            if (casts == null) {
+                throw new MissingDissectorsException("Unable to determine the type of " + field);
+            }
+
+            ColumnType type = ColumnType.STRING;
+            if (casts.contains(Casts.LONG)) {
+                type = ColumnType.LONG;
+            } else if (casts.contains(Casts.DOUBLE)) {
+                type = ColumnType.DOUBLE;
+            }
+
+            final int colonPos = field.indexOf(':');
+            String name = toColumnName(field.substring(colonPos + 1));
+            if (usedNames.contains(name)) {
+                name = name + '_' + toColumnName(field.substring(0, colonPos));
+            }
+            usedNames.add(name);
+
+            columns.add(new Column(field, name, type));
+        }
+        return new LogSchema(logFormat, columns);
+    }
+
+    private static String toColumnName(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (char c : path.toLowerCase(Locale.ENGLISH).toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        if (sb.length() == 0 || Character.isDigit(sb.charAt(0))) {
+            sb.insert(0, '_');
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.httpdlog.converter.LogSchema.Column;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.apache.orc.storage.ql.exec.vector.BytesColumnVector;
+import org.apache.orc.storage.ql.exec.vector.ColumnVector;
+import org.apache.orc.storage.ql.exec.vector.DoubleColumnVector;
+import org.apache.orc.storage.ql.exec.vector.LongColumnVector;
+import org.apache.orc.storage.ql.exec.vector.VectorizedRowBatch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class OrcColumnarWriter implements ColumnarWriter {
+
+    private final List<Column>       columns;
+    private final Writer             writer;
+    private final VectorizedRowBatch batch;
+
+    public OrcColumnarWriter(LogSchema schema, Path output, Configuration conf) throws IOException {
+        columns = schema.getColumns();
+        TypeDescription typeDescription = createTypeDescription(schema);
+        // Same as the Parquet writer: an existing output file is replaced.
+        output.getFileSystem(conf).delete(output, false);
+        writer = OrcFile.createWriter(output, OrcFile.writerOptions(conf).setSchema(typeDescription));
+        batch = typeDescription.createRowBatch();
+    }
+
+    static TypeDescription createTypeDescription(LogSchema schema) {
+        TypeDescription typeDescription = TypeDescription.createStruct();
+        for (Column column : schema.getColumns()) {
+            switch (column.getType()) {
+                case LONG:
+                    typeDescription.addField(column.getName(), TypeDescription.createLong());
+                    break;
+                case DOUBLE:
+                    typeDescription.addField(column.getName(), TypeDescription.createDouble());
+                    break;
+                default:
+                    typeDescription.addField(column.getName(), TypeDescription.createString());
+                    break;
+            }
+        }
+        return typeDescription;
+    }
+
+    @Override
+    public void write(ConvertedRecord record) throws IOException {
+        int row = batch.size++;
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnVector vector = batch.cols[i];
+            Object value = record.get(i);
+            if (value == null) {
+                vector.noNulls = false;
+                vector.isNull[row] = true;
+                continue;
+            }
+            switch (columns.get(i).getType()) {
+                case LONG:
+                    ((LongColumnVector) vector).vector[row] = (Long) value;
+                    break;
+                case DOUBLE:
+                    ((DoubleColumnVector) vector).vector[row] = (Double) value;
+                    break;
+                default:
+                    ((BytesColumnVector) vector).setVal(row, ((String) value).getBytes(StandardCharsets.UTF_8));
+                    break;
+            }
+        }
+        if (batch.size == batch.getMaxSize()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (batch.size > 0) {
+            writer.addRowBatch(batch);
+            batch.reset();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        writer.close();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.httpdlog.converter.LogSchema.Column;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+import org.apache.parquet.schema.Types.MessageTypeBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ParquetColumnarWriter implements ColumnarWriter {
+
+    private final List<Column>         columns;
+    private final SimpleGroupFactory   groupFactory;
+    private final ParquetWriter<Group> writer;
+
+    public ParquetColumnarWriter(LogSchema schema, Path output, Configuration conf) throws IOException {
+        columns = schema.getColumns();
+        MessageType messageType = createMessageType(schema);
+        groupFactory = new SimpleGroupFactory(messageType);
+        writer = ExampleParquetWriter.builder(output)
+            .withConf(conf)
+            .withType(messageType)
+            .withCompressionCodec(CompressionCodecName.SNAPPY)
+            .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+            .build();
+    }
+
+    static MessageType createMessageType(LogSchema schema) {
+        MessageTypeBuilder builder = Types.buildMessage();
+        for (Column column : schema.getColumns()) {
+            switch (column.getType()) {
+                case LONG:
+                    builder.optional(PrimitiveTypeName.INT64).named(column.getName());
+                    break;
+                case DOUBLE:
+                    builder.optional(PrimitiveTypeName.DOUBLE).named(column.getName());
+                    break;
+                default:
+                    builder.optional(PrimitiveTypeName.BINARY).as(OriginalType.UTF8).named(column.getName());
+                    break;
+            }
+        }
+        return builder.named("httpdlog");
+    }
+
+    @Override
+    public void write(ConvertedRecord record) throws IOException {
+        Group group = groupFactory.newGroup();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = record.get(i);
+            if (value == null) {
+                continue; // Optional fields are simply left out
+            }
+            switch (columns.get(i).getType()) {
+                case LONG:
+                    group.append(columns.get(i).getName(), (Long) value);
+                    break;
+                case DOUBLE:
+                    group.append(columns.get(i).getName(), (Double) value);
+                    break;
+                default:
+                    group.append(columns.get(i).getName(), (String) value);
+                    break;
+            }
+        }
+        writer.write(group);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog.converter;
+
+import nl.basjes.parse.httpdlog.converter.ColumnarWriter.Format;
+import nl.basjes.parse.httpdlog.converter.LogConverter.FileResult;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.storage.ql.exec.vector.BytesColumnVector;
+import org.apache.orc.storage.ql.exec.vector.LongColumnVector;
+import org.apache.orc.storage.ql.exec.vector.VectorizedRowBatch;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLogConverter {
+
+    private static final String LOG_FORMAT = "combined";
+
+    private static final List<String> FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "HTTP.URI:request.firstline.uri",
+        "STRING:request.status.last",
+        "BYTESCLF:response.body.bytes",
+        "STRING:request.firstline.uri.query.line");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<File> createInputFiles(int files, int linesPerFile) throws IOException {
+        List<File> inputs = new ArrayList<>();
+        for (int file = 0; file < files; file++) {
+            File input = temporaryFolder.newFile("access-" + file + ".log");
+            try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+                for (int i = 0; i < linesPerFile; i++) {
+                    writer.println("10.0.0." + file + " - - [01/Jan/2017:12:00:0" + (i % 10) + " +0000] " +
+                        "\"GET /index.html?line=" + i + " HTTP/1.1\" 200 " + (i == 0 ? "-" : Integer.toString(i)) +
+                        " \"-\" \"Mozilla/5.0\"");
+                }
+                writer.println("This is a bad line");
+            }
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    @Test
+    public void testSchema() throws Exception {
+        LogSchema schema = LogSchema.create(LOG_FORMAT, FIELDS);
+        assertEquals(FIELDS.size(), schema.getColumns().size());
+
+        assertEquals("connection_client_host",  schema.getColumns().get(0).getName());
+        assertEquals(LogSchema.ColumnType.STRING, schema.getColumns().get(0).getType());
+        assertEquals(LogSchema.ColumnType.LONG,   schema.getColumns().get(1).getType());
+        assertEquals(LogSchema.ColumnType.LONG,   schema.getColumns().get(4).getType());
+
+        LogSchema allFields = LogSchema.create(LOG_FORMAT, null);
+        assertTrue(allFields.getColumns().size() > FIELDS.size());
+        for (LogSchema.Column column : allFields.getColumns()) {
+            assertFalse(column.getField().endsWith("*"));
+        }
+    }
+
+    @Test
+    public void testParquet() throws Exception {
+        LogSchema schema = LogSchema.create(LOG_FORMAT, FIELDS);
+        List<File> inputs = createInputFiles(3, 100);
+        List<FileResult> results = LogConverter.convert(schema, Format.PARQUET, inputs, temporaryFolder.newFolder("parquet"), 2);
+        assertEquals(3, results.size());
+
+        for (int file = 0; file < 3; file++) {
+            FileResult result = results.get(file);
+            assertEquals(100, result.getGoodLines());
+            assertEquals(1, result.getBadLines());
+            assertEquals("access-" + file + ".log.parquet", result.getOutput().getName());
+
+            try (ParquetReader<Group> reader = ParquetReader
+                .builder(new GroupReadSupport(), new Path(result.getOutput().toURI())).build()) {
+                int rows = 0;
+                Group group;
+                while ((group = reader.read()) != null) {
+                    assertEquals("10.0.0." + file, group.getString("connection_client_host", 0));
+                    assertEquals("/index.html?line=" + rows, group.getString("request_firstline_uri", 0));
+                    assertEquals(1483272000000L + (rows % 10) * 1000, group.getLong("request_receive_time_epoch", 0));
+                    if (rows == 0) {
+                        // The "-" is a null value
+                        assertEquals(0, group.getFieldRepetitionCount("response_body_bytes"));
+                    } else {
+                        assertEquals(rows, group.getLong("response_body_bytes", 0));
+                    }
+                    rows++;
+                }
+                assertEquals(100, rows);
+            }
+        }
+    }
+
+    @Test
+    public void testOrc() throws Exception {
+        LogSchema schema = LogSchema.create(LOG_FORMAT, FIELDS);
+        List<File> inputs = createInputFiles(2, 2500);
+        List<FileResult> results = LogConverter.convert(schema, Format.ORC, inputs, temporaryFolder.newFolder("orc"), 2);
+
+        for (int file = 0; file < 2; file++) {
+            FileResult result = results.get(file);
+            assertEquals(2500, result.getGoodLines());
+
+            Configuration conf = new Configuration();
+            Reader reader = OrcFile.createReader(new Path(result.getOutput().toURI()), OrcFile.readerOptions(conf));
+            assertEquals(2500, reader.getNumberOfRows());
+
+            RecordReader rows = reader.rows();
+            VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+            int row = 0;
+            while (rows.nextBatch(batch)) {
+                BytesColumnVector uri  = (BytesColumnVector) batch.cols[2];
+                LongColumnVector bytes = (LongColumnVector) batch.cols[4];
+                for (int i = 0; i < batch.size; i++) {
+                    assertEquals("/index.html?line=" + row, uri.toString(i));
+                    if (row == 0) {
+                        // The "-" is a null value
+                        assertTrue(bytes.isNull[i]);
+                    } else {
+                        assertEquals(row, bytes.vector[i]);
+                    }
+                    row++;
+                }
+            }
+            rows.close();
+            assertEquals(2500, row);
+        }
+    }
+
+}
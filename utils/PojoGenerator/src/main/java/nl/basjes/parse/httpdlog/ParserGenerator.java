@@ -0,0 +1,606 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.Token;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenFormatDissector;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenFormatDissector.FixedStringToken;
+import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenOutputField;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates (next to the record and the binder) the source of a parser that is specialized for a single LogFormat.
+ * The generated parser splits the line with straight-line code (indexOf/startsWith on the fixed parts of the
+ * LogFormat, no regex) and stores the values of the tokens directly in the typed setters of the record.
+ * Only the fields that are derived from a token (i.e. the epoch of a timestamp, the path of the uri, etc.) are
+ * handed to the normal dissectors that are below that token; the generic root dissector is never used.
+ * A token runs until the first occurrence of the fixed string that follows it and its value is then validated
+ * against the regex of the token (the same tokens the generic parser validates: the ones that produce a field and
+ * the ones that can contain the fixed string that follows them).
+ * A line that does not have the structure of the LogFormat, a token that does not match its regex or a token that can
+ * contain the fixed string that follows it where that occurrence is preceded by a backslash (i.e. an escaped quote)
+ * is passed to the generic parser of the record so the results (and the failures) of such lines are the same.
+ */
+public class ParserGenerator extends RecordBinderGenerator {
+
+    // One of the outputs of a token and the fields it must deliver.
+    private static final class TokenOutput {
+        private final String type;
+        private final String name;
+        private final List<GeneratedField> directFields = new ArrayList<>();
+        // The fields produced by the dissectors below this output (key = the name relative to this output).
+        private final Map<String, GeneratedField> derivedFields = new LinkedHashMap<>();
+
+        TokenOutput(TokenOutputField outputField) {
+            type = outputField.getType();
+            name = outputField.getName();
+        }
+
+        boolean isUsed() {
+            return !directFields.isEmpty() || !derivedFields.isEmpty();
+        }
+    }
+
+    // A fixed string or a token of the LogFormat.
+    private static final class Step {
+        private final String fixed;
+        private final String description;
+        private final Token token;
+        private final List<TokenOutput> outputs = new ArrayList<>();
+
+        Step(String fixed, String description, Token token) {
+            this.fixed = fixed;
+            this.description = description;
+            this.token = token;
+        }
+
+        boolean isFixed() {
+            return fixed != null;
+        }
+
+        // The generic parser validates the tokens it extracts and the tokens it cannot simply skip.
+        boolean mustValidate(String separator) {
+            if (".*".equals(token.getRegex())) {
+                return false;
+            }
+            return isUsed() || (separator != null && token.canContain(separator.charAt(0)));
+        }
+
+        boolean isUsed() {
+            for (TokenOutput output : outputs) {
+                if (output.isUsed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final String decoderClass;
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<String, List<String>> derivablePaths = new HashMap<>();
+
+    /**
+     * @param logFormat   The LogFormat of the lines (only a single LogFormat is supported).
+     * @param requestedFields The fields that must be in the record, null means all (non wildcard) fields.
+     * @param packageName The package of the generated classes (empty for the default package).
+     * @param className   The name of the generated record class (the parser is called className + "Parser").
+     * @throws IllegalArgumentException If the LogFormat cannot be split without a regex or one of the
+     *                                  requested fields cannot be produced by a specialized parser.
+     */
+    public ParserGenerator(String logFormat, List<String> requestedFields, String packageName, String className)
+        throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+        super(logFormat, requestedFields, packageName, className);
+
+        if (logFormat.trim().indexOf('\n') != -1) {
+            throw new IllegalArgumentException("A specialized parser can only be generated for a single LogFormat.");
+        }
+
+        TokenFormatDissector dissector;
+        if (ApacheHttpdLogFormatDissector.looksLikeApacheFormat(logFormat)) {
+            dissector = new ApacheHttpdLogFormatDissector(logFormat);
+        } else if (NginxHttpdLogFormatDissector.looksLikeNginxFormat(logFormat)) {
+            dissector = new NginxHttpdLogFormatDissector(logFormat);
+        } else {
+            throw new IllegalArgumentException("Unable to determine if this is an APACHE or a NGINX LogFormat: \"" +
+                logFormat + "\"");
+        }
+        decoderClass = dissector.getClass().getSimpleName();
+
+        for (Token token : dissector.getLogFormatTokens()) {
+            if (token instanceof FixedStringToken) {
+                if (!token.getRegex().isEmpty()) {
+                    steps.add(new Step(token.getRegex(), quote(token.getRegex()), null));
+                }
+                continue;
+            }
+            StringBuilder description = new StringBuilder();
+            for (TokenOutputField outputField : token.getOutputFields()) {
+                description.append(description.length() == 0 ? "" : ", ")
+                    .append(outputField.getType()).append(':').append(outputField.getName());
+            }
+            if (!steps.isEmpty() && !steps.get(steps.size() - 1).isFixed()) {
+                throw new IllegalArgumentException("The token for " + description + " directly follows another token. " +
+                    "This LogFormat cannot be split without a regex.");
+            }
+            Step step = new Step(null, description.toString(), token);
+            for (TokenOutputField outputField : token.getOutputFields()) {
+                step.outputs.add(new TokenOutput(outputField));
+            }
+            steps.add(step);
+        }
+
+        for (GeneratedField field : getGeneratedFields()) {
+            if (!assign(field)) {
+                throw new IllegalArgumentException("The field \"" + field.field + "\" cannot be produced by " +
+                    "a specialized parser for the LogFormat \"" + logFormat + "\"");
+            }
+        }
+    }
+
+    // Attach the field to all token outputs that produce it (just like the generic parser would).
+    private boolean assign(GeneratedField field)
+        throws MissingDissectorsException, InvalidDissectorException {
+        int colon = field.field.indexOf(':');
+        String type = field.field.substring(0, colon);
+        String name = field.field.substring(colon + 1);
+
+        boolean assigned = false;
+        for (Step step : steps) {
+            for (TokenOutput output : step.outputs) {
+                if (name.equals(output.name) && type.equals(output.type)) {
+                    output.directFields.add(field);
+                    assigned = true;
+                    continue;
+                }
+
+                String relativeName;
+                if (name.equals(output.name)) {
+                    relativeName = "";
+                } else if (name.startsWith(output.name + '.')) {
+                    relativeName = name.substring(output.name.length() + 1);
+                } else {
+                    continue;
+                }
+
+                String relativeField = type + ':' + relativeName;
+                if (isPossible(getDerivablePaths(output.type), relativeField)) {
+                    output.derivedFields.put(relativeField, field);
+                    assigned = true;
+                }
+            }
+        }
+        return assigned;
+    }
+
+    private List<String> getDerivablePaths(String type)
+        throws MissingDissectorsException, InvalidDissectorException {
+        List<String> paths = derivablePaths.get(type);
+        if (paths == null) {
+            paths = new ArrayList<>();
+            for (String path : createDissectorParser(type).getPossiblePaths()) {
+                paths.add(Parser.cleanupFieldValue(path));
+            }
+            derivablePaths.put(type, paths);
+        }
+        return paths;
+    }
+
+    // Exactly the same construction as used in the generated code.
+    private static Parser<DummyRecord> createDissectorParser(String rootType) {
+        return new HttpdLoglineParser<>(DummyRecord.class, "", null)
+            .dropDissector(HttpdLogFormatDissector.class)
+            .setRootType(rootType);
+    }
+
+    private static String quoteChar(char value) {
+        switch (value) {
+            case '\'':
+                return "'\\''";
+            case '"':
+                return "'\"'";
+            default:
+                String quoted = quote(String.valueOf(value));
+                return '\'' + quoted.substring(1, quoted.length() - 1) + '\'';
+        }
+    }
+
+    private static String indexOf(String separator) {
+        if (separator.length() == 1) {
+            return "line.indexOf(" + quoteChar(separator.charAt(0)) + ", pos)";
+        }
+        return "line.indexOf(" + quote(separator) + ", pos)";
+    }
+
+    private static String toTyped(GeneratedField field, String variable) {
+        switch (field.valueType) {
+            case "Long":
+                return "toLong(" + variable + ')';
+            case "Double":
+                return "toDouble(" + variable + ')';
+            default:
+                return variable;
+        }
+    }
+
+    // The fixed string that follows the token at this index (null if there is none).
+    private String getSeparator(int index) {
+        return index + 1 < steps.size() ? steps.get(index + 1).fixed : null;
+    }
+
+    private boolean hasValidatedTokens() {
+        for (int index = 0; index < steps.size(); index++) {
+            Step step = steps.get(index);
+            if (!step.isFixed() && step.mustValidate(getSeparator(index))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasDirectField(String valueType) {
+        for (Step step : steps) {
+            for (TokenOutput output : step.outputs) {
+                for (GeneratedField field : output.directFields) {
+                    if (field.valueType.equals(valueType)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasDerivedFields() {
+        for (Step step : steps) {
+            for (TokenOutput output : step.outputs) {
+                if (!output.derivedFields.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasDerivedWildcards() {
+        for (Step step : steps) {
+            for (TokenOutput output : step.outputs) {
+                for (GeneratedField field : output.derivedFields.values()) {
+                    if (field.wildcard) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // --------------------------------------------
+
+    public String getParserClassName() {
+        return getClassName() + "Parser";
+    }
+
+    /**
+     * @return The Java source of the specialized parser class.
+     */
+    public String generateParser() {
+        String record = getClassName();
+        String parserClass = getParserClassName();
+        String i1 = INDENT;
+        String i2 = i1 + INDENT;
+        String i3 = i2 + INDENT;
+        String i4 = i3 + INDENT;
+        String i5 = i4 + INDENT;
+
+        StringBuilder sb = new StringBuilder(8192);
+        appendHeader(sb);
+        boolean hasDerived = hasDerivedFields();
+        sb.append("import nl.basjes.parse.core.Parser;\n");
+        if (hasDerived) {
+            sb.append("import nl.basjes.parse.core.RecordBinder;\n")
+                .append("import nl.basjes.parse.core.Value;\n");
+        }
+        sb.append("import nl.basjes.parse.core.exceptions.DissectionFailure;\n")
+            .append("import nl.basjes.parse.core.exceptions.InvalidDissectorException;\n")
+            .append("import nl.basjes.parse.core.exceptions.MissingDissectorsException;\n")
+            .append("import nl.basjes.parse.httpdlog.").append(decoderClass).append(";\n");
+        if (hasDerived) {
+            sb.append("import nl.basjes.parse.httpdlog.HttpdLogFormatDissector;\n")
+                .append("import nl.basjes.parse.httpdlog.HttpdLoglineParser;\n");
+        }
+        sb.append("import nl.basjes.parse.httpdlog.dissectors.tokenformat.TokenFormatDissector;\n")
+            .append('\n');
+        boolean hasValidated = hasValidatedTokens();
+        if (hasDerived) {
+            sb.append("import java.util.Arrays;\n")
+                .append("import java.util.Collections;\n")
+                .append("import java.util.List;\n");
+        }
+        if (hasValidated) {
+            sb.append("import java.util.regex.Matcher;\n")
+                .append("import java.util.regex.Pattern;\n");
+        }
+        if (hasDerived || hasValidated) {
+            sb.append('\n');
+        }
+        sb.append("/**\n")
+            .append(" * A parser that is specialized for the LogFormat in {@link ").append(record).append("#LOG_FORMAT}.\n")
+            .append(" * The line is split without a regex, the tokens are validated and the values are stored directly in the typed setters.\n")
+            .append(" * A line that does not have the structure of the LogFormat or a token that does not match is handled by ")
+            .append("{@link ").append(record).append("#createParser()}.\n")
+            .append(" * Just like a normal parser an instance of this class is not thread safe.\n")
+            .append(" */\n")
+            .append("public final class ").append(parserClass).append(" {\n\n")
+            .append(i1).append("private static final TokenFormatDissector DECODER = new ").append(decoderClass).append("();\n\n");
+
+        // The regexes of the tokens that must be validated.
+        for (int index = 0; index < steps.size(); index++) {
+            Step step = steps.get(index);
+            if (!step.isFixed() && step.mustValidate(getSeparator(index))) {
+                sb.append(i1).append("// ").append(step.description.replace('\n', ' ')).append('\n')
+                    .append(i1).append("private static final Pattern TOKEN_").append(index).append(" = Pattern.compile(")
+                    .append(quote(step.token.getRegex())).append(");\n")
+                    .append(i1).append("private final Matcher matcher").append(index).append(" = TOKEN_").append(index)
+                    .append(".matcher(\"\");\n\n");
+            }
+        }
+
+        // The dissectors below the tokens.
+        int outputIndex = 0;
+        Map<TokenOutput, Integer> outputIndexes = new LinkedHashMap<>();
+        for (Step step : steps) {
+            for (TokenOutput output : step.outputs) {
+                outputIndexes.put(output, outputIndex++);
+            }
+        }
+        for (Map.Entry<TokenOutput, Integer> entry : outputIndexes.entrySet()) {
+            if (!entry.getKey().derivedFields.isEmpty()) {
+                sb.append(i1).append("// The dissectors below ").append(entry.getKey().type).append(':').append(entry.getKey().name).append('\n')
+                    .append(i1).append("private final Parser<").append(record).append("> parser").append(entry.getValue())
+                    .append(" = createDissectorParser(").append(quote(entry.getKey().type))
+                    .append(", new Binder").append(entry.getValue()).append("());\n");
+            }
+        }
+
+        if (hasDerived) {
+            sb.append('\n');
+        }
+        sb.append(i1).append("private Parser<").append(record).append("> genericParser = null;\n")
+            .append(i1).append("private long genericLines = 0;\n\n")
+            .append(i1).append("public ").append(record).append(" parse(String line)\n")
+            .append(i2).append("throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {\n")
+            .append(i2).append("return parse(new ").append(record).append("(), line);\n")
+            .append(i1).append("}\n\n")
+            .append(i1).append("public ").append(record).append(" parse(").append(record).append(" record, String line)\n")
+            .append(i2).append("throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {\n")
+            .append(i2).append("int pos = 0;\n");
+
+        boolean needsEnd = false;
+        for (int index = 0; index + 1 < steps.size(); index++) {
+            needsEnd |= !steps.get(index).isFixed();
+        }
+        if (needsEnd) {
+            sb.append(i2).append("int end;\n");
+        }
+
+        // Split the line
+        boolean atEndOfLine = false;
+        for (int index = 0; index < steps.size(); index++) {
+            Step step = steps.get(index);
+            sb.append('\n').append(i2).append("// ").append(step.description.replace('\n', ' ')).append('\n');
+            if (step.isFixed()) {
+                sb.append(i2).append("if (!line.startsWith(").append(quote(step.fixed)).append(", pos)) {\n")
+                    .append(i3).append("return parseGeneric(record, line);\n")
+                    .append(i2).append("}\n")
+                    .append(i2).append("pos += ").append(step.fixed.length()).append(";\n");
+                continue;
+            }
+
+            String value = step.isUsed() ? "token" + index : null;
+            String validate = step.mustValidate(getSeparator(index)) ? "matcher" + index : null;
+            if (index + 1 == steps.size()) {
+                if (validate != null) {
+                    sb.append(i2).append("if (!").append(validate).append(".reset(line).region(pos, line.length()).matches()) {\n")
+                        .append(i3).append("return parseGeneric(record, line);\n")
+                        .append(i2).append("}\n");
+                }
+                if (value != null) {
+                    sb.append(i2).append("String ").append(value).append(" = line.substring(pos);\n");
+                }
+                atEndOfLine = true;
+                continue;
+            }
+
+            String separator = steps.get(index + 1).fixed;
+            if (index + 2 == steps.size()) {
+                // The last token runs until the fixed string at the end of the line.
+                sb.append(i2).append("end = line.length() - ").append(separator.length()).append(";\n")
+                    .append(i2).append("if (end < pos || !line.endsWith(").append(quote(separator)).append(")) {\n");
+                atEndOfLine = true;
+            } else if (step.token.canContain(separator.charAt(0))) {
+                // An escaped separator inside the value (like \" in a quoted value) cannot be handled here.
+                sb.append(i2).append("end = ").append(indexOf(separator)).append(";\n")
+                    .append(i2).append("if (end == -1 || (end > pos && line.charAt(end - 1) == '\\\\')) {\n");
+            } else {
+                sb.append(i2).append("end = ").append(indexOf(separator)).append(";\n")
+                    .append(i2).append("if (end == -1) {\n");
+            }
+            sb.append(i3).append("return parseGeneric(record, line);\n")
+                .append(i2).append("}\n");
+            if (validate != null) {
+                sb.append(i2).append("if (!").append(validate).append(".reset(line).region(pos, end).matches()) {\n")
+                    .append(i3).append("return parseGeneric(record, line);\n")
+                    .append(i2).append("}\n");
+            }
+            if (value != null) {
+                sb.append(i2).append("String ").append(value).append(" = line.substring(pos, end);\n");
+            }
+            if (!atEndOfLine) {
+                sb.append(i2).append("pos = end + ").append(separator.length()).append(";\n");
+            }
+            index++; // The separator has been handled
+        }
+        if (!atEndOfLine) {
+            sb.append('\n')
+                .append(i2).append("if (pos != line.length()) {\n")
+                .append(i3).append("return parseGeneric(record, line);\n")
+                .append(i2).append("}\n");
+        }
+
+        // Store the values
+        for (int index = 0; index < steps.size(); index++) {
+            Step step = steps.get(index);
+            for (TokenOutput output : step.outputs) {
+                if (!output.isUsed()) {
+                    continue;
+                }
+                int id = outputIndexes.get(output);
+                String variable = "output" + id;
+                sb.append('\n')
+                    .append(i2).append("// ").append(output.type).append(':').append(output.name).append('\n')
+                    .append(i2).append("String ").append(variable).append(" = DECODER.decodeExtractedValue(")
+                    .append(quote(output.name)).append(", token").append(index).append(");\n");
+                for (GeneratedField field : output.directFields) {
+                    sb.append(i2).append("record.set").append(capitalize(field.javaName)).append('(')
+                        .append(toTyped(field, variable)).append(");\n");
+                }
+                if (!output.derivedFields.isEmpty()) {
+                    sb.append(i2).append("parser").append(id).append(".parse(record, ").append(variable).append(");\n");
+                }
+            }
+        }
+        sb.append('\n')
+            .append(i2).append("return record;\n")
+            .append(i1).append("}\n\n");
+
+        // The fallback for the lines that do not have the expected structure.
+        sb.append(i1).append("private ").append(record).append(" parseGeneric(").append(record).append(" record, String line)\n")
+            .append(i2).append("throws DissectionFailure, InvalidDissectorException, MissingDissectorsException {\n")
+            .append(i2).append("if (genericParser == null) {\n")
+            .append(i3).append("genericParser = ").append(record).append(".createParser();\n")
+            .append(i2).append("}\n")
+            .append(i2).append("genericLines++;\n")
+            .append(i2).append("return genericParser.parse(record, line);\n")
+            .append(i1).append("}\n\n")
+            .append(i1).append("/**\n")
+            .append(i1).append(" * @return The number of lines that did not have the structure of the LogFormat ")
+            .append("and were handled by the generic parser.\n")
+            .append(i1).append(" */\n")
+            .append(i1).append("public long getGenericLines() {\n")
+            .append(i2).append("return genericLines;\n")
+            .append(i1).append("}\n\n");
+
+        // Helpers with the same semantics as nl.basjes.parse.core.Value
+        for (String valueType : new String[]{"Long", "Double"}) {
+            if (hasDirectField(valueType)) {
+                sb.append(i1).append("private static ").append(valueType).append(" to").append(valueType).append("(String value) {\n")
+                    .append(i2).append("try {\n")
+                    .append(i3).append("return value == null ? null : ").append(valueType).append(".parse")
+                    .append(valueType).append("(value);\n")
+                    .append(i2).append("} catch (NumberFormatException e) {\n")
+                    .append(i3).append("return null;\n")
+                    .append(i2).append("}\n")
+                    .append(i1).append("}\n\n");
+            }
+        }
+        if (hasDerivedWildcards()) {
+            sb.append(i1).append("private static String fullName(String name, String prefix) {\n")
+                .append(i2).append("int colon = name.indexOf(':');\n")
+                .append(i2).append("return name.substring(0, colon + 1) + prefix + '.' + name.substring(colon + 1);\n")
+                .append(i1).append("}\n\n");
+        }
+        if (hasDerived) {
+            sb.append(i1).append("private static Parser<").append(record).append("> createDissectorParser(String rootType, RecordBinder<")
+                .append(record).append("> binder) {\n")
+                .append(i2).append("return new HttpdLoglineParser<>(").append(record).append(".class, \"\", null)\n")
+                .append(i3).append(".dropDissector(HttpdLogFormatDissector.class)\n")
+                .append(i3).append(".setRootType(rootType)\n")
+                .append(i3).append(".setRecordBinder(binder);\n")
+                .append(i1).append("}\n");
+        }
+
+        // The binders of the dissectors below the tokens.
+        for (Map.Entry<TokenOutput, Integer> entry : outputIndexes.entrySet()) {
+            TokenOutput output = entry.getKey();
+            if (output.derivedFields.isEmpty()) {
+                continue;
+            }
+            sb.append('\n')
+                .append(i1).append("private static final class Binder").append(entry.getValue())
+                .append(" implements RecordBinder<").append(record).append("> {\n")
+                .append(i2).append("private static final long serialVersionUID = 1L;\n\n")
+                .append(i2).append("private static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(");
+            boolean first = true;
+            for (String relativeField : output.derivedFields.keySet()) {
+                sb.append(first ? "\n" : ",\n").append(i3).append(quote(relativeField));
+                first = false;
+            }
+            sb.append("));\n\n")
+                .append(i2).append("@Override\n")
+                .append(i2).append("public List<String> getFields() {\n")
+                .append(i3).append("return FIELDS;\n")
+                .append(i2).append("}\n\n")
+                .append(i2).append("@Override\n")
+                .append(i2).append("public boolean store(").append(record).append(" record, String field, String name, Value value) {\n")
+                .append(i3).append("switch (field) {\n");
+            for (Map.Entry<String, GeneratedField> derived : output.derivedFields.entrySet()) {
+                GeneratedField field = derived.getValue();
+                sb.append(i4).append("case ").append(quote(derived.getKey())).append(":\n")
+                    .append(i5).append("record.set").append(capitalize(field.javaName)).append('(');
+                if (field.wildcard) {
+                    sb.append("fullName(name, ").append(quote(output.name)).append("), ");
+                }
+                sb.append("value.").append(field.getter).append("());\n")
+                    .append(i5).append("return true;\n");
+            }
+            sb.append(i4).append("default:\n")
+                .append(i5).append("return false;\n")
+                .append(i3).append("}\n")
+                .append(i2).append("}\n")
+                .append(i1).append("}\n");
+        }
+        if (sb.charAt(sb.length() - 2) == '\n') {
+            sb.setLength(sb.length() - 1);
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write the record, the binder and the specialized parser into the directory (in the subdirectories of the package).
+     * @param outputDirectory The root of the generated sources.
+     * @return The generated files.
+     */
+    @Override
+    public List<File> writeTo(File outputDirectory) throws IOException {
+        List<File> files = super.writeTo(outputDirectory);
+        files.add(write(new File(createPackageDirectory(outputDirectory), getParserClassName() + ".java"), generateParser()));
+        return files;
+    }
+
+}
@@ -23,19 +23,40 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 public class PojoGenerator {
     @Option(name = "-logformat", usage = "<Apache HTTPD Logformat>", required = true)
     private static String logFormat = "common";
 
+    @Option(name = "-fields", usage = "Comma separated list of the fields for the generated record (default: all fields)")
+    private String fields = null;
+
+    @Option(name = "-package", usage = "The package of the generated record and binder")
+    private String packageName = "";
+
+    @Option(name = "-class", usage = "The name of the generated record (the binder gets the suffix 'Binder')")
+    private String className = "MyRecord";
+
+    @Option(name = "-parser", usage = "Also generate a parser that is specialized for this LogFormat " +
+        "(it gets the suffix 'Parser')")
+    private boolean specializedParser = false;
+
+    @Option(name = "-output", usage = "Directory where the record and binder sources are written. " +
+        "Without this only an example class is printed.")
+    private File outputDirectory = null;
+
     class MyRecord {
         public void setter(String name, String value) {
             System.out.println("SETTER CALLED FOR \"" + name + "\" = \"" + value + "\"");
         }
     }
 
-    public static void main(String[] args) throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+    public static void main(String[] args)
+        throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, IOException {
         PojoGenerator generator = new PojoGenerator();
         CmdLineParser parser = new CmdLineParser(generator);
         try {
@@ -48,7 +69,12 @@ public class PojoGenerator {
         }
     }
 
-    public void run() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+    public void run() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, IOException {
+        if (outputDirectory != null) {
+            generate();
+            return;
+        }
+
         HttpdLoglineParser<MyRecord> parser = new HttpdLoglineParser<>(MyRecord.class, logFormat);
 
         List<String> allPossiblePaths = parser.getPossiblePaths();
@@ -67,6 +93,22 @@ public class PojoGenerator {
         System.out.println("}\n");
     }
 
+    private void generate() throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException, IOException {
+        List<String> requestedFields = null;
+        if (fields != null) {
+            requestedFields = Arrays.asList(fields.split(","));
+        }
+        RecordBinderGenerator generator;
+        if (specializedParser) {
+            generator = new ParserGenerator(logFormat, requestedFields, packageName, className);
+        } else {
+            generator = new RecordBinderGenerator(logFormat, requestedFields, packageName, className);
+        }
+        for (File file : generator.writeTo(outputDirectory)) {
+            System.out.println("Generated " + file);
+        }
+    }
+
     private String castToJavaType(Casts casts) {
         switch (casts) {
             case STRING:
@@ -0,0 +1,408 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Casts;
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.core.exceptions.MissingDissectorsException;
+
+import javax.lang.model.SourceVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Generates the sources of a typed record class and the matching {@link nl.basjes.parse.core.RecordBinder}
+ * for a specific LogFormat and set of fields.
+ * All fields are validated against the LogFormat during the generation, so requesting a field that does
+ * not exist fails here (i.e. at build time) instead of when the parser is started.
+ * The generated record has a static createParser() that returns a parser which uses the binder so
+ * no reflection is needed to store the values.
+ */
+public class RecordBinderGenerator {
+
+    static final String INDENT = "    ";
+
+    public static class DummyRecord {
+        @SuppressWarnings("unused") // Only used to determine the casts
+        public void setter(String name, String value) {
+        }
+    }
+
+    static final class GeneratedField {
+        String  field;
+        String  javaName;
+        String  javaType;
+        String  valueType;
+        String  getter;
+        boolean wildcard;
+    }
+
+    private final String logFormat;
+    private final String packageName;
+    private final String className;
+    private final List<GeneratedField> fields = new ArrayList<>();
+
+    /**
+     * @param logFormat   The LogFormat of the lines.
+     * @param requestedFields The fields that must be in the record, null means all (non wildcard) fields.
+     * @param packageName The package of the generated classes (empty for the default package).
+     * @param className   The name of the generated record class (the binder is called className + "Binder").
+     * @throws IllegalArgumentException If one of the requested fields cannot be produced from this LogFormat.
+     */
+    public RecordBinderGenerator(String logFormat, List<String> requestedFields, String packageName, String className)
+        throws NoSuchMethodException, MissingDissectorsException, InvalidDissectorException {
+        this.logFormat   = logFormat;
+        this.packageName = packageName == null ? "" : packageName;
+        this.className   = className;
+
+        if (!SourceVersion.isName(className)) {
+            throw new IllegalArgumentException("The class name \"" + className + "\" is not a valid Java identifier.");
+        }
+        if (!this.packageName.isEmpty() && !SourceVersion.isName(this.packageName)) {
+            throw new IllegalArgumentException("The package name \"" + packageName + "\" is not a valid Java package.");
+        }
+
+        HttpdLoglineParser<DummyRecord> parser = new HttpdLoglineParser<>(DummyRecord.class, logFormat);
+        List<String> possiblePaths = new ArrayList<>();
+        for (String path : parser.getPossiblePaths()) {
+            possiblePaths.add(Parser.cleanupFieldValue(path));
+        }
+
+        List<String> wantedFields = new ArrayList<>();
+        if (requestedFields == null) {
+            for (String path : possiblePaths) {
+                if (!path.endsWith(".*")) {
+                    wantedFields.add(path);
+                }
+            }
+        } else {
+            for (String requestedField : requestedFields) {
+                String field = Parser.cleanupFieldValue(requestedField.trim());
+                if (!isPossible(possiblePaths, field)) {
+                    throw new IllegalArgumentException("The field \"" + requestedField + "\" does not exist for the LogFormat \"" +
+                        logFormat + "\"");
+                }
+                if (!wantedFields.contains(field)) {
+                    wantedFields.add(field);
+                }
+            }
+        }
+
+        parser.addParseTarget(DummyRecord.class.getMethod("setter", String.class, String.class), wantedFields);
+
+        Set<String> usedNames = new HashSet<>();
+        for (String field : wantedFields) {
+            GeneratedField generatedField = new GeneratedField();
+            generatedField.field = field;
+            generatedField.wildcard = field.endsWith(".*");
+
+            String valueType = toJavaType(parser.getCasts(field));
+            generatedField.valueType = valueType;
+            generatedField.javaType = generatedField.wildcard ? "Map<String, " + valueType + ">" : valueType;
+            generatedField.getter = getterFor(valueType);
+            generatedField.javaName = uniqueJavaName(field, usedNames);
+            fields.add(generatedField);
+        }
+    }
+
+    static boolean isPossible(List<String> possiblePaths, String field) {
+        if (possiblePaths.contains(field)) {
+            return true;
+        }
+        // A specific instance of a wildcard field.
+        for (String path : possiblePaths) {
+            if (path.endsWith(".*") && field.startsWith(path.substring(0, path.length() - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toJavaType(EnumSet<Casts> casts) {
+        if (casts != null) {
+            if (casts.contains(Casts.LONG)) {
+                return "Long";
+            }
+            if (casts.contains(Casts.DOUBLE)) {
+                return "Double";
+            }
+        }
+        return "String";
+    }
+
+    private static String getterFor(String valueType) {
+        switch (valueType) {
+            case "Long":
+                return "getLong";
+            case "Double":
+                return "getDouble";
+            default:
+                return "getString";
+        }
+    }
+
+    private static String uniqueJavaName(String field, Set<String> usedNames) {
+        int colon = field.indexOf(':');
+        String type = toCamelCase(field.substring(0, colon));
+        String name = toCamelCase(field.substring(colon + 1));
+        if (name.isEmpty()) {
+            name = type;
+        } else if (usedNames.contains(name) || SourceVersion.isKeyword(name)) {
+            name = name + capitalize(type);
+        }
+        if (Character.isDigit(name.charAt(0))) {
+            name = 'f' + name;
+        }
+        String uniqueName = name;
+        int index = 2;
+        while (usedNames.contains(uniqueName)) {
+            uniqueName = name + index++;
+        }
+        usedNames.add(uniqueName);
+        return uniqueName;
+    }
+
+    private static String toCamelCase(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (String part : value.toLowerCase(Locale.ENGLISH).split("[^a-z0-9]+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            sb.append(sb.length() == 0 ? part : capitalize(part));
+        }
+        return sb.toString();
+    }
+
+    static String capitalize(String value) {
+        return Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        sb.append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // --------------------------------------------
+
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    List<GeneratedField> getGeneratedFields() {
+        return fields;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getBinderClassName() {
+        return className + "Binder";
+    }
+
+    private boolean hasWildcards() {
+        for (GeneratedField field : fields) {
+            if (field.wildcard) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void appendHeader(StringBuilder sb) {
+        sb.append("// Generated by the PojoGenerator. Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n");
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * @return The Java source of the record class.
+     */
+    public String generateRecord() {
+        StringBuilder sb = new StringBuilder(4096);
+        appendHeader(sb);
+        sb.append("import nl.basjes.parse.core.Parser;\n")
+            .append("import nl.basjes.parse.httpdlog.HttpdLoglineParser;\n");
+        if (hasWildcards()) {
+            sb.append('\n')
+                .append("import java.util.Map;\n")
+                .append("import java.util.TreeMap;\n");
+        }
+        sb.append('\n')
+            .append("/**\n")
+            .append(" * The record for the LogFormat in {@link #LOG_FORMAT}.\n")
+            .append(" * Use {@link #createParser()} to get a parser that fills it using the ")
+            .append("{@link ").append(getBinderClassName()).append("} (so without reflection).\n")
+            .append(" */\n")
+            .append("public class ").append(className).append(" {\n\n")
+            .append(INDENT).append("public static final String LOG_FORMAT = ").append(quote(logFormat)).append(";\n\n");
+
+        for (GeneratedField field : fields) {
+            sb.append(INDENT).append("// ").append(field.field).append('\n')
+                .append(INDENT).append("private ").append(field.javaType).append(' ').append(field.javaName)
+                .append(field.wildcard ? " = new TreeMap<>();\n" : " = null;\n");
+        }
+
+        sb.append('\n')
+            .append(INDENT).append("public static Parser<").append(className).append("> createParser() {\n")
+            .append(INDENT).append(INDENT).append("return new HttpdLoglineParser<>(").append(className).append(".class, LOG_FORMAT)\n")
+            .append(INDENT).append(INDENT).append(INDENT).append(".setRecordBinder(new ").append(getBinderClassName()).append("());\n")
+            .append(INDENT).append("}\n");
+
+        for (GeneratedField field : fields) {
+            String valueType = field.valueType;
+            String methodSuffix = capitalize(field.javaName);
+            sb.append('\n');
+            if (field.wildcard) {
+                sb.append(INDENT).append("public void set").append(methodSuffix)
+                  .append("(String name, ").append(valueType).append(" value) {\n")
+                  .append(INDENT).append(INDENT).append(field.javaName).append(".put(name, value);\n");
+            } else {
+                sb.append(INDENT).append("public void set").append(methodSuffix).append('(').append(valueType).append(" value) {\n")
+                  .append(INDENT).append(INDENT).append(field.javaName).append(" = value;\n");
+            }
+            sb.append(INDENT).append("}\n\n")
+                .append(INDENT).append("public ").append(field.javaType).append(" get").append(methodSuffix).append("() {\n")
+                .append(INDENT).append(INDENT).append("return ").append(field.javaName).append(";\n")
+                .append(INDENT).append("}\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @return The Java source of the binder class.
+     */
+    public String generateBinder() {
+        StringBuilder sb = new StringBuilder(4096);
+        appendHeader(sb);
+        sb.append("import nl.basjes.parse.core.RecordBinder;\n")
+            .append("import nl.basjes.parse.core.Value;\n")
+            .append('\n')
+            .append("import java.util.Arrays;\n")
+            .append("import java.util.Collections;\n")
+            .append("import java.util.List;\n")
+            .append('\n')
+            .append("/**\n")
+            .append(" * Stores the parsed values in a {@link ").append(className).append("} without using reflection.\n")
+            .append(" */\n")
+            .append("public final class ").append(getBinderClassName())
+            .append(" implements RecordBinder<").append(className).append("> {\n\n")
+            .append(INDENT).append("private static final long serialVersionUID = 1L;\n\n")
+            .append(INDENT).append("private static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(");
+        for (int i = 0; i < fields.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append(INDENT).append(INDENT).append(quote(fields.get(i).field));
+        }
+        sb.append("));\n\n")
+            .append(INDENT).append("@Override\n")
+            .append(INDENT).append("public List<String> getFields() {\n")
+            .append(INDENT).append(INDENT).append("return FIELDS;\n")
+            .append(INDENT).append("}\n\n")
+            .append(INDENT).append("@Override\n")
+            .append(INDENT).append("public boolean store(").append(className).append(" record, String field, String name, Value value) {\n")
+            .append(INDENT).append(INDENT).append("switch (field) {\n");
+        for (GeneratedField field : fields) {
+            sb.append(INDENT).append(INDENT).append(INDENT).append("case ").append(quote(field.field)).append(":\n")
+                .append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                .append("record.set").append(capitalize(field.javaName))
+                .append(field.wildcard ? "(name, value." : "(value.").append(field.getter).append("());\n")
+                .append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("return true;\n");
+        }
+        sb.append(INDENT).append(INDENT).append(INDENT).append("default:\n")
+            .append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("return false;\n")
+            .append(INDENT).append(INDENT).append("}\n")
+            .append(INDENT).append("}\n")
+            .append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write both generated classes into the directory (in the subdirectories of the package).
+     * @param outputDirectory The root of the generated sources.
+     * @return The generated files.
+     */
+    public List<File> writeTo(File outputDirectory) throws IOException {
+        File packageDirectory = createPackageDirectory(outputDirectory);
+        List<File> files = new ArrayList<>();
+        files.add(write(new File(packageDirectory, getClassName() + ".java"), generateRecord()));
+        files.add(write(new File(packageDirectory, getBinderClassName() + ".java"), generateBinder()));
+        return files;
+    }
+
+    File createPackageDirectory(File outputDirectory) throws IOException {
+        File packageDirectory = packageName.isEmpty() ?
+            outputDirectory :
+            new File(outputDirectory, packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Unable to create the directory " + packageDirectory);
+        }
+        return packageDirectory;
+    }
+
+    File write(File file, String source) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            writer.write(source);
+        }
+        return file;
+    }
+
+}
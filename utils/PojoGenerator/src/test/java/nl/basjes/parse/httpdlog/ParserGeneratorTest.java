@@ -0,0 +1,169 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Parser;
+import nl.basjes.parse.core.exceptions.DissectionFailure;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParserGeneratorTest {
+
+    private static final List<String> FIELDS = Arrays.asList(
+        "IP:connection.client.host",
+        "NUMBER:connection.client.logname",
+        "STRING:request.status.last",
+        "BYTESCLF:response.body.bytes",
+        "BYTES:response.body.bytesclf",
+        "TIME.STAMP:request.receive.time",
+        "TIME.EPOCH:request.receive.time.epoch",
+        "HTTP.METHOD:request.firstline.method",
+        "HTTP.PATH:request.firstline.uri.path",
+        "STRING:request.firstline.uri.query.*",
+        "HTTP.URI:request.referer",
+        "HTTP.HOST:request.referer.host",
+        "HTTP.USERAGENT:request.user-agent");
+
+    private static final List<String> LINES = Arrays.asList(
+        "127.0.0.1 - - [31/Dec/2012:23:49:40 +0100] \"GET /icons/powered_by_rh.png?foo=bar HTTP/1.1\" 200 1213 " +
+            "\"http://localhost/index.php?mies=wim\" \"Mozilla/5.0 (X11; Linux x86_64) Firefox/11.0\"",
+        "10.0.0.1 - bob [01/Jan/2013:00:00:01 +0000] \"POST /form?a=1&b=2 HTTP/1.0\" 302 - \"-\" \"-\"",
+        // An escaped quote followed by a space in the firstline: Handled by the generic parser.
+        "10.0.0.2 - - [01/Jan/2013:00:00:02 +0000] \"GET /a\\\" b HTTP/1.1\" 404 12 \"-\" \"curl/7.0\"",
+        // Quotes in the useragent.
+        "10.0.0.3 - - [01/Jan/2013:00:00:03 +0000] \"GET / HTTP/1.1\" 200 1 \"-\" \"Foo \\\"Bar\\\" \\\" \\\"Baz\"",
+        // An empty useragent
+        "10.0.0.4 - - [01/Jan/2013:00:00:04 +0000] \"GET / HTTP/1.1\" 200 1 \"-\" \"\"");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ClassLoader compile(List<File> sources) throws Exception {
+        File classes = temporaryFolder.newFolder("classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("This test needs a JDK", compiler);
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+            List<String> options = Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.getAbsolutePath());
+            assertTrue("Generated code must compile", compiler.getTask(null, fileManager, null, options, null, units).call());
+        }
+        return new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void testSameResultAsHttpdLoglineParser() throws Exception {
+        ParserGenerator generator = new ParserGenerator("combined", FIELDS, "nl.basjes.generated", "AccessLogRecord");
+        List<File> sources = generator.writeTo(temporaryFolder.newFolder("src"));
+        assertEquals(3, sources.size());
+
+        ClassLoader classLoader = compile(sources);
+        Class<?> recordClass = classLoader.loadClass("nl.basjes.generated.AccessLogRecord");
+        Class<?> parserClass = classLoader.loadClass("nl.basjes.generated.AccessLogRecordParser");
+
+        Parser<?> genericParser = (Parser<?>) recordClass.getMethod("createParser").invoke(null);
+        Object specializedParser = parserClass.newInstance();
+        Method parse = parserClass.getMethod("parse", String.class);
+
+        for (String line : LINES) {
+            Object expected = genericParser.parse(line);
+            Object actual = parse.invoke(specializedParser, line);
+            assertNotNull(expected);
+            for (Method getter : recordClass.getMethods()) {
+                if (getter.getName().startsWith("get") && getter.getDeclaringClass() == recordClass) {
+                    assertEquals(getter.getName() + " of " + line, getter.invoke(expected), getter.invoke(actual));
+                }
+            }
+        }
+        assertEquals(1L, parserClass.getMethod("getGenericLines").invoke(specializedParser));
+    }
+
+    @Test
+    public void testBadLine() throws Exception {
+        ParserGenerator generator = new ParserGenerator("common", Arrays.asList("IP:connection.client.host"), "", "BadLineRecord");
+        ClassLoader classLoader = compile(generator.writeTo(temporaryFolder.newFolder("src")));
+        Class<?> parserClass = classLoader.loadClass("BadLineRecordParser");
+        Object specializedParser = parserClass.newInstance();
+        try {
+            parserClass.getMethod("parse", String.class).invoke(specializedParser, "Not a logline");
+            fail("A bad line must fail just like it does in the generic parser");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof DissectionFailure);
+        }
+        assertEquals(1L, parserClass.getMethod("getGenericLines").invoke(specializedParser));
+    }
+
+    private static final List<String> CONTENT_INVALID_LINES = Arrays.asList(
+        // A malformed timestamp
+        "10.0.0.1 - - [01/Jan/2013 00:00:01] \"GET / HTTP/1.1\" 200 1 \"-\" \"-\"",
+        // A body size that is not a number
+        "10.0.0.1 - - [01/Jan/2013:00:00:01 +0000] \"GET / HTTP/1.1\" 200 many \"-\" \"-\"",
+        // A timestamp with a trailing space
+        "10.0.0.1 - - [01/Jan/2013:00:00:01 +0000 ] \"GET / HTTP/1.1\" 200 1 \"-\" \"-\"");
+
+    @Test
+    public void testContentInvalidLines() throws Exception {
+        ParserGenerator generator = new ParserGenerator("combined", FIELDS, "", "InvalidRecord");
+        ClassLoader classLoader = compile(generator.writeTo(temporaryFolder.newFolder("src")));
+        Class<?> recordClass = classLoader.loadClass("InvalidRecord");
+        Class<?> parserClass = classLoader.loadClass("InvalidRecordParser");
+        Parser<?> genericParser = (Parser<?>) recordClass.getMethod("createParser").invoke(null);
+        Object specializedParser = parserClass.newInstance();
+
+        for (String line : CONTENT_INVALID_LINES) {
+            try {
+                genericParser.parse(line);
+                fail("The generic parser must reject " + line);
+            } catch (DissectionFailure e) {
+                // Expected
+            }
+            try {
+                parserClass.getMethod("parse", String.class).invoke(specializedParser, line);
+                fail("A line with an invalid token must fail just like it does in the generic parser: " + line);
+            } catch (InvocationTargetException e) {
+                assertTrue(e.getCause() instanceof DissectionFailure);
+            }
+        }
+        assertEquals((long) CONTENT_INVALID_LINES.size(), parserClass.getMethod("getGenericLines").invoke(specializedParser));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdjacentTokens() throws Exception {
+        new ParserGenerator("%h%l", Arrays.asList("IP:connection.client.host"), "", "AdjacentRecord");
+    }
+
+}
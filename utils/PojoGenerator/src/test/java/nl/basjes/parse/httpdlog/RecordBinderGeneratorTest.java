@@ -0,0 +1,166 @@
+/*
+ * Apache HTTPD & NGINX Access log parsing made easy
+ * Copyright (C) 2011-2018 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.httpdlog;
+
+import nl.basjes.parse.core.Parser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordBinderGeneratorTest {
+
+    private static final String LOG_FORMAT = "combined";
+    private static final String LINE =
+        "127.0.0.1 - - [31/Dec/2012:23:49:40 +0100] \"GET /icons/powered_by_rh.png?foo=bar HTTP/1.1\" 200 1213 " +
+        "\"http://localhost/index.php?mies=wim\" \"Mozilla/5.0 (X11; Linux x86_64) Firefox/11.0\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Class<?> compile(List<File> sources, String className) throws Exception {
+        File classes = temporaryFolder.newFolder("classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("This test needs a JDK", compiler);
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+            List<String> options = Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.getAbsolutePath());
+            assertTrue("Generated code must compile", compiler.getTask(null, fileManager, null, options, null, units).call());
+        }
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+        return classLoader.loadClass(className);
+    }
+
+    @Test
+    public void testGenerateCompileAndParse() throws Exception {
+        RecordBinderGenerator generator = new RecordBinderGenerator(LOG_FORMAT,
+            Arrays.asList(
+                "IP:connection.client.host",
+                "STRING:request.status.last",
+                "BYTES:response.body.bytesclf",
+                "TIME.EPOCH:request.receive.time.epoch",
+                "HTTP.PATH:request.firstline.uri.path",
+                "STRING:request.firstline.uri.query.*"),
+            "nl.basjes.generated", "AccessLogRecord");
+
+        List<File> sources = generator.writeTo(temporaryFolder.newFolder("src"));
+        assertEquals(2, sources.size());
+
+        Class<?> recordClass = compile(sources, "nl.basjes.generated.AccessLogRecord");
+
+        Parser<?> parser = (Parser<?>) recordClass.getMethod("createParser").invoke(null);
+        Object record = parser.parse(LINE);
+        assertNotNull(record);
+
+        assertEquals("127.0.0.1",             get(record, "getConnectionClientHost"));
+        assertEquals("200",                   get(record, "getRequestStatusLast"));
+        assertEquals(1213L,                   get(record, "getResponseBodyBytesclf"));
+        assertEquals(1356994180000L,          get(record, "getRequestReceiveTimeEpoch"));
+        assertEquals("/icons/powered_by_rh.png", get(record, "getRequestFirstlineUriPath"));
+        assertEquals("bar", ((Map<?, ?>) get(record, "getRequestFirstlineUriQuery")).get("STRING:request.firstline.uri.query.foo"));
+    }
+
+    @Test
+    public void testSerializedParser() throws Exception {
+        RecordBinderGenerator generator = new RecordBinderGenerator(LOG_FORMAT,
+            Arrays.asList("IP:connection.client.host", "BYTES:response.body.bytesclf"),
+            "", "SerializedRecord");
+        Class<?> recordClass = compile(generator.writeTo(temporaryFolder.newFolder("src")), "SerializedRecord");
+
+        Parser<?> parser = (Parser<?>) recordClass.getMethod("createParser").invoke(null);
+        assertNotNull(parser.parse(LINE));
+
+        // The generated binder is part of the serialized parser.
+        Parser<?> copy = (Parser<?>) roundTrip(parser, recordClass.getClassLoader());
+        Object record = copy.parse(LINE);
+        assertEquals("127.0.0.1", get(record, "getConnectionClientHost"));
+        assertEquals(1213L,       get(record, "getResponseBodyBytesclf"));
+    }
+
+    private Object roundTrip(Object object, final ClassLoader classLoader) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()), classLoader)) {
+            return in.readObject();
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+    @Test
+    public void testAllFields() throws Exception {
+        RecordBinderGenerator generator = new RecordBinderGenerator(LOG_FORMAT, null, "", "AllFields");
+        Class<?> recordClass = compile(generator.writeTo(temporaryFolder.newFolder("src")), "AllFields");
+
+        Parser<?> parser = (Parser<?>) recordClass.getMethod("createParser").invoke(null);
+        assertNotNull(parser.parse(LINE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonExistentField() throws Exception {
+        new RecordBinderGenerator(LOG_FORMAT, Arrays.asList("STRING:does.not.exist"), "", "BadRecord");
+    }
+
+    private Object get(Object record, String getter) throws Exception {
+        Method method = record.getClass().getMethod(getter);
+        return method.invoke(record);
+    }
+
+}